@@ -0,0 +1,68 @@
+package com.example.crypto_trading_sim.config;
+
+import com.example.crypto_trading_sim.repository.HoldingsRepository;
+import com.example.crypto_trading_sim.repository.LedgerRepository;
+import com.example.crypto_trading_sim.repository.TaxLotRepository;
+import com.example.crypto_trading_sim.repository.TradeRepository;
+import com.example.crypto_trading_sim.repository.TransactionRepository;
+import com.example.crypto_trading_sim.repository.UserRepository;
+import com.example.crypto_trading_sim.service.AccountLedger;
+import com.example.crypto_trading_sim.service.DatabaseAccountLedger;
+import com.example.crypto_trading_sim.service.GroupCommitAccountLedger;
+import com.example.crypto_trading_sim.service.InMemoryAccountLedger;
+import com.example.crypto_trading_sim.service.LedgerJournal;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Picks where account state lives with {@code ledger.mode}: {@code database}
+ * (default), where every trade is a database transaction, {@code group-commit},
+ * where concurrent trades share one, or {@code memory}, where a trade is a
+ * journal append and the database is written behind. The first two mark the
+ * database as written directly, so a later {@code memory} run reloads accounts
+ * from it rather than from an older journal.
+ */
+@Configuration
+public class LedgerConfig {
+    
+    @Bean(destroyMethod = "close")
+    public AccountLedger accountLedger(
+            @Value("${ledger.mode:database}") String mode,
+            @Value("${ledger.dir:data/ledger}") String directory,
+            @Value("${ledger.journal.fsync:true}") boolean fsync,
+            @Value("${ledger.write-behind.batch-size:1000}") int batchSize,
+            @Value("${ledger.write-behind.interval:200ms}") Duration flushInterval,
+            @Value("${ledger.snapshot-interval:5m}") Duration snapshotInterval,
+            @Value("${ledger.group-commit.max-batch:256}") int groupMaxBatch,
+            @Value("${ledger.group-commit.max-wait:200us}") Duration groupMaxWait,
+            UserRepository userRepository,
+            HoldingsRepository holdingsRepository,
+            TransactionRepository transactionRepository,
+            TradeRepository tradeRepository,
+            TaxLotRepository taxLotRepository,
+            LedgerRepository ledgerRepository,
+            MeterRegistry meterRegistry) throws IOException {
+        return switch (mode.toLowerCase()) {
+            case "database" -> {
+                ledgerRepository.markDirectWrites();
+                yield new DatabaseAccountLedger(userRepository, holdingsRepository, transactionRepository,
+                    tradeRepository, taxLotRepository);
+            }
+            case "group-commit" -> {
+                ledgerRepository.markDirectWrites();
+                yield new GroupCommitAccountLedger(userRepository, holdingsRepository, transactionRepository,
+                    tradeRepository, taxLotRepository, meterRegistry, groupMaxBatch, groupMaxWait);
+            }
+            case "memory" -> new InMemoryAccountLedger(new LedgerJournal(Path.of(directory), fsync, meterRegistry),
+                userRepository, holdingsRepository, transactionRepository, ledgerRepository, meterRegistry,
+                batchSize, flushInterval, snapshotInterval);
+            default -> throw new IllegalStateException("Unknown ledger.mode: " + mode);
+        };
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.crypto_trading_sim.config;
+
+import com.example.crypto_trading_sim.service.KrakenMarketDataSource;
+import com.example.crypto_trading_sim.service.MarketDataSource;
+import com.example.crypto_trading_sim.service.ReplayMarketDataSource;
+import com.example.crypto_trading_sim.service.SyntheticMarketDataSource;
+import com.example.crypto_trading_sim.service.TickJournal;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Picks the market data source with {@code market-data.source}: {@code kraken}
+ * (default), {@code synthetic} or {@code replay}.
+ */
+@Configuration
+public class MarketDataConfig {
+    
+    @Bean(destroyMethod = "stop")
+    public MarketDataSource marketDataSource(
+            @Value("${market-data.source:kraken}") String source,
+            @Value("${kraken.api.base-url:https://api.kraken.com}") String krakenBaseUrl,
+            @Value("${kraken.ws.url:wss://ws.kraken.com/v2}") String krakenWsUrl,
+            @Value("${kraken.ingestion.mode:websocket}") String krakenIngestionMode,
+            @Value("${kraken.universe.file:data/kraken-universe.json}") String krakenUniverseFile,
+            @Value("${kraken.universe.size:20}") int krakenUniverseSize,
+            @Value("${kraken.universe.rerank-interval:15m}") Duration krakenRerankInterval,
+            @Value("${market-data.synthetic.symbols:BTC,ETH,SOL,XRP,ADA,LTC,DOT,LINK,AVAX,UNI}") List<String> syntheticSymbols,
+            @Value("${market-data.synthetic.interval:100ms}") Duration syntheticInterval,
+            @Value("${market-data.synthetic.seed:42}") long syntheticSeed,
+            @Value("${market-data.replay.file:}") String replayFile,
+            @Value("${market-data.replay.speed:1x}") String replaySpeed,
+            @Value("${market-data.replay.loop:false}") boolean replayLoop) {
+        return switch (source.toLowerCase()) {
+            case "kraken" -> new KrakenMarketDataSource(krakenBaseUrl, krakenWsUrl, krakenIngestionMode,
+                krakenUniverseFile.isBlank() ? null : Path.of(krakenUniverseFile), krakenUniverseSize, krakenRerankInterval);
+            case "synthetic" -> new SyntheticMarketDataSource(syntheticSymbols, syntheticInterval, syntheticSeed);
+            case "replay" -> {
+                if (replayFile.isBlank()) throw new IllegalStateException("market-data.replay.file must be set for replay");
+                yield new ReplayMarketDataSource(Path.of(replayFile), ReplayMarketDataSource.parseSpeed(replaySpeed), replayLoop);
+            }
+            default -> throw new IllegalStateException("Unknown market-data.source: " + source);
+        };
+    }
+    
+    /**
+     * Journal of every published tick; also what prices are restored from on
+     * startup. On by default for the kraken source only, so synthetic and
+     * replayed prices are never restored into a live run; {@code
+     * tick-journal.enabled} overrides that. The default directory is named
+     * after the source for the same reason. Replaying from the journal
+     * directory itself is not supported, since the journal prunes old
+     * segments; replay a copy instead.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnExpression("'${tick-journal.enabled:}' == 'true' or "
+        + "('${tick-journal.enabled:}' == '' and '${market-data.source:kraken}'.toLowerCase() == 'kraken')")
+    public TickJournal tickJournal(
+            @Value("${market-data.source:kraken}") String source,
+            @Value("${tick-journal.dir:}") String directory,
+            @Value("${tick-journal.segment-size:64MB}") DataSize segmentSize,
+            @Value("${tick-journal.max-segments:32}") int maxSegments,
+            MeterRegistry meterRegistry) throws IOException {
+        Path path = Path.of(directory.isBlank() ? "data/tick-journal-" + source.toLowerCase() : directory);
+        return new TickJournal(path, segmentSize.toBytes(), maxSegments, meterRegistry);
+    }
+}
@@ -1,14 +1,19 @@
 package com.example.crypto_trading_sim.controller;
 
+import com.example.crypto_trading_sim.service.CandleEngine;
 import com.example.crypto_trading_sim.service.KrakenApiService;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.crypto_trading_sim.service.PriceDeltaStream;
+import com.example.crypto_trading_sim.service.PriceHistoryService;
+import com.example.crypto_trading_sim.service.PriceStreamBroadcaster;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -17,7 +22,10 @@ import java.util.List;
 public class MarketController {
     
     private final KrakenApiService krakenApiService;
-    private final ObjectMapper objectMapper;
+    private final PriceStreamBroadcaster priceStreamBroadcaster;
+    private final PriceDeltaStream priceDeltaStream;
+    private final CandleEngine candleEngine;
+    private final PriceHistoryService priceHistoryService;
     
     /**
      * Get current prices for all supported cryptocurrencies
@@ -52,17 +60,64 @@ public class MarketController {
     }
     
     /**
-     * Server-Sent Events stream for real-time price updates
+     * Server-Sent Events stream for real-time price updates (each tick is
+     * serialized once and the same bytes are written to every subscriber)
      */
     @GetMapping(value = "/prices/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<String> getPriceStream() {
-        return krakenApiService.startPriceStream()
-            .map(priceList -> {
-                try {
-                    return objectMapper.writeValueAsString(priceList);
-                } catch (Exception e) {
-                    return "[]";
-                }
-            });
+    public Flux<byte[]> getPriceStream() {
+        return priceStreamBroadcaster.frames();
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Server-Sent Events stream of one full snapshot followed by per-symbol field deltas
+     */
+    @GetMapping(value = "/prices/stream/delta", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<byte[]> getPriceDeltaStream() {
+        return priceDeltaStream.frames();
+    }
+    
+    /**
+     * Full snapshot with its sequence number, for delta stream clients that detected a gap
+     */
+    @GetMapping(value = "/prices/snapshot", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getPriceSnapshot() {
+        return ResponseEntity.ok(priceDeltaStream.snapshotFrame());
+    }
+    
+    /**
+     * OHLCV candles for a symbol, oldest first (interval: 1s, 1m, 5m or 1h)
+     */
+    @GetMapping("/candles/{symbol}")
+    public ResponseEntity<List<CandleEngine.Candle>> getCandles(@PathVariable String symbol,
+                                                                @RequestParam(defaultValue = "1m") String interval,
+                                                                @RequestParam(defaultValue = "300") int limit) {
+        CandleEngine.Resolution resolution;
+        try {
+            resolution = CandleEngine.Resolution.fromLabel(interval);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(candleEngine.getCandles(symbol, resolution, limit));
+        } catch (Exception e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    /**
+     * Stored price history for a time range, served from the raw, 1m or 1h tier depending on the range
+     */
+    @GetMapping("/history/{symbol}")
+    public ResponseEntity<PriceHistoryService.History> getPriceHistory(
+            @PathVariable String symbol,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        try {
+            return ResponseEntity.ok(priceHistoryService.getHistory(symbol, from, to != null ? to : LocalDateTime.now()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+}
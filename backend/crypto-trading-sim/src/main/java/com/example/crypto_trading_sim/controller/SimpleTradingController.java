@@ -1,34 +1,63 @@
 package com.example.crypto_trading_sim.controller;
 
+import com.example.crypto_trading_sim.service.Leaderboard;
+import com.example.crypto_trading_sim.service.OrderTriggerEngine;
 import com.example.crypto_trading_sim.service.SimpleTradingService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
 import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Every endpoint takes an optional {@code accountId} query parameter and acts
+ * on the demo account without one.
+ */
 @RestController
 @RequestMapping("/api/simple-trading")
 @RequiredArgsConstructor
 public class SimpleTradingController {
     
     private final SimpleTradingService tradingService;
+    private final OrderTriggerEngine orderEngine;
+    private final Leaderboard leaderboard;
     
     /**
-     * Execute a trade (buy or sell) without requiring user account
+     * Open a new account with a username and an optional initial balance
+     */
+    @PostMapping("/accounts")
+    public ResponseEntity<?> createAccount(@RequestBody Map<String, Object> request) {
+        try {
+            Object initialBalance = request.getOrDefault("initialBalance", "10000.00");
+            Long accountId = tradingService.createAccount((String) request.get("username"),
+                new BigDecimal(initialBalance.toString()));
+            return ResponseEntity.ok(Map.of("success", true, "accountId", accountId));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "error", e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * Execute a trade (buy or sell)
      */
     @PostMapping("/trade")
-    public ResponseEntity<?> executeTrade(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<?> executeTrade(@RequestBody Map<String, Object> request,
+                                          @RequestParam(required = false) Long accountId) {
         try {
             String symbol = (String) request.get("symbol");
             String type = (String) request.get("type");
             BigDecimal quantity = new BigDecimal(request.get("quantity").toString());
             BigDecimal price = new BigDecimal(request.get("price").toString());
             
-            SimpleTradingService.TradeRecord trade = tradingService.executeTrade(symbol, type, quantity, price);
+            SimpleTradingService.TradeRecord trade = tradingService.executeTrade(account(accountId), symbol, type, quantity, price);
             
             return ResponseEntity.ok(Map.of(
                 "success", true,
@@ -56,34 +85,13 @@ public class SimpleTradingController {
      * Get account summary including portfolio and P&L
      */
     @GetMapping("/account")
-    public ResponseEntity<?> getAccount() {
+    public ResponseEntity<?> getAccount(@RequestParam(required = false) Long accountId) {
         try {
-            SimpleTradingService.AccountSummary summary = tradingService.getAccountSummary();
+            Long id = account(accountId);
+            SimpleTradingService.AccountSummary summary = tradingService.getAccountSummary(id);
             
-            Map<String, Object> accountData = new HashMap<>();
-            accountData.put("balance", summary.getBalance());
-            accountData.put("initialBalance", summary.getInitialBalance());
-            accountData.put("portfolioValue", summary.getTotalPortfolioValue());
-            accountData.put("totalValue", summary.getBalance().add(summary.getTotalPortfolioValue()));
-            accountData.put("totalPnL", summary.getTotalPnL());
-            accountData.put("totalPnLPercentage", summary.getTotalPnLPercent());
-            accountData.put("totalInvested", summary.getBalance().add(summary.getTotalPortfolioValue()).subtract(summary.getTotalPnL()));
-            accountData.put("realizedPnL", BigDecimal.ZERO);
-            accountData.put("unrealizedPnL", summary.getTotalPnL());
-            accountData.put("transactionCount", tradingService.getTradeHistory().size());
-            accountData.put("portfolio", summary.getHoldings().stream().map(holding -> {
-                Map<String, Object> portfolioItem = new HashMap<>();
-                portfolioItem.put("symbol", holding.getSymbol());
-                portfolioItem.put("quantity", holding.getQuantity());
-                portfolioItem.put("avgPrice", holding.getAvgPrice());
-                portfolioItem.put("totalInvested", holding.getTotalInvested());
-                portfolioItem.put("currentPrice", holding.getCurrentPrice());
-                portfolioItem.put("currentValue", holding.getCurrentValue());
-                portfolioItem.put("pnl", holding.getPnl());
-                portfolioItem.put("pnlPercent", holding.getPnlPercent());
-                portfolioItem.put("lastUpdated", holding.getLastUpdated());
-                return portfolioItem;
-            }).toList());
+            Map<String, Object> accountData = accountData(summary);
+            accountData.put("accountId", id);
             
             return ResponseEntity.ok(Map.of("success", true, "account", accountData));
             
@@ -95,13 +103,27 @@ public class SimpleTradingController {
         }
     }
     
+    /**
+     * Server-Sent Events stream of the account summary, sent on subscribe and
+     * again whenever a trade or price move changes it
+     */
+    @GetMapping(value = "/account/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<Map<String, Object>> getAccountStream(@RequestParam(required = false) Long accountId) {
+        Long id = account(accountId);
+        return tradingService.getAccountUpdates(id).map(summary -> {
+            Map<String, Object> accountData = accountData(summary);
+            accountData.put("accountId", id);
+            return accountData;
+        });
+    }
+    
     /**
      * Reset account to initial state
      */
     @PostMapping("/account/reset")
-    public ResponseEntity<?> resetAccount() {
+    public ResponseEntity<?> resetAccount(@RequestParam(required = false) Long accountId) {
         try {
-            tradingService.resetAccount();
+            tradingService.resetAccount(account(accountId));
             return ResponseEntity.ok(Map.of(
                 "success", true,
                 "message", "Account has been reset to initial state"
@@ -118,9 +140,9 @@ public class SimpleTradingController {
      * Get transaction history
      */
     @GetMapping("/transactions")
-    public ResponseEntity<?> getTransactionHistory() {
+    public ResponseEntity<?> getTransactionHistory(@RequestParam(required = false) Long accountId) {
         try {
-            List<SimpleTradingService.TradeRecord> trades = tradingService.getTradeHistory();
+            List<SimpleTradingService.TradeRecord> trades = tradingService.getTradeHistory(account(accountId));
             
             return ResponseEntity.ok(Map.of(
                 "success", true,
@@ -147,9 +169,9 @@ public class SimpleTradingController {
      * Get current balance only
      */
     @GetMapping("/balance")
-    public ResponseEntity<?> getBalance() {
+    public ResponseEntity<?> getBalance(@RequestParam(required = false) Long accountId) {
         try {
-            BigDecimal balance = tradingService.getCurrentBalance();
+            BigDecimal balance = tradingService.getCurrentBalance(account(accountId));
             return ResponseEntity.ok(Map.of("success", true, "balance", balance));
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body(Map.of(
@@ -158,4 +180,181 @@ public class SimpleTradingController {
             ));
         }
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Place a resting order: type BUY or SELL, orderType LIMIT, STOP or
+     * TAKE_PROFIT, and the trigger price as price
+     */
+    @PostMapping("/orders")
+    public ResponseEntity<?> placeOrder(@RequestBody Map<String, Object> request,
+                                        @RequestParam(required = false) Long accountId) {
+        try {
+            OrderTriggerEngine.Order order = orderEngine.place(
+                account(accountId),
+                (String) request.get("symbol"),
+                (String) request.get("type"),
+                (String) request.get("orderType"),
+                new BigDecimal(request.get("quantity").toString()),
+                new BigDecimal(request.get("price").toString()));
+            return ResponseEntity.ok(Map.of("success", true, "order", orderData(order)));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "error", e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * Get open orders
+     */
+    @GetMapping("/orders")
+    public ResponseEntity<?> getOpenOrders(@RequestParam(required = false) Long accountId) {
+        try {
+            List<OrderTriggerEngine.Order> orders = orderEngine.openOrders(account(accountId));
+            return ResponseEntity.ok(Map.of(
+                "success", true,
+                "orders", orders.stream().map(this::orderData).toList()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of(
+                "success", false,
+                "error", e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * Get one order, open or recently closed
+     */
+    @GetMapping("/orders/{id}")
+    public ResponseEntity<?> getOrder(@PathVariable long id, @RequestParam(required = false) Long accountId) {
+        return orderEngine.findOrder(account(accountId), id)
+            .<ResponseEntity<?>>map(order -> ResponseEntity.ok(Map.of("success", true, "order", orderData(order))))
+            .orElseGet(() -> ResponseEntity.status(404).body(Map.of(
+                "success", false,
+                "error", "No order with id " + id
+            )));
+    }
+    
+    /**
+     * Cancel an open order
+     */
+    @DeleteMapping("/orders/{id}")
+    public ResponseEntity<?> cancelOrder(@PathVariable long id, @RequestParam(required = false) Long accountId) {
+        try {
+            OrderTriggerEngine.Order order = orderEngine.cancel(account(accountId), id);
+            return ResponseEntity.ok(Map.of("success", true, "order", orderData(order)));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "error", e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * Top accounts ranked by total value ({@code by=equity}) or total P&L
+     * percent ({@code by=pnl})
+     */
+    @GetMapping("/leaderboard")
+    public ResponseEntity<?> getLeaderboard(@RequestParam(defaultValue = "equity") String by,
+                                            @RequestParam(defaultValue = "10") int limit) {
+        try {
+            Leaderboard.Ranking ranking = Leaderboard.Ranking.parse(by);
+            return ResponseEntity.ok(Map.of(
+                "success", true,
+                "totalAccounts", leaderboard.size(),
+                "leaders", leaderboard.top(ranking, Math.min(limit, 1000)).stream().map(this::standingData).toList()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "error", e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * The account's rank by total value or total P&L percent
+     */
+    @GetMapping("/leaderboard/rank")
+    public ResponseEntity<?> getRank(@RequestParam(defaultValue = "equity") String by,
+                                     @RequestParam(required = false) Long accountId) {
+        try {
+            Long id = account(accountId);
+            return leaderboard.standing(Leaderboard.Ranking.parse(by), id)
+                .<ResponseEntity<?>>map(standing -> ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "totalAccounts", leaderboard.size(),
+                    "standing", standingData(standing))))
+                .orElseGet(() -> ResponseEntity.status(404).body(Map.of(
+                    "success", false,
+                    "error", "Account " + id + " is not on the leaderboard"
+                )));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "error", e.getMessage()
+            ));
+        }
+    }
+    
+    private Map<String, Object> accountData(SimpleTradingService.AccountSummary summary) {
+        Map<String, Object> accountData = new HashMap<>();
+        accountData.put("balance", summary.getBalance());
+        accountData.put("initialBalance", summary.getInitialBalance());
+        accountData.put("portfolioValue", summary.getTotalPortfolioValue());
+        accountData.put("totalValue", summary.getBalance().add(summary.getTotalPortfolioValue()));
+        accountData.put("totalPnL", summary.getTotalPnL());
+        accountData.put("totalPnLPercentage", summary.getTotalPnLPercent());
+        accountData.put("totalInvested", summary.getBalance().add(summary.getTotalPortfolioValue()).subtract(summary.getTotalPnL()));
+        accountData.put("realizedPnL", summary.getRealizedPnL());
+        accountData.put("unrealizedPnL", summary.getUnrealizedPnL());
+        accountData.put("transactionCount", summary.getTransactionCount());
+        accountData.put("portfolio", summary.getHoldings().stream().map(holding -> {
+            Map<String, Object> portfolioItem = new HashMap<>();
+            portfolioItem.put("symbol", holding.getSymbol());
+            portfolioItem.put("quantity", holding.getQuantity());
+            portfolioItem.put("avgPrice", holding.getAvgPrice());
+            portfolioItem.put("totalInvested", holding.getTotalInvested());
+            portfolioItem.put("currentPrice", holding.getCurrentPrice());
+            portfolioItem.put("currentValue", holding.getCurrentValue());
+            portfolioItem.put("pnl", holding.getPnl());
+            portfolioItem.put("pnlPercent", holding.getPnlPercent());
+            portfolioItem.put("lastUpdated", holding.getLastUpdated());
+            return portfolioItem;
+        }).toList());
+        return accountData;
+    }
+    
+    private Map<String, Object> standingData(Leaderboard.Standing standing) {
+        return Map.of(
+            "rank", standing.getRank(),
+            "accountId", standing.getAccountId(),
+            "totalValue", standing.getTotalValue(),
+            "totalPnL", standing.getTotalPnL(),
+            "totalPnLPercentage", standing.getTotalPnLPercent()
+        );
+    }
+    
+    private Long account(Long accountId) {
+        return accountId != null ? accountId : tradingService.getDemoUserId();
+    }
+    
+    private Map<String, Object> orderData(OrderTriggerEngine.Order order) {
+        // HashMap, since fill price and reason may be null
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", order.getId());
+        data.put("symbol", order.getSymbol());
+        data.put("type", order.getSide());
+        data.put("orderType", order.getType());
+        data.put("quantity", order.getQuantity());
+        data.put("triggerPrice", order.getTriggerPrice());
+        data.put("status", order.getStatus());
+        data.put("fillPrice", order.getFillPrice());
+        data.put("reason", order.getReason());
+        data.put("createdAt", order.getCreatedAt());
+        return data;
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.crypto_trading_sim.exception;
+
+/**
+ * The upstream API refused a request because its rate limit was exceeded.
+ */
+public class RateLimitedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RateLimitedException(String message) {
+        super(message);
+    }
+}
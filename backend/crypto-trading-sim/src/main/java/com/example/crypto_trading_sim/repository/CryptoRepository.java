@@ -0,0 +1,44 @@
+package com.example.crypto_trading_sim.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ids of {@code cryptocurrencies} rows by symbol, creating a row on first use
+ * and caching the id for the life of the process.
+ * <p>
+ * The row is created in its own transaction, committed before the id is
+ * cached: an id cached from a transaction that then rolled back would name a
+ * row that does not exist, and fail every later write that uses it.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CryptoRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final Map<String, Long> ids = new ConcurrentHashMap<>();
+
+    /** Cached ids need no transaction; only a miss takes one of its own. */
+    public Long idOf(String symbol) {
+        Long id = ids.get(symbol);
+        return id != null ? id : ids.computeIfAbsent(symbol, this::getOrCreate);
+    }
+
+    private Long getOrCreate(String symbol) {
+        // The name is restated, so a row created under another name gets the one every writer agrees on
+        String sql = "INSERT INTO cryptocurrencies (symbol, name) VALUES (?, ?) " +
+                    "ON CONFLICT (symbol) DO UPDATE SET name = EXCLUDED.name RETURNING id";
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transaction.execute(status ->
+            jdbcTemplate.queryForObject(sql, Long.class, symbol, HoldingsRepository.getCryptoName(symbol)));
+    }
+}
@@ -67,6 +67,16 @@ public class HoldingsRepository {
         return jdbcTemplate.query(sql, holdingRowMapper, userId);
     }
     
+    /** Every user's holdings with a positive quantity, each user's least recently changed first. */
+    public List<Holding> findAll() {
+        String sql = "SELECT h.*, c.symbol FROM user_holdings h " +
+                    "JOIN cryptocurrencies c ON h.crypto_id = c.id " +
+                    "WHERE h.quantity > 0 " +
+                    "ORDER BY h.user_id, h.updated_at";
+        
+        return jdbcTemplate.query(sql, holdingRowMapper);
+    }
+    
     public Optional<Holding> findByUserIdAndSymbol(Long userId, String cryptoSymbol) {
         String sql = "SELECT h.*, c.symbol FROM user_holdings h " +
                     "JOIN cryptocurrencies c ON h.crypto_id = c.id " +
@@ -117,7 +127,7 @@ public class HoldingsRepository {
         }
     }
     
-    private String getCryptoName(String symbol) {
+    static String getCryptoName(String symbol) {
         return switch (symbol) {
             case "BTC" -> "Bitcoin";
             case "ETH" -> "Ethereum";
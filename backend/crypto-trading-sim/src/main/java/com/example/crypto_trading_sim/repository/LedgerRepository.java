@@ -0,0 +1,194 @@
+package com.example.crypto_trading_sim.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Write-behind target of the in-memory ledger: applies a batch of account
+ * changes to {@code users}, {@code user_holdings}, {@code transactions} and,
+ * through {@link TaxLotRepository}, the tax lot tables, and advances the
+ * ledger watermark, all in one database transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class LedgerRepository {
+
+    private static final String WATERMARK = "trades";
+    // Present once a ledger other than the journaled one has written the tables
+    private static final String DIRECT = "direct";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TaxLotRepository taxLotRepository;
+    private final CryptoRepository cryptoRepository;
+
+    public static class TradeRow {
+        private final Long userId;
+        private final String symbol;
+        private final String type;
+        private final BigDecimal quantity;
+        private final BigDecimal price;
+        private final BigDecimal total;
+        private final BigDecimal balanceBefore;
+        private final BigDecimal balanceAfter;
+        private final LocalDateTime createdAt;
+
+        public TradeRow(Long userId, String symbol, String type, BigDecimal quantity, BigDecimal price, BigDecimal total,
+                        BigDecimal balanceBefore, BigDecimal balanceAfter, LocalDateTime createdAt) {
+            this.userId = userId;
+            this.symbol = symbol;
+            this.type = type;
+            this.quantity = quantity;
+            this.price = price;
+            this.total = total;
+            this.balanceBefore = balanceBefore;
+            this.balanceAfter = balanceAfter;
+            this.createdAt = createdAt;
+        }
+
+        public Long getUserId() { return userId; }
+        public String getSymbol() { return symbol; }
+        public String getType() { return type; }
+        public BigDecimal getQuantity() { return quantity; }
+        public BigDecimal getPrice() { return price; }
+        public BigDecimal getTotal() { return total; }
+        public BigDecimal getBalanceBefore() { return balanceBefore; }
+        public BigDecimal getBalanceAfter() { return balanceAfter; }
+        public LocalDateTime getCreatedAt() { return createdAt; }
+    }
+
+    /**
+     * A holding's current state; a null quantity means the holding is gone.
+     */
+    public static class HoldingRow {
+        private final Long userId;
+        private final String symbol;
+        private final BigDecimal quantity;
+        private final BigDecimal averagePrice;
+
+        public HoldingRow(Long userId, String symbol, BigDecimal quantity, BigDecimal averagePrice) {
+            this.userId = userId;
+            this.symbol = symbol;
+            this.quantity = quantity;
+            this.averagePrice = averagePrice;
+        }
+
+        public Long getUserId() { return userId; }
+        public String getSymbol() { return symbol; }
+        public BigDecimal getQuantity() { return quantity; }
+        public BigDecimal getAveragePrice() { return averagePrice; }
+    }
+
+    /**
+     * Changes applied in this order: resets, new transactions, balances,
+     * holdings, tax lots, watermark.
+     */
+    public static class Batch {
+        private final long watermark;
+        private final Set<Long> resets = new LinkedHashSet<>();
+        private final List<TradeRow> trades = new ArrayList<>();
+        private final Map<Long, BigDecimal> balances = new LinkedHashMap<>();
+        private final List<HoldingRow> holdings = new ArrayList<>();
+        private final TaxLotRepository.Writes lots = new TaxLotRepository.Writes();
+
+        public Batch(long watermark) {
+            this.watermark = watermark;
+        }
+
+        public long getWatermark() { return watermark; }
+        public Set<Long> getResets() { return resets; }
+        public List<TradeRow> getTrades() { return trades; }
+        public Map<Long, BigDecimal> getBalances() { return balances; }
+        public List<HoldingRow> getHoldings() { return holdings; }
+        public TaxLotRepository.Writes getLots() { return lots; }
+    }
+
+    /** Sequence number of the last ledger event written to the database, or 0. */
+    public long getWatermark() {
+        List<Long> sequences = jdbcTemplate.queryForList(
+            "SELECT sequence FROM ledger_watermarks WHERE name = ?", Long.class, WATERMARK);
+        return sequences.isEmpty() ? 0 : sequences.get(0);
+    }
+
+    /**
+     * Record that account tables are written directly, so a ledger journal
+     * from an earlier run no longer describes them.
+     */
+    public void markDirectWrites() {
+        jdbcTemplate.update("INSERT INTO ledger_watermarks (name, sequence) VALUES (?, 0) ON CONFLICT (name) DO NOTHING",
+            DIRECT);
+    }
+
+    public boolean hasDirectWrites() {
+        return !jdbcTemplate.queryForList("SELECT sequence FROM ledger_watermarks WHERE name = ?", Long.class, DIRECT)
+            .isEmpty();
+    }
+
+    public void clearDirectWrites() {
+        jdbcTemplate.update("DELETE FROM ledger_watermarks WHERE name = ?", DIRECT);
+    }
+
+    @Transactional
+    public void persist(Batch batch) {
+        if (!batch.getResets().isEmpty()) {
+            List<Object[]> users = batch.getResets().stream().map(id -> new Object[] {id}).toList();
+            jdbcTemplate.batchUpdate("DELETE FROM transactions WHERE user_id = ?", users);
+            jdbcTemplate.batchUpdate("DELETE FROM user_holdings WHERE user_id = ?", users);
+            jdbcTemplate.batchUpdate("DELETE FROM tax_lots WHERE user_id = ?", users);
+            jdbcTemplate.batchUpdate("DELETE FROM realized_pnl WHERE user_id = ?", users);
+            jdbcTemplate.batchUpdate(
+                "UPDATE users SET current_balance = initial_balance, updated_at = CURRENT_TIMESTAMP WHERE id = ?", users);
+        }
+
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO transactions (user_id, crypto_id, transaction_type, quantity, price_per_unit, total_amount, " +
+            "balance_before, balance_after, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+            batch.getTrades().stream().map(trade -> new Object[] {
+                trade.getUserId(), cryptoId(trade.getSymbol()), trade.getType(), trade.getQuantity(), trade.getPrice(),
+                trade.getTotal(), trade.getBalanceBefore(), trade.getBalanceAfter(), Timestamp.valueOf(trade.getCreatedAt())
+            }).toList());
+
+        jdbcTemplate.batchUpdate(
+            "UPDATE users SET current_balance = ?, updated_at = CURRENT_TIMESTAMP WHERE id = ?",
+            batch.getBalances().entrySet().stream()
+                .map(balance -> new Object[] {balance.getValue(), balance.getKey()})
+                .toList());
+
+        List<Object[]> upserts = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        for (HoldingRow holding : batch.getHoldings()) {
+            Long cryptoId = cryptoId(holding.getSymbol());
+            if (holding.getQuantity() == null) {
+                deletes.add(new Object[] {holding.getUserId(), cryptoId});
+            } else {
+                upserts.add(new Object[] {holding.getUserId(), cryptoId, holding.getQuantity(), holding.getAveragePrice()});
+            }
+        }
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO user_holdings (user_id, crypto_id, quantity, average_price) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (user_id, crypto_id) DO UPDATE SET quantity = EXCLUDED.quantity, " +
+            "average_price = EXCLUDED.average_price, updated_at = CURRENT_TIMESTAMP", upserts);
+        jdbcTemplate.batchUpdate("DELETE FROM user_holdings WHERE user_id = ? AND crypto_id = ?", deletes);
+
+        if (!batch.getLots().isEmpty()) taxLotRepository.write(batch.getLots());
+
+        jdbcTemplate.update(
+            "INSERT INTO ledger_watermarks (name, sequence) VALUES (?, ?) " +
+            "ON CONFLICT (name) DO UPDATE SET sequence = EXCLUDED.sequence", WATERMARK, batch.getWatermark());
+    }
+
+    private Long cryptoId(String symbol) {
+        return cryptoRepository.idOf(symbol);
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.crypto_trading_sim.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+@Repository
+@RequiredArgsConstructor
+public class PriceHistoryRepository {
+
+    private static final int STREAM_FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CryptoRepository cryptoRepository;
+
+    /**
+     * Storage tiers, finest first. Each coarser tier is rolled up from the one before it.
+     */
+    public enum Tier {
+        RAW("price_history", "timestamp", null),
+        MINUTE("price_history_1m", "bucket", "minute"),
+        HOUR("price_history_1h", "bucket", "hour");
+
+        private final String table;
+        private final String timeColumn;
+        private final String truncUnit;
+
+        Tier(String table, String timeColumn, String truncUnit) {
+            this.table = table;
+            this.timeColumn = timeColumn;
+            this.truncUnit = truncUnit;
+        }
+    }
+
+    public static class PriceBar {
+        private final LocalDateTime time;
+        private final BigDecimal open;
+        private final BigDecimal high;
+        private final BigDecimal low;
+        private final BigDecimal close;
+        private final int tickCount;
+
+        public PriceBar(LocalDateTime time, BigDecimal open, BigDecimal high, BigDecimal low, BigDecimal close,
+                        int tickCount) {
+            this.time = time;
+            this.open = open;
+            this.high = high;
+            this.low = low;
+            this.close = close;
+            this.tickCount = tickCount;
+        }
+
+        public LocalDateTime getTime() { return time; }
+        public BigDecimal getOpen() { return open; }
+        public BigDecimal getHigh() { return high; }
+        public BigDecimal getLow() { return low; }
+        public BigDecimal getClose() { return close; }
+        public int getTickCount() { return tickCount; }
+    }
+
+    public static class PriceTick {
+        private final String symbol;
+        private final BigDecimal price;
+        private final LocalDateTime timestamp;
+
+        public PriceTick(String symbol, BigDecimal price, LocalDateTime timestamp) {
+            this.symbol = symbol;
+            this.price = price;
+            this.timestamp = timestamp;
+        }
+
+        public String getSymbol() { return symbol; }
+        public BigDecimal getPrice() { return price; }
+        public LocalDateTime getTimestamp() { return timestamp; }
+    }
+
+    /**
+     * Insert ticks as one JDBC batch. With {@code reWriteBatchedInserts=true} on the
+     * Postgres URL the driver folds the batch into multi-row INSERTs.
+     */
+    public void insertBatch(List<PriceTick> ticks, String source) {
+        if (ticks.isEmpty()) return;
+
+        String sql = "INSERT INTO price_history (crypto_id, price, timestamp, source) VALUES (?, ?, ?, ?)";
+        // Resolve ids up front so the batch itself is a single statement
+        for (PriceTick tick : ticks) cryptoRepository.idOf(tick.getSymbol());
+
+        jdbcTemplate.batchUpdate(sql, ticks, ticks.size(), (ps, tick) -> {
+            ps.setLong(1, cryptoRepository.idOf(tick.getSymbol()));
+            ps.setBigDecimal(2, tick.getPrice());
+            ps.setTimestamp(3, Timestamp.valueOf(tick.getTimestamp()));
+            ps.setString(4, source);
+        });
+    }
+
+    /**
+     * Hand every tick recorded at or after {@code since} to the consumer, oldest
+     * first, row by row instead of building a list. The Postgres driver only
+     * fetches through a cursor inside a transaction and with a fetch size; with
+     * neither it reads the whole result into memory first.
+     */
+    @Transactional(readOnly = true)
+    public void forEachSince(LocalDateTime since, Consumer<PriceTick> consumer) {
+        String sql = "SELECT c.symbol, p.price, p.timestamp FROM price_history p " +
+                    "JOIN cryptocurrencies c ON p.crypto_id = c.id " +
+                    "WHERE p.timestamp >= ? ORDER BY p.timestamp";
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setFetchSize(STREAM_FETCH_SIZE);
+            statement.setTimestamp(1, Timestamp.valueOf(since));
+            return statement;
+        }, (RowCallbackHandler) rs -> consumer.accept(new PriceTick(
+            rs.getString("symbol"), rs.getBigDecimal("price"), rs.getTimestamp("timestamp").toLocalDateTime())));
+    }
+
+    public Optional<LocalDateTime> findWatermark(Tier tier) {
+        String sql = "SELECT watermark FROM price_rollup_watermarks WHERE tier = ?";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> rs.getTimestamp("watermark").toLocalDateTime(), tier.name())
+            .stream().findFirst();
+    }
+
+    public Optional<LocalDateTime> findOldest(Tier tier) {
+        String sql = "SELECT MIN(" + tier.timeColumn + ") FROM " + tier.table;
+        Timestamp oldest = jdbcTemplate.queryForObject(sql, Timestamp.class);
+        return Optional.ofNullable(oldest).map(Timestamp::toLocalDateTime);
+    }
+
+    /**
+     * Roll {@code [from, to)} of the tier below {@code target} up into {@code target} and
+     * advance the target's watermark to {@code to}, in one statement so the two can
+     * never disagree. Re-running a window overwrites its buckets.
+     *
+     * @return the number of buckets written
+     */
+    public int rollUp(Tier target, LocalDateTime from, LocalDateTime to) {
+        if (target == Tier.RAW) throw new IllegalArgumentException("Raw ticks are not rolled up");
+        Tier source = Tier.values()[target.ordinal() - 1];
+        String bucket = "date_trunc('" + target.truncUnit + "', " + source.timeColumn + ")";
+        String aggregates = source == Tier.RAW
+            ? "(array_agg(price ORDER BY timestamp))[1], MAX(price), MIN(price), " +
+              "(array_agg(price ORDER BY timestamp DESC))[1], COUNT(*)"
+            : "(array_agg(open ORDER BY bucket))[1], MAX(high), MIN(low), " +
+              "(array_agg(close ORDER BY bucket DESC))[1], SUM(tick_count)";
+
+        String sql = "WITH rolled AS (" +
+                    "INSERT INTO " + target.table + " (crypto_id, bucket, open, high, low, close, tick_count) " +
+                    "SELECT crypto_id, " + bucket + ", " + aggregates + " FROM " + source.table + " " +
+                    "WHERE " + source.timeColumn + " >= ? AND " + source.timeColumn + " < ? " +
+                    "GROUP BY crypto_id, " + bucket + " " +
+                    "ON CONFLICT (crypto_id, bucket) DO UPDATE SET open = EXCLUDED.open, high = EXCLUDED.high, " +
+                    "low = EXCLUDED.low, close = EXCLUDED.close, tick_count = EXCLUDED.tick_count " +
+                    "RETURNING 1) " +
+                    "INSERT INTO price_rollup_watermarks (tier, watermark) VALUES (?, ?) " +
+                    "ON CONFLICT (tier) DO UPDATE SET watermark = EXCLUDED.watermark " +
+                    "RETURNING (SELECT COUNT(*) FROM rolled)";
+
+        Integer buckets = jdbcTemplate.queryForObject(sql, Integer.class,
+            Timestamp.valueOf(from), Timestamp.valueOf(to), target.name(), Timestamp.valueOf(to));
+        return buckets != null ? buckets : 0;
+    }
+
+    public int deleteBefore(Tier tier, LocalDateTime before) {
+        String sql = "DELETE FROM " + tier.table + " WHERE " + tier.timeColumn + " < ?";
+        return jdbcTemplate.update(sql, Timestamp.valueOf(before));
+    }
+
+    /**
+     * Rows of one symbol in {@code [from, to)}, counting no further than {@code limit}.
+     */
+    public int countRows(Tier tier, String symbol, LocalDateTime from, LocalDateTime to, long limit) {
+        String sql = "SELECT COUNT(*) FROM (SELECT 1 FROM " + tier.table + " p " +
+                    "JOIN cryptocurrencies c ON p.crypto_id = c.id " +
+                    "WHERE c.symbol = ? AND p." + tier.timeColumn + " >= ? AND p." + tier.timeColumn + " < ? " +
+                    "LIMIT ?) matched";
+        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, symbol, Timestamp.valueOf(from),
+            Timestamp.valueOf(to), limit);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * The first {@code limit} bars for one symbol in {@code [from, to)}, oldest first.
+     * Raw ticks come back as single-tick bars.
+     */
+    public List<PriceBar> findBars(Tier tier, String symbol, LocalDateTime from, LocalDateTime to, long limit) {
+        String columns = tier == Tier.RAW
+            ? "p.timestamp AS time, p.price AS open, p.price AS high, p.price AS low, p.price AS close, 1 AS tick_count"
+            : "p.bucket AS time, p.open, p.high, p.low, p.close, p.tick_count";
+        String sql = "SELECT " + columns + " FROM " + tier.table + " p " +
+                    "JOIN cryptocurrencies c ON p.crypto_id = c.id " +
+                    "WHERE c.symbol = ? AND p." + tier.timeColumn + " >= ? AND p." + tier.timeColumn + " < ? " +
+                    "ORDER BY p." + tier.timeColumn + " LIMIT ?";
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new PriceBar(
+            rs.getTimestamp("time").toLocalDateTime(),
+            rs.getBigDecimal("open"),
+            rs.getBigDecimal("high"),
+            rs.getBigDecimal("low"),
+            rs.getBigDecimal("close"),
+            rs.getInt("tick_count")), symbol, Timestamp.valueOf(from), Timestamp.valueOf(to), limit);
+    }
+}
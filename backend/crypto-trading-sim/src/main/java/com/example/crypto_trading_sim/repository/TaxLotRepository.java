@@ -0,0 +1,164 @@
+package com.example.crypto_trading_sim.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Open tax lots in {@code tax_lots} and each position's running realized
+ * P&L in {@code realized_pnl}. Lot ids are numbered per account by the
+ * caller, so a trade's lot changes can be written with it by whichever
+ * ledger applies the trade: in the trade's own transaction, in a group
+ * commit, or behind the in-memory ledger's journal. {@link Writes} nets the
+ * changes of many trades into one set of batched statements.
+ */
+@Repository
+@RequiredArgsConstructor
+public class TaxLotRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public static class Lot {
+        private final Long id;
+        private final String symbol;
+        private final BigDecimal quantity;
+        private final BigDecimal price;
+
+        public Lot(Long id, String symbol, BigDecimal quantity, BigDecimal price) {
+            this.id = id;
+            this.symbol = symbol;
+            this.quantity = quantity;
+            this.price = price;
+        }
+
+        public Long getId() { return id; }
+        public String getSymbol() { return symbol; }
+        public BigDecimal getQuantity() { return quantity; }
+        public BigDecimal getPrice() { return price; }
+    }
+
+    /**
+     * One trade's effect on a position: lots closed in full, lots opened or
+     * restated, and the P&L the trade realized.
+     */
+    public static class LotChange {
+        private final String symbol;
+        private final List<Long> closedIds;
+        private final List<Lot> written;
+        private final BigDecimal realized;
+
+        public LotChange(String symbol, List<Long> closedIds, List<Lot> written, BigDecimal realized) {
+            this.symbol = symbol;
+            this.closedIds = List.copyOf(closedIds);
+            this.written = List.copyOf(written);
+            this.realized = realized;
+        }
+
+        public String getSymbol() { return symbol; }
+        public List<Long> getClosedIds() { return closedIds; }
+        public List<Lot> getWritten() { return written; }
+        public BigDecimal getRealized() { return realized; }
+    }
+
+    /**
+     * The net effect of lot changes, added in the order they happened: the
+     * last write of a lot wins and realized P&L adds up, so the statements
+     * can be batched by kind.
+     */
+    public static class Writes {
+        // Null for a closed lot
+        private final Map<Long, Map<Long, Lot>> lots = new LinkedHashMap<>();
+        private final Map<Long, Map<String, BigDecimal>> realized = new LinkedHashMap<>();
+
+        public static Writes of(Long userId, LotChange change) {
+            Writes writes = new Writes();
+            writes.add(userId, change);
+            return writes;
+        }
+
+        public void add(Long userId, LotChange change) {
+            Map<Long, Lot> userLots = lots.computeIfAbsent(userId, id -> new LinkedHashMap<>());
+            for (Long id : change.getClosedIds()) userLots.put(id, null);
+            for (Lot lot : change.getWritten()) userLots.put(lot.getId(), lot);
+            if (change.getRealized().signum() != 0) {
+                realized.computeIfAbsent(userId, id -> new LinkedHashMap<>())
+                    .merge(change.getSymbol(), change.getRealized(), BigDecimal::add);
+            }
+        }
+
+        public boolean isEmpty() {
+            return lots.values().stream().allMatch(Map::isEmpty) && realized.isEmpty();
+        }
+
+        public Map<Long, Map<Long, Lot>> getLots() { return lots; }
+        public Map<Long, Map<String, BigDecimal>> getRealized() { return realized; }
+    }
+
+    /** The user's open lots, oldest first. */
+    public List<Lot> findByUserId(Long userId) {
+        String sql = "SELECT lot_id, crypto_symbol, quantity, price FROM tax_lots WHERE user_id = ? ORDER BY lot_id";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new Lot(rs.getLong("lot_id"), rs.getString("crypto_symbol"),
+            rs.getBigDecimal("quantity"), rs.getBigDecimal("price")), userId);
+    }
+
+    /** Realized P&L per symbol, including symbols no longer held. */
+    public Map<String, BigDecimal> findRealized(Long userId) {
+        Map<String, BigDecimal> realized = new HashMap<>();
+        jdbcTemplate.query("SELECT crypto_symbol, realized FROM realized_pnl WHERE user_id = ?",
+            rs -> { realized.put(rs.getString("crypto_symbol"), rs.getBigDecimal("realized")); }, userId);
+        return realized;
+    }
+
+    /** Realized P&L over all symbols per user, for users with any. */
+    public Map<Long, BigDecimal> findRealizedByUser() {
+        Map<Long, BigDecimal> realized = new HashMap<>();
+        jdbcTemplate.query("SELECT user_id, SUM(realized) AS realized FROM realized_pnl GROUP BY user_id",
+            rs -> { realized.put(rs.getLong("user_id"), rs.getBigDecimal("realized")); });
+        return realized;
+    }
+
+    /** Apply the writes; joins the caller's transaction if there is one. */
+    @Transactional
+    public void write(Writes writes) {
+        List<Object[]> deletes = new ArrayList<>();
+        List<Object[]> upserts = new ArrayList<>();
+        writes.getLots().forEach((userId, lots) -> lots.forEach((id, lot) -> {
+            if (lot == null) {
+                deletes.add(new Object[] {userId, id});
+            } else {
+                upserts.add(new Object[] {userId, id, lot.getSymbol(), lot.getQuantity(), lot.getPrice()});
+            }
+        }));
+        List<Object[]> realized = new ArrayList<>();
+        writes.getRealized().forEach((userId, bySymbol) -> bySymbol.forEach((symbol, amount) ->
+            realized.add(new Object[] {userId, symbol, amount})));
+
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate("DELETE FROM tax_lots WHERE user_id = ? AND lot_id = ?", deletes);
+        }
+        if (!upserts.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO tax_lots (user_id, lot_id, crypto_symbol, quantity, price) " +
+                "VALUES (?, ?, ?, ?, ?) ON CONFLICT (user_id, lot_id) DO UPDATE SET " +
+                "quantity = EXCLUDED.quantity, price = EXCLUDED.price", upserts);
+        }
+        if (!realized.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO realized_pnl (user_id, crypto_symbol, realized) VALUES (?, ?, ?) " +
+                "ON CONFLICT (user_id, crypto_symbol) DO UPDATE SET realized = realized_pnl.realized + EXCLUDED.realized",
+                realized);
+        }
+    }
+
+    @Transactional
+    public void deleteByUserId(Long userId) {
+        jdbcTemplate.update("DELETE FROM tax_lots WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM realized_pnl WHERE user_id = ?", userId);
+    }
+}
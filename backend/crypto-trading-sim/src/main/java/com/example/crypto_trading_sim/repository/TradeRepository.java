@@ -0,0 +1,245 @@
+package com.example.crypto_trading_sim.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Executes a trade as one statement: the balance change, the holding change
+ * and the transaction row are data-modifying CTEs of a single INSERT, so they
+ * commit together or not at all in one round trip. Funds and holdings are
+ * checked by the conditional UPDATEs themselves; a trade that fails the check
+ * changes nothing and returns no row. {@link #executeAll} runs the same
+ * statements for many accounts as JDBC batches under a single commit. A
+ * trade's tax lot change, if it has one, is written in the same transaction
+ * once the trade has executed.
+ */
+@Repository
+@RequiredArgsConstructor
+public class TradeRepository {
+
+    private static final String BUY_INSERT =
+        "WITH debit AS (" +
+        "  UPDATE users SET current_balance = current_balance - ROUND(?, 2), updated_at = CURRENT_TIMESTAMP " +
+        "  WHERE id = ? AND current_balance >= ? " +
+        "  RETURNING current_balance + ROUND(?, 2) AS balance_before, current_balance AS balance_after" +
+        "), holding AS (" +
+        "  INSERT INTO user_holdings (user_id, crypto_id, quantity, average_price) " +
+        "  SELECT ?, ?, ?, ? FROM debit " +
+        "  ON CONFLICT (user_id, crypto_id) DO UPDATE SET " +
+        "    quantity = user_holdings.quantity + EXCLUDED.quantity, " +
+        "    average_price = (user_holdings.quantity * user_holdings.average_price + ?) " +
+        "      / (user_holdings.quantity + EXCLUDED.quantity), " +
+        "    updated_at = CURRENT_TIMESTAMP" +
+        ") " +
+        "INSERT INTO transactions (user_id, crypto_id, transaction_type, quantity, price_per_unit, total_amount, " +
+        "  balance_before, balance_after) " +
+        "SELECT ?, ?, 'BUY', ?, ?, ?, balance_before, balance_after FROM debit";
+
+    // Selling down to dust deletes the holding instead of leaving a zero row;
+    // the two conditions are disjoint so only one CTE touches the row
+    private static final String SELL_INSERT =
+        "WITH sold AS (" +
+        "  UPDATE user_holdings SET quantity = quantity - ?, updated_at = CURRENT_TIMESTAMP " +
+        "  WHERE user_id = ? AND crypto_id = ? AND quantity - ? > 0.00000001 " +
+        "  RETURNING 1" +
+        "), emptied AS (" +
+        "  DELETE FROM user_holdings " +
+        "  WHERE user_id = ? AND crypto_id = ? AND quantity >= ? AND quantity - ? <= 0.00000001 " +
+        "  RETURNING 1" +
+        "), credit AS (" +
+        "  UPDATE users SET current_balance = current_balance + ROUND(?, 2), updated_at = CURRENT_TIMESTAMP " +
+        "  WHERE id = ? AND EXISTS (SELECT 1 FROM sold UNION ALL SELECT 1 FROM emptied) " +
+        "  RETURNING current_balance - ROUND(?, 2) AS balance_before, current_balance AS balance_after" +
+        ") " +
+        "INSERT INTO transactions (user_id, crypto_id, transaction_type, quantity, price_per_unit, total_amount, " +
+        "  balance_before, balance_after) " +
+        "SELECT ?, ?, 'SELL', ?, ?, ?, balance_before, balance_after FROM credit";
+
+    private static final String RETURNING = " RETURNING id, balance_before, balance_after";
+    private static final String BUY_SQL = BUY_INSERT + RETURNING;
+    private static final String SELL_SQL = SELL_INSERT + RETURNING;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TaxLotRepository taxLotRepository;
+    private final CryptoRepository cryptoRepository;
+
+    public static class Execution {
+        private final Long transactionId;
+        private final BigDecimal balanceBefore;
+        private final BigDecimal balanceAfter;
+
+        public Execution(Long transactionId, BigDecimal balanceBefore, BigDecimal balanceAfter) {
+            this.transactionId = transactionId;
+            this.balanceBefore = balanceBefore;
+            this.balanceAfter = balanceAfter;
+        }
+
+        public Long getTransactionId() { return transactionId; }
+        public BigDecimal getBalanceBefore() { return balanceBefore; }
+        public BigDecimal getBalanceAfter() { return balanceAfter; }
+    }
+
+    public static class TradeRequest {
+        private final Long userId;
+        private final String symbol;
+        private final boolean buy;
+        private final BigDecimal quantity;
+        private final BigDecimal price;
+        private final BigDecimal total;
+        private final TaxLotRepository.LotChange lots;
+
+        public TradeRequest(Long userId, String symbol, boolean buy, BigDecimal quantity, BigDecimal price,
+                            BigDecimal total) {
+            this(userId, symbol, buy, quantity, price, total, null);
+        }
+
+        /** {@code lots} may be null for a trade without a lot change. */
+        public TradeRequest(Long userId, String symbol, boolean buy, BigDecimal quantity, BigDecimal price,
+                            BigDecimal total, TaxLotRepository.LotChange lots) {
+            this.userId = userId;
+            this.symbol = symbol;
+            this.buy = buy;
+            this.quantity = quantity;
+            this.price = price;
+            this.total = total;
+            this.lots = lots;
+        }
+
+        public Long getUserId() { return userId; }
+        public String getSymbol() { return symbol; }
+        public boolean isBuy() { return buy; }
+        public BigDecimal getQuantity() { return quantity; }
+        public BigDecimal getPrice() { return price; }
+        public BigDecimal getTotal() { return total; }
+        public TaxLotRepository.LotChange getLots() { return lots; }
+    }
+
+    private final RowMapper<Execution> executionRowMapper = (rs, rowNum) -> new Execution(
+        rs.getLong("id"), rs.getBigDecimal("balance_before"), rs.getBigDecimal("balance_after"));
+
+    /**
+     * Buy {@code quantity} at {@code price} for {@code total} and write
+     * {@code lots}, if not null, with it. Empty if the user does not exist or
+     * cannot afford it. Resolve the symbol with {@link #cryptoId} first.
+     */
+    @Transactional
+    public Optional<Execution> buy(Long userId, String cryptoSymbol, BigDecimal quantity, BigDecimal price,
+                                   BigDecimal total, TaxLotRepository.LotChange lots) {
+        Long cryptoId = cryptoId(cryptoSymbol);
+        List<Execution> executed = jdbcTemplate.query(BUY_SQL, executionRowMapper,
+            buyArgs(userId, cryptoId, quantity, price, total));
+        return withLots(userId, executed, lots);
+    }
+
+    /**
+     * Sell {@code quantity} at {@code price} for {@code total} and write
+     * {@code lots}, if not null, with it. Empty if the user holds less than
+     * {@code quantity}. Resolve the symbol with {@link #cryptoId} first.
+     */
+    @Transactional
+    public Optional<Execution> sell(Long userId, String cryptoSymbol, BigDecimal quantity, BigDecimal price,
+                                    BigDecimal total, TaxLotRepository.LotChange lots) {
+        Long cryptoId = cryptoId(cryptoSymbol);
+        List<Execution> executed = jdbcTemplate.query(SELL_SQL, executionRowMapper,
+            sellArgs(userId, cryptoId, quantity, price, total));
+        return withLots(userId, executed, lots);
+    }
+
+    private Optional<Execution> withLots(Long userId, List<Execution> executed, TaxLotRepository.LotChange lots) {
+        if (!executed.isEmpty() && lots != null) taxLotRepository.write(TaxLotRepository.Writes.of(userId, lots));
+        return executed.stream().findFirst();
+    }
+
+    /**
+     * Execute trades of distinct users in one transaction: the buys as one
+     * JDBC batch, the sells as another, then one query for the rows they
+     * inserted and one set of batches for the lot changes of those that
+     * executed. Results are in request order, empty where the check failed.
+     */
+    @Transactional
+    public List<Optional<Execution>> executeAll(List<TradeRequest> trades) {
+        List<Object[]> buys = new ArrayList<>();
+        List<Object[]> sells = new ArrayList<>();
+        for (TradeRequest trade : trades) {
+            Long cryptoId = cryptoId(trade.getSymbol());
+            if (trade.isBuy()) {
+                buys.add(buyArgs(trade.getUserId(), cryptoId, trade.getQuantity(), trade.getPrice(), trade.getTotal()));
+            } else {
+                sells.add(sellArgs(trade.getUserId(), cryptoId, trade.getQuantity(), trade.getPrice(), trade.getTotal()));
+            }
+        }
+        int[] bought = buys.isEmpty() ? new int[0] : jdbcTemplate.batchUpdate(BUY_INSERT, buys);
+        int[] sold = sells.isEmpty() ? new int[0] : jdbcTemplate.batchUpdate(SELL_INSERT, sells);
+
+        List<Long> executedUsers = new ArrayList<>();
+        TaxLotRepository.Writes lots = new TaxLotRepository.Writes();
+        boolean[] executed = new boolean[trades.size()];
+        int nextBuy = 0;
+        int nextSell = 0;
+        for (int i = 0; i < trades.size(); i++) {
+            TradeRequest trade = trades.get(i);
+            executed[i] = trade.isBuy() ? bought[nextBuy++] > 0 : sold[nextSell++] > 0;
+            if (!executed[i]) continue;
+            executedUsers.add(trade.getUserId());
+            if (trade.getLots() != null) lots.add(trade.getUserId(), trade.getLots());
+        }
+        if (!lots.isEmpty()) taxLotRepository.write(lots);
+
+        Map<Long, Execution> executions = latestExecutions(executedUsers);
+        List<Optional<Execution>> results = new ArrayList<>(trades.size());
+        for (int i = 0; i < trades.size(); i++) {
+            results.add(executed[i] ? Optional.of(executions.get(trades.get(i).getUserId())) : Optional.empty());
+        }
+        return results;
+    }
+
+    // Each user has one trade in the batch, so its newest transaction is that trade
+    private Map<Long, Execution> latestExecutions(List<Long> userIds) {
+        if (userIds.isEmpty()) return Map.of();
+        String sql = "SELECT DISTINCT ON (user_id) user_id, id, balance_before, balance_after FROM transactions " +
+                    "WHERE user_id IN (" + String.join(", ", Collections.nCopies(userIds.size(), "?")) + ") " +
+                    "ORDER BY user_id, id DESC";
+        Map<Long, Execution> executions = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            executions.put(rs.getLong("user_id"), executionRowMapper.mapRow(rs, 0));
+        }, userIds.toArray());
+        return executions;
+    }
+
+    private static Object[] buyArgs(Long userId, Long cryptoId, BigDecimal quantity, BigDecimal price,
+                                    BigDecimal total) {
+        return new Object[] {
+            total, userId, total, total,
+            userId, cryptoId, quantity, price, total,
+            userId, cryptoId, quantity, price, total};
+    }
+
+    private static Object[] sellArgs(Long userId, Long cryptoId, BigDecimal quantity, BigDecimal price,
+                                     BigDecimal total) {
+        return new Object[] {
+            quantity, userId, cryptoId, quantity,
+            userId, cryptoId, quantity, quantity,
+            total, userId, total,
+            userId, cryptoId, quantity, price, total};
+    }
+
+    /**
+     * The symbol's id, creating the cryptocurrency on first use. Resolve it
+     * before the trade's transaction, so a miss does not hold a second
+     * connection while the trade holds the first.
+     */
+    public Long cryptoId(String symbol) {
+        return cryptoRepository.idOf(symbol);
+    }
+}
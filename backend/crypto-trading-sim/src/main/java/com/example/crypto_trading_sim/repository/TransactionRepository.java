@@ -9,7 +9,9 @@ import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 @RequiredArgsConstructor
@@ -99,6 +101,20 @@ public class TransactionRepository {
         return jdbcTemplate.query(sql, transactionRowMapper, userId);
     }
     
+    public int countByUserId(Long userId) {
+        String sql = "SELECT COUNT(*) FROM transactions WHERE user_id = ?";
+        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, userId);
+        return count != null ? count : 0;
+    }
+    
+    /** Trade count per user, for users with any. */
+    public Map<Long, Integer> countByUser() {
+        Map<Long, Integer> counts = new HashMap<>();
+        jdbcTemplate.query("SELECT user_id, COUNT(*) AS trades FROM transactions GROUP BY user_id",
+            rs -> { counts.put(rs.getLong("user_id"), rs.getInt("trades")); });
+        return counts;
+    }
+    
     public void deleteByUserId(Long userId) {
         String sql = "DELETE FROM transactions WHERE user_id = ?";
         jdbcTemplate.update(sql, userId);
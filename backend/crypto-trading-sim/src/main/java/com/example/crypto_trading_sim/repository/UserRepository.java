@@ -78,6 +78,10 @@ public class UserRepository {
         }
     }
     
+    public List<User> findAll() {
+        return jdbcTemplate.query("SELECT * FROM users ORDER BY id", userRowMapper);
+    }
+    
     public Optional<User> findByUsername(String username) {
         try {
             String sql = "SELECT * FROM users WHERE username = ?";
@@ -98,26 +102,31 @@ public class UserRepository {
             return existingUser.get();
         }
         
-        String sql = "INSERT INTO users (username, email, password_hash, current_balance, initial_balance) " +
-                    "VALUES (?, ?, ?, ?, ?) RETURNING id, created_at, updated_at";
-        
         try {
-            return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
-                User user = new User();
-                user.setId(rs.getLong("id"));
-                user.setUsername(username);
-                user.setEmail(email);
-                user.setCurrentBalance(initialBalance);
-                user.setInitialBalance(initialBalance);
-                user.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-                user.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
-                return user;
-            }, username, email, "demo-hash", initialBalance, initialBalance);
+            return createUser(username, email, initialBalance);
         } catch (Exception e) {
             throw new RuntimeException("Failed to create demo user", e);
         }
     }
     
+    /** Insert a new simulated account starting with {@code initialBalance}. */
+    public User createUser(String username, String email, BigDecimal initialBalance) {
+        String sql = "INSERT INTO users (username, email, password_hash, current_balance, initial_balance) " +
+                    "VALUES (?, ?, ?, ?, ?) RETURNING id, created_at, updated_at";
+        
+        return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
+            User user = new User();
+            user.setId(rs.getLong("id"));
+            user.setUsername(username);
+            user.setEmail(email);
+            user.setCurrentBalance(initialBalance);
+            user.setInitialBalance(initialBalance);
+            user.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+            user.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
+            return user;
+        }, username, email, "demo-hash", initialBalance, initialBalance);
+    }
+    
     public void updateBalance(Long userId, BigDecimal newBalance) {
         String sql = "UPDATE users SET current_balance = ?, updated_at = CURRENT_TIMESTAMP WHERE id = ?";
         int rowsAffected = jdbcTemplate.update(sql, newBalance, userId);
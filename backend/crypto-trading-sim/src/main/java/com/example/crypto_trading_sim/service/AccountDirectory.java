@@ -0,0 +1,179 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * In-process cache of account balances, so a request for an account does not
+ * have to look its user up first.
+ * <p>
+ * Holds at most {@code accounts.cache.max-size} accounts in a fixed number of
+ * segments, each an access-ordered map with its own lock that evicts its least
+ * recently used account when full. Trades write their resulting balance
+ * through to the cached account and resets invalidate it; both happen under
+ * the account's trade lock, so the cache follows the ledger's order of
+ * changes. A load racing with a change to the same segment is returned but
+ * not cached, so a stale balance read before the change is never stored
+ * after it.
+ * <p>
+ * Metrics: {@code accounts.cache.size} (gauge), {@code accounts.cache.hits},
+ * {@code accounts.cache.misses} and {@code accounts.cache.evictions}
+ * (counters).
+ */
+@Service
+public class AccountDirectory {
+
+    private static final int SEGMENTS = 64;
+
+    public static class Account {
+        private final Long id;
+        private final BigDecimal initialBalance;
+        private final BigDecimal balance;
+
+        public Account(Long id, BigDecimal initialBalance, BigDecimal balance) {
+            this.id = id;
+            this.initialBalance = initialBalance;
+            this.balance = balance;
+        }
+
+        public Long getId() { return id; }
+        public BigDecimal getInitialBalance() { return initialBalance; }
+        public BigDecimal getBalance() { return balance; }
+
+        Account withBalance(BigDecimal balance) {
+            return new Account(id, initialBalance, balance);
+        }
+    }
+
+    private final class Segment {
+        // Access-ordered, so iteration starts at the least recently used account
+        private final LinkedHashMap<Long, Account> accounts = new LinkedHashMap<>(16, 0.75f, true);
+        private final int capacity;
+        // Bumped by every change, so a load that overlapped one is not cached
+        private long version;
+
+        private Segment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private Account get(Long id) {
+            return accounts.get(id);
+        }
+
+        private void put(Long id, Account account) {
+            accounts.put(id, account);
+            if (accounts.size() <= capacity) return;
+            Iterator<Long> eldest = accounts.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+            evictions.increment();
+        }
+
+        private void remove(Long id) {
+            accounts.remove(id);
+        }
+
+        private int size() {
+            return accounts.size();
+        }
+    }
+
+    private final Function<Long, Optional<UserRepository.User>> loader;
+    private final Segment[] segments;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    @Autowired
+    public AccountDirectory(AccountLedger ledger, MeterRegistry meterRegistry,
+                            @Value("${accounts.cache.max-size:100000}") int maxSize) {
+        this(ledger::findUser, meterRegistry, maxSize);
+    }
+
+    AccountDirectory(Function<Long, Optional<UserRepository.User>> loader, MeterRegistry meterRegistry,
+                     int maxSize) {
+        if (maxSize < 1) throw new IllegalArgumentException("Account cache size must be at least 1");
+        this.loader = loader;
+        int segmentCount = Math.min(SEGMENTS, Integer.highestOneBit(maxSize));
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment((maxSize + segmentCount - 1) / segmentCount);
+        }
+        Gauge.builder("accounts.cache.size", this, AccountDirectory::size)
+            .description("Accounts held in the account cache")
+            .register(meterRegistry);
+        this.hits = Counter.builder("accounts.cache.hits").register(meterRegistry);
+        this.misses = Counter.builder("accounts.cache.misses").register(meterRegistry);
+        this.evictions = Counter.builder("accounts.cache.evictions").register(meterRegistry);
+    }
+
+    public Optional<Account> find(Long id) {
+        Segment segment = segment(id);
+        long version;
+        synchronized (segment) {
+            Account cached = segment.get(id);
+            if (cached != null) {
+                hits.increment();
+                return Optional.of(cached);
+            }
+            version = segment.version;
+        }
+        misses.increment();
+        Optional<Account> loaded = loader.apply(id)
+            .map(user -> new Account(id, user.getInitialBalance(), user.getCurrentBalance()));
+        loaded.ifPresent(account -> {
+            synchronized (segment) {
+                if (segment.version == version) segment.put(id, account);
+            }
+        });
+        return loaded;
+    }
+
+    public Account get(Long id) {
+        return find(id).orElseThrow(() -> new RuntimeException("User not found with id: " + id));
+    }
+
+    /** Write a trade's resulting balance through to the cached account, if cached. */
+    public void balanceChanged(Long id, BigDecimal balance) {
+        Segment segment = segment(id);
+        synchronized (segment) {
+            segment.version++;
+            Account cached = segment.get(id);
+            if (cached != null) segment.put(id, cached.withBalance(balance));
+        }
+    }
+
+    public void invalidate(Long id) {
+        Segment segment = segment(id);
+        synchronized (segment) {
+            segment.version++;
+            segment.remove(id);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment segment(Long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return segments[(int) (h >>> 32) & (segments.length - 1)];
+    }
+}
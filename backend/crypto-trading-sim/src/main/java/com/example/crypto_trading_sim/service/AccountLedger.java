@@ -0,0 +1,78 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.HoldingsRepository;
+import com.example.crypto_trading_sim.repository.TaxLotRepository;
+import com.example.crypto_trading_sim.repository.TradeRepository;
+import com.example.crypto_trading_sim.repository.TransactionRepository;
+import com.example.crypto_trading_sim.repository.UserRepository;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Where account state lives. {@link DatabaseAccountLedger} reads and writes
+ * Postgres directly, {@link GroupCommitAccountLedger} likewise but with
+ * concurrent trades sharing commits; {@link InMemoryAccountLedger} keeps it in memory behind a
+ * local journal and writes it to Postgres in the background. Picked with
+ * {@code ledger.mode}.
+ * <p>
+ * Callers serialize the trades and resets of one account.
+ */
+public interface AccountLedger {
+
+    /**
+     * Buy {@code quantity} at {@code price} for {@code total}, recording
+     * {@code lots} with the trade: written if and only if it executes. Empty
+     * if the user does not exist or cannot afford it.
+     */
+    Optional<TradeRepository.Execution> buy(Long userId, String symbol, BigDecimal quantity, BigDecimal price,
+                                            BigDecimal total, TaxLotRepository.LotChange lots);
+
+    /**
+     * Sell {@code quantity} at {@code price} for {@code total}, recording
+     * {@code lots} with the trade: written if and only if it executes. Empty
+     * if the user holds less than {@code quantity}.
+     */
+    Optional<TradeRepository.Execution> sell(Long userId, String symbol, BigDecimal quantity, BigDecimal price,
+                                             BigDecimal total, TaxLotRepository.LotChange lots);
+
+    default Optional<TradeRepository.Execution> buy(Long userId, String symbol, BigDecimal quantity,
+                                                    BigDecimal price, BigDecimal total) {
+        return buy(userId, symbol, quantity, price, total, null);
+    }
+
+    default Optional<TradeRepository.Execution> sell(Long userId, String symbol, BigDecimal quantity,
+                                                     BigDecimal price, BigDecimal total) {
+        return sell(userId, symbol, quantity, price, total, null);
+    }
+
+    /** Back to the initial balance with no holdings, history or tax lots. */
+    void reset(Long userId);
+
+    Optional<UserRepository.User> findUser(Long userId);
+
+    /** Holdings with a positive quantity, most recently changed first. */
+    List<HoldingsRepository.Holding> holdings(Long userId);
+
+    Optional<HoldingsRepository.Holding> holding(Long userId, String symbol);
+
+    /** Trade history, newest first. */
+    List<TransactionRepository.Transaction> transactions(Long userId);
+
+    /** Number of trades in {@link #transactions}, without loading them. */
+    default int transactionCount(Long userId) {
+        return transactions(userId).size();
+    }
+
+    /**
+     * Wait until the account's trades and resets so far are in Postgres, so
+     * tables the ledger does not read back, like tax lots, are current.
+     */
+    default void awaitWritten(Long userId) {}
+
+    /** {@link #awaitWritten(Long)} for every account, before reading them all from Postgres at once. */
+    default void awaitWritten() {}
+
+    default void close() {}
+}
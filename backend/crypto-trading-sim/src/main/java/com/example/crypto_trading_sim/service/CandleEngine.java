@@ -0,0 +1,260 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.PriceHistoryRepository;
+import com.example.crypto_trading_sim.repository.PriceHistoryRepository.PriceTick;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * In-memory OHLCV candles per symbol at 1s, 1m, 5m and 1h resolution.
+ * <p>
+ * Each resolution is a fixed-size ring of primitive arrays, indexed by
+ * {@code bucket / width % capacity}, so memory per symbol is fixed and folding
+ * a tick in allocates nothing. Because a slot is addressed by its time bucket,
+ * ticks may arrive in any order: backfill from {@code price_history} runs in
+ * the background while live ticks are already being folded in.
+ * <p>
+ * Prices are kept at {@link FixedPoint#PRICE_SCALE}. Kraken only reports a
+ * rolling 24h volume, so candle volume is the increase in that figure over
+ * the candle, clamped at zero.
+ */
+@Service
+@Slf4j
+public class CandleEngine {
+
+    public enum Resolution {
+        S1("1s", 1, 900),
+        M1("1m", 60, 1440),
+        M5("5m", 300, 2016),
+        H1("1h", 3600, 720);
+
+        private final String label;
+        private final long widthMillis;
+        private final int capacity;
+
+        Resolution(String label, long widthSeconds, int capacity) {
+            this.label = label;
+            this.widthMillis = widthSeconds * 1000;
+            this.capacity = capacity;
+        }
+
+        public String getLabel() { return label; }
+        public Duration getWidth() { return Duration.ofMillis(widthMillis); }
+        public int getCapacity() { return capacity; }
+
+        public static Resolution fromLabel(String label) {
+            for (Resolution resolution : values()) {
+                if (resolution.label.equals(label)) return resolution;
+            }
+            throw new IllegalArgumentException("Unsupported candle interval: " + label);
+        }
+    }
+
+    public static class Candle {
+        private final long time;
+        private final BigDecimal open;
+        private final BigDecimal high;
+        private final BigDecimal low;
+        private final BigDecimal close;
+        private final BigDecimal volume;
+
+        public Candle(long time, BigDecimal open, BigDecimal high, BigDecimal low, BigDecimal close, BigDecimal volume) {
+            this.time = time;
+            this.open = open;
+            this.high = high;
+            this.low = low;
+            this.close = close;
+            this.volume = volume;
+        }
+
+        /** Bucket start, epoch seconds. */
+        public long getTime() { return time; }
+        public BigDecimal getOpen() { return open; }
+        public BigDecimal getHigh() { return high; }
+        public BigDecimal getLow() { return low; }
+        public BigDecimal getClose() { return close; }
+        public BigDecimal getVolume() { return volume; }
+    }
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private static final class CandleRing {
+        private final long widthMillis;
+        private final int capacity;
+        private final long[] start;
+        private final long[] firstAt;
+        private final long[] lastAt;
+        private final long[] open;
+        private final long[] high;
+        private final long[] low;
+        private final long[] close;
+        private final long[] volume;
+        private long newestBucket = EMPTY;
+
+        private CandleRing(Resolution resolution) {
+            this.widthMillis = resolution.widthMillis;
+            this.capacity = resolution.capacity;
+            this.start = new long[capacity];
+            this.firstAt = new long[capacity];
+            this.lastAt = new long[capacity];
+            this.open = new long[capacity];
+            this.high = new long[capacity];
+            this.low = new long[capacity];
+            this.close = new long[capacity];
+            this.volume = new long[capacity];
+            Arrays.fill(start, EMPTY);
+        }
+
+        private void add(long at, long price, long volumeDelta) {
+            long bucket = Math.floorDiv(at, widthMillis) * widthMillis;
+            int slot = (int) Math.floorMod(Math.floorDiv(at, widthMillis), (long) capacity);
+            if (start[slot] != bucket) {
+                // Older than whatever the slot holds: outside the retained window
+                if (start[slot] != EMPTY && start[slot] > bucket) return;
+                start[slot] = bucket;
+                firstAt[slot] = lastAt[slot] = at;
+                open[slot] = high[slot] = low[slot] = close[slot] = price;
+                volume[slot] = volumeDelta;
+            } else {
+                if (at < firstAt[slot]) {
+                    firstAt[slot] = at;
+                    open[slot] = price;
+                }
+                if (at >= lastAt[slot]) {
+                    lastAt[slot] = at;
+                    close[slot] = price;
+                }
+                if (price > high[slot]) high[slot] = price;
+                if (price < low[slot]) low[slot] = price;
+                volume[slot] += volumeDelta;
+            }
+            if (bucket > newestBucket) newestBucket = bucket;
+        }
+
+        private List<Candle> latest(int limit) {
+            List<Candle> candles = new ArrayList<>(Math.min(limit, capacity));
+            if (newestBucket == EMPTY) return candles;
+            int span = Math.min(limit, capacity);
+            for (int i = span - 1; i >= 0; i--) {
+                long bucket = newestBucket - i * widthMillis;
+                int slot = (int) Math.floorMod(Math.floorDiv(bucket, widthMillis), (long) capacity);
+                if (start[slot] != bucket) continue;
+                candles.add(new Candle(bucket / 1000,
+                    FixedPoint.toBigDecimal(open[slot], FixedPoint.PRICE_SCALE),
+                    FixedPoint.toBigDecimal(high[slot], FixedPoint.PRICE_SCALE),
+                    FixedPoint.toBigDecimal(low[slot], FixedPoint.PRICE_SCALE),
+                    FixedPoint.toBigDecimal(close[slot], FixedPoint.PRICE_SCALE),
+                    FixedPoint.toBigDecimal(volume[slot], FixedPoint.QUANTITY_SCALE)));
+            }
+            return candles;
+        }
+    }
+
+    private static final class CandleSeries {
+        private final CandleRing[] rings = new CandleRing[Resolution.values().length];
+        private long lastVolume24h = EMPTY;
+
+        private CandleSeries() {
+            for (Resolution resolution : Resolution.values()) {
+                rings[resolution.ordinal()] = new CandleRing(resolution);
+            }
+        }
+
+        private synchronized void add(long at, long price, long volumeDelta) {
+            for (CandleRing ring : rings) ring.add(at, price, volumeDelta);
+        }
+
+        private synchronized void addLive(long at, long price, long volume24h) {
+            long delta = lastVolume24h == EMPTY ? 0 : Math.max(0, volume24h - lastVolume24h);
+            lastVolume24h = volume24h;
+            add(at, price, delta);
+        }
+
+        private synchronized List<Candle> latest(Resolution resolution, int limit) {
+            return rings[resolution.ordinal()].latest(limit);
+        }
+    }
+
+    private final Map<String, CandleSeries> series = new ConcurrentHashMap<>();
+    private final Map<String, KrakenApiService.CryptoPrice> lastSeen = new HashMap<>();
+
+    @Autowired
+    public CandleEngine(KrakenApiService krakenApiService, PriceHistoryRepository priceHistoryRepository,
+                        @Value("${candles.backfill-window:24h}") Duration backfillWindow) {
+        this(krakenApiService.startPriceStream(), priceHistoryRepository::forEachSince, backfillWindow);
+    }
+
+    CandleEngine(Flux<List<KrakenApiService.CryptoPrice>> ticks,
+                 BiConsumer<LocalDateTime, Consumer<PriceTick>> history, Duration backfillWindow) {
+        ticks.subscribe(this::onTick);
+        Mono.fromRunnable(() -> backfill(history, LocalDateTime.now().minus(backfillWindow)))
+            .subscribeOn(Schedulers.boundedElastic())
+            .subscribe();
+    }
+
+    /**
+     * Up to {@code limit} most recent candles, oldest first. Buckets without ticks are skipped.
+     */
+    public List<Candle> getCandles(String symbol, Resolution resolution, int limit) {
+        CandleSeries candles = series.get(symbol.toUpperCase());
+        if (candles == null) throw new RuntimeException("No candles for " + symbol);
+        return candles.latest(resolution, Math.max(1, limit));
+    }
+
+    void onTick(List<KrakenApiService.CryptoPrice> prices) {
+        for (KrakenApiService.CryptoPrice price : prices) {
+            // PriceBook keeps the same instance for symbols a tick did not touch
+            if (lastSeen.put(price.getSymbol(), price) == price) continue;
+            // One bad price must not end the subscription or hold up the other symbols
+            try {
+                series(price.getSymbol()).addLive(epochMillis(price.getLastUpdated()),
+                    FixedPoint.rescale(price.getPriceUnits(), price.getPriceScale(), FixedPoint.PRICE_SCALE),
+                    price.getVolume24hUnits());
+            } catch (RuntimeException e) {
+                log.warn("Skipped {} tick in candles: {}", price.getSymbol(), e.toString());
+            }
+        }
+    }
+
+    private void backfill(BiConsumer<LocalDateTime, Consumer<PriceTick>> history, LocalDateTime since) {
+        long start = System.nanoTime();
+        long[] rows = {0};
+        try {
+            history.accept(since, tick -> {
+                series(tick.getSymbol()).add(epochMillis(tick.getTimestamp()),
+                    FixedPoint.of(tick.getPrice(), FixedPoint.PRICE_SCALE), 0);
+                rows[0]++;
+            });
+            log.info("Backfilled candles from {} price history rows in {} ms",
+                rows[0], Duration.ofNanos(System.nanoTime() - start).toMillis());
+        } catch (Exception e) {
+            log.warn("Candle backfill from price history failed after {} rows: {}", rows[0], e.getMessage());
+        }
+    }
+
+    private CandleSeries series(String symbol) {
+        return series.computeIfAbsent(symbol, s -> new CandleSeries());
+    }
+
+    private static long epochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.HoldingsRepository;
+import com.example.crypto_trading_sim.repository.TaxLotRepository;
+import com.example.crypto_trading_sim.repository.TradeRepository;
+import com.example.crypto_trading_sim.repository.TransactionRepository;
+import com.example.crypto_trading_sim.repository.UserRepository;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Account state read from and written to Postgres on every call; each trade
+ * is one atomic statement in {@link TradeRepository}, committed together with
+ * its tax lot change.
+ */
+public class DatabaseAccountLedger implements AccountLedger {
+
+    private final UserRepository userRepository;
+    private final HoldingsRepository holdingsRepository;
+    private final TransactionRepository transactionRepository;
+    private final TradeRepository tradeRepository;
+    private final TaxLotRepository taxLotRepository;
+
+    public DatabaseAccountLedger(UserRepository userRepository, HoldingsRepository holdingsRepository,
+                                 TransactionRepository transactionRepository, TradeRepository tradeRepository,
+                                 TaxLotRepository taxLotRepository) {
+        this.userRepository = userRepository;
+        this.holdingsRepository = holdingsRepository;
+        this.transactionRepository = transactionRepository;
+        this.tradeRepository = tradeRepository;
+        this.taxLotRepository = taxLotRepository;
+    }
+
+    @Override
+    public Optional<TradeRepository.Execution> buy(Long userId, String symbol, BigDecimal quantity, BigDecimal price,
+                                                   BigDecimal total, TaxLotRepository.LotChange lots) {
+        // Resolved before the trade's transaction, whose connection it would otherwise hold
+        tradeRepository.cryptoId(symbol);
+        return tradeRepository.buy(userId, symbol, quantity, price, total, lots);
+    }
+
+    @Override
+    public Optional<TradeRepository.Execution> sell(Long userId, String symbol, BigDecimal quantity, BigDecimal price,
+                                                    BigDecimal total, TaxLotRepository.LotChange lots) {
+        tradeRepository.cryptoId(symbol);
+        return tradeRepository.sell(userId, symbol, quantity, price, total, lots);
+    }
+
+    @Override
+    public void reset(Long userId) {
+        userRepository.resetBalance(userId);
+        holdingsRepository.deleteByUserId(userId);
+        transactionRepository.deleteByUserId(userId);
+        taxLotRepository.deleteByUserId(userId);
+    }
+
+    @Override
+    public Optional<UserRepository.User> findUser(Long userId) {
+        return userRepository.findById(userId);
+    }
+
+    @Override
+    public List<HoldingsRepository.Holding> holdings(Long userId) {
+        return holdingsRepository.findByUserId(userId);
+    }
+
+    @Override
+    public Optional<HoldingsRepository.Holding> holding(Long userId, String symbol) {
+        return holdingsRepository.findByUserIdAndSymbol(userId, symbol);
+    }
+
+    @Override
+    public List<TransactionRepository.Transaction> transactions(Long userId) {
+        return transactionRepository.findByUserId(userId);
+    }
+
+    @Override
+    public int transactionCount(Long userId) {
+        return transactionRepository.countByUserId(userId);
+    }
+}
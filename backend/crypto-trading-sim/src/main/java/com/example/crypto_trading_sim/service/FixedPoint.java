@@ -0,0 +1,152 @@
+package com.example.crypto_trading_sim.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point arithmetic on scaled {@code long}s for the price, valuation and
+ * trade paths. A value {@code units} at {@code scale} means
+ * {@code units / 10^scale}; callers always pass scales explicitly.
+ * <p>
+ * Every operation rounds HALF_UP like the {@link BigDecimal} code it replaces,
+ * uses a 128-bit intermediate for products, and throws
+ * {@link ArithmeticException} instead of silently overflowing. Convert to and
+ * from {@link BigDecimal} only at the JDBC and JSON boundaries.
+ */
+public final class FixedPoint {
+
+    /** Quantities, matching {@code DECIMAL(18,8)} in the schema. */
+    public static final int QUANTITY_SCALE = 8;
+    /** USD notional values and balances. */
+    public static final int VALUE_SCALE = 8;
+    /** Prices when the asset's own precision is unknown (e.g. client-supplied trade prices). */
+    public static final int PRICE_SCALE = 8;
+    /** Percentages, e.g. {@code 1.1600} for 1.16%. */
+    public static final int PERCENT_SCALE = 4;
+
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+        1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L,
+        10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L,
+        10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+
+    private FixedPoint() {}
+
+    public static long of(BigDecimal value, int scale) {
+        return value.setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toBigDecimal(long units, int scale) {
+        return BigDecimal.valueOf(units, scale);
+    }
+
+    public static long rescale(long units, int fromScale, int toScale) {
+        if (toScale >= fromScale) return Math.multiplyExact(units, pow10(toScale - fromScale));
+        long divisor = pow10(fromScale - toScale);
+        return roundHalfUp(units / divisor, units % divisor, divisor);
+    }
+
+    /** {@code a * b}, rescaled to {@code resultScale}. */
+    public static long multiply(long a, int aScale, long b, int bScale, int resultScale) {
+        int shift = aScale + bScale - resultScale;
+        if (shift <= 0) return Math.multiplyExact(Math.multiplyExact(a, b), pow10(-shift));
+
+        boolean negative = (a < 0) != (b < 0);
+        long magnitudeA = Math.absExact(a);
+        long magnitudeB = Math.absExact(b);
+        long hi = Math.multiplyHigh(magnitudeA, magnitudeB);
+        long lo = magnitudeA * magnitudeB;
+        return divideMagnitude(hi, lo, pow10(shift), negative);
+    }
+
+    /** {@code a / b}, rescaled to {@code resultScale}. */
+    public static long divide(long a, int aScale, long b, int bScale, int resultScale) {
+        if (b == 0) throw new ArithmeticException("Division by zero");
+        boolean negative = (a < 0) != (b < 0);
+        long magnitudeA = Math.absExact(a);
+        long magnitudeB = Math.absExact(b);
+
+        int shift = resultScale - aScale + bScale;
+        if (shift < 0) {
+            magnitudeB = Math.multiplyExact(magnitudeB, pow10(-shift));
+            shift = 0;
+        }
+        long factor = pow10(shift);
+        long hi = Math.multiplyHigh(magnitudeA, factor);
+        long lo = magnitudeA * factor;
+        return divideMagnitude(hi, lo, magnitudeB, negative);
+    }
+
+    /**
+     * {@code part / whole * 100} at {@link #PERCENT_SCALE}, with the ratio rounded
+     * to four places first, as {@code divide(whole, 4, HALF_UP).multiply(100)} did.
+     * Both arguments must share a scale.
+     */
+    public static long percent(long part, long whole) {
+        return Math.multiplyExact(divide(part, 0, whole, 0, PERCENT_SCALE), 100L);
+    }
+
+    private static long pow10(int exponent) {
+        if (exponent < 0 || exponent >= POWERS_OF_TEN.length) {
+            throw new ArithmeticException("Scale difference out of range: " + exponent);
+        }
+        return POWERS_OF_TEN[exponent];
+    }
+
+    private static long roundHalfUp(long quotient, long remainder, long divisor) {
+        long magnitude = Math.abs(remainder);
+        if (magnitude >= divisor - magnitude) {
+            return remainder < 0 ? Math.subtractExact(quotient, 1) : Math.addExact(quotient, 1);
+        }
+        return quotient;
+    }
+
+    /**
+     * Divide the unsigned 128-bit magnitude {@code hi:lo} by a positive divisor,
+     * rounding HALF_UP and applying the sign.
+     */
+    private static long divideMagnitude(long hi, long lo, long divisor, boolean negative) {
+        if (Long.compareUnsigned(hi, divisor) >= 0) throw new ArithmeticException("long overflow");
+
+        long quotient = hi == 0 && lo >= 0 ? lo / divisor : divideUnsigned128(hi, lo, divisor);
+        if (quotient < 0) throw new ArithmeticException("long overflow");
+        long remainder = lo - quotient * divisor;
+        if (remainder >= divisor - remainder) quotient = Math.addExact(quotient, 1);
+        return negative ? -quotient : quotient;
+    }
+
+    /**
+     * Unsigned {@code (u1:u0) / v} for {@code u1 < v} (Hacker's Delight, divlu).
+     */
+    private static long divideUnsigned128(long u1, long u0, long v) {
+        final long base = 1L << 32;
+        int shift = Long.numberOfLeadingZeros(v);
+        v <<= shift;
+        long vn1 = v >>> 32;
+        long vn0 = v & 0xFFFFFFFFL;
+
+        long un32 = shift == 0 ? u1 : (u1 << shift) | (u0 >>> (64 - shift));
+        long un10 = u0 << shift;
+        long un1 = un10 >>> 32;
+        long un0 = un10 & 0xFFFFFFFFL;
+
+        long q1 = Long.divideUnsigned(un32, vn1);
+        long rhat = un32 - q1 * vn1;
+        while (q1 >= base || Long.compareUnsigned(q1 * vn0, base * rhat + un1) > 0) {
+            q1--;
+            rhat += vn1;
+            if (rhat >= base) break;
+        }
+
+        long un21 = un32 * base + un1 - q1 * v;
+        long q0 = Long.divideUnsigned(un21, vn1);
+        rhat = un21 - q0 * vn1;
+        while (q0 >= base || Long.compareUnsigned(q0 * vn0, base * rhat + un0) > 0) {
+            q0--;
+            rhat += vn1;
+            if (rhat >= base) break;
+        }
+        return q1 * base + q0;
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.HoldingsRepository;
+import com.example.crypto_trading_sim.repository.TaxLotRepository;
+import com.example.crypto_trading_sim.repository.TradeRepository;
+import com.example.crypto_trading_sim.repository.TransactionRepository;
+import com.example.crypto_trading_sim.repository.UserRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DatabaseAccountLedger} whose trades share commits.
+ * <p>
+ * Trades are queued to a single committer thread. It takes the first waiting
+ * trade, collects more for up to {@code ledger.group-commit.max-wait} or until
+ * it has {@code ledger.group-commit.max-batch}, and executes them with
+ * {@link TradeRepository#executeAll} in one transaction, so concurrent
+ * traders pay for one commit and fsync between them instead of one each.
+ * Each trade's tax lot change is written in the same transaction. A
+ * caller's future completes once its group has committed. If the group's
+ * commit fails, its trades are retried one per transaction, so only the trade
+ * that cannot commit fails. Crypto ids are resolved per trade before the
+ * group runs, so an unknown symbol fails only its own trade. A group holds at
+ * most one trade per account; a second one waits for the next group. Reads
+ * and resets go straight to the database.
+ * <p>
+ * Metrics: {@code ledger.group.size} (distribution) and
+ * {@code ledger.group.commit} (timer).
+ */
+@Slf4j
+public class GroupCommitAccountLedger extends DatabaseAccountLedger {
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final TradeRepository tradeRepository;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final DistributionSummary groupSize;
+    private final Timer commitTimer;
+    private final Thread committer;
+    private volatile boolean running = true;
+
+    private record Pending(TradeRepository.TradeRequest trade,
+                           CompletableFuture<Optional<TradeRepository.Execution>> result) {}
+
+    public GroupCommitAccountLedger(UserRepository userRepository, HoldingsRepository holdingsRepository,
+                                    TransactionRepository transactionRepository, TradeRepository tradeRepository,
+                                    TaxLotRepository taxLotRepository, MeterRegistry meterRegistry, int maxBatch,
+                                    Duration maxWait) {
+        super(userRepository, holdingsRepository, transactionRepository, tradeRepository, taxLotRepository);
+        if (maxBatch < 1) throw new IllegalArgumentException("Group commit batch size must be at least 1");
+        this.tradeRepository = tradeRepository;
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.groupSize = DistributionSummary.builder("ledger.group.size")
+            .description("Trades committed together")
+            .register(meterRegistry);
+        this.commitTimer = Timer.builder("ledger.group.commit")
+            .description("Latency of one group commit")
+            .register(meterRegistry);
+        this.committer = new Thread(this::runCommitter, "ledger-group-commit");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * Queue a trade; the future completes when the group it joins has
+     * committed, empty if the trade failed its funds or holdings check.
+     */
+    public CompletableFuture<Optional<TradeRepository.Execution>> submit(TradeRepository.TradeRequest trade) {
+        CompletableFuture<Optional<TradeRepository.Execution>> result = new CompletableFuture<>();
+        if (!running) {
+            result.completeExceptionally(new RuntimeException("Trade committer is stopped"));
+            return result;
+        }
+        Pending pending = new Pending(trade, result);
+        queue.add(pending);
+        // Stopped meanwhile: the committer and close() may both have missed it; if it is still queued, it is ours
+        if (!running && queue.remove(pending)) {
+            result.completeExceptionally(new RuntimeException("Trade committer is stopped"));
+        }
+        return result;
+    }
+
+    @Override
+    public Optional<TradeRepository.Execution> buy(Long userId, String symbol, BigDecimal quantity, BigDecimal price,
+                                                   BigDecimal total, TaxLotRepository.LotChange lots) {
+        return await(submit(new TradeRepository.TradeRequest(userId, symbol, true, quantity, price, total, lots)));
+    }
+
+    @Override
+    public Optional<TradeRepository.Execution> sell(Long userId, String symbol, BigDecimal quantity, BigDecimal price,
+                                                    BigDecimal total, TaxLotRepository.LotChange lots) {
+        return await(submit(new TradeRepository.TradeRequest(userId, symbol, false, quantity, price, total, lots)));
+    }
+
+    /**
+     * Stop taking trades, commit those already queued and stop the committer.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            committer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Pending stranded;
+        while ((stranded = queue.poll()) != null) {
+            stranded.result().completeExceptionally(new RuntimeException("Trade committer is stopped"));
+        }
+    }
+
+    private void runCommitter() {
+        List<Pending> group = new ArrayList<>(maxBatch);
+        Deque<Pending> carried = new ArrayDeque<>();
+        while (running || !queue.isEmpty() || !carried.isEmpty()) {
+            try {
+                collect(group, carried);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (!group.isEmpty()) commit(group);
+            group.clear();
+        }
+    }
+
+    private void collect(List<Pending> group, Deque<Pending> carried) throws InterruptedException {
+        Set<Long> users = new HashSet<>();
+        for (Iterator<Pending> it = carried.iterator(); it.hasNext() && group.size() < maxBatch; ) {
+            Pending pending = it.next();
+            if (users.add(pending.trade().getUserId())) {
+                group.add(pending);
+                it.remove();
+            }
+        }
+        if (group.isEmpty()) {
+            Pending first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (first == null) return;
+            users.add(first.trade().getUserId());
+            group.add(first);
+        }
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (group.size() < maxBatch) {
+            long remaining = deadline - System.nanoTime();
+            Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+            if (next == null) break;
+            if (users.add(next.trade().getUserId())) {
+                group.add(next);
+            } else {
+                carried.add(next);
+            }
+        }
+    }
+
+    private void commit(List<Pending> group) {
+        long start = System.nanoTime();
+        try {
+            List<Pending> resolved = new ArrayList<>(group.size());
+            for (Pending pending : group) {
+                try {
+                    tradeRepository.cryptoId(pending.trade().getSymbol());
+                    resolved.add(pending);
+                } catch (RuntimeException e) {
+                    log.warn("Could not resolve {} for user {}: {}", pending.trade().getSymbol(),
+                        pending.trade().getUserId(), e.getMessage());
+                    pending.result().completeExceptionally(e);
+                }
+            }
+            if (resolved.isEmpty()) return;
+            try {
+                execute(resolved);
+            } catch (RuntimeException e) {
+                if (resolved.size() == 1) {
+                    resolved.get(0).result().completeExceptionally(e);
+                    return;
+                }
+                log.warn("Group commit of {} trades failed, retrying them one by one: {}", resolved.size(),
+                    e.getMessage());
+                for (Pending pending : resolved) {
+                    try {
+                        execute(List.of(pending));
+                    } catch (RuntimeException tradeFailure) {
+                        log.warn("Trade for user {} failed: {}", pending.trade().getUserId(),
+                            tradeFailure.getMessage());
+                        pending.result().completeExceptionally(tradeFailure);
+                    }
+                }
+            }
+        } finally {
+            groupSize.record(group.size());
+            commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void execute(List<Pending> pendings) {
+        List<Optional<TradeRepository.Execution>> results =
+            tradeRepository.executeAll(pendings.stream().map(Pending::trade).toList());
+        for (int i = 0; i < pendings.size(); i++) pendings.get(i).result().complete(results.get(i));
+    }
+
+    private static Optional<TradeRepository.Execution> await(
+            CompletableFuture<Optional<TradeRepository.Execution>> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+}
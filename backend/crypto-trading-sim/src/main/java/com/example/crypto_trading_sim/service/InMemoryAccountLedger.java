@@ -0,0 +1,671 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.HoldingsRepository;
+import com.example.crypto_trading_sim.repository.LedgerRepository;
+import com.example.crypto_trading_sim.repository.TaxLotRepository;
+import com.example.crypto_trading_sim.repository.TradeRepository;
+import com.example.crypto_trading_sim.repository.TransactionRepository;
+import com.example.crypto_trading_sim.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.NonTransientDataAccessException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Account state held in memory, made durable by a {@link LedgerJournal} and
+ * written through to Postgres in the background.
+ * <p>
+ * A trade is checked against the in-memory account, appended to the journal,
+ * then applied and acknowledged: its latency is one journal append, not a
+ * database round trip. An account is loaded from the database the first time
+ * it is used and journaled as an {@link LedgerEvent.Type#OPEN} event. A
+ * background writer hands the events not yet in the database to
+ * {@link LedgerRepository} every {@code ledger.write-behind.interval}, or
+ * sooner once {@code ledger.write-behind.batch-size} are waiting, as one
+ * transaction that also records the last sequence written. A failed write is
+ * retried on the next round. A batch the database refuses outright, such as
+ * one breaking a constraint, is written again one event at a time up to the
+ * event it refuses; that event is logged and, until it is written, trades and
+ * resets are refused rather than acknowledged without reaching Postgres.
+ * Every {@code ledger.snapshot-interval} the accounts are snapshotted, and
+ * journal files that are both snapshotted and written through are deleted.
+ * <p>
+ * A trade's tax lot change rides on its event, so it reaches the database in
+ * the same write-behind transaction as the trade; {@link #awaitWritten}
+ * flushes before the lots are read back.
+ * <p>
+ * On start the newest snapshot is loaded, the journal after it replayed, and
+ * every event after the database's watermark queued to be written again. If
+ * another ledger mode has written the database since, the journaled accounts
+ * are dropped and reloaded from it; if the journal also holds events the
+ * database never got, the ledger refuses to start rather than replay them over
+ * the newer trades.
+ * Trade history is the database's plus the events not yet written to it.
+ * <p>
+ * Metrics: {@code ledger.journal.append} (timer), {@code ledger.unwritten}
+ * (gauge, events not yet in the database), {@code ledger.flush} (timer),
+ * {@code ledger.flush.failures} (counter) and {@code ledger.stalled} (gauge,
+ * 1 while an event is refused).
+ */
+@Slf4j
+public class InMemoryAccountLedger implements AccountLedger {
+
+    private static final long DUST = 1L; // 0.00000001 at QUANTITY_SCALE
+    private static final int CENTS = 2;  // scale of balances and average prices in the schema
+
+    private final LedgerJournal journal;
+    private final UserRepository userRepository;
+    private final HoldingsRepository holdingsRepository;
+    private final TransactionRepository transactionRepository;
+    private final LedgerRepository ledgerRepository;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long snapshotIntervalNanos;
+    private final Map<Long, Account> accounts = new ConcurrentHashMap<>();
+    // Events not yet in the database, in sequence order
+    private final ConcurrentSkipListMap<Long, LedgerEvent> unwritten = new ConcurrentSkipListMap<>();
+    private final AtomicInteger unwrittenCount = new AtomicInteger();
+    // Held from sequence assignment until the event is queued, so the queue is in sequence order
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // Writes hold it exclusively, so history readers see each event in the database or the queue, never both
+    private final ReentrantReadWriteLock historyLock = new ReentrantReadWriteLock();
+    private final Object flushLock = new Object();
+    private final Timer flushTimer;
+    private final Counter flushFailures;
+    private final Thread writer;
+    private volatile long written;
+    private volatile boolean running = true;
+    // The event the database refuses, while it does
+    private volatile LedgerEvent stalledAt;
+
+    /** Guarded by its own monitor. */
+    private static final class Account {
+        final long userId;
+        final Map<String, LedgerEvent.Position> positions = new HashMap<>();
+        long initialBalance;
+        long balance;
+        long lastSequence;
+
+        Account(long userId) {
+            this.userId = userId;
+        }
+    }
+
+    public InMemoryAccountLedger(LedgerJournal journal, UserRepository userRepository,
+                                 HoldingsRepository holdingsRepository, TransactionRepository transactionRepository,
+                                 LedgerRepository ledgerRepository, MeterRegistry meterRegistry, int batchSize,
+                                 Duration flushInterval, Duration snapshotInterval) throws IOException {
+        if (batchSize < 1) throw new IllegalArgumentException("Ledger batch size must be at least 1");
+        this.journal = journal;
+        this.userRepository = userRepository;
+        this.holdingsRepository = holdingsRepository;
+        this.transactionRepository = transactionRepository;
+        this.ledgerRepository = ledgerRepository;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.snapshotIntervalNanos = snapshotInterval.toNanos();
+
+        Gauge.builder("ledger.unwritten", unwrittenCount, AtomicInteger::get)
+            .description("Ledger events not yet written to the database")
+            .register(meterRegistry);
+        this.flushTimer = Timer.builder("ledger.flush")
+            .description("Latency of one ledger write-behind batch")
+            .register(meterRegistry);
+        Gauge.builder("ledger.stalled", this, ledger -> ledger.stalledAt == null ? 0 : 1)
+            .description("1 while the database refuses a ledger event and trades are refused")
+            .register(meterRegistry);
+        this.flushFailures = Counter.builder("ledger.flush.failures")
+            .description("Ledger write-behind batches the database refused")
+            .register(meterRegistry);
+
+        recover();
+        this.writer = new Thread(this::runWriter, "ledger-write-behind");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    private void recover() throws IOException {
+        long snapshot = journal.loadSnapshot(this::restore);
+        journal.replay(snapshot, this::restore);
+        written = ledgerRepository.getWatermark();
+        boolean direct = ledgerRepository.hasDirectWrites();
+        if (direct && journal.getSequence() > written) {
+            throw new IllegalStateException("Ledger journal in " + journal.getDirectory() + " has events up to " +
+                journal.getSequence() + " that never reached the database, which has since been written by another " +
+                "ledger mode at " + written);
+        }
+        if (direct) {
+            log.warn("The database was written by another ledger mode since the journal in {}; accounts will reload " +
+                "from the database", journal.getDirectory());
+            accounts.clear();
+        } else if (written > journal.getSequence()) {
+            log.warn("Ledger journal in {} ends at {} but the database has up to {}; accounts will reload from the database",
+                journal.getDirectory(), journal.getSequence(), written);
+            accounts.clear();
+            journal.skipTo(written);
+        }
+        journal.replay(written, event -> {
+            if (event.getType() != LedgerEvent.Type.OPEN) queue(event);
+        });
+        if (direct) {
+            // The stale accounts must not come back from the old snapshot once the mark is gone
+            journal.writeSnapshot(journal.roll(), List.of());
+            ledgerRepository.clearDirectWrites();
+        }
+        log.info("Ledger recovered {} accounts up to sequence {}, {} events to write to the database",
+            accounts.size(), journal.getSequence(), unwrittenCount.get());
+    }
+
+    private void restore(LedgerEvent event) {
+        Account account = accounts.get(event.getUserId());
+        if (account != null && account.lastSequence >= event.getSequence()) return;
+        if (event.getType() == LedgerEvent.Type.OPEN) {
+            account = new Account(event.getUserId());
+            accounts.put(event.getUserId(), account);
+        } else if (account == null) {
+            log.warn("Ledger event {} is for account {}, which was never opened", event.getSequence(), event.getUserId());
+            return;
+        }
+        apply(account, event);
+    }
+
+    @Override
+    public Optional<TradeRepository.Execution> buy(Long userId, String symbol, BigDecimal quantity, BigDecimal price,
+                                                   BigDecimal total, TaxLotRepository.LotChange lots) {
+        Account account = account(userId);
+        if (account == null) return Optional.empty();
+        long quantityUnits = FixedPoint.of(quantity, FixedPoint.QUANTITY_SCALE);
+        long priceUnits = FixedPoint.of(price, FixedPoint.PRICE_SCALE);
+        long totalUnits = FixedPoint.of(total, FixedPoint.VALUE_SCALE);
+        synchronized (account) {
+            if (account.balance < totalUnits) return Optional.empty();
+            long after = Math.subtractExact(account.balance, cents(totalUnits, FixedPoint.VALUE_SCALE));
+            return Optional.of(commit(account, LedgerEvent.trade(LedgerEvent.Type.BUY, userId, symbol, quantityUnits,
+                priceUnits, totalUnits, account.balance, after, System.currentTimeMillis()).withLots(lots)));
+        }
+    }
+
+    @Override
+    public Optional<TradeRepository.Execution> sell(Long userId, String symbol, BigDecimal quantity, BigDecimal price,
+                                                    BigDecimal total, TaxLotRepository.LotChange lots) {
+        Account account = account(userId);
+        if (account == null) return Optional.empty();
+        long quantityUnits = FixedPoint.of(quantity, FixedPoint.QUANTITY_SCALE);
+        long priceUnits = FixedPoint.of(price, FixedPoint.PRICE_SCALE);
+        long totalUnits = FixedPoint.of(total, FixedPoint.VALUE_SCALE);
+        synchronized (account) {
+            LedgerEvent.Position held = account.positions.get(symbol);
+            if (held == null || held.quantity() < quantityUnits) return Optional.empty();
+            long after = Math.addExact(account.balance, cents(totalUnits, FixedPoint.VALUE_SCALE));
+            return Optional.of(commit(account, LedgerEvent.trade(LedgerEvent.Type.SELL, userId, symbol, quantityUnits,
+                priceUnits, totalUnits, account.balance, after, System.currentTimeMillis()).withLots(lots)));
+        }
+    }
+
+    @Override
+    public void reset(Long userId) {
+        Account account = account(userId);
+        if (account == null) throw new RuntimeException("User not found with id: " + userId);
+        synchronized (account) {
+            commit(account, LedgerEvent.reset(userId, account.balance, account.initialBalance, System.currentTimeMillis()));
+        }
+    }
+
+    @Override
+    public Optional<UserRepository.User> findUser(Long userId) {
+        Account account = account(userId);
+        if (account == null) return Optional.empty();
+        UserRepository.User user = new UserRepository.User();
+        user.setId(userId);
+        synchronized (account) {
+            user.setCurrentBalance(value(account.balance));
+            user.setInitialBalance(value(account.initialBalance));
+        }
+        return Optional.of(user);
+    }
+
+    @Override
+    public List<HoldingsRepository.Holding> holdings(Long userId) {
+        Account account = account(userId);
+        if (account == null) return List.of();
+        List<LedgerEvent.Position> positions;
+        synchronized (account) {
+            positions = new ArrayList<>(account.positions.values());
+        }
+        return positions.stream()
+            .sorted(Comparator.comparingLong(LedgerEvent.Position::updatedAt).reversed())
+            .map(position -> toHolding(userId, position))
+            .toList();
+    }
+
+    @Override
+    public Optional<HoldingsRepository.Holding> holding(Long userId, String symbol) {
+        Account account = account(userId);
+        if (account == null) return Optional.empty();
+        LedgerEvent.Position position;
+        synchronized (account) {
+            position = account.positions.get(symbol);
+        }
+        return Optional.ofNullable(position).map(held -> toHolding(userId, held));
+    }
+
+    @Override
+    public List<TransactionRepository.Transaction> transactions(Long userId) {
+        historyLock.readLock().lock();
+        try {
+            List<LedgerEvent> pending = unwritten.values().stream()
+                .filter(event -> event.getUserId() == userId)
+                .toList();
+            List<TransactionRepository.Transaction> history = new ArrayList<>();
+            for (int i = pending.size() - 1; i >= 0; i--) {
+                LedgerEvent event = pending.get(i);
+                // A reset not yet written hides everything the database has
+                if (event.getType() == LedgerEvent.Type.RESET) return history;
+                history.add(toTransaction(event));
+            }
+            history.addAll(transactionRepository.findByUserId(userId));
+            return history;
+        } finally {
+            historyLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int transactionCount(Long userId) {
+        historyLock.readLock().lock();
+        try {
+            int pending = 0;
+            for (LedgerEvent event : unwritten.descendingMap().values()) {
+                if (event.getUserId() != userId) continue;
+                if (event.getType() == LedgerEvent.Type.RESET) return pending;
+                pending++;
+            }
+            return pending + transactionRepository.countByUserId(userId);
+        } finally {
+            historyLock.readLock().unlock();
+        }
+    }
+
+    /** Flushes if the account has events not yet in the database. */
+    @Override
+    public void awaitWritten(Long userId) {
+        boolean pending = unwritten.values().stream().anyMatch(event -> event.getUserId() == userId);
+        if (pending && !flush()) {
+            throw new RuntimeException("Could not write the ledger of user " + userId + " to the database");
+        }
+    }
+
+    @Override
+    public void awaitWritten() {
+        if (!flush()) throw new RuntimeException("Could not write the ledger to the database");
+    }
+
+    /**
+     * Write everything queued so far to the database; false if it refused.
+     */
+    boolean flush() {
+        synchronized (flushLock) {
+            while (!unwritten.isEmpty()) {
+                List<LedgerEvent> batch = new ArrayList<>();
+                for (LedgerEvent event : unwritten.values()) {
+                    batch.add(event);
+                    if (batch.size() == batchSize) break;
+                }
+                RuntimeException failure = write(batch);
+                if (failure == null) continue;
+                if (failure instanceof NonTransientDataAccessException) isolate(batch);
+                return false;
+            }
+            if (stalledAt != null) {
+                log.info("Ledger event {} is written; taking trades again", stalledAt.getSequence());
+                stalledAt = null;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Snapshot every account and delete the journal files no longer needed
+     * for recovery.
+     */
+    void snapshot() {
+        try {
+            long cut;
+            List<Account> current;
+            appendLock.lock();
+            try {
+                // Every account opened up to the cut is in the map by now
+                cut = journal.roll();
+                current = new ArrayList<>(accounts.values());
+            } finally {
+                appendLock.unlock();
+            }
+            List<LedgerEvent> states = new ArrayList<>(current.size());
+            for (Account account : current) {
+                synchronized (account) {
+                    states.add(LedgerEvent.open(account.userId, account.initialBalance, account.balance,
+                        new ArrayList<>(account.positions.values()), System.currentTimeMillis())
+                        .withSequence(account.lastSequence));
+                }
+            }
+            journal.writeSnapshot(cut, states);
+            journal.deleteThrough(Math.min(cut, written));
+        } catch (IOException e) {
+            log.warn("Ledger snapshot in {} failed: {}", journal.getDirectory(), e.getMessage());
+        }
+    }
+
+    /** Sequence number of the last event written to the database. */
+    public long getWritten() {
+        return written;
+    }
+
+    public int getUnwrittenCount() {
+        return unwrittenCount.get();
+    }
+
+    /**
+     * Stop the writer, write out and snapshot everything, and close the journal.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!flush()) log.warn("Ledger closed with {} events not written to the database", unwrittenCount.get());
+        snapshot();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("Failed to close the ledger journal: {}", e.getMessage());
+        }
+    }
+
+    private void runWriter() {
+        long lastSnapshot = System.nanoTime();
+        while (running) {
+            LockSupport.parkNanos(this, flushIntervalNanos);
+            if (!running) break;
+            flush();
+            if (System.nanoTime() - lastSnapshot >= snapshotIntervalNanos) {
+                snapshot();
+                lastSnapshot = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Write a refused batch one event at a time, so the events before the
+     * refused one reach the database, and stall on the refused one.
+     */
+    private void isolate(List<LedgerEvent> batch) {
+        if (batch.size() == 1) {
+            stall(batch.get(0));
+            return;
+        }
+        for (LedgerEvent event : batch) {
+            RuntimeException failure = write(List.of(event));
+            if (failure == null) continue;
+            if (failure instanceof NonTransientDataAccessException) stall(event);
+            return;
+        }
+    }
+
+    private void stall(LedgerEvent event) {
+        if (stalledAt == null || stalledAt.getSequence() != event.getSequence()) {
+            log.error("The database refuses ledger event {} ({} for user {}); trades are refused until it is written",
+                event.getSequence(), event.getType(), event.getUserId());
+        }
+        stalledAt = event;
+    }
+
+    /** Null once written, else why the database refused. */
+    private RuntimeException write(List<LedgerEvent> events) {
+        long start = System.nanoTime();
+        LedgerRepository.Batch batch = toBatch(events);
+        historyLock.writeLock().lock();
+        try {
+            ledgerRepository.persist(batch);
+            for (LedgerEvent event : events) unwritten.remove(event.getSequence());
+            unwrittenCount.addAndGet(-events.size());
+            written = batch.getWatermark();
+            return null;
+        } catch (RuntimeException e) {
+            flushFailures.increment();
+            log.warn("Failed to write {} ledger events to the database, will retry: {}", events.size(), e.getMessage());
+            return e;
+        } finally {
+            historyLock.writeLock().unlock();
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * New transaction rows and lot changes for the trades after each
+     * account's last reset, and the current balance and touched holdings of every account involved.
+     * Current state may already include later events; writing it early is
+     * harmless, as those events will write the same values again.
+     */
+    private LedgerRepository.Batch toBatch(List<LedgerEvent> events) {
+        LedgerRepository.Batch batch = new LedgerRepository.Batch(events.get(events.size() - 1).getSequence());
+        Map<Long, Integer> lastReset = new HashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            if (events.get(i).getType() == LedgerEvent.Type.RESET) lastReset.put(events.get(i).getUserId(), i);
+        }
+        batch.getResets().addAll(lastReset.keySet());
+
+        Map<Long, Set<String>> touched = new LinkedHashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            LedgerEvent event = events.get(i);
+            Set<String> symbols = touched.computeIfAbsent(event.getUserId(), id -> new LinkedHashSet<>());
+            if (!event.isTrade()) continue;
+            symbols.add(event.getSymbol());
+            if (i > lastReset.getOrDefault(event.getUserId(), -1)) {
+                batch.getTrades().add(new LedgerRepository.TradeRow(event.getUserId(), event.getSymbol(),
+                    event.getType().name(), quantity(event.getQuantity()), price(event.getPrice()),
+                    value(event.getTotal()), value(event.getBalanceBefore()), value(event.getBalanceAfter()),
+                    toLocalDateTime(event.getTimestamp())));
+                if (event.getLots() != null) batch.getLots().add(event.getUserId(), event.getLots());
+            }
+        }
+
+        touched.forEach((userId, symbols) -> {
+            Account account = accounts.get(userId);
+            if (account == null) return;
+            synchronized (account) {
+                batch.getBalances().put(userId, value(account.balance));
+                for (String symbol : symbols) {
+                    LedgerEvent.Position position = account.positions.get(symbol);
+                    batch.getHoldings().add(position == null
+                        ? new LedgerRepository.HoldingRow(userId, symbol, null, null)
+                        : new LedgerRepository.HoldingRow(userId, symbol, quantity(position.quantity()),
+                            price(position.averagePrice())));
+                }
+            }
+        });
+        return batch;
+    }
+
+    private Account account(Long userId) {
+        Account account = accounts.get(userId);
+        if (account != null) return account;
+
+        // Load outside the lock; if another thread got there first, its copy wins
+        Optional<UserRepository.User> user = userRepository.findById(userId);
+        if (user.isEmpty()) return null;
+        List<LedgerEvent.Position> positions = holdingsRepository.findByUserId(userId).stream()
+            .map(holding -> new LedgerEvent.Position(holding.getCryptoSymbol(),
+                FixedPoint.of(holding.getQuantity(), FixedPoint.QUANTITY_SCALE),
+                FixedPoint.of(holding.getAveragePrice(), FixedPoint.PRICE_SCALE),
+                holding.getUpdatedAt() == null ? 0 : toEpochMilli(holding.getUpdatedAt())))
+            .toList();
+        appendLock.lock();
+        try {
+            account = accounts.get(userId);
+            if (account != null) return account;
+            LedgerEvent open = append(LedgerEvent.open(userId,
+                FixedPoint.of(user.get().getInitialBalance(), FixedPoint.VALUE_SCALE),
+                FixedPoint.of(user.get().getCurrentBalance(), FixedPoint.VALUE_SCALE),
+                positions, System.currentTimeMillis()));
+            account = new Account(userId);
+            apply(account, open);
+            accounts.put(userId, account);
+            return account;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /** Journal, then apply. The caller holds the account's monitor. */
+    private TradeRepository.Execution commit(Account account, LedgerEvent event) {
+        LedgerEvent stalled = stalledAt;
+        if (stalled != null) {
+            throw new RuntimeException("Trading is paused: the database refuses ledger event " + stalled.getSequence());
+        }
+        LedgerEvent sequenced = append(event);
+        apply(account, sequenced);
+        return new TradeRepository.Execution(sequenced.getSequence(), value(sequenced.getBalanceBefore()),
+            value(sequenced.getBalanceAfter()));
+    }
+
+    private LedgerEvent append(LedgerEvent event) {
+        appendLock.lock();
+        try {
+            LedgerEvent sequenced = journal.append(event);
+            if (sequenced.getType() != LedgerEvent.Type.OPEN) queue(sequenced);
+            return sequenced;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to journal " + event.getType() + " for user " + event.getUserId(), e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void queue(LedgerEvent event) {
+        unwritten.put(event.getSequence(), event);
+        if (unwrittenCount.incrementAndGet() >= batchSize && writer != null) LockSupport.unpark(writer);
+    }
+
+    /**
+     * The same arithmetic as the SQL in {@link TradeRepository}, so both
+     * modes agree to the cent.
+     */
+    private static void apply(Account account, LedgerEvent event) {
+        switch (event.getType()) {
+            case OPEN -> {
+                account.initialBalance = event.getInitialBalance();
+                account.positions.clear();
+                for (LedgerEvent.Position position : event.getPositions()) {
+                    account.positions.put(position.symbol(), position);
+                }
+            }
+            case BUY -> {
+                LedgerEvent.Position held = account.positions.get(event.getSymbol());
+                long quantity = event.getQuantity();
+                long averagePrice = cents(event.getPrice(), FixedPoint.PRICE_SCALE);
+                if (held != null) {
+                    quantity = Math.addExact(held.quantity(), event.getQuantity());
+                    long invested = Math.addExact(FixedPoint.multiply(held.quantity(), FixedPoint.QUANTITY_SCALE,
+                        held.averagePrice(), FixedPoint.PRICE_SCALE, FixedPoint.VALUE_SCALE), event.getTotal());
+                    averagePrice = cents(FixedPoint.divide(invested, FixedPoint.VALUE_SCALE,
+                        quantity, FixedPoint.QUANTITY_SCALE, FixedPoint.PRICE_SCALE), FixedPoint.PRICE_SCALE);
+                }
+                account.positions.put(event.getSymbol(),
+                    new LedgerEvent.Position(event.getSymbol(), quantity, averagePrice, event.getTimestamp()));
+            }
+            case SELL -> {
+                LedgerEvent.Position held = account.positions.get(event.getSymbol());
+                long remaining = held.quantity() - event.getQuantity();
+                if (remaining <= DUST) {
+                    account.positions.remove(event.getSymbol());
+                } else {
+                    account.positions.put(event.getSymbol(), new LedgerEvent.Position(event.getSymbol(), remaining,
+                        held.averagePrice(), event.getTimestamp()));
+                }
+            }
+            case RESET -> account.positions.clear();
+        }
+        account.balance = event.getBalanceAfter();
+        account.lastSequence = event.getSequence();
+    }
+
+    private static HoldingsRepository.Holding toHolding(Long userId, LedgerEvent.Position position) {
+        HoldingsRepository.Holding holding = new HoldingsRepository.Holding();
+        holding.setUserId(userId);
+        holding.setCryptoSymbol(position.symbol());
+        holding.setQuantity(quantity(position.quantity()));
+        holding.setAveragePrice(price(position.averagePrice()));
+        holding.setUpdatedAt(toLocalDateTime(position.updatedAt()));
+        return holding;
+    }
+
+    private static TransactionRepository.Transaction toTransaction(LedgerEvent event) {
+        TransactionRepository.Transaction transaction = new TransactionRepository.Transaction();
+        transaction.setId(event.getSequence());
+        transaction.setUserId(event.getUserId());
+        transaction.setCryptoSymbol(event.getSymbol());
+        transaction.setTransactionType(event.getType().name());
+        transaction.setQuantity(quantity(event.getQuantity()));
+        // Rounded as the database will store them
+        transaction.setPricePerUnit(price(event.getPrice()).setScale(CENTS, RoundingMode.HALF_UP));
+        transaction.setTotalAmount(value(event.getTotal()).setScale(CENTS, RoundingMode.HALF_UP));
+        transaction.setBalanceBefore(value(event.getBalanceBefore()));
+        transaction.setBalanceAfter(value(event.getBalanceAfter()));
+        transaction.setCreatedAt(toLocalDateTime(event.getTimestamp()));
+        return transaction;
+    }
+
+    private static long cents(long units, int scale) {
+        return FixedPoint.rescale(FixedPoint.rescale(units, scale, CENTS), CENTS, scale);
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMilli) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), ZoneId.systemDefault());
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static BigDecimal quantity(long units) {
+        return FixedPoint.toBigDecimal(units, FixedPoint.QUANTITY_SCALE);
+    }
+
+    private static BigDecimal price(long units) {
+        return FixedPoint.toBigDecimal(units, FixedPoint.PRICE_SCALE);
+    }
+
+    private static BigDecimal value(long units) {
+        return FixedPoint.toBigDecimal(units, FixedPoint.VALUE_SCALE);
+    }
+}
@@ -1,43 +1,58 @@
 package com.example.crypto_trading_sim.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Sinks;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
+/**
+ * Price hub for the application: applies updates from the configured
+ * {@link MarketDataSource} to the {@link PriceBook}, publishes them on the
+ * price stream and answers on-demand lookups.
+ */
 @Service
 @Slf4j
 public class KrakenApiService {
     
+    /**
+     * Price of one asset. Values are held as scaled longs: price, change and
+     * high/low at the asset's {@code priceScale}, volume at
+     * {@link FixedPoint#QUANTITY_SCALE} and the percentage at
+     * {@link FixedPoint#PERCENT_SCALE}. The {@link BigDecimal} accessors are the
+     * JSON boundary.
+     */
     public static class CryptoPrice {
         private String symbol;
         private String name;
-        private BigDecimal price;
-        private BigDecimal change24h;
-        private BigDecimal change24hPercent;
-        private BigDecimal volume24h;
-        private BigDecimal high24h;
-        private BigDecimal low24h;
+        private int priceScale = FixedPoint.PRICE_SCALE;
+        private long price;
+        private long change24h;
+        private long change24hPercent;
+        private long volume24h;
+        private long high24h;
+        private long low24h;
         private LocalDateTime lastUpdated;
         
         public CryptoPrice() {}
         
-        public CryptoPrice(String symbol, String name, BigDecimal price, BigDecimal change24h, 
-                          BigDecimal change24hPercent, BigDecimal volume24h, LocalDateTime lastUpdated) {
+        public CryptoPrice(String symbol, String name, int priceScale, long price, long change24h,
+                          long change24hPercent, long volume24h, LocalDateTime lastUpdated) {
             this.symbol = symbol;
             this.name = name;
+            this.priceScale = priceScale;
             this.price = price;
             this.change24h = change24h;
             this.change24hPercent = change24hPercent;
@@ -50,229 +65,215 @@ public class KrakenApiService {
         public void setSymbol(String symbol) { this.symbol = symbol; }
         public String getName() { return name; }
         public void setName(String name) { this.name = name; }
-        public BigDecimal getPrice() { return price; }
-        public void setPrice(BigDecimal price) { this.price = price; }
-        public BigDecimal getChange24h() { return change24h; }
-        public void setChange24h(BigDecimal change24h) { this.change24h = change24h; }
-        public BigDecimal getChange24hPercent() { return change24hPercent; }
-        public void setChange24hPercent(BigDecimal change24hPercent) { this.change24hPercent = change24hPercent; }
-        public BigDecimal getVolume24h() { return volume24h; }
-        public void setVolume24h(BigDecimal volume24h) { this.volume24h = volume24h; }
-        public BigDecimal getHigh24h() { return high24h; }
-        public void setHigh24h(BigDecimal high24h) { this.high24h = high24h; }
-        public BigDecimal getLow24h() { return low24h; }
-        public void setLow24h(BigDecimal low24h) { this.low24h = low24h; }
+        public BigDecimal getPrice() { return FixedPoint.toBigDecimal(price, priceScale); }
+        public void setPrice(BigDecimal price) { this.price = FixedPoint.of(price, priceScale); }
+        public BigDecimal getChange24h() { return FixedPoint.toBigDecimal(change24h, priceScale); }
+        public void setChange24h(BigDecimal change24h) { this.change24h = FixedPoint.of(change24h, priceScale); }
+        public BigDecimal getChange24hPercent() { return FixedPoint.toBigDecimal(change24hPercent, FixedPoint.PERCENT_SCALE); }
+        public void setChange24hPercent(BigDecimal change24hPercent) { this.change24hPercent = FixedPoint.of(change24hPercent, FixedPoint.PERCENT_SCALE); }
+        public BigDecimal getVolume24h() { return FixedPoint.toBigDecimal(volume24h, FixedPoint.QUANTITY_SCALE); }
+        public void setVolume24h(BigDecimal volume24h) { this.volume24h = FixedPoint.of(volume24h, FixedPoint.QUANTITY_SCALE); }
+        public BigDecimal getHigh24h() { return FixedPoint.toBigDecimal(high24h, priceScale); }
+        public void setHigh24h(BigDecimal high24h) { this.high24h = FixedPoint.of(high24h, priceScale); }
+        public BigDecimal getLow24h() { return FixedPoint.toBigDecimal(low24h, priceScale); }
+        public void setLow24h(BigDecimal low24h) { this.low24h = FixedPoint.of(low24h, priceScale); }
         public LocalDateTime getLastUpdated() { return lastUpdated; }
         public void setLastUpdated(LocalDateTime lastUpdated) { this.lastUpdated = lastUpdated; }
+        
+        // Scaled-long accessors for the hot path
+        @JsonIgnore public int getPriceScale() { return priceScale; }
+        @JsonIgnore public long getPriceUnits() { return price; }
+        @JsonIgnore public long getChange24hUnits() { return change24h; }
+        @JsonIgnore public long getChange24hPercentUnits() { return change24hPercent; }
+        @JsonIgnore public long getVolume24hUnits() { return volume24h; }
+        @JsonIgnore public long getHigh24hUnits() { return high24h; }
+        public void setHigh24hUnits(long high24h) { this.high24h = high24h; }
+        @JsonIgnore public long getLow24hUnits() { return low24h; }
+        public void setLow24hUnits(long low24h) { this.low24h = low24h; }
     }
     
-    private final WebClient webClient;
-    private final ObjectMapper objectMapper;
-    private final Map<String, CryptoPrice> cache = new ConcurrentHashMap<>();
-    private final Sinks.Many<List<CryptoPrice>> priceStream = Sinks.many().multicast().onBackpressureBuffer();
-    private volatile List<String> topUsdPairs = new ArrayList<>();
-    private volatile Map<String, String> pairToSymbol = new HashMap<>();
+    private final MarketDataSource source;
+    private final PriceBook priceBook = new PriceBook();
+    // Best effort: a subscriber without demand misses the tick instead of stalling every other
+    // subscriber; SSE subscribers conflate on their own side (see PriceStreamSubscribers)
+    private final Sinks.Many<List<CryptoPrice>> priceStream = Sinks.many().multicast().directBestEffort();
+    private final Sinks.Many<MarketDataSource.UniverseChange> universeChanges = Sinks.many().multicast().directBestEffort();
+    private final SingleFlight<List<CryptoPrice>> tickerFetch;
+    private final Duration maxPriceAge;
+    private final Counter snapshotHits;
+    private final TickJournal journal;
     
-    public KrakenApiService() {
-        this.webClient = WebClient.builder()
-            .baseUrl("https://api.kraken.com")
-            .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(1024 * 1024)) // 1MB buffer
-            .build();
-        this.objectMapper = new ObjectMapper();
-        initializeTopPairs();
+    @Autowired
+    public KrakenApiService(MarketDataSource source, Optional<TickJournal> journal,
+                            @Value("${kraken.prices.max-age:5s}") Duration maxPriceAge,
+                            MeterRegistry meterRegistry) {
+        this.source = source;
+        this.journal = journal.orElse(null);
+        this.maxPriceAge = maxPriceAge;
+        this.tickerFetch = new SingleFlight<>(() -> source.fetchAll().doOnNext(this::publish));
+        this.snapshotHits = Counter.builder("kraken.prices.requests").tag("source", "snapshot")
+            .description("On-demand price lookups served from the shared snapshot")
+            .register(meterRegistry);
+        FunctionCounter.builder("kraken.prices.requests", tickerFetch, SingleFlight::getJoined).tag("source", "coalesced")
+            .description("On-demand price lookups that joined an in-flight Kraken request")
+            .register(meterRegistry);
+        FunctionCounter.builder("kraken.prices.requests", tickerFetch, SingleFlight::getStarted).tag("source", "kraken")
+            .description("Kraken Ticker requests actually made")
+            .register(meterRegistry);
+        Gauge.builder("kraken.prices.coalescing.ratio", this, KrakenApiService::getCoalescingRatio)
+            .description("Share of price lookups that did not cause their own Kraken request")
+            .register(meterRegistry);
+        journal.ifPresent(this::restoreFrom);
+        source.onUniverseChange(this::applyUniverseChange);
+        source.start(this::publish);
     }
     
-    private void initializeTopPairs() {
-        fetchTopUsdPairs()
-            .doOnNext(pairs -> {
-                this.topUsdPairs = pairs;
-                startPriceUpdates();
-            })
-            .doOnError(error -> {
-                throw new RuntimeException("Failed to initialize Kraken API: " + error.getMessage());
-            })
-            .subscribe();
+    KrakenApiService(MarketDataSource source, Duration maxPriceAge, MeterRegistry meterRegistry) {
+        this(source, Optional.empty(), maxPriceAge, meterRegistry);
     }
     
-    private Mono<List<String>> fetchTopUsdPairs() {
-        return webClient.get()
-            .uri("/0/public/AssetPairs")
-            .retrieve()
-            .bodyToMono(String.class)
-            .flatMap(this::extractTopUsdPairs);
+    /**
+     * All prices. Served from the shared snapshot while it is fresh (always, while
+     * the WebSocket feed is live); otherwise callers share a single in-flight
+     * Kraken request. Prices restored at startup are only served if that request fails.
+     */
+    public Mono<List<CryptoPrice>> getAllCryptoPrices() {
+        return Mono.defer(() -> {
+            PriceBook.Snapshot snapshot = priceBook.snapshot();
+            if (isFresh(snapshot)) {
+                snapshotHits.increment();
+                return Mono.just(snapshot.getPrices());
+            }
+            return withRestoredFallback(tickerFetch.get(), snapshot, snapshot.getPrices());
+        });
     }
     
-    private Mono<List<String>> extractTopUsdPairs(String response) {
-        try {
-            JsonNode root = objectMapper.readTree(response);
-            JsonNode result = root.get("result");
-            if (result == null) throw new RuntimeException("Invalid Kraken API response");
-            
-            Map<String, String> usdPairs = new HashMap<>();
-            result.fieldNames().forEachRemaining(pairName -> {
-                JsonNode pair = result.get(pairName);
-                if ("ZUSD".equals(pair.path("quote").asText()) && "online".equals(pair.path("status").asText())) {
-                    String symbol = convertKrakenSymbol(pair.path("base").asText());
-                    usdPairs.put(pairName, symbol);
-                    pairToSymbol.put(pairName, symbol);
-                }
-            });
-            
-            if (usdPairs.isEmpty()) throw new RuntimeException("No USD trading pairs found");
-            return getTickerDataAndSortByVolumeWithPriceFilter(usdPairs);
-            
-        } catch (Exception e) {
-            return Mono.error(new RuntimeException("Failed to parse Kraken response: " + e.getMessage(), e));
-        }
+    public Mono<CryptoPrice> getCryptoPrice(String symbol) {
+        return Mono.defer(() -> {
+            String wanted = symbol.toUpperCase();
+            PriceBook.Snapshot snapshot = priceBook.snapshot();
+            CryptoPrice cached = snapshot.get(wanted);
+            if (cached != null && isFresh(snapshot)) {
+                snapshotHits.increment();
+                return Mono.just(cached);
+            }
+            Mono<CryptoPrice> fetched = tickerFetch.get()
+                .map(prices -> prices.stream()
+                    .filter(p -> p.getSymbol().equals(wanted))
+                    .findFirst()
+                    .orElseThrow(() -> new RuntimeException("Price not found for " + symbol)));
+            return cached == null ? fetched : withRestoredFallback(fetched, snapshot, cached);
+        });
     }
     
-    private Mono<List<String>> getTickerDataAndSortByVolumeWithPriceFilter(Map<String, String> usdPairs) {
-        String pairs = String.join(",", usdPairs.keySet());
-        return webClient.get()
-            .uri("/0/public/Ticker?pair=" + pairs)
-            .retrieve()
-            .bodyToMono(String.class)
-            .map(tickerResponse -> {
-                try {
-                    JsonNode tickerRoot = objectMapper.readTree(tickerResponse);
-                    JsonNode tickerResult = tickerRoot.get("result");
-                    if (tickerResult == null) throw new RuntimeException("Invalid ticker response");
-                    
-                    return usdPairs.keySet().stream()
-                        .filter(tickerResult::has)
-                        .filter(pair -> {
-                            try {
-                                // Filter out micro-cap tokens with very low prices (likely meme coins)
-                                BigDecimal price = new BigDecimal(tickerResult.get(pair).get("c").get(0).asText());
-                                return price.compareTo(new BigDecimal("0.01")) >= 0; // Price >= $0.01
-                            } catch (Exception e) {
-                                return false;
-                            }
-                        })
-                        .sorted((pair1, pair2) -> {
-                            try {
-                                // Sort by USD volume (volume * price for meaningful comparison)
-                                JsonNode data1 = tickerResult.get(pair1);
-                                JsonNode data2 = tickerResult.get(pair2);
-                                
-                                BigDecimal volume1 = new BigDecimal(data1.get("v").get(1).asText());
-                                BigDecimal price1 = new BigDecimal(data1.get("c").get(0).asText());
-                                BigDecimal usdVolume1 = volume1.multiply(price1);
-                                
-                                BigDecimal volume2 = new BigDecimal(data2.get("v").get(1).asText());
-                                BigDecimal price2 = new BigDecimal(data2.get("c").get(0).asText());
-                                BigDecimal usdVolume2 = volume2.multiply(price2);
-                                
-                                return usdVolume2.compareTo(usdVolume1);
-                            } catch (Exception e) {
-                                return 0;
-                            }
-                        })
-                        .limit(20)
-                        .collect(Collectors.toList());
-                        
-                } catch (Exception e) {
-                    throw new RuntimeException("Failed to sort pairs by volume: " + e.getMessage(), e);
-                }
-            });
+    private <T> Mono<T> withRestoredFallback(Mono<T> fetch, PriceBook.Snapshot snapshot, T restored) {
+        if (!snapshot.isRestored() || snapshot.isEmpty()) return fetch;
+        return fetch.onErrorResume(error -> {
+            log.debug("Serving restored prices, refresh failed: {}", error.getMessage());
+            return Mono.just(restored);
+        });
     }
     
-    private String convertKrakenSymbol(String krakenSymbol) {
-        return switch (krakenSymbol) {
-            case "XXBT" -> "BTC";
-            case "XETH" -> "ETH";
-            case "XXRP" -> "XRP";
-            case "XXLM" -> "XLM";
-            case "XLTC" -> "LTC";
-            default -> krakenSymbol;
-        };
+    /**
+     * Share of on-demand lookups answered without a Kraken request of their own.
+     */
+    public double getCoalescingRatio() {
+        double served = snapshotHits.count() + tickerFetch.getJoined();
+        double total = served + tickerFetch.getStarted();
+        return total == 0 ? 0 : served / total;
     }
     
-    public Mono<List<CryptoPrice>> getAllCryptoPrices() {
-        if (topUsdPairs.isEmpty()) {
-            return Mono.error(new RuntimeException("No trading pairs available"));
-        }
-        
-        String pairs = String.join(",", topUsdPairs);
-        return webClient.get()
-            .uri("/0/public/Ticker?pair=" + pairs)
-            .retrieve()
-            .bodyToMono(String.class)
-            .map(this::parseResponse)
-            .doOnNext(prices -> {
-                prices.forEach(price -> cache.put(price.getSymbol(), price));
-                priceStream.tryEmitNext(prices);
-            });
+    /**
+     * True once prices have been refreshed since startup and are current: the
+     * source is live or the last update is younger than {@code kraken.prices.max-age}.
+     */
+    public boolean isPriceDataFresh() {
+        return isPriceDataFresh(maxPriceAge);
     }
     
-    public Mono<CryptoPrice> getCryptoPrice(String symbol) {
-        return getAllCryptoPrices()
-            .map(prices -> prices.stream()
-                .filter(p -> p.getSymbol().equals(symbol.toUpperCase()))
-                .findFirst()
-                .orElseThrow(() -> new RuntimeException("Price not found for " + symbol)));
+    /** {@link #isPriceDataFresh()} with {@code maxAge} in place of {@code kraken.prices.max-age}. */
+    public boolean isPriceDataFresh(Duration maxAge) {
+        return isFresh(priceBook.snapshot(), maxAge);
+    }
+    
+    private boolean isFresh(PriceBook.Snapshot snapshot) {
+        return isFresh(snapshot, maxPriceAge);
+    }
+    
+    private boolean isFresh(PriceBook.Snapshot snapshot, Duration maxAge) {
+        return !snapshot.isEmpty() && !snapshot.isRestored()
+            && (source.isLive() || snapshot.getAge().compareTo(maxAge) < 0);
     }
     
     public List<CryptoPrice> getCachedPrices() {
-        if (cache.isEmpty()) throw new RuntimeException("No price data available");
-        return new ArrayList<>(cache.values());
+        PriceBook.Snapshot snapshot = priceBook.snapshot();
+        if (snapshot.isEmpty()) throw new RuntimeException("No price data available");
+        return snapshot.getPrices();
+    }
+    
+    /**
+     * Current immutable price snapshot; cheap enough to call per request.
+     */
+    public PriceBook.Snapshot getPriceSnapshot() {
+        return priceBook.snapshot();
     }
     
     public Flux<List<CryptoPrice>> startPriceStream() {
         return priceStream.asFlux();
     }
     
-    private void startPriceUpdates() {
-        Flux.interval(Duration.ofSeconds(10))
-            .flatMap(tick -> getAllCryptoPrices())
-            .subscribe();
+    /**
+     * Symbols added to and removed from the tracked universe. Removed symbols
+     * have already left the price book, and the price stream has emitted the
+     * list without them, when the change is published here.
+     */
+    public Flux<MarketDataSource.UniverseChange> universeChanges() {
+        return universeChanges.asFlux();
+    }
+    
+    /**
+     * Fetch all prices from the source and publish them, sharing the request
+     * with any on-demand lookup already in flight. Used by {@link PricePollScheduler}.
+     */
+    public Mono<List<CryptoPrice>> refreshPrices() {
+        return tickerFetch.get();
+    }
+    
+    /**
+     * True while the market data source pushes current prices by itself.
+     */
+    public boolean isSourceLive() {
+        return source.isLive();
     }
     
-    private List<CryptoPrice> parseResponse(String response) {
+    /**
+     * Apply price updates to the price book and publish the full price list to
+     * stream subscribers. Serialized, since pushes and on-demand fetches can
+     * arrive on different threads and the sink must not be emitted to concurrently.
+     */
+    synchronized void publish(List<CryptoPrice> updates) {
+        priceStream.tryEmitNext(priceBook.publish(updates).getPrices());
+        // Journal appends are single-writer; this method is the only writer
+        if (journal != null) journal.append(updates);
+    }
+    
+    synchronized void applyUniverseChange(MarketDataSource.UniverseChange change) {
+        PriceBook.Snapshot before = priceBook.snapshot();
+        PriceBook.Snapshot after = priceBook.remove(change.removed());
+        if (after != before) priceStream.tryEmitNext(after.getPrices());
+        universeChanges.tryEmitNext(change);
+    }
+    
+    private void restoreFrom(TickJournal journal) {
         try {
-            JsonNode root = objectMapper.readTree(response);
-            JsonNode result = root.get("result");
-            if (result == null) throw new RuntimeException("Invalid response format");
-            
-            List<CryptoPrice> prices = new ArrayList<>();
-            LocalDateTime now = LocalDateTime.now();
-            
-            topUsdPairs.forEach(pair -> {
-                JsonNode data = result.get(pair);
-                if (data != null) {
-                    try {
-                        String symbol = pairToSymbol.get(pair);
-                        if (symbol == null) return;
-                        
-                        BigDecimal price = new BigDecimal(data.get("c").get(0).asText());
-                        BigDecimal high = new BigDecimal(data.get("h").get(1).asText());
-                        BigDecimal low = new BigDecimal(data.get("l").get(1).asText());
-                        BigDecimal volume = new BigDecimal(data.get("v").get(1).asText());
-                        BigDecimal open = new BigDecimal(data.get("o").asText());
-                        
-                        BigDecimal change = price.subtract(open);
-                        BigDecimal changePercent = open.compareTo(BigDecimal.ZERO) > 0 
-                            ? change.divide(open, 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100))
-                                : BigDecimal.ZERO;
-                            
-                        CryptoPrice crypto = new CryptoPrice(symbol, symbol, price, change, changePercent, volume, now);
-                        crypto.setHigh24h(high);
-                        crypto.setLow24h(low);
-                        prices.add(crypto);
-                        
-                        } catch (Exception e) {
-                        // Skip invalid data
-                    }
-                }
-            });
-            
-            if (prices.isEmpty()) throw new RuntimeException("No valid price data found");
-            return prices;
-            
+            List<CryptoPrice> recovered = journal.recoverLatest();
+            PriceBook.Snapshot snapshot = priceBook.restore(recovered);
+            if (!recovered.isEmpty()) {
+                log.info("Restored {} prices from the tick journal, {}s old", recovered.size(),
+                    snapshot.getAge().toSeconds());
+            }
         } catch (Exception e) {
-            throw new RuntimeException("Failed to parse price data: " + e.getMessage(), e);
+            log.warn("Could not restore prices from the tick journal in {}: {}", journal.getDirectory(), e.getMessage());
         }
     }
-    
-
-} 
\ No newline at end of file
+}
@@ -0,0 +1,351 @@
+package com.example.crypto_trading_sim.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Live prices from Kraken: the top USD pairs by volume are picked from the
+ * REST API at start-up, then streamed over the WebSocket ticker channel (in
+ * {@code websocket} mode) or fetched on demand from the REST Ticker endpoint.
+ * <p>
+ * The selection is re-ranked every {@code rerankInterval}. A changed universe
+ * is swapped in as one immutable list, the WebSocket subscription is adjusted
+ * in place and listeners get the symbols that were added and removed.
+ * <p>
+ * The selected universe is saved to a small JSON file. On the next start it is
+ * loaded synchronously, so streaming and fetching work at once while the
+ * selection is refreshed from AssetPairs in the background.
+ */
+@Slf4j
+public class KrakenMarketDataSource implements MarketDataSource {
+    
+    private final WebClient webClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final KrakenTickerParser tickerParser = new KrakenTickerParser();
+    private final URI wsUri;
+    private final boolean useWebSocket;
+    private static final int DEFAULT_UNIVERSE_SIZE = 20;
+    private static final Duration DEFAULT_RERANK_INTERVAL = Duration.ofMinutes(15);
+    
+    private volatile List<String> topUsdPairs = List.of();
+    private final Map<String, String> pairToSymbol = new ConcurrentHashMap<>();
+    private final Map<String, Integer> priceScales = new ConcurrentHashMap<>();
+    private volatile KrakenWebSocketClient webSocketClient;
+    private boolean webSocketStarted;
+    private final Path universeFile;
+    private final int universeSize;
+    private final Duration rerankInterval;
+    private Consumer<UniverseChange> universeListener = change -> {};
+    private volatile Disposable rerank;
+    
+    /**
+     * One selected pair, as saved in the universe file.
+     */
+    public record UniversePair(String pair, String symbol, int priceScale) {}
+    
+    public KrakenMarketDataSource(String baseUrl, String wsUrl, String ingestionMode) {
+        this(baseUrl, wsUrl, ingestionMode, null);
+    }
+    
+    /**
+     * @param universeFile where the selected pairs are saved between runs, or {@code null} for none
+     */
+    public KrakenMarketDataSource(String baseUrl, String wsUrl, String ingestionMode, Path universeFile) {
+        this(baseUrl, wsUrl, ingestionMode, universeFile, DEFAULT_UNIVERSE_SIZE, DEFAULT_RERANK_INTERVAL);
+    }
+    
+    /**
+     * @param universeSize   number of USD pairs to track
+     * @param rerankInterval how often the selection is recomputed from AssetPairs and Ticker
+     */
+    public KrakenMarketDataSource(String baseUrl, String wsUrl, String ingestionMode, Path universeFile,
+                                  int universeSize, Duration rerankInterval) {
+        this.webClient = WebClient.builder()
+            .baseUrl(baseUrl)
+            .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(1024 * 1024)) // 1MB buffer
+            .build();
+        this.wsUri = URI.create(wsUrl);
+        this.useWebSocket = "websocket".equalsIgnoreCase(ingestionMode);
+        this.universeFile = universeFile;
+        this.universeSize = universeSize;
+        this.rerankInterval = rerankInterval;
+    }
+    
+    @Override
+    public void start(Consumer<List<KrakenApiService.CryptoPrice>> sink) {
+        // REST fetches stay as the fallback whenever the WebSocket is not live
+        if (useWebSocket) {
+            webSocketClient = new KrakenWebSocketClient(wsUri, this::getPriceScale, sink);
+        }
+        if (loadUniverse()) {
+            startWebSocketUpdates();
+        }
+        rerank = Flux.interval(Duration.ZERO, rerankInterval)
+            .onBackpressureDrop()
+            .concatMap(tick -> fetchTopUsdPairs()
+                .doOnNext(this::applyUniverse)
+                .onErrorResume(error -> {
+                    log.error("Failed to rank Kraken pairs: {}", error.getMessage());
+                    return Mono.empty();
+                }), 1)
+            .subscribe();
+    }
+    
+    @Override
+    public synchronized void onUniverseChange(Consumer<UniverseChange> listener) {
+        this.universeListener = listener;
+    }
+    
+    /**
+     * Swap in a new ranking. Unchanged selections only refresh the saved file;
+     * otherwise the WebSocket subscription follows and listeners are told which
+     * symbols came and went.
+     */
+    synchronized void applyUniverse(List<String> pairs) {
+        List<String> previous = topUsdPairs;
+        this.topUsdPairs = List.copyOf(pairs);
+        saveUniverse();
+        if (pairs.equals(previous)) return;
+        
+        // A warm start already streams this selection; only resubscribe if it moved
+        startWebSocketUpdates();
+        Set<String> before = symbolsOf(previous);
+        Set<String> after = symbolsOf(pairs);
+        List<String> added = after.stream().filter(symbol -> !before.contains(symbol)).toList();
+        List<String> removed = before.stream().filter(symbol -> !after.contains(symbol)).toList();
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            log.info("Kraken universe changed: added {}, removed {}", added, removed);
+            universeListener.accept(new UniverseChange(added, removed));
+        }
+    }
+    
+    private Set<String> symbolsOf(List<String> pairs) {
+        Set<String> symbols = new LinkedHashSet<>();
+        for (String pair : pairs) {
+            String symbol = pairToSymbol.get(pair);
+            if (symbol != null) symbols.add(symbol);
+        }
+        return symbols;
+    }
+    
+    /**
+     * Pairs currently selected, in volume order.
+     */
+    public List<UniversePair> getUniverse() {
+        List<UniversePair> universe = new ArrayList<>();
+        for (String pair : topUsdPairs) {
+            String symbol = pairToSymbol.get(pair);
+            if (symbol != null) universe.add(new UniversePair(pair, symbol, getPriceScale(symbol)));
+        }
+        return universe;
+    }
+    
+    private boolean loadUniverse() {
+        if (universeFile == null || !Files.exists(universeFile)) return false;
+        try {
+            List<UniversePair> universe = objectMapper.readValue(universeFile.toFile(),
+                objectMapper.getTypeFactory().constructCollectionType(List.class, UniversePair.class));
+            if (universe.isEmpty()) return false;
+            List<String> pairs = new ArrayList<>();
+            for (UniversePair entry : universe) {
+                pairToSymbol.put(entry.pair(), entry.symbol());
+                priceScales.put(entry.symbol(), entry.priceScale());
+                pairs.add(entry.pair());
+            }
+            this.topUsdPairs = List.copyOf(pairs);
+            log.info("Loaded {} Kraken pairs from {}", pairs.size(), universeFile);
+            return true;
+        } catch (Exception e) {
+            log.warn("Ignoring unreadable Kraken universe file {}: {}", universeFile, e.getMessage());
+            return false;
+        }
+    }
+    
+    private void saveUniverse() {
+        if (universeFile == null) return;
+        try {
+            Path parent = universeFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, "kraken-universe", ".tmp");
+            objectMapper.writeValue(temp.toFile(), getUniverse());
+            Files.move(temp, universeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not save the Kraken universe to {}: {}", universeFile, e.getMessage());
+        }
+    }
+    
+    @Override
+    public void stop() {
+        if (rerank != null) rerank.dispose();
+        if (webSocketClient != null) webSocketClient.stop();
+    }
+    
+    @Override
+    public boolean isLive() {
+        return webSocketClient != null && webSocketClient.isConnected();
+    }
+    
+    @Override
+    public Mono<List<KrakenApiService.CryptoPrice>> fetchAll() {
+        if (topUsdPairs.isEmpty()) {
+            return Mono.error(new RuntimeException("No trading pairs available"));
+        }
+        
+        String pairs = String.join(",", topUsdPairs);
+        return webClient.get()
+            .uri("/0/public/Ticker?pair=" + pairs)
+            .retrieve()
+            .bodyToMono(byte[].class)
+            .map(this::parseResponse);
+    }
+    
+    private Mono<List<String>> fetchTopUsdPairs() {
+        return webClient.get()
+            .uri("/0/public/AssetPairs")
+            .retrieve()
+            .bodyToMono(String.class)
+            .flatMap(this::extractTopUsdPairs);
+    }
+    
+    private Mono<List<String>> extractTopUsdPairs(String response) {
+        try {
+            JsonNode root = objectMapper.readTree(response);
+            JsonNode result = root.get("result");
+            if (result == null) throw new RuntimeException("Invalid Kraken API response");
+            
+            Map<String, String> usdPairs = new HashMap<>();
+            result.fieldNames().forEachRemaining(pairName -> {
+                JsonNode pair = result.get(pairName);
+                if ("ZUSD".equals(pair.path("quote").asText()) && "online".equals(pair.path("status").asText())) {
+                    String symbol = convertKrakenSymbol(pair.path("base").asText());
+                    usdPairs.put(pairName, symbol);
+                    pairToSymbol.put(pairName, symbol);
+                    priceScales.put(symbol, pair.path("pair_decimals").asInt(FixedPoint.PRICE_SCALE));
+                }
+            });
+            
+            if (usdPairs.isEmpty()) throw new RuntimeException("No USD trading pairs found");
+            return rankByUsdVolume(usdPairs);
+            
+        } catch (Exception e) {
+            return Mono.error(new RuntimeException("Failed to parse Kraken response: " + e.getMessage(), e));
+        }
+    }
+    
+    private Mono<List<String>> rankByUsdVolume(Map<String, String> usdPairs) {
+        String pairs = String.join(",", usdPairs.keySet());
+        return webClient.get()
+            .uri("/0/public/Ticker?pair=" + pairs)
+            .retrieve()
+            .bodyToMono(byte[].class)
+            .map(tickerResponse -> {
+                try {
+                    // Min-heap of the best pairs so far: USD volume (volume * price) is
+                    // computed once per pair and the ranking costs O(n log k)
+                    PriorityQueue<Map.Entry<String, Double>> top =
+                        new PriorityQueue<>(universeSize + 1, Map.Entry.comparingByValue());
+                    tickerParser.parse(tickerResponse, slot -> {
+                        // Filter out micro-cap tokens with very low prices (likely meme coins)
+                        if (usdPairs.containsKey(slot.getPair()) && slot.hasPrice() && slot.getPriceAsDouble() >= 0.01) {
+                            top.offer(Map.entry(slot.getPair(), slot.getUsdVolume()));
+                            if (top.size() > universeSize) top.poll();
+                        }
+                    });
+                    
+                    List<String> ranked = new ArrayList<>(top.size());
+                    while (!top.isEmpty()) ranked.add(top.poll().getKey());
+                    Collections.reverse(ranked);
+                    return ranked;
+                        
+                } catch (Exception e) {
+                    throw new RuntimeException("Failed to sort pairs by volume: " + e.getMessage(), e);
+                }
+            });
+    }
+    
+    private String convertKrakenSymbol(String krakenSymbol) {
+        return switch (krakenSymbol) {
+            case "XXBT" -> "BTC";
+            case "XETH" -> "ETH";
+            case "XXRP" -> "XRP";
+            case "XXLM" -> "XLM";
+            case "XLTC" -> "LTC";
+            default -> krakenSymbol;
+        };
+    }
+    
+    private synchronized void startWebSocketUpdates() {
+        if (webSocketClient == null) return;
+        
+        Map<String, String> wsSymbols = new LinkedHashMap<>();
+        topUsdPairs.forEach(pair -> {
+            String symbol = pairToSymbol.get(pair);
+            if (symbol != null) wsSymbols.put(symbol + "/USD", symbol);
+        });
+        if (webSocketStarted) {
+            webSocketClient.updateSymbols(wsSymbols);
+        } else {
+            webSocketClient.start(wsSymbols);
+            webSocketStarted = true;
+        }
+    }
+    
+    /**
+     * Decimal places Kraken quotes this asset's USD price with.
+     */
+    public int getPriceScale(String symbol) {
+        return priceScales.getOrDefault(symbol, FixedPoint.PRICE_SCALE);
+    }
+    
+    List<KrakenApiService.CryptoPrice> parseResponse(byte[] response) {
+        try {
+            Map<String, KrakenApiService.CryptoPrice> byPair = new HashMap<>();
+            LocalDateTime now = LocalDateTime.now();
+            
+            tickerParser.parse(response, slot -> {
+                String symbol = pairToSymbol.get(slot.getPair());
+                if (symbol == null || !slot.isComplete()) return; // Skip invalid data
+                
+                int scale = getPriceScale(symbol);
+                long price = slot.getPriceUnits(scale);
+                long open = slot.getOpenUnits(scale);
+                long change = Math.subtractExact(price, open);
+                long changePercent = open > 0 ? FixedPoint.percent(change, open) : 0;
+                
+                KrakenApiService.CryptoPrice crypto = new KrakenApiService.CryptoPrice(symbol, symbol, scale, price, change, changePercent,
+                    slot.getVolumeUnits(FixedPoint.QUANTITY_SCALE), now);
+                crypto.setHigh24hUnits(slot.getHighUnits(scale));
+                crypto.setLow24hUnits(slot.getLowUnits(scale));
+                byPair.put(slot.getPair(), crypto);
+            });
+            
+            List<KrakenApiService.CryptoPrice> prices = new ArrayList<>(byPair.size());
+            topUsdPairs.forEach(pair -> {
+                KrakenApiService.CryptoPrice crypto = byPair.get(pair);
+                if (crypto != null) prices.add(crypto);
+            });
+            
+            if (prices.isEmpty()) throw new RuntimeException("No valid price data found");
+            return prices;
+            
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to parse price data: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.exception.RateLimitedException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Token-streaming parser for Kraken's {@code /0/public/Ticker} response.
+ * <p>
+ * Only the fields we use ({@code c}, {@code h}, {@code l}, {@code v}, {@code o})
+ * are read, and their decimal strings are parsed straight from the parser's
+ * character buffer into scaled longs held in one reusable {@link TickerSlot}
+ * per pair. No tree and no intermediate strings are built. A slot is only
+ * valid inside the callback it is handed to.
+ */
+public class KrakenTickerParser {
+
+    /**
+     * Last-parsed ticker values for one pair, kept as unscaled long + scale.
+     */
+    public static final class TickerSlot {
+        private final String pair;
+        private final Decimal price = new Decimal();
+        private final Decimal high = new Decimal();
+        private final Decimal low = new Decimal();
+        private final Decimal volume = new Decimal();
+        private final Decimal open = new Decimal();
+
+        private TickerSlot(String pair) {
+            this.pair = pair;
+        }
+
+        private void reset() {
+            price.clear();
+            high.clear();
+            low.clear();
+            volume.clear();
+            open.clear();
+        }
+
+        public String getPair() { return pair; }
+        public boolean isComplete() { return price.set && high.set && low.set && volume.set && open.set; }
+        public boolean hasPrice() { return price.set; }
+        public BigDecimal getPrice() { return price.toBigDecimal(); }
+        public BigDecimal getHigh() { return high.toBigDecimal(); }
+        public BigDecimal getLow() { return low.toBigDecimal(); }
+        public BigDecimal getVolume() { return volume.toBigDecimal(); }
+        public BigDecimal getOpen() { return open.toBigDecimal(); }
+        public long getPriceUnits(int scale) { return price.toUnits(scale); }
+        public long getHighUnits(int scale) { return high.toUnits(scale); }
+        public long getLowUnits(int scale) { return low.toUnits(scale); }
+        public long getVolumeUnits(int scale) { return volume.toUnits(scale); }
+        public long getOpenUnits(int scale) { return open.toUnits(scale); }
+        public double getPriceAsDouble() { return price.toDouble(); }
+
+        /** 24h volume times last price; only used for ranking, so double precision is enough. */
+        public double getUsdVolume() { return volume.toDouble() * price.toDouble(); }
+    }
+
+    private static final class Decimal {
+        private long unscaled;
+        private int scale;
+        private boolean set;
+        private BigDecimal overflow;
+
+        private void clear() {
+            set = false;
+            overflow = null;
+        }
+
+        private BigDecimal toBigDecimal() {
+            if (!set) return null;
+            return overflow != null ? overflow : BigDecimal.valueOf(unscaled, scale);
+        }
+
+        private long toUnits(int targetScale) {
+            if (!set) return 0L;
+            return overflow != null ? FixedPoint.of(overflow, targetScale) : FixedPoint.rescale(unscaled, scale, targetScale);
+        }
+
+        private double toDouble() {
+            if (!set) return 0d;
+            return overflow != null ? overflow.doubleValue() : unscaled / POWERS_OF_TEN[scale];
+        }
+
+        private void parse(char[] chars, int offset, int length) {
+            long value = 0;
+            int digitsAfterPoint = -1;
+            int significant = 0;
+            boolean negative = false;
+            int end = offset + length;
+            for (int i = offset; i < end; i++) {
+                char ch = chars[i];
+                if (ch >= '0' && ch <= '9') {
+                    if (significant > 0 || ch != '0') significant++;
+                    if (significant > 18 || (digitsAfterPoint >= 0 && digitsAfterPoint + 1 >= POWERS_OF_TEN.length)) {
+                        slowPath(chars, offset, length);
+                        return;
+                    }
+                    value = value * 10 + (ch - '0');
+                    if (digitsAfterPoint >= 0) digitsAfterPoint++;
+                } else if (ch == '.' && digitsAfterPoint < 0) {
+                    digitsAfterPoint = 0;
+                } else if (ch == '-' && i == offset) {
+                    negative = true;
+                } else {
+                    slowPath(chars, offset, length);
+                    return;
+                }
+            }
+            unscaled = negative ? -value : value;
+            scale = Math.max(digitsAfterPoint, 0);
+            overflow = null;
+            set = true;
+        }
+
+        private void slowPath(char[] chars, int offset, int length) {
+            overflow = new BigDecimal(chars, offset, length);
+            set = true;
+        }
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+        1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final Map<String, TickerSlot> slots = new HashMap<>();
+
+    /**
+     * Parse a Ticker response and hand each pair's slot to the sink in
+     * document order. Calls are serialized because the slots are shared.
+     *
+     * @return the number of pairs read
+     */
+    public synchronized int parse(byte[] response, Consumer<TickerSlot> sink) {
+        try (JsonParser parser = jsonFactory.createParser(response)) {
+            return parse(parser, sink);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to parse ticker data: " + e.getMessage(), e);
+        }
+    }
+
+    public synchronized int parse(String response, Consumer<TickerSlot> sink) {
+        try (JsonParser parser = jsonFactory.createParser(response)) {
+            return parse(parser, sink);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to parse ticker data: " + e.getMessage(), e);
+        }
+    }
+
+    private int parse(JsonParser parser, Consumer<TickerSlot> sink) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) throw new RuntimeException("Invalid response format");
+
+        int pairs = -1;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("result".equals(field) && value == JsonToken.START_OBJECT) {
+                pairs = parseResult(parser, sink);
+            } else if ("error".equals(field) && value == JsonToken.START_ARRAY) {
+                if (parser.nextToken() != JsonToken.END_ARRAY) {
+                    String error = parser.getText();
+                    if (error.startsWith("EAPI:Rate limit") || error.startsWith("EGeneral:Too many requests")) {
+                        throw new RateLimitedException("Kraken API error: " + error);
+                    }
+                    throw new RuntimeException("Kraken API error: " + error);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (pairs < 0) throw new RuntimeException("Invalid response format");
+        return pairs;
+    }
+
+    private int parseResult(JsonParser parser, Consumer<TickerSlot> sink) throws IOException {
+        int pairs = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String pair = parser.currentName();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            TickerSlot slot = slots.computeIfAbsent(pair, TickerSlot::new);
+            slot.reset();
+            parsePair(parser, slot);
+            sink.accept(slot);
+            pairs++;
+        }
+        return pairs;
+    }
+
+    private void parsePair(JsonParser parser, TickerSlot slot) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "c" -> readArrayElement(parser, value, 0, slot.price);
+                case "h" -> readArrayElement(parser, value, 1, slot.high);
+                case "l" -> readArrayElement(parser, value, 1, slot.low);
+                case "v" -> readArrayElement(parser, value, 1, slot.volume);
+                case "o" -> readScalar(parser, value, slot.open);
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private void readArrayElement(JsonParser parser, JsonToken value, int index, Decimal target) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        int position = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (position++ == index) {
+                readScalar(parser, token, target);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readScalar(JsonParser parser, JsonToken token, Decimal target) throws IOException {
+        if (token == JsonToken.VALUE_STRING || token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+            target.parse(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+        } else {
+            parser.skipChildren();
+        }
+    }
+}
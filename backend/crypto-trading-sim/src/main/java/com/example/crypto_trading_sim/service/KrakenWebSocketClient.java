@@ -0,0 +1,226 @@
+package com.example.crypto_trading_sim.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import org.springframework.web.reactive.socket.client.WebSocketClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Holds a single Kraken WebSocket v2 ticker subscription and hands every
+ * ticker frame to the supplied consumer as it arrives. The connection is
+ * re-established (and the subscription re-sent) with exponential backoff
+ * whenever it closes, errors or goes quiet for longer than the idle timeout.
+ */
+@Slf4j
+public class KrakenWebSocketClient {
+
+    private final URI uri;
+    private final WebSocketClient client;
+    private final ObjectMapper objectMapper;
+    private final ToIntFunction<String> priceScale;
+    private final Consumer<List<KrakenApiService.CryptoPrice>> onTicker;
+    private final Duration minBackoff;
+    private final Duration maxBackoff;
+    private final Duration idleTimeout;
+
+    private volatile Map<String, String> wsSymbolToSymbol = Map.of();
+    private volatile boolean connected;
+    private volatile Duration backoff;
+    private volatile Disposable connection;
+    // Outbound control messages for the current session, null between sessions
+    private volatile Sinks.Many<String> control;
+
+    public KrakenWebSocketClient(URI uri, ToIntFunction<String> priceScale,
+                                 Consumer<List<KrakenApiService.CryptoPrice>> onTicker) {
+        this(uri, priceScale, onTicker, Duration.ofSeconds(1), Duration.ofSeconds(30), Duration.ofSeconds(30));
+    }
+
+    public KrakenWebSocketClient(URI uri, ToIntFunction<String> priceScale,
+                                 Consumer<List<KrakenApiService.CryptoPrice>> onTicker,
+                                 Duration minBackoff, Duration maxBackoff, Duration idleTimeout) {
+        this.uri = uri;
+        this.priceScale = priceScale;
+        this.client = new ReactorNettyWebSocketClient();
+        this.objectMapper = new ObjectMapper().enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+        this.onTicker = onTicker;
+        this.minBackoff = minBackoff;
+        this.maxBackoff = maxBackoff;
+        this.idleTimeout = idleTimeout;
+        this.backoff = minBackoff;
+    }
+
+    /**
+     * Start (or restart) the subscription for the given WebSocket symbols,
+     * e.g. {@code "BTC/USD" -> "BTC"}.
+     */
+    public synchronized void start(Map<String, String> wsSymbolToSymbol) {
+        this.wsSymbolToSymbol = Map.copyOf(wsSymbolToSymbol);
+        stop();
+        connection = Mono.defer(() -> client.execute(uri, this::handleSession))
+            .then(Mono.<Void>error(new IllegalStateException("Kraken WebSocket closed")))
+            .doOnError(error -> {
+                connected = false;
+                log.warn("Kraken WebSocket disconnected: {}", error.getMessage());
+            })
+            .retryWhen(Retry.from(signals -> signals.concatMap(signal -> Mono.delay(nextBackoff()))))
+            .subscribe();
+    }
+
+    /**
+     * Change the subscribed symbols without reconnecting: the current session,
+     * if any, is sent {@code subscribe}/{@code unsubscribe} messages for the
+     * difference, and the next session subscribes the full new set.
+     */
+    public synchronized void updateSymbols(Map<String, String> wsSymbolToSymbol) {
+        Map<String, String> previous = this.wsSymbolToSymbol;
+        this.wsSymbolToSymbol = Map.copyOf(wsSymbolToSymbol);
+        Sinks.Many<String> session = control;
+        if (session == null) return;
+
+        List<String> added = wsSymbolToSymbol.keySet().stream().filter(s -> !previous.containsKey(s)).toList();
+        List<String> removed = previous.keySet().stream().filter(s -> !wsSymbolToSymbol.containsKey(s)).toList();
+        if (!added.isEmpty()) session.tryEmitNext(buildMessage("subscribe", added));
+        if (!removed.isEmpty()) session.tryEmitNext(buildMessage("unsubscribe", removed));
+    }
+
+    public synchronized void stop() {
+        if (connection != null) {
+            connection.dispose();
+            connection = null;
+        }
+        connected = false;
+    }
+
+    /**
+     * True once the current session has been acknowledged or delivered ticker data.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    private Mono<Void> handleSession(WebSocketSession session) {
+        log.info("Kraken WebSocket connected to {}, subscribing to {} symbols", uri, wsSymbolToSymbol.size());
+        Sinks.Many<String> sessionControl = Sinks.many().unicast().onBackpressureBuffer();
+        synchronized (this) {
+            control = sessionControl;
+            sessionControl.tryEmitNext(buildSubscribeMessage());
+        }
+        Mono<Void> send = session.send(sessionControl.asFlux().map(session::textMessage));
+        Mono<Void> receive = session.receive()
+            .timeout(idleTimeout)
+            .map(WebSocketMessage::getPayloadAsText)
+            .doOnNext(this::handleFrame)
+            .doFinally(signal -> {
+                synchronized (this) {
+                    if (control == sessionControl) control = null;
+                }
+                sessionControl.tryEmitComplete();
+            })
+            .then();
+        return send.and(receive);
+    }
+
+    String buildSubscribeMessage() {
+        return buildMessage("subscribe", wsSymbolToSymbol.keySet());
+    }
+
+    private String buildMessage(String method, Collection<String> wsSymbols) {
+        ObjectNode message = objectMapper.createObjectNode();
+        message.put("method", method);
+        ObjectNode params = message.putObject("params");
+        params.put("channel", "ticker");
+        ArrayNode symbols = params.putArray("symbol");
+        wsSymbols.forEach(symbols::add);
+        return message.toString();
+    }
+
+    private void handleFrame(String frame) {
+        try {
+            JsonNode root = objectMapper.readTree(frame);
+            if ("subscribe".equals(root.path("method").asText())) {
+                if (root.path("success").asBoolean()) {
+                    markConnected();
+                } else {
+                    log.warn("Kraken WebSocket subscription rejected: {}", root.path("error").asText());
+                }
+                return;
+            }
+            List<KrakenApiService.CryptoPrice> prices = parseTickerFrame(root);
+            if (!prices.isEmpty()) {
+                markConnected();
+                onTicker.accept(prices);
+            }
+        } catch (Exception e) {
+            log.warn("Skipping unreadable Kraken WebSocket frame: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Convert a v2 {@code ticker} snapshot/update frame into prices. Heartbeats,
+     * status messages and unknown symbols yield an empty list.
+     */
+    List<KrakenApiService.CryptoPrice> parseTickerFrame(JsonNode root) {
+        if (!"ticker".equals(root.path("channel").asText())) return List.of();
+
+        List<KrakenApiService.CryptoPrice> prices = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (JsonNode data : root.path("data")) {
+            String symbol = wsSymbolToSymbol.get(data.path("symbol").asText());
+            if (symbol == null || !data.hasNonNull("last")) continue;
+
+            int scale = priceScale.applyAsInt(symbol);
+            KrakenApiService.CryptoPrice crypto = new KrakenApiService.CryptoPrice(symbol, symbol, scale,
+                FixedPoint.of(data.get("last").decimalValue(), scale),
+                FixedPoint.of(decimal(data, "change"), scale),
+                FixedPoint.of(decimal(data, "change_pct"), FixedPoint.PERCENT_SCALE),
+                FixedPoint.of(decimal(data, "volume"), FixedPoint.QUANTITY_SCALE),
+                now);
+            crypto.setHigh24hUnits(FixedPoint.of(decimal(data, "high"), scale));
+            crypto.setLow24hUnits(FixedPoint.of(decimal(data, "low"), scale));
+            prices.add(crypto);
+        }
+        return prices;
+    }
+
+    private BigDecimal decimal(JsonNode data, String field) {
+        JsonNode node = data.get(field);
+        return node == null || node.isNull() ? BigDecimal.ZERO : node.decimalValue();
+    }
+
+    private void markConnected() {
+        if (!connected) {
+            connected = true;
+            backoff = minBackoff;
+            log.info("Kraken WebSocket ticker subscription active");
+        }
+    }
+
+    private Duration nextBackoff() {
+        Duration delay = backoff;
+        Duration doubled = backoff.multipliedBy(2);
+        backoff = doubled.compareTo(maxBackoff) > 0 ? maxBackoff : doubled;
+        log.info("Reconnecting to Kraken WebSocket in {} ms", delay.toMillis());
+        return delay;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.crypto_trading_sim.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Accounts ranked by total value (cash plus marked positions) and by total
+ * P&L percent.
+ * <p>
+ * The {@link MarkToMarketEngine} repositions an account whenever its
+ * valuation changes: on its trades and resets, and on ticks in symbols it
+ * holds. A tick therefore costs O(k log n) for the k accounts holding the
+ * symbol, not a pass over every account. Both rankings are
+ * {@link RankIndex}es, so top-N is O(log n + N) and the rank of one account
+ * O(log n). Updates take a write lock; queries share a read lock.
+ * <p>
+ * Only tracked accounts are ranked: those traded or looked at since start,
+ * and every account when {@code leaderboard.preload} is on.
+ * <p>
+ * Metrics: {@code leaderboard.accounts} (gauge) and
+ * {@code leaderboard.repositions} (counter).
+ */
+@Service
+public class Leaderboard {
+
+    public enum Ranking {
+        EQUITY, PNL_PERCENT;
+
+        /** {@code equity} or {@code pnl}, as the API names them. */
+        public static Ranking parse(String name) {
+            return switch (name.toLowerCase(Locale.ROOT)) {
+                case "equity", "value" -> EQUITY;
+                case "pnl", "pnl-percent" -> PNL_PERCENT;
+                default -> throw new IllegalArgumentException("Unknown ranking: " + name);
+            };
+        }
+    }
+
+    /** One account's place in a ranking. */
+    public static class Standing {
+        private final int rank;
+        private final Long accountId;
+        private final BigDecimal totalValue;
+        private final BigDecimal totalPnL;
+        private final BigDecimal totalPnLPercent;
+
+        Standing(int rank, long accountId, long equity, long initialBalance, long pnlPercent) {
+            this.rank = rank;
+            this.accountId = accountId;
+            this.totalValue = FixedPoint.toBigDecimal(equity, FixedPoint.VALUE_SCALE);
+            this.totalPnL = FixedPoint.toBigDecimal(Math.subtractExact(equity, initialBalance), FixedPoint.VALUE_SCALE);
+            this.totalPnLPercent = FixedPoint.toBigDecimal(pnlPercent, FixedPoint.PERCENT_SCALE);
+        }
+
+        public int getRank() { return rank; }
+        public Long getAccountId() { return accountId; }
+        public BigDecimal getTotalValue() { return totalValue; }
+        public BigDecimal getTotalPnL() { return totalPnL; }
+        public BigDecimal getTotalPnLPercent() { return totalPnLPercent; }
+    }
+
+    private final RankIndex byEquity = new RankIndex();
+    private final RankIndex byPnLPercent = new RankIndex();
+    private final Map<Long, Long> initialBalances = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Counter repositions;
+
+    public Leaderboard(MeterRegistry meterRegistry) {
+        Gauge.builder("leaderboard.accounts", this, Leaderboard::size)
+            .description("Accounts ranked on the leaderboard")
+            .register(meterRegistry);
+        this.repositions = Counter.builder("leaderboard.repositions")
+            .description("Changes to an account's ranked value")
+            .register(meterRegistry);
+    }
+
+    /** Place or move an account; values at {@link FixedPoint#VALUE_SCALE}. */
+    void update(long accountId, long equity, long initialBalance) {
+        long pnl = Math.subtractExact(equity, initialBalance);
+        long pnlPercent = initialBalance > 0 ? FixedPoint.percent(pnl, initialBalance) : 0;
+        lock.writeLock().lock();
+        try {
+            initialBalances.put(accountId, initialBalance);
+            if (byEquity.put(accountId, equity)) repositions.increment();
+            byPnLPercent.put(accountId, pnlPercent);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** The first {@code limit} accounts in the ranking. */
+    public List<Standing> top(Ranking ranking, int limit) {
+        if (limit <= 0) throw new IllegalArgumentException("Limit must be positive");
+        lock.readLock().lock();
+        try {
+            List<Standing> standings = new ArrayList<>(Math.min(limit, byEquity.size()));
+            index(ranking).range(1, limit, (id, score) -> standings.add(standing(standings.size() + 1, id)));
+            return standings;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** The account's standing, if it is ranked. */
+    public Optional<Standing> standing(Ranking ranking, Long accountId) {
+        lock.readLock().lock();
+        try {
+            int rank = index(ranking).rank(accountId);
+            return rank == 0 ? Optional.empty() : Optional.of(standing(rank, accountId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byEquity.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Standing standing(int rank, long accountId) {
+        return new Standing(rank, accountId, byEquity.score(accountId), initialBalances.get(accountId),
+            byPnLPercent.score(accountId));
+    }
+
+    private RankIndex index(Ranking ranking) {
+        return ranking == Ranking.EQUITY ? byEquity : byPnLPercent;
+    }
+}
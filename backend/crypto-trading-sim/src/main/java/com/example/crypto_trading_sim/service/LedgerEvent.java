@@ -0,0 +1,101 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.TaxLotRepository;
+
+import java.util.List;
+
+/**
+ * One entry of the {@link LedgerJournal}: a trade, an account reset, or the
+ * full state of an account ({@link Type#OPEN}) when the ledger first loads it
+ * from the database or writes a snapshot. Amounts are fixed-point at the
+ * {@link FixedPoint} scales. The sequence number is assigned by the journal.
+ * A trade may carry its tax lot change, written to the database with it.
+ */
+public final class LedgerEvent {
+
+    public enum Type { OPEN, BUY, SELL, RESET }
+
+    /** A holding inside an {@link Type#OPEN} event. */
+    public record Position(String symbol, long quantity, long averagePrice, long updatedAt) {}
+
+    private final long sequence;
+    private final Type type;
+    private final long userId;
+    private final long timestamp;
+    private final String symbol;
+    private final long quantity;
+    private final long price;
+    private final long total;
+    private final long balanceBefore;
+    private final long balanceAfter;
+    private final long initialBalance;
+    private final List<Position> positions;
+    private final TaxLotRepository.LotChange lots;
+
+    LedgerEvent(long sequence, Type type, long userId, long timestamp, String symbol, long quantity, long price,
+                long total, long balanceBefore, long balanceAfter, long initialBalance, List<Position> positions,
+                TaxLotRepository.LotChange lots) {
+        this.sequence = sequence;
+        this.type = type;
+        this.userId = userId;
+        this.timestamp = timestamp;
+        this.symbol = symbol;
+        this.quantity = quantity;
+        this.price = price;
+        this.total = total;
+        this.balanceBefore = balanceBefore;
+        this.balanceAfter = balanceAfter;
+        this.initialBalance = initialBalance;
+        this.positions = positions;
+        this.lots = lots;
+    }
+
+    public static LedgerEvent trade(Type type, long userId, String symbol, long quantity, long price, long total,
+                                    long balanceBefore, long balanceAfter, long timestamp) {
+        if (type != Type.BUY && type != Type.SELL) throw new IllegalArgumentException("Not a trade: " + type);
+        return new LedgerEvent(0, type, userId, timestamp, symbol, quantity, price, total, balanceBefore, balanceAfter,
+            0, List.of(), null);
+    }
+
+    public static LedgerEvent reset(long userId, long balanceBefore, long initialBalance, long timestamp) {
+        return new LedgerEvent(0, Type.RESET, userId, timestamp, null, 0, 0, 0, balanceBefore, initialBalance,
+            initialBalance, List.of(), null);
+    }
+
+    public static LedgerEvent open(long userId, long initialBalance, long balance, List<Position> positions,
+                                   long timestamp) {
+        return new LedgerEvent(0, Type.OPEN, userId, timestamp, null, 0, 0, 0, balance, balance, initialBalance,
+            List.copyOf(positions), null);
+    }
+
+    public LedgerEvent withSequence(long sequence) {
+        return new LedgerEvent(sequence, type, userId, timestamp, symbol, quantity, price, total, balanceBefore,
+            balanceAfter, initialBalance, positions, lots);
+    }
+
+    /** This trade with its tax lot change; null for none. */
+    public LedgerEvent withLots(TaxLotRepository.LotChange lots) {
+        if (!isTrade()) throw new IllegalStateException("Only trades change tax lots");
+        return new LedgerEvent(sequence, type, userId, timestamp, symbol, quantity, price, total, balanceBefore,
+            balanceAfter, initialBalance, positions, lots);
+    }
+
+    public long getSequence() { return sequence; }
+    public Type getType() { return type; }
+    public long getUserId() { return userId; }
+    /** Epoch milliseconds. */
+    public long getTimestamp() { return timestamp; }
+    public String getSymbol() { return symbol; }
+    public long getQuantity() { return quantity; }
+    public long getPrice() { return price; }
+    public long getTotal() { return total; }
+    public long getBalanceBefore() { return balanceBefore; }
+    public long getBalanceAfter() { return balanceAfter; }
+    public long getInitialBalance() { return initialBalance; }
+    public List<Position> getPositions() { return positions; }
+    public TaxLotRepository.LotChange getLots() { return lots; }
+
+    public boolean isTrade() {
+        return type == Type.BUY || type == Type.SELL;
+    }
+}
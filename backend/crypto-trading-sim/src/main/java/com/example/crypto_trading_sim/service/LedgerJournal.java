@@ -0,0 +1,353 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.TaxLotRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only log of {@link LedgerEvent}s plus the snapshots that let
+ * old log files go.
+ * <p>
+ * Log files are {@code journal-<first sequence>.log}; every record is
+ * {@code [length][crc32][payload]} and {@link #append} returns only after the
+ * record is written (and, with {@code fsync}, on disk). A torn record at the
+ * end of a file, left by a crash, fails its checksum and ends that file. Each
+ * start and each {@link #roll} opens a new file, so a file is never appended
+ * to after a crash. Snapshots are {@code snapshot-<sequence>.bin}: one
+ * {@link LedgerEvent.Type#OPEN} record per account, covering every event up to
+ * that sequence, written atomically; only the newest is kept.
+ */
+@Slf4j
+public class LedgerJournal implements Closeable {
+
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+    private static final Pattern JOURNAL_NAME = Pattern.compile("journal-(\\d{16})\\.log");
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d{16})\\.bin");
+
+    private final Path directory;
+    private final boolean fsync;
+    private final Timer appendTimer;
+    private FileChannel channel;
+    private long sequence;
+    private boolean closed;
+
+    public LedgerJournal(Path directory, boolean fsync, MeterRegistry meterRegistry) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.fsync = fsync;
+        this.appendTimer = Timer.builder("ledger.journal.append")
+            .description("Latency of one durable ledger journal append")
+            .register(meterRegistry);
+
+        // Only the newest log file can hold the last sequence; an empty one is named after it
+        long last = latestSnapshotSequence(directory);
+        List<Path> journals = files(directory, JOURNAL_NAME);
+        if (!journals.isEmpty()) {
+            Path newest = journals.get(journals.size() - 1);
+            long[] lastInFile = {sequenceOf(newest, JOURNAL_NAME) - 1};
+            readRecords(newest, event -> lastInFile[0] = event.getSequence());
+            last = Math.max(last, lastInFile[0]);
+        }
+        this.sequence = last;
+        this.channel = openFile(sequence + 1);
+    }
+
+    /**
+     * Assign the next sequence number, write the event and return it with
+     * that number.
+     */
+    public synchronized LedgerEvent append(LedgerEvent event) throws IOException {
+        if (closed) throw new IOException("Ledger journal is closed");
+        long start = System.nanoTime();
+        LedgerEvent sequenced = event.withSequence(sequence + 1);
+        ByteBuffer record = frame(encode(sequenced));
+        long position = channel.position();
+        try {
+            while (record.hasRemaining()) channel.write(record);
+            if (fsync) channel.force(false);
+        } catch (IOException e) {
+            // Cut off the partial record, or every later one would be unreadable
+            channel.truncate(position);
+            channel.position(position);
+            throw e;
+        }
+        sequence++;
+        appendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return sequenced;
+    }
+
+    /**
+     * Continue in a new file and return the last sequence number written to
+     * the old ones.
+     */
+    public synchronized long roll() throws IOException {
+        if (closed) throw new IOException("Ledger journal is closed");
+        channel.force(false);
+        channel.close();
+        channel = openFile(sequence + 1);
+        return sequence;
+    }
+
+    /**
+     * Continue numbering after {@code sequence} if the journal is behind it,
+     * as when the journal was lost but the database it feeds was not.
+     */
+    public synchronized void skipTo(long sequence) throws IOException {
+        if (sequence <= this.sequence) return;
+        this.sequence = sequence;
+        roll();
+    }
+
+    /** Last sequence number assigned. */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Hand every event after {@code afterSequence} to the consumer, in order.
+     */
+    public void replay(long afterSequence, Consumer<LedgerEvent> consumer) throws IOException {
+        List<Path> journals = files(directory, JOURNAL_NAME);
+        for (int i = 0; i < journals.size(); i++) {
+            // Skip files that end before the requested point
+            if (i + 1 < journals.size() && sequenceOf(journals.get(i + 1), JOURNAL_NAME) <= afterSequence + 1) continue;
+            readRecords(journals.get(i), event -> {
+                if (event.getSequence() > afterSequence) consumer.accept(event);
+            });
+        }
+    }
+
+    /**
+     * Delete the log files holding nothing after {@code sequence}. The file
+     * being written is never deleted.
+     */
+    public synchronized void deleteThrough(long sequence) throws IOException {
+        List<Path> journals = files(directory, JOURNAL_NAME);
+        for (int i = 0; i + 1 < journals.size(); i++) {
+            if (sequenceOf(journals.get(i + 1), JOURNAL_NAME) - 1 > sequence) break;
+            Files.deleteIfExists(journals.get(i));
+        }
+    }
+
+    /**
+     * Write a snapshot of the accounts as of {@code sequence} and remove
+     * older snapshots.
+     */
+    public void writeSnapshot(long sequence, Collection<LedgerEvent> accounts) throws IOException {
+        Path temp = Files.createTempFile(directory, "snapshot", ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            for (LedgerEvent account : accounts) {
+                ByteBuffer record = frame(encode(account));
+                while (record.hasRemaining()) out.write(record);
+            }
+            out.force(true);
+        }
+        Path target = directory.resolve(String.format("snapshot-%016d.bin", sequence));
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (Path older : files(directory, SNAPSHOT_NAME)) {
+            if (!older.equals(target)) Files.deleteIfExists(older);
+        }
+    }
+
+    /**
+     * Hand the accounts of the newest snapshot to the consumer and return the
+     * sequence it covers, or 0 if there is none.
+     */
+    public long loadSnapshot(Consumer<LedgerEvent> consumer) throws IOException {
+        List<Path> snapshots = files(directory, SNAPSHOT_NAME);
+        if (snapshots.isEmpty()) return 0;
+        Path latest = snapshots.get(snapshots.size() - 1);
+        readRecords(latest, consumer);
+        return sequenceOf(latest, SNAPSHOT_NAME);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        channel.force(false);
+        channel.close();
+    }
+
+    private FileChannel openFile(long firstSequence) throws IOException {
+        Path path = directory.resolve(String.format("journal-%016d.log", firstSequence));
+        // An existing file of this name holds no complete record: it is empty or torn
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static void readRecords(Path file, Consumer<LedgerEvent> consumer) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+        while (data.remaining() >= HEADER_SIZE) {
+            int length = data.getInt();
+            int checksum = data.getInt();
+            if (length <= 0 || length > data.remaining()) break;
+            byte[] payload = new byte[length];
+            data.get(payload);
+            if (checksum != crc(payload)) {
+                log.warn("Ledger journal {} ends in a torn record at offset {}", file.getFileName(),
+                    data.position() - length - HEADER_SIZE);
+                break;
+            }
+            consumer.accept(decode(payload));
+        }
+    }
+
+    private static ByteBuffer frame(byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt(crc(payload)).put(payload).flip();
+        return record;
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    static byte[] encode(LedgerEvent event) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(event.getType().ordinal());
+        out.writeLong(event.getSequence());
+        out.writeLong(event.getUserId());
+        out.writeLong(event.getTimestamp());
+        switch (event.getType()) {
+            case BUY, SELL -> {
+                out.writeUTF(event.getSymbol());
+                out.writeLong(event.getQuantity());
+                out.writeLong(event.getPrice());
+                out.writeLong(event.getTotal());
+                out.writeLong(event.getBalanceBefore());
+                out.writeLong(event.getBalanceAfter());
+                writeLots(out, event.getLots());
+            }
+            case RESET -> {
+                out.writeLong(event.getBalanceBefore());
+                out.writeLong(event.getBalanceAfter());
+            }
+            case OPEN -> {
+                out.writeLong(event.getInitialBalance());
+                out.writeLong(event.getBalanceAfter());
+                out.writeInt(event.getPositions().size());
+                for (LedgerEvent.Position position : event.getPositions()) {
+                    out.writeUTF(position.symbol());
+                    out.writeLong(position.quantity());
+                    out.writeLong(position.averagePrice());
+                    out.writeLong(position.updatedAt());
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static LedgerEvent decode(byte[] payload) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            LedgerEvent.Type type = LedgerEvent.Type.values()[in.readUnsignedByte()];
+            long sequence = in.readLong();
+            long userId = in.readLong();
+            long timestamp = in.readLong();
+            LedgerEvent event = switch (type) {
+                case BUY, SELL -> {
+                    String symbol = in.readUTF();
+                    LedgerEvent trade = LedgerEvent.trade(type, userId, symbol, in.readLong(), in.readLong(),
+                        in.readLong(), in.readLong(), in.readLong(), timestamp);
+                    yield trade.withLots(readLots(in, symbol));
+                }
+                case RESET -> {
+                    long before = in.readLong();
+                    yield LedgerEvent.reset(userId, before, in.readLong(), timestamp);
+                }
+                case OPEN -> {
+                    long initial = in.readLong();
+                    long balance = in.readLong();
+                    int count = in.readInt();
+                    List<LedgerEvent.Position> positions = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        positions.add(new LedgerEvent.Position(in.readUTF(), in.readLong(), in.readLong(), in.readLong()));
+                    }
+                    yield LedgerEvent.open(userId, initial, balance, positions, timestamp);
+                }
+            };
+            return event.withSequence(sequence);
+        } catch (IOException e) {
+            throw new IllegalStateException("Malformed ledger record", e);
+        }
+    }
+
+    private static void writeLots(DataOutputStream out, TaxLotRepository.LotChange lots) throws IOException {
+        out.writeBoolean(lots != null);
+        if (lots == null) return;
+        out.writeInt(lots.getClosedIds().size());
+        for (Long id : lots.getClosedIds()) out.writeLong(id);
+        out.writeInt(lots.getWritten().size());
+        for (TaxLotRepository.Lot lot : lots.getWritten()) {
+            out.writeLong(lot.getId());
+            out.writeLong(FixedPoint.of(lot.getQuantity(), FixedPoint.QUANTITY_SCALE));
+            out.writeLong(FixedPoint.of(lot.getPrice(), FixedPoint.PRICE_SCALE));
+        }
+        out.writeLong(FixedPoint.of(lots.getRealized(), FixedPoint.VALUE_SCALE));
+    }
+
+    private static TaxLotRepository.LotChange readLots(DataInputStream in, String symbol) throws IOException {
+        if (!in.readBoolean()) return null;
+        int closedCount = in.readInt();
+        List<Long> closedIds = new ArrayList<>(closedCount);
+        for (int i = 0; i < closedCount; i++) closedIds.add(in.readLong());
+        int writtenCount = in.readInt();
+        List<TaxLotRepository.Lot> written = new ArrayList<>(writtenCount);
+        for (int i = 0; i < writtenCount; i++) {
+            written.add(new TaxLotRepository.Lot(in.readLong(), symbol,
+                FixedPoint.toBigDecimal(in.readLong(), FixedPoint.QUANTITY_SCALE),
+                FixedPoint.toBigDecimal(in.readLong(), FixedPoint.PRICE_SCALE)));
+        }
+        return new TaxLotRepository.LotChange(symbol, closedIds, written,
+            FixedPoint.toBigDecimal(in.readLong(), FixedPoint.VALUE_SCALE));
+    }
+
+    private static long latestSnapshotSequence(Path directory) throws IOException {
+        List<Path> snapshots = files(directory, SNAPSHOT_NAME);
+        return snapshots.isEmpty() ? 0 : sequenceOf(snapshots.get(snapshots.size() - 1), SNAPSHOT_NAME);
+    }
+
+    private static List<Path> files(Path directory, Pattern name) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> name.matcher(file.getFileName().toString()).matches())
+                .sorted()
+                .toList();
+        }
+    }
+
+    private static long sequenceOf(Path file, Pattern name) {
+        Matcher matcher = name.matcher(file.getFileName().toString());
+        if (!matcher.matches()) throw new IllegalArgumentException("Not a ledger file: " + file);
+        return Long.parseLong(matcher.group(1));
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.crypto_trading_sim.service;
+
+import java.util.Arrays;
+
+/**
+ * One position's open tax lots, oldest first, as a ring buffer over parallel
+ * {@code long} arrays: lot id, quantity at {@link FixedPoint#QUANTITY_SCALE}
+ * and cost price at {@link FixedPoint#PRICE_SCALE}. Adding a lot is O(1);
+ * closing quantity from the oldest or newest end touches only the lots it
+ * consumes.
+ * <p>
+ * Not thread-safe; {@link TaxLotBook} confines each queue to its account's
+ * trade lock.
+ */
+final class LotQueue {
+
+    /** What closing a quantity did to the queue. */
+    static final class Closing {
+        /** Ids of lots consumed in full. */
+        final long[] closedIds;
+        /** Id of the lot left partly consumed or restated, or -1 if none. */
+        final long reducedId;
+        final long reducedQuantity;
+        final long reducedPrice;
+        /** Cost basis of the closed quantity, at {@link FixedPoint#VALUE_SCALE}. */
+        final long cost;
+
+        private Closing(long[] closedIds, long reducedId, long reducedQuantity, long reducedPrice, long cost) {
+            this.closedIds = closedIds;
+            this.reducedId = reducedId;
+            this.reducedQuantity = reducedQuantity;
+            this.reducedPrice = reducedPrice;
+            this.cost = cost;
+        }
+    }
+
+    private long[] ids = new long[4];
+    private long[] quantities = new long[4];
+    private long[] prices = new long[4];
+    private int head;
+    private int size;
+    private long quantity;
+
+    void add(long id, long quantity, long price) {
+        if (size == ids.length) grow();
+        int slot = (head + size) & (ids.length - 1);
+        ids[slot] = id;
+        quantities[slot] = quantity;
+        prices[slot] = price;
+        size++;
+        this.quantity = Math.addExact(this.quantity, quantity);
+    }
+
+    /**
+     * Close {@code amount} from the oldest lots ({@code newestFirst} false) or
+     * the newest. Quantity beyond what the lots hold is closed at no cost.
+     */
+    Closing close(long amount, boolean newestFirst) {
+        long[] closed = new long[4];
+        int closedCount = 0;
+        long cost = 0;
+        while (amount > 0 && size > 0) {
+            int slot = newestFirst ? (head + size - 1) & (ids.length - 1) : head;
+            long take = Math.min(amount, quantities[slot]);
+            cost = Math.addExact(cost, lotCost(take, prices[slot]));
+            amount -= take;
+            quantity -= take;
+            if (take < quantities[slot]) {
+                quantities[slot] -= take;
+                return new Closing(Arrays.copyOf(closed, closedCount), ids[slot], quantities[slot], prices[slot], cost);
+            }
+            if (closedCount == closed.length) closed = Arrays.copyOf(closed, closedCount * 2);
+            closed[closedCount++] = ids[slot];
+            if (!newestFirst) head = (head + 1) & (ids.length - 1);
+            size--;
+        }
+        return new Closing(Arrays.copyOf(closed, closedCount), -1, 0, 0, cost);
+    }
+
+    /**
+     * Close {@code amount} at the average cost of all lots. The lots are
+     * merged into the oldest one, restated at the average price, which the
+     * closing reports as reduced unless nothing is left.
+     */
+    Closing closeAverage(long amount) {
+        if (size == 0) return new Closing(new long[0], -1, 0, 0, 0);
+        long totalCost = 0;
+        for (int i = 0; i < size; i++) {
+            int slot = (head + i) & (ids.length - 1);
+            totalCost = Math.addExact(totalCost, lotCost(quantities[slot], prices[slot]));
+        }
+        long averagePrice = FixedPoint.divide(totalCost, FixedPoint.VALUE_SCALE, quantity, FixedPoint.QUANTITY_SCALE,
+            FixedPoint.PRICE_SCALE);
+        long taken = Math.min(amount, quantity);
+        long remaining = quantity - taken;
+        long firstId = ids[head];
+
+        long[] closed = new long[remaining > 0 ? size - 1 : size];
+        for (int i = remaining > 0 ? 1 : 0, c = 0; i < size; i++) {
+            closed[c++] = ids[(head + i) & (ids.length - 1)];
+        }
+        size = 0;
+        quantity = 0;
+        if (remaining == 0) return new Closing(closed, -1, 0, 0, totalCost);
+
+        add(firstId, remaining, averagePrice);
+        // What is left keeps its share of the cost, so the closed part gets the rest
+        long cost = Math.subtractExact(totalCost, lotCost(remaining, averagePrice));
+        return new Closing(closed, firstId, remaining, averagePrice, cost);
+    }
+
+    long quantity() {
+        return quantity;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Every lot id, oldest first. */
+    long[] ids() {
+        long[] all = new long[size];
+        for (int i = 0; i < size; i++) all[i] = ids[(head + i) & (ids.length - 1)];
+        return all;
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+        quantity = 0;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        long[] newIds = new long[capacity];
+        long[] newQuantities = new long[capacity];
+        long[] newPrices = new long[capacity];
+        for (int i = 0; i < size; i++) {
+            int slot = (head + i) & (ids.length - 1);
+            newIds[i] = ids[slot];
+            newQuantities[i] = quantities[slot];
+            newPrices[i] = prices[slot];
+        }
+        ids = newIds;
+        quantities = newQuantities;
+        prices = newPrices;
+        head = 0;
+    }
+
+    private static long lotCost(long quantity, long price) {
+        return FixedPoint.multiply(quantity, FixedPoint.QUANTITY_SCALE, price, FixedPoint.PRICE_SCALE,
+            FixedPoint.VALUE_SCALE);
+    }
+}
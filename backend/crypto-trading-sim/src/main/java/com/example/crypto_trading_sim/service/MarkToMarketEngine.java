@@ -0,0 +1,351 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.HoldingsRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Each tracked account's valuation, kept in memory and updated in place.
+ * <p>
+ * An account is tracked from the first time {@link SimpleTradingService}
+ * asks for it: its cash comes from the {@link AccountDirectory} and its
+ * positions from the {@link AccountLedger}, once. After that a tick re-marks
+ * only the positions in symbols whose price changed, found through an index
+ * of which accounts hold each symbol, and a trade reloads only the position
+ * it touched. Portfolio value is a running total adjusted by each re-marked
+ * position, so neither costs O(holdings). A position in a symbol without a
+ * price yet is marked at its average price. Realized P&L comes from the
+ * {@link TaxLotBook} as of the account's last trade; unrealized P&L is the
+ * rest of the total. The trade count is loaded with the account and kept
+ * running, so a summary never reads the trade history.
+ * <p>
+ * Accounts that have ever been streamed push their new summary on every
+ * change to their {@link #updates} stream, conflated per subscriber by
+ * {@link PriceStreamSubscribers}, and every change repositions the account
+ * on the {@link Leaderboard}. Tracked accounts stay tracked until restart.
+ * A tick that fails to apply is logged and skipped.
+ * <p>
+ * Loads, trades and resets of one account must come from one caller at a
+ * time (the service's account lock).
+ * <p>
+ * Metrics: {@code valuation.accounts} (gauge), {@code valuation.remarks}
+ * (counter, positions re-marked) and {@code valuation.tick} (timer).
+ */
+@Service
+@Slf4j
+public class MarkToMarketEngine {
+
+    private final AccountLedger ledger;
+    private final AccountDirectory accounts;
+    private final TaxLotBook taxLots;
+    private final Leaderboard leaderboard;
+    private final Supplier<PriceBook.Snapshot> snapshots;
+    private final PriceStreamSubscribers streamSubscribers;
+    private final Map<Long, Book> books = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> holders = new ConcurrentHashMap<>();
+    private final Map<String, KrakenApiService.CryptoPrice> marks = new ConcurrentHashMap<>();
+    private final Counter remarks;
+    private final Timer tickTimer;
+    private final Disposable subscription;
+
+    @Autowired
+    public MarkToMarketEngine(KrakenApiService krakenApiService, AccountLedger ledger, AccountDirectory accounts,
+                              TaxLotBook taxLots, Leaderboard leaderboard, PriceStreamSubscribers streamSubscribers,
+                              MeterRegistry meterRegistry) {
+        this(krakenApiService.startPriceStream(), krakenApiService::getPriceSnapshot, ledger, accounts, taxLots,
+            leaderboard, streamSubscribers, meterRegistry);
+    }
+
+    MarkToMarketEngine(Flux<List<KrakenApiService.CryptoPrice>> ticks, Supplier<PriceBook.Snapshot> snapshots,
+                       AccountLedger ledger, AccountDirectory accounts, TaxLotBook taxLots, Leaderboard leaderboard,
+                       PriceStreamSubscribers streamSubscribers, MeterRegistry meterRegistry) {
+        this.ledger = ledger;
+        this.accounts = accounts;
+        this.taxLots = taxLots;
+        this.leaderboard = leaderboard;
+        this.snapshots = snapshots;
+        this.streamSubscribers = streamSubscribers;
+        Gauge.builder("valuation.accounts", books, Map::size)
+            .description("Accounts whose valuation is kept up to date")
+            .register(meterRegistry);
+        this.remarks = Counter.builder("valuation.remarks")
+            .description("Positions re-marked to a new price")
+            .register(meterRegistry);
+        this.tickTimer = Timer.builder("valuation.tick")
+            .description("Time to re-mark the positions one tick moved")
+            .register(meterRegistry);
+        this.subscription = ticks.subscribe(this::onTick);
+    }
+
+    /** The account's current valuation, if it is tracked. */
+    Optional<SimpleTradingService.AccountSummary> summary(Long userId) {
+        Book book = books.get(userId);
+        return book == null ? Optional.empty() : Optional.of(book.summary());
+    }
+
+    /** Start tracking the account, if it is not already. */
+    void track(Long userId) {
+        if (books.containsKey(userId)) return;
+        AccountDirectory.Account account = accounts.get(userId);
+        List<HoldingsRepository.Holding> holdings = new ArrayList<>(ledger.holdings(userId));
+        // Oldest first, so the book's order matches the ledger's most-recent-first after reversal
+        Collections.reverse(holdings);
+        track(userId, account, holdings, taxLots.realized(userId), ledger.transactionCount(userId));
+    }
+
+    /**
+     * Start tracking the account from state read in bulk, holdings oldest
+     * first, if it is not already tracked.
+     */
+    void track(AccountDirectory.Account account, List<HoldingsRepository.Holding> holdings, BigDecimal realized,
+               int trades) {
+        if (books.containsKey(account.getId())) return;
+        track(account.getId(), account, holdings, FixedPoint.of(realized, FixedPoint.VALUE_SCALE), trades);
+    }
+
+    private void track(Long userId, AccountDirectory.Account account, List<HoldingsRepository.Holding> holdings,
+                       long realized, int trades) {
+        Book book = new Book(userId, account, realized, trades);
+        // Published before it is indexed, and filled under its lock: a tick that finds the account in the
+        // index waits for the book and re-marks it, and one that does not has already left its price for us
+        synchronized (book) {
+            books.put(userId, book);
+            for (HoldingsRepository.Holding holding : holdings) {
+                holders.computeIfAbsent(holding.getCryptoSymbol(), s -> ConcurrentHashMap.newKeySet()).add(userId);
+                book.position(holding.getCryptoSymbol(), Optional.of(holding), currentMark(holding.getCryptoSymbol()));
+            }
+            // Nothing streams it yet, so this only ranks it
+            book.publish();
+        }
+    }
+
+    /** Summary now, then on every change; the account must be tracked. */
+    Flux<SimpleTradingService.AccountSummary> updates(Long userId) {
+        Book book = books.get(userId);
+        if (book == null) throw new IllegalStateException("Account " + userId + " is not tracked");
+        return streamSubscribers.deliver("account", book.stream(), UnaryOperator.identity());
+    }
+
+    /** Reload the traded position and take the new cash balance, if the account is tracked. */
+    void onTrade(Long userId, String symbol, BigDecimal balanceAfter) {
+        Book book = books.get(userId);
+        if (book == null) return;
+        Optional<HoldingsRepository.Holding> holding = ledger.holding(userId, symbol)
+            .filter(h -> h.getQuantity().signum() > 0);
+        if (holding.isPresent()) {
+            holders.computeIfAbsent(symbol, s -> ConcurrentHashMap.newKeySet()).add(userId);
+        }
+        book.trade(symbol, holding, FixedPoint.of(balanceAfter, FixedPoint.VALUE_SCALE), taxLots.realized(userId),
+            currentMark(symbol));
+        if (holding.isEmpty()) {
+            Set<Long> ids = holders.get(symbol);
+            if (ids != null) ids.remove(userId);
+        }
+    }
+
+    void onReset(Long userId) {
+        Book book = books.get(userId);
+        if (book == null) return;
+        for (String symbol : book.reset()) {
+            Set<Long> ids = holders.get(symbol);
+            if (ids != null) ids.remove(userId);
+        }
+    }
+
+    public int getTrackedAccountCount() {
+        return books.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscription.dispose();
+    }
+
+    void onTick(List<KrakenApiService.CryptoPrice> prices) {
+        long start = System.nanoTime();
+        Set<Book> moved = new HashSet<>();
+        for (KrakenApiService.CryptoPrice price : prices) {
+            // One bad price must not end the subscription or hold up the other symbols
+            try {
+                mark(price, moved);
+            } catch (RuntimeException e) {
+                log.warn("Skipped {} tick in valuation: {}", price.getSymbol(), e.toString());
+            }
+        }
+        for (Book book : moved) {
+            try {
+                book.publish();
+            } catch (RuntimeException e) {
+                log.warn("Failed to publish valuation of account {}: {}", book.userId, e.toString());
+            }
+        }
+        tickTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void mark(KrakenApiService.CryptoPrice price, Set<Book> moved) {
+        // The price book republishes the same instance for a symbol that did not change
+        KrakenApiService.CryptoPrice previous = marks.put(price.getSymbol(), price);
+        if (previous == price) return;
+        if (previous != null && previous.getPriceUnits() == price.getPriceUnits()
+            && previous.getPriceScale() == price.getPriceScale()) return;
+        Set<Long> ids = holders.get(price.getSymbol());
+        if (ids == null) return;
+        for (Long userId : ids) {
+            Book book = books.get(userId);
+            if (book != null && book.mark(price)) moved.add(book);
+        }
+    }
+
+    private KrakenApiService.CryptoPrice currentMark(String symbol) {
+        KrakenApiService.CryptoPrice mark = marks.get(symbol);
+        return mark != null ? mark : snapshots.get().get(symbol);
+    }
+
+    /** One account's cash and marked positions. */
+    private final class Book {
+        private final long userId;
+        private final long initialBalance;
+        private long cash;
+        // Least recently traded first
+        private final LinkedHashMap<String, SimpleTradingService.PortfolioHoldingWithCurrentValue> positions =
+            new LinkedHashMap<>();
+        private long portfolioValue;
+        private long realized;
+        private int trades;
+        private Sinks.Many<SimpleTradingService.AccountSummary> sink;
+
+        private Book(long userId, AccountDirectory.Account account, long realized, int trades) {
+            this.userId = userId;
+            this.realized = realized;
+            this.trades = trades;
+            this.initialBalance = FixedPoint.of(account.getInitialBalance(), FixedPoint.VALUE_SCALE);
+            this.cash = FixedPoint.of(account.getBalance(), FixedPoint.VALUE_SCALE);
+        }
+
+        /** Re-mark the position in the price's symbol; false if the account has none. */
+        private synchronized boolean mark(KrakenApiService.CryptoPrice price) {
+            SimpleTradingService.PortfolioHoldingWithCurrentValue position = positions.get(price.getSymbol());
+            if (position == null) return false;
+            replace(price.getSymbol(), position, price);
+            remarks.increment();
+            return true;
+        }
+
+        private synchronized void trade(String symbol, Optional<HoldingsRepository.Holding> holding, long cash,
+                                        long realized, KrakenApiService.CryptoPrice mark) {
+            this.cash = cash;
+            this.realized = realized;
+            trades++;
+            SimpleTradingService.PortfolioHoldingWithCurrentValue old = positions.remove(symbol);
+            if (old != null) portfolioValue = Math.subtractExact(portfolioValue, old.getCurrentValueUnits());
+            position(symbol, holding, mark);
+            publish();
+        }
+
+        /** Back to the initial balance; returns the symbols that were held. */
+        private synchronized List<String> reset() {
+            List<String> held = new ArrayList<>(positions.keySet());
+            positions.clear();
+            portfolioValue = 0;
+            realized = 0;
+            trades = 0;
+            cash = initialBalance;
+            publish();
+            return held;
+        }
+
+        private synchronized void position(String symbol, Optional<HoldingsRepository.Holding> holding,
+                                           KrakenApiService.CryptoPrice mark) {
+            if (holding.isEmpty()) return;
+            long quantity = FixedPoint.of(holding.get().getQuantity(), FixedPoint.QUANTITY_SCALE);
+            long avgPrice = FixedPoint.of(holding.get().getAveragePrice(), FixedPoint.PRICE_SCALE);
+            LocalDateTime updatedAt = holding.get().getUpdatedAt();
+            SimpleTradingService.PortfolioHolding base = new SimpleTradingService.PortfolioHolding(symbol,
+                quantity, avgPrice, FixedPoint.multiply(quantity, FixedPoint.QUANTITY_SCALE, avgPrice,
+                    FixedPoint.PRICE_SCALE, FixedPoint.VALUE_SCALE),
+                updatedAt != null ? updatedAt : LocalDateTime.now());
+            SimpleTradingService.PortfolioHoldingWithCurrentValue position = mark != null
+                ? new SimpleTradingService.PortfolioHoldingWithCurrentValue(base, mark.getPriceUnits(),
+                    mark.getPriceScale())
+                : new SimpleTradingService.PortfolioHoldingWithCurrentValue(base, avgPrice, FixedPoint.PRICE_SCALE);
+            positions.put(symbol, position);
+            portfolioValue = Math.addExact(portfolioValue, position.getCurrentValueUnits());
+        }
+
+        private void replace(String symbol, SimpleTradingService.PortfolioHoldingWithCurrentValue old,
+                             KrakenApiService.CryptoPrice price) {
+            // A new price is not a trade, so lastUpdated stays when the position last traded
+            SimpleTradingService.PortfolioHolding base = new SimpleTradingService.PortfolioHolding(symbol,
+                old.getQuantityUnits(), old.getAvgPriceUnits(), old.getTotalInvestedUnits(), old.getLastUpdated());
+            SimpleTradingService.PortfolioHoldingWithCurrentValue position =
+                new SimpleTradingService.PortfolioHoldingWithCurrentValue(base, price.getPriceUnits(),
+                    price.getPriceScale());
+            // Same key, so the trade order of positions is kept
+            positions.put(symbol, position);
+            portfolioValue = Math.addExact(Math.subtractExact(portfolioValue, old.getCurrentValueUnits()),
+                position.getCurrentValueUnits());
+        }
+
+        private synchronized SimpleTradingService.AccountSummary summary() {
+            SimpleTradingService.AccountSummary summary = new SimpleTradingService.AccountSummary();
+            summary.setBalance(FixedPoint.toBigDecimal(cash, FixedPoint.VALUE_SCALE));
+            summary.setInitialBalance(FixedPoint.toBigDecimal(initialBalance, FixedPoint.VALUE_SCALE));
+            List<SimpleTradingService.PortfolioHoldingWithCurrentValue> holdings = new ArrayList<>(positions.values());
+            Collections.reverse(holdings);
+            summary.setHoldings(holdings);
+            summary.setTotalPortfolioValue(FixedPoint.toBigDecimal(portfolioValue, FixedPoint.VALUE_SCALE));
+
+            long totalPnL = Math.subtractExact(Math.addExact(cash, portfolioValue), initialBalance);
+            summary.setTotalPnL(FixedPoint.toBigDecimal(totalPnL, FixedPoint.VALUE_SCALE));
+            summary.setTotalPnLPercent(FixedPoint.toBigDecimal(
+                initialBalance > 0 ? FixedPoint.percent(totalPnL, initialBalance) : 0, FixedPoint.PERCENT_SCALE));
+            summary.setRealizedPnL(FixedPoint.toBigDecimal(realized, FixedPoint.VALUE_SCALE));
+            summary.setUnrealizedPnL(FixedPoint.toBigDecimal(Math.subtractExact(totalPnL, realized),
+                FixedPoint.VALUE_SCALE));
+            summary.setTransactionCount(trades);
+            return summary;
+        }
+
+        /**
+         * Latest summary followed by later ones. Emitting under the book's
+         * lock keeps summaries in order and lets the subscriber pick up the
+         * current one with nothing missed in between.
+         */
+        private synchronized Flux<SimpleTradingService.AccountSummary> stream() {
+            if (sink == null) {
+                sink = Sinks.many().replay().latest();
+                sink.tryEmitNext(summary());
+            }
+            return sink.asFlux();
+        }
+
+        private synchronized void publish() {
+            leaderboard.update(userId, Math.addExact(cash, portfolioValue), initialBalance);
+            if (sink != null) sink.tryEmitNext(summary());
+        }
+    }
+}
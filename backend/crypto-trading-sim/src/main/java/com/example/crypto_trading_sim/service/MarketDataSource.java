@@ -0,0 +1,50 @@
+package com.example.crypto_trading_sim.service;
+
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Where prices come from. {@link KrakenApiService} owns the price book and
+ * the stream; a source only produces {@link KrakenApiService.CryptoPrice}
+ * updates, either by pushing them to the sink handed to {@link #start} or
+ * on demand through {@link #fetchAll()}.
+ * <p>
+ * Implementations: {@link KrakenMarketDataSource} (live),
+ * {@link SyntheticMarketDataSource} (random walk) and
+ * {@link ReplayMarketDataSource} (recorded capture file).
+ */
+public interface MarketDataSource {
+
+    /**
+     * Symbols that entered and left the set a source publishes.
+     */
+    record UniverseChange(List<String> added, List<String> removed) {}
+
+    /**
+     * Start pushing updates to {@code sink}. Each call carries the symbols that
+     * changed; the sink may be called from any single thread at a time.
+     */
+    void start(Consumer<List<KrakenApiService.CryptoPrice>> sink);
+
+    /**
+     * Register for changes to the published symbol set, before {@link #start}.
+     * Sources with a fixed set never call the listener.
+     */
+    default void onUniverseChange(Consumer<UniverseChange> listener) {}
+
+    void stop();
+
+    /**
+     * True while pushed updates are current on their own, so callers never
+     * need {@link #fetchAll()} and no polling is required.
+     */
+    boolean isLive();
+
+    /**
+     * Fetch every price on demand. Push-only sources return their latest view
+     * or an error.
+     */
+    Mono<List<KrakenApiService.CryptoPrice>> fetchAll();
+}
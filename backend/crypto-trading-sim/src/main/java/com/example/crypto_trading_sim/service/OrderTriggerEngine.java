@@ -0,0 +1,320 @@
+package com.example.crypto_trading_sim.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resting limit, stop and take-profit orders, filled by price ticks.
+ * <p>
+ * Each symbol's open orders sit in a {@link TriggerBook} keyed by trigger
+ * price, so a tick only touches the orders whose threshold it crossed and
+ * evaluating it costs O(log n + triggered) per symbol, not O(open orders).
+ * A limit buy or stop sell (stop-loss) triggers when the price falls to its
+ * trigger; a limit sell, stop buy or take-profit (always a sell) when it
+ * rises to it. A triggered order is filled through
+ * {@link SimpleTradingService} at the price of the tick that crossed it,
+ * on a pool of {@code orders.fill-threads} threads so the tick path never
+ * waits on the database; the account lock keeps each account's fills from
+ * interleaving. A fill that fails its funds or holdings check, or finds
+ * {@code orders.fill-queue} fills already waiting, leaves the order rejected.
+ * An order whose trigger the last price has already crossed fills at once.
+ * A tick that fails to evaluate is logged and skipped.
+ * <p>
+ * Orders live in memory only; a restart drops them. The most recent
+ * {@value #CLOSED_ORDERS_KEPT} closed orders stay queryable.
+ * <p>
+ * Metrics: {@code orders.open} (gauge), {@code orders.triggered},
+ * {@code orders.filled}, {@code orders.rejected} (counters) and
+ * {@code orders.trigger.evaluation} (timer, per tick).
+ */
+@Service
+@Slf4j
+public class OrderTriggerEngine {
+
+    static final int CLOSED_ORDERS_KEPT = 10_000;
+
+    public enum OrderType { LIMIT, STOP, TAKE_PROFIT }
+
+    public enum OrderStatus { OPEN, TRIGGERED, FILLED, REJECTED, CANCELLED }
+
+    /** Fills a triggered order; {@link SimpleTradingService}'s trade path outside tests. */
+    @FunctionalInterface
+    interface Trader {
+        SimpleTradingService.TradeRecord execute(Long userId, String symbol, String type, BigDecimal quantity,
+                                                 BigDecimal price);
+    }
+
+    /**
+     * Quantity at {@link FixedPoint#QUANTITY_SCALE}, prices at
+     * {@link FixedPoint#PRICE_SCALE}; the {@link BigDecimal} getters are the
+     * JSON boundary.
+     */
+    public static class Order {
+        private final long id;
+        private final Long userId;
+        private final String symbol;
+        private final String side;
+        private final OrderType type;
+        private final long quantity;
+        private final long triggerPrice;
+        private final LocalDateTime createdAt;
+        private volatile OrderStatus status = OrderStatus.OPEN;
+        private volatile long fillPrice;
+        private volatile String reason;
+
+        Order(long id, Long userId, String symbol, String side, OrderType type, long quantity, long triggerPrice) {
+            this.id = id;
+            this.userId = userId;
+            this.symbol = symbol;
+            this.side = side;
+            this.type = type;
+            this.quantity = quantity;
+            this.triggerPrice = triggerPrice;
+            this.createdAt = LocalDateTime.now();
+        }
+
+        /** True if the order triggers when the price rises to its trigger price. */
+        boolean isRising() {
+            boolean buy = "BUY".equals(side);
+            return type == OrderType.STOP ? buy : !buy;
+        }
+
+        public long getId() { return id; }
+        public Long getUserId() { return userId; }
+        public String getSymbol() { return symbol; }
+        public String getSide() { return side; }
+        public OrderType getType() { return type; }
+        public BigDecimal getQuantity() { return FixedPoint.toBigDecimal(quantity, FixedPoint.QUANTITY_SCALE); }
+        public BigDecimal getTriggerPrice() { return FixedPoint.toBigDecimal(triggerPrice, FixedPoint.PRICE_SCALE); }
+        public LocalDateTime getCreatedAt() { return createdAt; }
+        public OrderStatus getStatus() { return status; }
+        /** Null until triggered. */
+        public BigDecimal getFillPrice() {
+            return status == OrderStatus.OPEN || status == OrderStatus.CANCELLED
+                ? null : FixedPoint.toBigDecimal(fillPrice, FixedPoint.PRICE_SCALE);
+        }
+        /** Why the fill was rejected, if it was. */
+        public String getReason() { return reason; }
+    }
+
+    private final Trader trader;
+    private final Executor fills;
+    private final Map<String, TriggerBook<Order>> books = new ConcurrentHashMap<>();
+    private final Map<Long, Order> open = new ConcurrentHashMap<>();
+    private final Map<Long, Order> closed = new LinkedHashMap<>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Order> eldest) {
+            return size() > CLOSED_ORDERS_KEPT;
+        }
+    };
+    private final AtomicLong ids = new AtomicLong();
+    private final Counter triggered;
+    private final Counter filled;
+    private final Counter rejected;
+    private final Timer evaluation;
+    private final Disposable subscription;
+
+    @Autowired
+    public OrderTriggerEngine(KrakenApiService krakenApiService, SimpleTradingService tradingService,
+                              MeterRegistry meterRegistry,
+                              @Value("${orders.fill-threads:4}") int fillThreads,
+                              @Value("${orders.fill-queue:10000}") int fillQueue) {
+        this(krakenApiService.startPriceStream(), tradingService::executeTrade, fillPool(fillThreads, fillQueue),
+            meterRegistry);
+    }
+
+    OrderTriggerEngine(Flux<List<KrakenApiService.CryptoPrice>> ticks, Trader trader, Executor fills,
+                       MeterRegistry meterRegistry) {
+        this.trader = trader;
+        this.fills = fills;
+        Gauge.builder("orders.open", open, Map::size)
+            .description("Resting orders waiting for their trigger price")
+            .register(meterRegistry);
+        this.triggered = Counter.builder("orders.triggered").register(meterRegistry);
+        this.filled = Counter.builder("orders.filled").register(meterRegistry);
+        this.rejected = Counter.builder("orders.rejected")
+            .description("Triggered orders whose fill failed its funds or holdings check")
+            .register(meterRegistry);
+        this.evaluation = Timer.builder("orders.trigger.evaluation")
+            .description("Time to find and hand off the orders one tick triggers")
+            .register(meterRegistry);
+        this.subscription = ticks.subscribe(this::onTick);
+    }
+
+    public Order place(Long userId, String symbol, String side, String type, BigDecimal quantity,
+                       BigDecimal triggerPrice) {
+        String normalizedSide = side == null ? "" : side.toUpperCase();
+        if (!"BUY".equals(normalizedSide) && !"SELL".equals(normalizedSide)) {
+            throw new IllegalArgumentException("Invalid trade type: " + side);
+        }
+        OrderType orderType = parseType(type);
+        if (orderType == OrderType.TAKE_PROFIT && "BUY".equals(normalizedSide)) {
+            throw new IllegalArgumentException("Take-profit orders must be sells");
+        }
+        long quantityUnits = FixedPoint.of(quantity, FixedPoint.QUANTITY_SCALE);
+        long priceUnits = FixedPoint.of(triggerPrice, FixedPoint.PRICE_SCALE);
+        if (quantityUnits <= 0 || priceUnits <= 0) {
+            throw new IllegalArgumentException("Order quantity and price must be positive");
+        }
+
+        Order order = new Order(ids.incrementAndGet(), userId, symbol.toUpperCase(), normalizedSide, orderType,
+            quantityUnits, priceUnits);
+        open.put(order.getId(), order);
+        TriggerBook<Order> book = book(order.getSymbol());
+        if (!book.add(priceUnits, order.isRising(), order)) {
+            // The market is already through the trigger
+            fire(order, book.lastPrice());
+        }
+        return order;
+    }
+
+    public Order cancel(Long userId, long orderId) {
+        Order order = open.get(orderId);
+        if (order == null || !order.getUserId().equals(userId)) {
+            throw new RuntimeException("No open order with id " + orderId);
+        }
+        if (!books.get(order.getSymbol()).remove(order.triggerPrice, order.isRising(), order)) {
+            throw new RuntimeException("Order " + orderId + " has already triggered");
+        }
+        open.remove(orderId);
+        order.status = OrderStatus.CANCELLED;
+        remember(order);
+        return order;
+    }
+
+    /** The user's open orders, oldest first. */
+    public List<Order> openOrders(Long userId) {
+        return open.values().stream()
+            .filter(order -> order.getUserId().equals(userId))
+            .sorted(Comparator.comparingLong(Order::getId))
+            .toList();
+    }
+
+    public Optional<Order> findOrder(Long userId, long orderId) {
+        Order order = open.get(orderId);
+        if (order == null) {
+            synchronized (closed) {
+                order = closed.get(orderId);
+            }
+        }
+        return Optional.ofNullable(order).filter(found -> found.getUserId().equals(userId));
+    }
+
+    public int getOpenOrderCount() {
+        return open.size();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        subscription.dispose();
+        if (fills instanceof ExecutorService executor) {
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    void onTick(List<KrakenApiService.CryptoPrice> prices) {
+        long start = System.nanoTime();
+        for (KrakenApiService.CryptoPrice price : prices) {
+            // One bad price must not end the subscription or hold up the other symbols
+            try {
+                // Every symbol gets a book, so an order placed later knows the last price
+                TriggerBook<Order> book = book(price.getSymbol());
+                long units = FixedPoint.rescale(price.getPriceUnits(), price.getPriceScale(), FixedPoint.PRICE_SCALE);
+                book.cross(units, order -> fire(order, units));
+            } catch (RuntimeException e) {
+                log.warn("Skipped {} tick in trigger evaluation: {}", price.getSymbol(), e.toString());
+            }
+        }
+        evaluation.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void fire(Order order, long price) {
+        open.remove(order.getId());
+        order.fillPrice = price;
+        order.status = OrderStatus.TRIGGERED;
+        remember(order);
+        triggered.increment();
+        try {
+            fills.execute(() -> fill(order, price));
+        } catch (RejectedExecutionException e) {
+            reject(order, "Too many fills pending");
+        }
+    }
+
+    private void fill(Order order, long price) {
+        try {
+            trader.execute(order.getUserId(), order.getSymbol(), order.getSide(),
+                FixedPoint.toBigDecimal(order.quantity, FixedPoint.QUANTITY_SCALE),
+                FixedPoint.toBigDecimal(price, FixedPoint.PRICE_SCALE));
+            order.status = OrderStatus.FILLED;
+            filled.increment();
+        } catch (RuntimeException e) {
+            reject(order, e.getMessage());
+        }
+    }
+
+    private void reject(Order order, String reason) {
+        order.reason = reason;
+        order.status = OrderStatus.REJECTED;
+        rejected.increment();
+        log.info("{} order {} for {} rejected at fill: {}", order.getType(), order.getId(), order.getSymbol(),
+            reason);
+    }
+
+    private TriggerBook<Order> book(String symbol) {
+        TriggerBook<Order> book = books.get(symbol);
+        return book != null ? book : books.computeIfAbsent(symbol, s -> new TriggerBook<>());
+    }
+
+    private void remember(Order order) {
+        synchronized (closed) {
+            closed.put(order.getId(), order);
+        }
+    }
+
+    private static ExecutorService fillPool(int threads, int queue) {
+        if (threads < 1 || queue < 1) throw new IllegalArgumentException("Fill threads and queue must be positive");
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queue),
+            runnable -> {
+                Thread thread = new Thread(runnable, "order-fills-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    private static OrderType parseType(String type) {
+        try {
+            return OrderType.valueOf(type.toUpperCase().replace('-', '_'));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid order type: " + type);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.crypto_trading_sim.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Latest price per symbol, published as immutable versioned snapshots.
+ * <p>
+ * The writer builds a new {@link Snapshot} once per tick and swaps it in with
+ * a single volatile write; readers just dereference {@link #snapshot()} and
+ * never copy or lock. Published {@link KrakenApiService.CryptoPrice} instances
+ * must not be mutated afterwards.
+ */
+public class PriceBook {
+
+    public static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(0, Map.of(), List.of(), System.nanoTime(), false);
+
+        private final long version;
+        private final Map<String, KrakenApiService.CryptoPrice> bySymbol;
+        private final List<KrakenApiService.CryptoPrice> prices;
+        private final long publishedAt;
+        private final boolean restored;
+
+        private Snapshot(long version, Map<String, KrakenApiService.CryptoPrice> bySymbol,
+                         List<KrakenApiService.CryptoPrice> prices, long publishedAt, boolean restored) {
+            this.version = version;
+            this.bySymbol = bySymbol;
+            this.prices = prices;
+            this.publishedAt = publishedAt;
+            this.restored = restored;
+        }
+
+        public long getVersion() { return version; }
+        public boolean isEmpty() { return prices.isEmpty(); }
+        public int size() { return prices.size(); }
+
+        /** Price for the symbol, or {@code null} if it is not in this snapshot. */
+        public KrakenApiService.CryptoPrice get(String symbol) { return bySymbol.get(symbol); }
+
+        /** All prices in first-seen order; the list is unmodifiable. */
+        public List<KrakenApiService.CryptoPrice> getPrices() { return prices; }
+
+        public boolean isNewerThan(long seenVersion) { return version > seenVersion; }
+
+        /** Time since this snapshot was published. */
+        public Duration getAge() { return Duration.ofNanos(System.nanoTime() - publishedAt); }
+
+        /** True until the first live update after {@link PriceBook#restore}. */
+        public boolean isRestored() { return restored; }
+    }
+
+    private volatile Snapshot current = Snapshot.EMPTY;
+
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    public long getVersion() {
+        return current.version;
+    }
+
+    public boolean hasChangedSince(long seenVersion) {
+        return current.version > seenVersion;
+    }
+
+    /**
+     * Merge the updated prices into the current snapshot and publish the result
+     * under the next version. Symbols keep their existing position; new ones
+     * are appended.
+     */
+    public synchronized Snapshot publish(Collection<KrakenApiService.CryptoPrice> updates) {
+        if (updates.isEmpty()) return current;
+
+        Snapshot previous = current;
+        Map<String, KrakenApiService.CryptoPrice> bySymbol = new LinkedHashMap<>();
+        for (KrakenApiService.CryptoPrice price : previous.prices) {
+            bySymbol.put(price.getSymbol(), price);
+        }
+        for (KrakenApiService.CryptoPrice price : updates) {
+            bySymbol.put(price.getSymbol(), price);
+        }
+        return swap(previous.version + 1, bySymbol, System.nanoTime(), false);
+    }
+
+    /**
+     * Drop the symbols and publish the result under the next version, or
+     * return the current snapshot if none of them were present.
+     */
+    public synchronized Snapshot remove(Collection<String> symbols) {
+        Snapshot previous = current;
+        Map<String, KrakenApiService.CryptoPrice> bySymbol = new LinkedHashMap<>();
+        for (KrakenApiService.CryptoPrice price : previous.prices) {
+            bySymbol.put(price.getSymbol(), price);
+        }
+        if (!bySymbol.keySet().removeAll(symbols)) return previous;
+        return swap(previous.version + 1, bySymbol, previous.publishedAt, previous.restored);
+    }
+
+    /**
+     * Publish prices recovered from before a restart, such as the tick journal.
+     * The snapshot is dated by its newest price instead of now, so its age
+     * shows how stale the data really is.
+     */
+    public synchronized Snapshot restore(Collection<KrakenApiService.CryptoPrice> recovered) {
+        if (recovered.isEmpty()) return current;
+
+        Snapshot previous = current;
+        Map<String, KrakenApiService.CryptoPrice> bySymbol = new LinkedHashMap<>();
+        LocalDateTime newest = LocalDateTime.MIN;
+        for (KrakenApiService.CryptoPrice price : previous.prices) {
+            bySymbol.put(price.getSymbol(), price);
+        }
+        for (KrakenApiService.CryptoPrice price : recovered) {
+            // Never replace a live price with a recovered one
+            bySymbol.putIfAbsent(price.getSymbol(), price);
+            if (price.getLastUpdated().isAfter(newest)) newest = price.getLastUpdated();
+        }
+        long ageNanos = Math.max(0, Duration.between(newest, LocalDateTime.now()).toNanos());
+        return swap(previous.version + 1, bySymbol, System.nanoTime() - ageNanos, true);
+    }
+
+    private Snapshot swap(long version, Map<String, KrakenApiService.CryptoPrice> ordered, long publishedAt,
+                          boolean restored) {
+        List<KrakenApiService.CryptoPrice> prices = Collections.unmodifiableList(new ArrayList<>(ordered.values()));
+        Snapshot next = new Snapshot(version, Collections.unmodifiableMap(new HashMap<>(ordered)), prices,
+            publishedAt, restored);
+        current = next;
+        return next;
+    }
+}
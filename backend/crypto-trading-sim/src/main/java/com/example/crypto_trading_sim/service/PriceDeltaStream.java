@@ -0,0 +1,191 @@
+package com.example.crypto_trading_sim.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Delta-encoded price stream. A subscriber first receives a full
+ * {@code snapshot} message, then {@code delta} messages carrying only the
+ * fields that changed per symbol:
+ * <pre>
+ * {"type":"snapshot","seq":41,"prices":[{...}, ...]}
+ * {"type":"delta","seq":42,"prev":41,"changes":[{"symbol":"BTC","price":106962.1}],"removed":[]}
+ * </pre>
+ * {@code seq} is the {@link PriceBook} version. Deltas carry absolute field
+ * values covering everything since {@code prev}, so a client may apply any
+ * delta whose {@code prev} is at most the last {@code seq} it applied. A
+ * {@code prev} beyond that means updates were missed, and the client should
+ * fetch {@link #snapshotFrame()} (or reconnect) to resync. Frames whose
+ * {@code seq} is not newer than the last one applied can be ignored. Every
+ * frame is encoded once and shared by all subscribers.
+ * <p>
+ * A subscriber that falls behind has its pending delta conflated: when a
+ * delta had to be dropped, the next frame it gets is the current snapshot
+ * instead, so it never sees a gap.
+ */
+@Service
+@Slf4j
+public class PriceDeltaStream {
+
+    private record Frame(long seq, byte[] bytes) {}
+
+    private final ObjectMapper objectMapper;
+    private final Supplier<PriceBook.Snapshot> snapshots;
+    private final PriceStreamSubscribers streamSubscribers;
+    private final Flux<Frame> deltas;
+    private PriceBook.Snapshot lastEncoded;
+    private volatile Frame snapshotFrame = new Frame(-1, new byte[0]);
+
+    @Autowired
+    public PriceDeltaStream(KrakenApiService krakenApiService, ObjectMapper objectMapper,
+                            PriceStreamSubscribers streamSubscribers) {
+        this(krakenApiService.startPriceStream(), krakenApiService::getPriceSnapshot, objectMapper, streamSubscribers);
+    }
+
+    PriceDeltaStream(Flux<List<KrakenApiService.CryptoPrice>> ticks, Supplier<PriceBook.Snapshot> snapshots,
+                     ObjectMapper objectMapper, PriceStreamSubscribers streamSubscribers) {
+        this.objectMapper = objectMapper;
+        this.snapshots = snapshots;
+        this.streamSubscribers = streamSubscribers;
+        this.lastEncoded = snapshots.get();
+        // Re-baseline whenever the first subscriber (re)connects the shared encoder
+        this.deltas = Flux.defer(() -> {
+                rebaseline();
+                return ticks;
+            })
+            .concatMapIterable(tick -> encodeDelta())
+            .share();
+    }
+
+    /**
+     * Snapshot frame followed by every later delta frame.
+     */
+    public Flux<byte[]> frames() {
+        return Flux.defer(() -> {
+            Frame snapshot = currentSnapshotFrame();
+            Flux<byte[]> later = deltas
+                .filter(delta -> delta.seq() > snapshot.seq())
+                .map(Frame::bytes);
+            return streamSubscribers.deliver("delta", later, dropped -> snapshotFrame())
+                .startWith(snapshot.bytes());
+        });
+    }
+
+    /**
+     * Full snapshot message for the current price book version, for resync after a gap.
+     */
+    public byte[] snapshotFrame() {
+        return currentSnapshotFrame().bytes();
+    }
+
+    private Frame currentSnapshotFrame() {
+        PriceBook.Snapshot snapshot = snapshots.get();
+        Frame frame = snapshotFrame;
+        if (frame.seq() != snapshot.getVersion()) {
+            frame = new Frame(snapshot.getVersion(), encodeSnapshot(snapshot));
+            snapshotFrame = frame;
+        }
+        return frame;
+    }
+
+    private synchronized void rebaseline() {
+        lastEncoded = snapshots.get();
+    }
+
+    private synchronized List<Frame> encodeDelta() {
+        PriceBook.Snapshot previous = lastEncoded;
+        PriceBook.Snapshot current = snapshots.get();
+        if (!current.isNewerThan(previous.getVersion())) return List.of();
+        lastEncoded = current;
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+                json.writeStartObject();
+                json.writeStringField("type", "delta");
+                json.writeNumberField("seq", current.getVersion());
+                json.writeNumberField("prev", previous.getVersion());
+                json.writeArrayFieldStart("changes");
+                for (KrakenApiService.CryptoPrice price : current.getPrices()) {
+                    KrakenApiService.CryptoPrice before = previous.get(price.getSymbol());
+                    if (before == null || before.getPriceScale() != price.getPriceScale()) {
+                        json.writeObject(price);
+                    } else if (before != price) {
+                        writeChangedFields(json, before, price);
+                    }
+                }
+                json.writeEndArray();
+                json.writeArrayFieldStart("removed");
+                for (KrakenApiService.CryptoPrice price : previous.getPrices()) {
+                    if (current.get(price.getSymbol()) == null) json.writeString(price.getSymbol());
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+            return List.of(new Frame(current.getVersion(), out.toByteArray()));
+        } catch (IOException e) {
+            log.warn("Failed to encode price delta {}: {}", current.getVersion(), e.getMessage());
+            return List.of();
+        }
+    }
+
+    private void writeChangedFields(JsonGenerator json, KrakenApiService.CryptoPrice before,
+                                    KrakenApiService.CryptoPrice after) throws IOException {
+        boolean started = false;
+        started = writeIfChanged(json, started, after, "price",
+            before.getPriceUnits(), after.getPriceUnits(), after.getPriceScale());
+        started = writeIfChanged(json, started, after, "change24h",
+            before.getChange24hUnits(), after.getChange24hUnits(), after.getPriceScale());
+        started = writeIfChanged(json, started, after, "change24hPercent",
+            before.getChange24hPercentUnits(), after.getChange24hPercentUnits(), FixedPoint.PERCENT_SCALE);
+        started = writeIfChanged(json, started, after, "volume24h",
+            before.getVolume24hUnits(), after.getVolume24hUnits(), FixedPoint.QUANTITY_SCALE);
+        started = writeIfChanged(json, started, after, "high24h",
+            before.getHigh24hUnits(), after.getHigh24hUnits(), after.getPriceScale());
+        started = writeIfChanged(json, started, after, "low24h",
+            before.getLow24hUnits(), after.getLow24hUnits(), after.getPriceScale());
+        if (started) {
+            json.writeFieldName("lastUpdated");
+            objectMapper.writeValue(json, after.getLastUpdated());
+            json.writeEndObject();
+        }
+    }
+
+    private boolean writeIfChanged(JsonGenerator json, boolean started, KrakenApiService.CryptoPrice price,
+                                   String field, long before, long after, int scale) throws IOException {
+        if (before == after) return started;
+        if (!started) {
+            json.writeStartObject();
+            json.writeStringField("symbol", price.getSymbol());
+        }
+        json.writeFieldName(field);
+        json.writeNumber(FixedPoint.toBigDecimal(after, scale));
+        return true;
+    }
+
+    private byte[] encodeSnapshot(PriceBook.Snapshot snapshot) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+                json.writeStartObject();
+                json.writeStringField("type", "snapshot");
+                json.writeNumberField("seq", snapshot.getVersion());
+                json.writeFieldName("prices");
+                objectMapper.writeValue(json, snapshot.getPrices());
+                json.writeEndObject();
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode price snapshot: " + e.getMessage(), e);
+        }
+    }
+}
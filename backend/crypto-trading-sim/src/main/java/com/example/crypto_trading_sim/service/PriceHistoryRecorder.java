@@ -0,0 +1,163 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.PriceHistoryRepository;
+import com.example.crypto_trading_sim.repository.PriceHistoryRepository.PriceTick;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Records every price change into {@code price_history} without ever blocking
+ * the tick path on the database.
+ * <p>
+ * Ticks are offered to a bounded queue (a full queue drops the tick and counts
+ * it). A single background writer drains the queue and flushes a JDBC batch
+ * once {@code price.history.batch-size} ticks are waiting or
+ * {@code price.history.flush-interval} has passed since the last flush.
+ * <p>
+ * Metrics: {@code price.history.queue.depth} (gauge),
+ * {@code price.history.batch.size} (summary), {@code price.history.flush}
+ * (timer), {@code price.history.written} and {@code price.history.dropped}
+ * (counters).
+ */
+@Service
+@Slf4j
+public class PriceHistoryRecorder {
+
+    private static final String SOURCE = "kraken";
+
+    private final Consumer<List<PriceTick>> writer;
+    private final BlockingQueue<PriceTick> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Map<String, KrakenApiService.CryptoPrice> lastRecorded = new HashMap<>();
+    private final DistributionSummary batchSizes;
+    private final Timer flushTimer;
+    private final Counter written;
+    private final Counter dropped;
+    private final Thread writerThread;
+    private final Disposable subscription;
+    private volatile boolean running = true;
+
+    @Autowired
+    public PriceHistoryRecorder(KrakenApiService krakenApiService, PriceHistoryRepository priceHistoryRepository,
+                                MeterRegistry meterRegistry,
+                                @Value("${price.history.queue-capacity:10000}") int queueCapacity,
+                                @Value("${price.history.batch-size:500}") int batchSize,
+                                @Value("${price.history.flush-interval:1s}") Duration flushInterval) {
+        this(krakenApiService.startPriceStream(), ticks -> priceHistoryRepository.insertBatch(ticks, SOURCE),
+            meterRegistry, queueCapacity, batchSize, flushInterval);
+    }
+
+    PriceHistoryRecorder(Flux<List<KrakenApiService.CryptoPrice>> prices, Consumer<List<PriceTick>> writer,
+                         MeterRegistry meterRegistry, int queueCapacity, int batchSize, Duration flushInterval) {
+        this.writer = writer;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+
+        Gauge.builder("price.history.queue.depth", queue, BlockingQueue::size)
+            .description("Price ticks waiting to be written")
+            .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("price.history.batch.size")
+            .description("Rows per price_history batch insert")
+            .register(meterRegistry);
+        this.flushTimer = Timer.builder("price.history.flush")
+            .description("Latency of one price_history batch insert")
+            .register(meterRegistry);
+        this.written = Counter.builder("price.history.written").register(meterRegistry);
+        this.dropped = Counter.builder("price.history.dropped")
+            .description("Price ticks dropped because the queue was full or a flush failed")
+            .register(meterRegistry);
+
+        this.writerThread = new Thread(this::runWriter, "price-history-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+        this.subscription = prices.subscribe(this::record);
+    }
+
+    /**
+     * Enqueue the symbols whose price object changed since the last tick. Never blocks.
+     */
+    void record(List<KrakenApiService.CryptoPrice> prices) {
+        for (KrakenApiService.CryptoPrice price : prices) {
+            // One bad price must not end the subscription or hold up the other symbols
+            try {
+                // PriceBook keeps the same instance for symbols a tick did not touch
+                if (lastRecorded.put(price.getSymbol(), price) == price) continue;
+                if (!queue.offer(new PriceTick(price.getSymbol(), price.getPrice(), price.getLastUpdated()))) {
+                    dropped.increment();
+                }
+            } catch (RuntimeException e) {
+                log.warn("Skipped a tick in price history: {}", e.toString());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        subscription.dispose();
+        running = false;
+        writerThread.interrupt();
+        writerThread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private void runWriter() {
+        List<PriceTick> batch = new ArrayList<>(batchSize);
+        long lastFlush = System.nanoTime();
+        while (running) {
+            try {
+                long wait = flushIntervalNanos - (System.nanoTime() - lastFlush);
+                PriceTick tick = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : null;
+                if (tick != null) {
+                    batch.add(tick);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (batch.size() >= batchSize || System.nanoTime() - lastFlush >= flushIntervalNanos) {
+                flush(batch);
+                lastFlush = System.nanoTime();
+            }
+        }
+        // Write out whatever is left on shutdown
+        queue.drainTo(batch);
+        flush(batch);
+    }
+
+    private void flush(List<PriceTick> batch) {
+        if (batch.isEmpty()) return;
+        long start = System.nanoTime();
+        try {
+            writer.accept(batch);
+            written.increment(batch.size());
+        } catch (Exception e) {
+            dropped.increment(batch.size());
+            log.warn("Failed to write {} price history rows: {}", batch.size(), e.getMessage());
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batchSizes.record(batch.size());
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.PriceHistoryRepository;
+import com.example.crypto_trading_sim.repository.PriceHistoryRepository.PriceBar;
+import com.example.crypto_trading_sim.repository.PriceHistoryRepository.Tier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Tiered retention for price history: raw ticks, 1-minute bars and 1-hour bars.
+ * <p>
+ * A background job rolls each tier up into the next, starting from the
+ * tier's watermark so only new complete buckets are read, then deletes rows
+ * that are past retention <em>and</em> already rolled up. Reads are routed
+ * to the finest tier that still holds the start of the range without
+ * returning more than {@code price.history.max-points} rows: raw ticks are
+ * counted, up to that many, since their rate depends on the market data
+ * source, and a bar tier holds at most one row per bucket. No read returns
+ * more than {@code price.history.max-points} rows, even from the hour tier.
+ * Coarser tiers trail live data by up to the rollup delay plus one
+ * compaction interval.
+ */
+@Service
+@Slf4j
+public class PriceHistoryService {
+
+    public static class History {
+        private final Tier tier;
+        private final List<PriceBar> bars;
+
+        public History(Tier tier, List<PriceBar> bars) {
+            this.tier = tier;
+            this.bars = bars;
+        }
+
+        public Tier getTier() { return tier; }
+        public List<PriceBar> getBars() { return bars; }
+    }
+
+    private final PriceHistoryRepository priceHistoryRepository;
+    private final Clock clock;
+    private final Duration rawRetention;
+    private final Duration minuteRetention;
+    private final Duration rollupDelay;
+    private final Duration rollupChunk;
+    private final long maxPoints;
+
+    @Autowired
+    public PriceHistoryService(PriceHistoryRepository priceHistoryRepository,
+                               @Value("${price.history.raw-retention:7d}") Duration rawRetention,
+                               @Value("${price.history.minute-retention:90d}") Duration minuteRetention,
+                               @Value("${price.history.rollup-delay:2m}") Duration rollupDelay,
+                               @Value("${price.history.rollup-chunk:6h}") Duration rollupChunk,
+                               @Value("${price.history.max-points:2000}") long maxPoints,
+                               @Value("${price.history.compaction-interval:1m}") Duration compactionInterval) {
+        this(priceHistoryRepository, Clock.systemDefaultZone(), rawRetention, minuteRetention, rollupDelay,
+            rollupChunk, maxPoints);
+        Flux.interval(compactionInterval, compactionInterval)
+            .onBackpressureDrop()
+            .concatMap(tick -> Mono.fromRunnable(this::compact).subscribeOn(Schedulers.boundedElastic()), 1)
+            .subscribe();
+    }
+
+    PriceHistoryService(PriceHistoryRepository priceHistoryRepository, Clock clock, Duration rawRetention,
+                        Duration minuteRetention, Duration rollupDelay, Duration rollupChunk, long maxPoints) {
+        this.priceHistoryRepository = priceHistoryRepository;
+        this.clock = clock;
+        this.rawRetention = rawRetention;
+        this.minuteRetention = minuteRetention;
+        this.rollupDelay = rollupDelay;
+        this.rollupChunk = rollupChunk;
+        this.maxPoints = maxPoints;
+    }
+
+    public History getHistory(String symbol, LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) throw new IllegalArgumentException("from must be before to");
+        String wanted = symbol.toUpperCase();
+        Tier tier = tierFor(wanted, from, to);
+        return new History(tier, priceHistoryRepository.findBars(tier, wanted, from, to, maxPoints));
+    }
+
+    Tier tierFor(String symbol, LocalDateTime from, LocalDateTime to) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        if (!from.isBefore(now.minus(rawRetention))
+            && priceHistoryRepository.countRows(Tier.RAW, symbol, from, to, maxPoints + 1) <= maxPoints) {
+            return Tier.RAW;
+        }
+        long minutes = (Duration.between(from, to).toSeconds() + 59) / 60;
+        if (!from.isBefore(now.minus(minuteRetention)) && minutes <= maxPoints) return Tier.MINUTE;
+        return Tier.HOUR;
+    }
+
+    /**
+     * One compaction pass: roll raw up to 1m, 1m up to 1h, then apply retention.
+     */
+    void compact() {
+        try {
+            LocalDateTime now = LocalDateTime.now(clock);
+            LocalDateTime minuteTarget = now.minus(rollupDelay).truncatedTo(ChronoUnit.MINUTES);
+            LocalDateTime minuteWatermark = rollUp(Tier.MINUTE, minuteTarget, ChronoUnit.MINUTES);
+            LocalDateTime hourWatermark = minuteWatermark == null ? null
+                : rollUp(Tier.HOUR, minuteWatermark.truncatedTo(ChronoUnit.HOURS), ChronoUnit.HOURS);
+
+            if (minuteWatermark != null) {
+                expire(Tier.RAW, earliest(now.minus(rawRetention), minuteWatermark));
+            }
+            if (hourWatermark != null) {
+                expire(Tier.MINUTE, earliest(now.minus(minuteRetention), hourWatermark));
+            }
+        } catch (Exception e) {
+            log.warn("Price history compaction failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Roll {@code target} forward from its watermark to {@code upTo} in chunks.
+     *
+     * @return the watermark afterwards, or null if the tier has never had data
+     */
+    private LocalDateTime rollUp(Tier target, LocalDateTime upTo, ChronoUnit unit) {
+        Tier source = Tier.values()[target.ordinal() - 1];
+        Optional<LocalDateTime> watermark = priceHistoryRepository.findWatermark(target);
+        LocalDateTime from = watermark.isPresent() ? watermark.get()
+            : priceHistoryRepository.findOldest(source).map(oldest -> oldest.truncatedTo(unit)).orElse(null);
+        if (from == null) return null;
+
+        int buckets = 0;
+        while (from.isBefore(upTo)) {
+            LocalDateTime to = earliest(from.plus(rollupChunk).truncatedTo(unit), upTo);
+            if (!to.isAfter(from)) to = upTo;
+            buckets += priceHistoryRepository.rollUp(target, from, to);
+            from = to;
+        }
+        if (buckets > 0) log.info("Rolled {} {} buckets up to {}", buckets, target, from);
+        return from;
+    }
+
+    private void expire(Tier tier, LocalDateTime before) {
+        int deleted = priceHistoryRepository.deleteBefore(tier, before);
+        if (deleted > 0) log.info("Expired {} {} price history rows before {}", deleted, tier, before);
+    }
+
+    private static LocalDateTime earliest(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.exception.RateLimitedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Background price polling for while the market data source is not live.
+ * <p>
+ * Polls never overlap: the next one is scheduled only when the previous one
+ * has finished or hit {@code kraken.poll.timeout}; a timed-out fetch keeps
+ * running and the next poll joins it (see {@link SingleFlight}). After a
+ * success the delay is {@code kraken.poll.interval}, stretched to at least
+ * four times the observed latency and by a factor that doubles on every
+ * rate-limit error and decays on success. After a failure it backs off exponentially with jitter,
+ * up to {@code kraken.poll.max-interval}. A {@link CircuitBreaker} stops
+ * polling for {@code kraken.poll.breaker.open-duration} after
+ * {@code kraken.poll.breaker.failure-threshold} failures in a row.
+ * <p>
+ * Metrics: {@code kraken.poll.latency} (timer, by outcome),
+ * {@code kraken.poll.interval} (gauge, seconds until the next poll),
+ * {@code kraken.poll.breaker.state} (gauge: 0 closed, 1 half-open, 2 open),
+ * {@code kraken.poll.rejected} (polls skipped by the open breaker) and
+ * {@code kraken.prices.staleness} (gauge, age of the price snapshot in seconds).
+ */
+@Service
+@Slf4j
+public class PricePollScheduler {
+
+    enum Outcome { SUCCESS, RATE_LIMITED, TIMEOUT, ERROR }
+
+    private static final int LATENCY_MULTIPLE = 4;
+    private static final double RATE_LIMIT_DECAY = 0.8;
+
+    private final Supplier<Mono<?>> poll;
+    private final BooleanSupplier sourceLive;
+    private final Duration interval;
+    private final Duration timeout;
+    private final Duration maxInterval;
+    private final CircuitBreaker breaker;
+    private final Map<Outcome, Timer> latency = new EnumMap<>(Outcome.class);
+    private final Counter rejected;
+
+    // Only touched by the single poll in progress
+    private double rateLimitFactor = 1;
+    private int failures;
+
+    private volatile Duration nextDelay;
+    private volatile Disposable pending;
+    private volatile boolean stopped;
+
+    @Autowired
+    public PricePollScheduler(KrakenApiService krakenApiService, MeterRegistry meterRegistry,
+                              @Value("${kraken.poll.interval:10s}") Duration interval,
+                              @Value("${kraken.poll.timeout:5s}") Duration timeout,
+                              @Value("${kraken.poll.max-interval:5m}") Duration maxInterval,
+                              @Value("${kraken.poll.breaker.failure-threshold:5}") int failureThreshold,
+                              @Value("${kraken.poll.breaker.open-duration:1m}") Duration openDuration) {
+        this(krakenApiService::refreshPrices, krakenApiService::isSourceLive, krakenApiService::getPriceSnapshot,
+            meterRegistry, interval, timeout, maxInterval, new CircuitBreaker(failureThreshold, openDuration, System::nanoTime));
+        start();
+    }
+
+    PricePollScheduler(Supplier<Mono<?>> poll, BooleanSupplier sourceLive, Supplier<PriceBook.Snapshot> snapshots,
+                       MeterRegistry meterRegistry, Duration interval, Duration timeout, Duration maxInterval,
+                       CircuitBreaker breaker) {
+        this.poll = poll;
+        this.sourceLive = sourceLive;
+        this.interval = interval;
+        this.timeout = timeout;
+        this.maxInterval = maxInterval;
+        this.breaker = breaker;
+        this.nextDelay = interval;
+
+        for (Outcome outcome : Outcome.values()) {
+            latency.put(outcome, Timer.builder("kraken.poll.latency")
+                .tag("outcome", outcome.name().toLowerCase())
+                .description("Latency of background price polls")
+                .register(meterRegistry));
+        }
+        this.rejected = Counter.builder("kraken.poll.rejected")
+            .description("Background polls skipped because the circuit breaker was open")
+            .register(meterRegistry);
+        Gauge.builder("kraken.poll.interval", this, s -> s.nextDelay.toNanos() / 1e9)
+            .description("Seconds until the next background price poll")
+            .baseUnit("seconds")
+            .register(meterRegistry);
+        Gauge.builder("kraken.poll.breaker.state", breaker, b -> b.getState().getLevel())
+            .description("Price poll circuit breaker: 0 closed, 1 half-open, 2 open")
+            .register(meterRegistry);
+        Gauge.builder("kraken.prices.staleness", snapshots, s -> {
+                PriceBook.Snapshot snapshot = s.get();
+                return snapshot.isEmpty() ? Double.NaN : snapshot.getAge().toNanos() / 1e9;
+            })
+            .description("Age of the current price snapshot")
+            .baseUnit("seconds")
+            .register(meterRegistry);
+    }
+
+    void start() {
+        scheduleNext(interval);
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        Disposable next = pending;
+        if (next != null) next.dispose();
+    }
+
+    public CircuitBreaker.State getBreakerState() {
+        return breaker.getState();
+    }
+
+    public Duration getNextDelay() {
+        return nextDelay;
+    }
+
+    private void scheduleNext(Duration delay) {
+        if (stopped) return;
+        nextDelay = delay;
+        pending = Schedulers.parallel().schedule(this::runOnce, delay.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private void runOnce() {
+        if (sourceLive.getAsBoolean()) {
+            scheduleNext(interval);
+            return;
+        }
+        if (!breaker.tryAcquire()) {
+            rejected.increment();
+            scheduleNext(breaker.remainingOpen());
+            return;
+        }
+        long start = System.nanoTime();
+        Mono.defer(poll)
+            .timeout(timeout)
+            .then()
+            .subscribe(null, error -> completed(start, error), () -> completed(start, null));
+    }
+
+    private void completed(long start, Throwable error) {
+        long elapsed = System.nanoTime() - start;
+        Outcome outcome = classify(error);
+        latency.get(outcome).record(elapsed, TimeUnit.NANOSECONDS);
+
+        Duration delay;
+        if (outcome == Outcome.SUCCESS) {
+            breaker.recordSuccess();
+            failures = 0;
+            rateLimitFactor = Math.max(1, rateLimitFactor * RATE_LIMIT_DECAY);
+            delay = max(scaled(interval, rateLimitFactor), Duration.ofNanos(elapsed * LATENCY_MULTIPLE));
+        } else {
+            CircuitBreaker.State before = breaker.getState();
+            breaker.recordFailure();
+            failures++;
+            if (outcome == Outcome.RATE_LIMITED) rateLimitFactor = Math.min(rateLimitFactor * 2, maxFactor());
+            delay = backoff();
+            if (breaker.getState() == CircuitBreaker.State.OPEN) {
+                delay = max(delay, breaker.remainingOpen());
+                if (before != CircuitBreaker.State.OPEN) {
+                    log.warn("Price polling paused for {}s after {} failures, last: {}",
+                        delay.toSeconds(), breaker.getConsecutiveFailures(), error.getMessage());
+                }
+            } else {
+                log.warn("Price poll failed ({}), retrying in {} ms: {}",
+                    outcome.name().toLowerCase(), delay.toMillis(), error.getMessage());
+            }
+        }
+        scheduleNext(min(delay, maxInterval));
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": a random delay between half and
+     * all of {@code interval * rateLimitFactor * 2^(failures - 1)}.
+     */
+    private Duration backoff() {
+        double exponential = rateLimitFactor * Math.pow(2, Math.min(failures - 1, 30));
+        long capped = Math.min(scaled(interval, exponential).toNanos(), maxInterval.toNanos());
+        return Duration.ofNanos(capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1));
+    }
+
+    private double maxFactor() {
+        return (double) maxInterval.toNanos() / interval.toNanos();
+    }
+
+    static Outcome classify(Throwable error) {
+        if (error == null) return Outcome.SUCCESS;
+        if (error instanceof TimeoutException) return Outcome.TIMEOUT;
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RateLimitedException) return Outcome.RATE_LIMITED;
+            if (cause instanceof WebClientResponseException response
+                    && response.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value()) {
+                return Outcome.RATE_LIMITED;
+            }
+        }
+        return Outcome.ERROR;
+    }
+
+    private static Duration scaled(Duration duration, double factor) {
+        return Duration.ofNanos((long) Math.min(duration.toNanos() * factor, Long.MAX_VALUE));
+    }
+
+    private static Duration max(Duration a, Duration b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.crypto_trading_sim.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+
+/**
+ * Reports the application ready only while prices are fresh. Prices restored
+ * at startup let the service answer immediately but do not count; readiness
+ * follows once the market data source has delivered current prices.
+ * <p>
+ * While the source is polled rather than live, prices count as fresh until a
+ * poll is overdue: {@code kraken.poll.interval} plus {@code kraken.poll.timeout}
+ * after the last one. The shorter {@code kraken.prices.max-age}, after which
+ * lookups go to Kraken, would otherwise report every healthy poll cycle as
+ * not ready for part of it.
+ * <p>
+ * Exposed as the {@code prices} health component and, after startup, as the
+ * application's {@link ReadinessState}, re-checked every
+ * {@code price.readiness.check-interval}.
+ */
+@Component("prices")
+@Slf4j
+public class PriceReadinessIndicator implements HealthIndicator {
+
+    private final KrakenApiService krakenApiService;
+    private final ApplicationEventPublisher events;
+    private final Duration checkInterval;
+    private final Duration maxAge;
+    private volatile ReadinessState published;
+    private volatile Disposable checks;
+
+    public PriceReadinessIndicator(KrakenApiService krakenApiService, ApplicationEventPublisher events,
+                                   @Value("${price.readiness.check-interval:1s}") Duration checkInterval,
+                                   @Value("${kraken.poll.interval:10s}") Duration pollInterval,
+                                   @Value("${kraken.poll.timeout:5s}") Duration pollTimeout) {
+        this.krakenApiService = krakenApiService;
+        this.events = events;
+        this.checkInterval = checkInterval;
+        this.maxAge = pollInterval.plus(pollTimeout);
+    }
+
+    /** How old polled prices may get before readiness is withdrawn. */
+    Duration getMaxAge() {
+        return maxAge;
+    }
+
+    @Override
+    public Health health() {
+        PriceBook.Snapshot snapshot = krakenApiService.getPriceSnapshot();
+        Health.Builder health = krakenApiService.isPriceDataFresh(maxAge) ? Health.up() : Health.outOfService();
+        health.withDetail("symbols", snapshot.size())
+            .withDetail("restored", snapshot.isRestored())
+            .withDetail("sourceLive", krakenApiService.isSourceLive());
+        if (!snapshot.isEmpty()) health.withDetail("ageMillis", snapshot.getAge().toMillis());
+        return health.build();
+    }
+
+    /**
+     * Spring marks the application ready once started; take over from there.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startChecks() {
+        check();
+        checks = Flux.interval(checkInterval, checkInterval)
+            .onBackpressureDrop()
+            .subscribe(tick -> check());
+    }
+
+    @PreDestroy
+    public void stopChecks() {
+        if (checks != null) checks.dispose();
+    }
+
+    void check() {
+        ReadinessState state = krakenApiService.isPriceDataFresh(maxAge)
+            ? ReadinessState.ACCEPTING_TRAFFIC
+            : ReadinessState.REFUSING_TRAFFIC;
+        if (state == published) return;
+        published = state;
+        log.info("Price data {}, readiness is now {}", state == ReadinessState.ACCEPTING_TRAFFIC ? "fresh" : "stale", state);
+        AvailabilityChangeEvent.publish(events, this, state);
+    }
+}
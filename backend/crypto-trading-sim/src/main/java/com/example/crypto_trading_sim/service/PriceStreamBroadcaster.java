@@ -0,0 +1,85 @@
+package com.example.crypto_trading_sim.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+/**
+ * Fans the price stream out to SSE subscribers. Each tick is serialized to
+ * JSON exactly once, upstream of the multicast, and every subscriber writes
+ * that same immutable byte array. Delivery to each subscriber is conflated
+ * by {@link PriceStreamSubscribers}, so a slow client only ever has the
+ * latest frame pending.
+ * <p>
+ * Metrics: {@code price.stream.serialization} (timer) and
+ * {@code price.stream.subscribers} (gauge).
+ */
+@Service
+@Slf4j
+public class PriceStreamBroadcaster {
+
+    private final ObjectMapper objectMapper;
+    private final Timer serializationTimer;
+    private final PriceStreamSubscribers streamSubscribers;
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final Flux<byte[]> frames;
+
+    @Autowired
+    public PriceStreamBroadcaster(KrakenApiService krakenApiService, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                                  PriceStreamSubscribers streamSubscribers) {
+        this(krakenApiService.startPriceStream(), objectMapper, meterRegistry, streamSubscribers);
+    }
+
+    PriceStreamBroadcaster(Flux<List<KrakenApiService.CryptoPrice>> ticks, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                           PriceStreamSubscribers streamSubscribers) {
+        this.objectMapper = objectMapper;
+        this.streamSubscribers = streamSubscribers;
+        this.serializationTimer = Timer.builder("price.stream.serialization")
+            .description("Time to encode one price tick for all SSE subscribers")
+            .register(meterRegistry);
+        Gauge.builder("price.stream.subscribers", subscribers, AtomicInteger::get)
+            .description("Connected price stream subscribers")
+            .register(meterRegistry);
+        this.frames = ticks
+            .map(this::encode)
+            .filter(frame -> frame.length > 0)
+            .share();
+    }
+
+    /**
+     * Shared encoded frames; subscribing does not add any per-subscriber serialization.
+     * Every frame is a full price list, so a frame that replaced an undelivered one
+     * is sent as-is.
+     */
+    public Flux<byte[]> frames() {
+        return streamSubscribers.deliver("full", frames, UnaryOperator.identity())
+            .doOnSubscribe(subscription -> subscribers.incrementAndGet())
+            .doFinally(signal -> subscribers.decrementAndGet());
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.get();
+    }
+
+    private byte[] encode(List<KrakenApiService.CryptoPrice> prices) {
+        long start = System.nanoTime();
+        try {
+            return objectMapper.writeValueAsBytes(prices);
+        } catch (Exception e) {
+            log.warn("Failed to serialize price tick: {}", e.getMessage());
+            return new byte[0];
+        } finally {
+            serializationTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
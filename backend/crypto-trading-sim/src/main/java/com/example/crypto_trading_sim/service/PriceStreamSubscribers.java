@@ -0,0 +1,168 @@
+package com.example.crypto_trading_sim.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Conflating delivery of shared price frames to individual subscribers.
+ * <p>
+ * Each subscriber holds at most one undelivered frame: a newer frame replaces
+ * it and the replaced one is counted as dropped. Because every frame carries
+ * the latest value of every symbol, the subscriber still ends up with the
+ * newest price per symbol. A subscriber whose pending frame has waited longer
+ * than {@code price.stream.max-lag} is disconnected, so one stalled client
+ * never holds back the others.
+ * <p>
+ * Metrics per subscriber: {@code price.stream.subscriber.lag} (seconds) and
+ * {@code price.stream.subscriber.dropped}, tagged with {@code stream} and
+ * {@code subscriber}.
+ */
+@Service
+@Slf4j
+public class PriceStreamSubscribers {
+
+    public static class SubscriberStats {
+        private final long id;
+        private final String stream;
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private volatile long pendingSince;
+
+        SubscriberStats(long id, String stream) {
+            this.id = id;
+            this.stream = stream;
+        }
+
+        public long getId() { return id; }
+        public String getStream() { return stream; }
+        public long getDelivered() { return delivered.get(); }
+        public long getDropped() { return dropped.get(); }
+
+        /** How long the oldest undelivered frame has been waiting; zero when caught up. */
+        public Duration getLag() {
+            long since = pendingSince;
+            return since == 0 ? Duration.ZERO : Duration.ofNanos(System.nanoTime() - since);
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Duration maxLag;
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<Long, SubscriberStats> active = new ConcurrentHashMap<>();
+
+    public PriceStreamSubscribers(MeterRegistry meterRegistry,
+                                  @Value("${price.stream.max-lag:30s}") Duration maxLag) {
+        this.meterRegistry = meterRegistry;
+        this.maxLag = maxLag;
+    }
+
+    public Collection<SubscriberStats> getActiveSubscribers() {
+        return active.values();
+    }
+
+    /**
+     * Deliver {@code source} to one subscriber with conflation.
+     *
+     * @param afterDrop replaces the next frame delivered after a drop, e.g. with
+     *                  a full snapshot for streams whose frames are incremental
+     */
+    public <T> Flux<T> deliver(String stream, Flux<T> source, UnaryOperator<T> afterDrop) {
+        return Flux.create(sink -> {
+            SubscriberStats stats = new SubscriberStats(nextId.incrementAndGet(), stream);
+            Conflator<T> conflator = new Conflator<>(sink, stats, afterDrop);
+            List<Meter> meters = register(stats);
+
+            Disposable upstream = source.subscribe(conflator::offer, sink::error, conflator::complete);
+            sink.onRequest(n -> conflator.drain());
+            sink.onDispose(() -> {
+                upstream.dispose();
+                active.remove(stats.id);
+                meters.forEach(meterRegistry::remove);
+            });
+        });
+    }
+
+    private List<Meter> register(SubscriberStats stats) {
+        active.put(stats.id, stats);
+        String id = Long.toString(stats.id);
+        return List.of(
+            Gauge.builder("price.stream.subscriber.lag", stats, s -> s.getLag().toNanos() / 1e9)
+                .tags("stream", stats.stream, "subscriber", id)
+                .baseUnit("seconds")
+                .register(meterRegistry),
+            FunctionCounter.builder("price.stream.subscriber.dropped", stats, SubscriberStats::getDropped)
+                .tags("stream", stats.stream, "subscriber", id)
+                .register(meterRegistry));
+    }
+
+    private final class Conflator<T> {
+        private final FluxSink<T> sink;
+        private final SubscriberStats stats;
+        private final UnaryOperator<T> afterDrop;
+        private T pending;
+        private boolean dropSinceLastDelivery;
+        private boolean completed;
+
+        private Conflator(FluxSink<T> sink, SubscriberStats stats, UnaryOperator<T> afterDrop) {
+            this.sink = sink;
+            this.stats = stats;
+            this.afterDrop = afterDrop;
+        }
+
+        private void offer(T frame) {
+            boolean tooSlow;
+            synchronized (this) {
+                if (pending != null) {
+                    stats.dropped.incrementAndGet();
+                    dropSinceLastDelivery = true;
+                } else {
+                    stats.pendingSince = System.nanoTime();
+                }
+                pending = frame;
+                tooSlow = stats.getLag().compareTo(maxLag) > 0;
+            }
+            if (tooSlow) {
+                log.warn("Disconnecting slow {} price stream subscriber {} (lag {} ms, {} dropped)",
+                    stats.stream, stats.id, stats.getLag().toMillis(), stats.getDropped());
+                sink.complete();
+                return;
+            }
+            drain();
+        }
+
+        private void complete() {
+            synchronized (this) {
+                completed = true;
+            }
+            drain();
+        }
+
+        private synchronized void drain() {
+            while (pending != null && sink.requestedFromDownstream() > 0) {
+                T frame = dropSinceLastDelivery ? afterDrop.apply(pending) : pending;
+                pending = null;
+                dropSinceLastDelivery = false;
+                stats.pendingSince = 0;
+                stats.delivered.incrementAndGet();
+                sink.next(frame);
+            }
+            if (completed && pending == null) sink.complete();
+        }
+    }
+}
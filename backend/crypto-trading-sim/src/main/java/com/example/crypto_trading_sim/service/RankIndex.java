@@ -0,0 +1,180 @@
+package com.example.crypto_trading_sim.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Ids ranked by a {@code long} score, highest first and lowest id first
+ * among equal scores, as an indexable skip list.
+ * <p>
+ * Every forward link also records how many entries it passes over, so the
+ * walk that finds an entry adds up its rank on the way: setting a score and
+ * looking up a rank are O(log n), and listing {@code count} entries from any
+ * rank is O(log n + count). {@link java.util.concurrent.ConcurrentSkipListMap}
+ * has no such counts and would need O(n) for a rank.
+ * <p>
+ * Not thread-safe; {@link Leaderboard} guards its indexes with one lock.
+ */
+final class RankIndex {
+
+    private static final int MAX_LEVEL = 32;
+
+    interface Entry {
+        void accept(long id, long score);
+    }
+
+    private static final class Node {
+        private final long id;
+        private final long score;
+        private final Node[] next;
+        // Entries passed over by next[i], counting next[i] itself
+        private final int[] span;
+
+        private Node(long id, long score, int level) {
+            this.id = id;
+            this.score = score;
+            this.next = new Node[level];
+            this.span = new int[level];
+        }
+    }
+
+    private final Node head = new Node(0, 0, MAX_LEVEL);
+    private final Map<Long, Node> nodes = new HashMap<>();
+    private int level = 1;
+    // Scratch for link, reused since the index is confined to one writer at a time
+    private final Node[] update = new Node[MAX_LEVEL];
+    private final int[] ranks = new int[MAX_LEVEL];
+
+    /** Set the id's score; false if it already had that score. */
+    boolean put(long id, long score) {
+        Node node = nodes.get(id);
+        if (node != null) {
+            if (node.score == score) return false;
+            nodes.remove(id);
+            unlink(node);
+        }
+        nodes.put(id, link(id, score));
+        return true;
+    }
+
+    /** False if the id was not ranked. */
+    boolean remove(long id) {
+        Node node = nodes.remove(id);
+        if (node == null) return false;
+        unlink(node);
+        return true;
+    }
+
+    boolean contains(long id) {
+        return nodes.containsKey(id);
+    }
+
+    /** The id's score; the id must be ranked. */
+    long score(long id) {
+        Node node = nodes.get(id);
+        if (node == null) throw new IllegalArgumentException("Not ranked: " + id);
+        return node.score;
+    }
+
+    /** The id's 1-based rank, or 0 if it is not ranked. */
+    int rank(long id) {
+        Node node = nodes.get(id);
+        if (node == null) return 0;
+        Node x = head;
+        int rank = 0;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && !after(x.next[i], node.score, node.id)) {
+                rank += x.span[i];
+                x = x.next[i];
+            }
+            if (x == node) return rank;
+        }
+        throw new IllegalStateException("Ranked id " + id + " is not linked");
+    }
+
+    /**
+     * Hand up to {@code count} entries to {@code entry}, in rank order,
+     * starting at the 1-based rank {@code from}.
+     */
+    void range(int from, int count, Entry entry) {
+        if (from < 1 || count <= 0 || from > nodes.size()) return;
+        Node x = head;
+        int traversed = 0;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && traversed + x.span[i] <= from) {
+                traversed += x.span[i];
+                x = x.next[i];
+            }
+        }
+        for (int n = 0; x != null && n < count; n++, x = x.next[0]) {
+            entry.accept(x.id, x.score);
+        }
+    }
+
+    int size() {
+        return nodes.size();
+    }
+
+    private Node link(long id, long score) {
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            ranks[i] = i == level - 1 ? 0 : ranks[i + 1];
+            while (x.next[i] != null && before(x.next[i], score, id)) {
+                ranks[i] += x.span[i];
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+        int nodeLevel = randomLevel();
+        if (nodeLevel > level) {
+            for (int i = level; i < nodeLevel; i++) {
+                ranks[i] = 0;
+                update[i] = head;
+                head.span[i] = nodes.size();
+            }
+            level = nodeLevel;
+        }
+        Node node = new Node(id, score, nodeLevel);
+        for (int i = 0; i < nodeLevel; i++) {
+            node.next[i] = update[i].next[i];
+            update[i].next[i] = node;
+            node.span[i] = update[i].span[i] - (ranks[0] - ranks[i]);
+            update[i].span[i] = ranks[0] - ranks[i] + 1;
+        }
+        // Links above the new node now pass over one more entry
+        for (int i = nodeLevel; i < level; i++) update[i].span[i]++;
+        return node;
+    }
+
+    private void unlink(Node node) {
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && before(x.next[i], node.score, node.id)) x = x.next[i];
+            if (x.next[i] == node) {
+                x.span[i] += node.span[i] - 1;
+                x.next[i] = node.next[i];
+            } else {
+                x.span[i]--;
+            }
+        }
+        while (level > 1 && head.next[level - 1] == null) level--;
+    }
+
+    /** Whether {@code node} ranks ahead of ({@code score}, {@code id}). */
+    private static boolean before(Node node, long score, long id) {
+        return node.score > score || (node.score == score && node.id < id);
+    }
+
+    private static boolean after(Node node, long score, long id) {
+        return node.score < score || (node.score == score && node.id > id);
+    }
+
+    private static int randomLevel() {
+        // One in four nodes goes up a level, as in Redis sorted sets
+        int level = 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (level < MAX_LEVEL && random.nextInt(4) == 0) level++;
+        return level;
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.crypto_trading_sim.service;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Replays a {@link TickCapture} file or a {@link TickJournal} directory,
+ * memory-mapped read-only, at a fixed multiple of the recorded pace
+ * ({@code 1x}, {@code 100x}, ...) or as fast as possible ({@code max}). Records sharing a timestamp are pushed as one
+ * update. With looping on, each pass shifts timestamps forward so time keeps
+ * increasing.
+ */
+@Slf4j
+public class ReplayMarketDataSource implements MarketDataSource {
+
+    /** Speed value meaning "do not pace". */
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+
+    private final Path file;
+    private final double speed;
+    private final boolean loop;
+    private final AtomicLong replayedTicks = new AtomicLong();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean running;
+    private Thread replayThread;
+
+    public ReplayMarketDataSource(Path file, double speed, boolean loop) {
+        if (!(speed > 0)) throw new IllegalArgumentException("Replay speed must be positive");
+        this.file = file;
+        this.speed = speed;
+        this.loop = loop;
+    }
+
+    /**
+     * Parse {@code "max"} or a multiplier such as {@code "1x"}, {@code "100x"} or {@code "2.5"}.
+     */
+    public static double parseSpeed(String speed) {
+        String value = speed.trim().toLowerCase();
+        if (value.equals("max")) return MAX_SPEED;
+        if (value.endsWith("x")) value = value.substring(0, value.length() - 1);
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid replay speed: " + speed);
+        }
+    }
+
+    @Override
+    public synchronized void start(Consumer<List<KrakenApiService.CryptoPrice>> sink) {
+        if (replayThread != null) throw new IllegalStateException("Replay already started");
+        List<ByteBuffer> captures = new ArrayList<>();
+        try {
+            List<Path> files = Files.isDirectory(file) ? TickJournal.segments(file) : List.of(file);
+            for (Path capture : files) {
+                MappedByteBuffer mapped = TickJournal.mapReadOnly(capture);
+                TickCapture.readHeader(mapped);
+                captures.add(mapped.slice());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open replay file " + file + ": " + e.getMessage(), e);
+        }
+
+        running = true;
+        replayThread = new Thread(() -> replay(captures, sink), "market-data-replay");
+        replayThread.setDaemon(true);
+        replayThread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (replayThread != null) replayThread.interrupt();
+    }
+
+    @Override
+    public boolean isLive() {
+        // Replayed prices are the only truth there is; never fall back to fetching
+        return true;
+    }
+
+    @Override
+    public Mono<List<KrakenApiService.CryptoPrice>> fetchAll() {
+        return Mono.error(new RuntimeException("No replayed price data yet"));
+    }
+
+    public long getReplayedTicks() {
+        return replayedTicks.get();
+    }
+
+    /**
+     * Wait for a non-looping replay to reach the end of the file.
+     */
+    public boolean awaitCompletion(Duration timeout) throws InterruptedException {
+        return finished.await(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private void replay(List<ByteBuffer> captures, Consumer<List<KrakenApiService.CryptoPrice>> sink) {
+        long shiftMillis = 0;
+        try {
+            do {
+                long lastTimestamp = replayPass(captures, sink, shiftMillis);
+                if (lastTimestamp == Long.MIN_VALUE) break; // empty capture
+                shiftMillis = lastTimestamp + 1 - firstTimestamp(captures);
+            } while (loop && running);
+            log.info("Replay of {} finished after {} ticks", file, replayedTicks.get());
+        } catch (Exception e) {
+            if (running) log.error("Replay of {} failed: {}", file, e.getMessage());
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * @return the last (shifted) timestamp replayed, or {@code Long.MIN_VALUE} if there were no records
+     */
+    private long replayPass(List<ByteBuffer> captures, Consumer<List<KrakenApiService.CryptoPrice>> sink,
+                            long shiftMillis) {
+        long wallStart = System.nanoTime();
+        long firstTimestamp = Long.MIN_VALUE;
+        long batchTimestamp = Long.MIN_VALUE;
+        List<KrakenApiService.CryptoPrice> batch = new ArrayList<>();
+
+        for (ByteBuffer data : captures) {
+            ByteBuffer capture = data.duplicate();
+            KrakenApiService.CryptoPrice price;
+            while (running && (price = TickCapture.read(capture)) != null) {
+                long timestamp = TickCapture.epochMillis(price.getLastUpdated()) + shiftMillis;
+                if (shiftMillis != 0) price.setLastUpdated(toLocal(timestamp));
+                if (firstTimestamp == Long.MIN_VALUE) firstTimestamp = timestamp;
+
+                if (timestamp != batchTimestamp && !batch.isEmpty()) {
+                    emit(batch, sink);
+                    batch = new ArrayList<>();
+                }
+                if (batch.isEmpty()) {
+                    batchTimestamp = timestamp;
+                    pace(wallStart, timestamp - firstTimestamp);
+                }
+                batch.add(price);
+            }
+        }
+        if (!batch.isEmpty()) emit(batch, sink);
+        return batchTimestamp;
+    }
+
+    private void emit(List<KrakenApiService.CryptoPrice> batch, Consumer<List<KrakenApiService.CryptoPrice>> sink) {
+        sink.accept(batch);
+        replayedTicks.addAndGet(batch.size());
+    }
+
+    private void pace(long wallStart, long recordedOffsetMillis) {
+        if (speed == MAX_SPEED) return;
+        long due = wallStart + (long) (TimeUnit.MILLISECONDS.toNanos(recordedOffsetMillis) / speed);
+        long wait;
+        while (running && (wait = due - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    private static long firstTimestamp(List<ByteBuffer> captures) {
+        for (ByteBuffer capture : captures) {
+            KrakenApiService.CryptoPrice first = TickCapture.read(capture.duplicate());
+            if (first != null) return TickCapture.epochMillis(first.getLastUpdated());
+        }
+        return 0;
+    }
+
+    private static LocalDateTime toLocal(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
@@ -1,55 +1,132 @@
 package com.example.crypto_trading_sim.service;
 
 import com.example.crypto_trading_sim.repository.HoldingsRepository;
+import com.example.crypto_trading_sim.repository.TaxLotRepository;
+import com.example.crypto_trading_sim.repository.TradeRepository;
 import com.example.crypto_trading_sim.repository.TransactionRepository;
 import com.example.crypto_trading_sim.repository.UserRepository;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.*;
 
+/**
+ * Trades against a user's cash balance and holdings.
+ * <p>
+ * Trades and resets take a per-account lock from a pool of
+ * {@code trading.account-lock-stripes} {@link StripedLocks}, so each account
+ * sees its operations one at a time in arrival order while different accounts
+ * trade in parallel. Balances, holdings and history come from the
+ * {@link AccountLedger}, which checks funds or holdings as it applies a trade.
+ * <p>
+ * Every operation takes the id of the account it acts on. Balances are read
+ * from the {@link AccountDirectory}, which each trade writes its resulting
+ * balance through to and each reset invalidates, so a request does not look
+ * its user up in the database. Account summaries come from the
+ * {@link MarkToMarketEngine}, which the same trades and resets keep current,
+ * and realized P&L from the {@link TaxLotBook}. Accounts are tracked from
+ * their first trade or look, or all of them from startup with
+ * {@code leaderboard.preload}, which ranks them on the {@link Leaderboard}.
+ * The no-argument variants act on the demo account.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class SimpleTradingService {
     
-    private final KrakenApiService krakenApiService;
+    /**
+     * Largest opening balance. Valuations are longs at
+     * {@link FixedPoint#VALUE_SCALE}, which overflow past about $92B, so this
+     * leaves an account room to grow ninety-fold.
+     */
+    static final BigDecimal MAX_INITIAL_BALANCE = new BigDecimal("1000000000");
+    
     private final UserRepository userRepository;
-    private final TransactionRepository transactionRepository;
-    private final HoldingsRepository holdingsRepository;
+    private final AccountLedger ledger;
+    private final AccountDirectory accounts;
+    private final MarkToMarketEngine valuations;
+    private final TaxLotBook taxLots;
+    private final StripedLocks accountLocks;
+    private boolean preloadLeaderboard;
+    // Bulk reads for the preload; the rest goes through the ledger
+    private HoldingsRepository holdingsRepository;
+    private TransactionRepository transactionRepository;
+    private TaxLotRepository taxLotRepository;
+    private volatile Long demoUserId;
     
-    private static final BigDecimal MIN_QUANTITY = new BigDecimal("0.00000001");
+    @Autowired
+    public SimpleTradingService(UserRepository userRepository, AccountLedger ledger, AccountDirectory accounts,
+                                MarkToMarketEngine valuations, TaxLotBook taxLots,
+                                HoldingsRepository holdingsRepository, TransactionRepository transactionRepository,
+                                TaxLotRepository taxLotRepository,
+                                @Value("${trading.account-lock-stripes:64}") int accountLockStripes,
+                                @Value("${leaderboard.preload:true}") boolean preloadLeaderboard) {
+        this(userRepository, ledger, accounts, valuations, taxLots, new StripedLocks(accountLockStripes));
+        this.holdingsRepository = holdingsRepository;
+        this.transactionRepository = transactionRepository;
+        this.taxLotRepository = taxLotRepository;
+        this.preloadLeaderboard = preloadLeaderboard;
+    }
     
+    SimpleTradingService(UserRepository userRepository, AccountLedger ledger, AccountDirectory accounts,
+                         MarkToMarketEngine valuations, TaxLotBook taxLots, StripedLocks accountLocks) {
+        this.userRepository = userRepository;
+        this.ledger = ledger;
+        this.accounts = accounts;
+        this.valuations = valuations;
+        this.taxLots = taxLots;
+        this.accountLocks = accountLocks;
+    }
+    
+    /**
+     * Quantity at {@link FixedPoint#QUANTITY_SCALE}, average price at
+     * {@link FixedPoint#PRICE_SCALE} and total invested at
+     * {@link FixedPoint#VALUE_SCALE}; the {@link BigDecimal} getters are the
+     * JSON boundary.
+     */
     public static class PortfolioHolding {
         private String symbol;
-        private BigDecimal quantity;
-        private BigDecimal avgPrice;
-        private BigDecimal totalInvested;
+        private long quantity;
+        private long avgPrice;
+        private long totalInvested;
         private LocalDateTime lastUpdated;
         
-        public PortfolioHolding(String symbol, BigDecimal quantity, BigDecimal avgPrice, BigDecimal totalInvested) {
+        public PortfolioHolding(String symbol, long quantity, long avgPrice, long totalInvested) {
+            this(symbol, quantity, avgPrice, totalInvested, LocalDateTime.now());
+        }
+        
+        /** {@code lastUpdated} is when the position last traded. */
+        public PortfolioHolding(String symbol, long quantity, long avgPrice, long totalInvested,
+                                LocalDateTime lastUpdated) {
             this.symbol = symbol;
             this.quantity = quantity;
             this.avgPrice = avgPrice;
             this.totalInvested = totalInvested;
-            this.lastUpdated = LocalDateTime.now();
+            this.lastUpdated = lastUpdated;
         }
         
         // Getters and setters
         public String getSymbol() { return symbol; }
         public void setSymbol(String symbol) { this.symbol = symbol; }
-        public BigDecimal getQuantity() { return quantity; }
-        public void setQuantity(BigDecimal quantity) { this.quantity = quantity; }
-        public BigDecimal getAvgPrice() { return avgPrice; }
-        public void setAvgPrice(BigDecimal avgPrice) { this.avgPrice = avgPrice; }
-        public BigDecimal getTotalInvested() { return totalInvested; }
-        public void setTotalInvested(BigDecimal totalInvested) { this.totalInvested = totalInvested; }
+        public BigDecimal getQuantity() { return FixedPoint.toBigDecimal(quantity, FixedPoint.QUANTITY_SCALE); }
+        public void setQuantity(BigDecimal quantity) { this.quantity = FixedPoint.of(quantity, FixedPoint.QUANTITY_SCALE); }
+        public BigDecimal getAvgPrice() { return FixedPoint.toBigDecimal(avgPrice, FixedPoint.PRICE_SCALE); }
+        public void setAvgPrice(BigDecimal avgPrice) { this.avgPrice = FixedPoint.of(avgPrice, FixedPoint.PRICE_SCALE); }
+        public BigDecimal getTotalInvested() { return FixedPoint.toBigDecimal(totalInvested, FixedPoint.VALUE_SCALE); }
+        public void setTotalInvested(BigDecimal totalInvested) { this.totalInvested = FixedPoint.of(totalInvested, FixedPoint.VALUE_SCALE); }
         public LocalDateTime getLastUpdated() { return lastUpdated; }
         public void setLastUpdated(LocalDateTime lastUpdated) { this.lastUpdated = lastUpdated; }
+        public long getQuantityUnits() { return quantity; }
+        public long getAvgPriceUnits() { return avgPrice; }
+        public long getTotalInvestedUnits() { return totalInvested; }
     }
     
     public static class TradeRecord {
@@ -104,6 +181,9 @@ public class SimpleTradingService {
         private BigDecimal totalPortfolioValue;
         private BigDecimal totalPnL;
         private BigDecimal totalPnLPercent;
+        private BigDecimal realizedPnL;
+        private BigDecimal unrealizedPnL;
+        private int transactionCount;
         private List<PortfolioHoldingWithCurrentValue> holdings;
         
         public AccountSummary() {
@@ -121,173 +201,144 @@ public class SimpleTradingService {
         public void setTotalPnL(BigDecimal totalPnL) { this.totalPnL = totalPnL; }
         public BigDecimal getTotalPnLPercent() { return totalPnLPercent; }
         public void setTotalPnLPercent(BigDecimal totalPnLPercent) { this.totalPnLPercent = totalPnLPercent; }
+        public BigDecimal getRealizedPnL() { return realizedPnL; }
+        public void setRealizedPnL(BigDecimal realizedPnL) { this.realizedPnL = realizedPnL; }
+        public BigDecimal getUnrealizedPnL() { return unrealizedPnL; }
+        public void setUnrealizedPnL(BigDecimal unrealizedPnL) { this.unrealizedPnL = unrealizedPnL; }
+        public int getTransactionCount() { return transactionCount; }
+        public void setTransactionCount(int transactionCount) { this.transactionCount = transactionCount; }
         public List<PortfolioHoldingWithCurrentValue> getHoldings() { return holdings; }
         public void setHoldings(List<PortfolioHoldingWithCurrentValue> holdings) { this.holdings = holdings; }
     }
     
     public static class PortfolioHoldingWithCurrentValue extends PortfolioHolding {
-        private BigDecimal currentPrice;
-        private BigDecimal currentValue;
-        private BigDecimal pnl;
-        private BigDecimal pnlPercent;
+        private final int priceScale;
+        private long currentPrice;
+        private long currentValue;
+        private long pnl;
+        private long pnlPercent;
         
-        public PortfolioHoldingWithCurrentValue(PortfolioHolding holding, BigDecimal currentPrice) {
-            super(holding.getSymbol(), holding.getQuantity(), holding.getAvgPrice(), holding.getTotalInvested());
+        public PortfolioHoldingWithCurrentValue(PortfolioHolding holding, long currentPrice, int priceScale) {
+            super(holding.getSymbol(), holding.getQuantityUnits(), holding.getAvgPriceUnits(), holding.getTotalInvestedUnits(),
+                holding.getLastUpdated());
+            this.priceScale = priceScale;
             this.currentPrice = currentPrice;
-            this.currentValue = holding.getQuantity().multiply(currentPrice);
-            this.pnl = this.currentValue.subtract(holding.getTotalInvested());
-            this.pnlPercent = holding.getTotalInvested().compareTo(BigDecimal.ZERO) > 0 
-                ? this.pnl.divide(holding.getTotalInvested(), 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100))
-                : BigDecimal.ZERO;
+            this.currentValue = FixedPoint.multiply(holding.getQuantityUnits(), FixedPoint.QUANTITY_SCALE,
+                currentPrice, priceScale, FixedPoint.VALUE_SCALE);
+            this.pnl = Math.subtractExact(this.currentValue, holding.getTotalInvestedUnits());
+            this.pnlPercent = holding.getTotalInvestedUnits() > 0 
+                ? FixedPoint.percent(this.pnl, holding.getTotalInvestedUnits())
+                : 0;
         }
         
         // Getters and setters
-        public BigDecimal getCurrentPrice() { return currentPrice; }
-        public void setCurrentPrice(BigDecimal currentPrice) { this.currentPrice = currentPrice; }
-        public BigDecimal getCurrentValue() { return currentValue; }
-        public void setCurrentValue(BigDecimal currentValue) { this.currentValue = currentValue; }
-        public BigDecimal getPnl() { return pnl; }
-        public void setPnl(BigDecimal pnl) { this.pnl = pnl; }
-        public BigDecimal getPnlPercent() { return pnlPercent; }
-        public void setPnlPercent(BigDecimal pnlPercent) { this.pnlPercent = pnlPercent; }
+        public BigDecimal getCurrentPrice() { return FixedPoint.toBigDecimal(currentPrice, priceScale); }
+        public void setCurrentPrice(BigDecimal currentPrice) { this.currentPrice = FixedPoint.of(currentPrice, priceScale); }
+        public BigDecimal getCurrentValue() { return FixedPoint.toBigDecimal(currentValue, FixedPoint.VALUE_SCALE); }
+        public void setCurrentValue(BigDecimal currentValue) { this.currentValue = FixedPoint.of(currentValue, FixedPoint.VALUE_SCALE); }
+        public BigDecimal getPnl() { return FixedPoint.toBigDecimal(pnl, FixedPoint.VALUE_SCALE); }
+        public void setPnl(BigDecimal pnl) { this.pnl = FixedPoint.of(pnl, FixedPoint.VALUE_SCALE); }
+        public BigDecimal getPnlPercent() { return FixedPoint.toBigDecimal(pnlPercent, FixedPoint.PERCENT_SCALE); }
+        public void setPnlPercent(BigDecimal pnlPercent) { this.pnlPercent = FixedPoint.of(pnlPercent, FixedPoint.PERCENT_SCALE); }
+        public long getCurrentValueUnits() { return currentValue; }
     }
     
-    public synchronized TradeRecord executeTrade(String symbol, String type, BigDecimal quantity, BigDecimal price) {
-        UserRepository.User user = userRepository.createDemoUser();
-        BigDecimal totalCost = quantity.multiply(price);
-        
-        if ("BUY".equalsIgnoreCase(type)) {
-            return executeBuyTrade(user, symbol, quantity, price, totalCost);
-        } else if ("SELL".equalsIgnoreCase(type)) {
-            return executeSellTrade(user, symbol, quantity, price, totalCost);
-        } else {
+    public TradeRecord executeTrade(String symbol, String type, BigDecimal quantity, BigDecimal price) {
+        return executeTrade(demoUserId(), symbol, type, quantity, price);
+    }
+    
+    public TradeRecord executeTrade(Long userId, String symbol, String type, BigDecimal quantity, BigDecimal price) {
+        boolean buy = "BUY".equalsIgnoreCase(type);
+        if (!buy && !"SELL".equalsIgnoreCase(type)) {
             throw new IllegalArgumentException("Invalid trade type: " + type);
         }
+        long quantityUnits = FixedPoint.of(quantity, FixedPoint.QUANTITY_SCALE);
+        long priceUnits = FixedPoint.of(price, FixedPoint.PRICE_SCALE);
+        long totalCost = FixedPoint.multiply(quantityUnits, FixedPoint.QUANTITY_SCALE,
+            priceUnits, FixedPoint.PRICE_SCALE, FixedPoint.VALUE_SCALE);
+        
+        return accountLocks.withLock(userId, () -> {
+            // Lots and valuations load from the ledger's holdings, so load them before the trade lands
+            taxLots.track(userId);
+            valuations.track(userId);
+            return buy
+                ? executeBuyTrade(userId, symbol, quantityUnits, priceUnits, totalCost)
+                : executeSellTrade(userId, symbol, quantityUnits, priceUnits, totalCost);
+        });
     }
     
-    private TradeRecord executeBuyTrade(UserRepository.User user, String symbol, BigDecimal quantity, BigDecimal price, BigDecimal totalCost) {
-        if (user.getCurrentBalance().compareTo(totalCost) < 0) {
+    private TradeRecord executeBuyTrade(Long userId, String symbol, long quantity, long price, long totalCost) {
+        TaxLotRepository.LotChange lots = taxLots.buy(userId, symbol, quantity, price);
+        Optional<TradeRepository.Execution> execution;
+        try {
+            execution = ledger.buy(userId, symbol, quantity(quantity), price(price), value(totalCost), lots);
+        } catch (RuntimeException e) {
+            // The trade may still have landed; the reload will see
+            taxLots.forget(userId);
+            throw e;
+        }
+        if (execution.isEmpty()) {
             throw new RuntimeException(String.format(
                 "Insufficient balance. Required: $%.2f, Available: $%.2f", 
-                totalCost, user.getCurrentBalance()));
-        }
-        
-        BigDecimal balanceBefore = user.getCurrentBalance();
-        BigDecimal balanceAfter = balanceBefore.subtract(totalCost);
-        
-        userRepository.updateBalance(user.getId(), balanceAfter);
-        
-        Optional<HoldingsRepository.Holding> existingHolding = holdingsRepository.findByUserIdAndSymbol(user.getId(), symbol);
-        if (existingHolding.isPresent()) {
-            HoldingsRepository.Holding holding = existingHolding.get();
-            BigDecimal newTotalQuantity = holding.getQuantity().add(quantity);
-            BigDecimal newTotalInvested = holding.getQuantity().multiply(holding.getAveragePrice()).add(totalCost);
-            BigDecimal newAvgPrice = newTotalInvested.divide(newTotalQuantity, 8, RoundingMode.HALF_UP);
-            
-            holdingsRepository.upsertHolding(user.getId(), symbol, newTotalQuantity, newAvgPrice);
-        } else {
-            holdingsRepository.upsertHolding(user.getId(), symbol, quantity, price);
+                value(totalCost), accounts.get(userId).getBalance()));
         }
-        
-        transactionRepository.saveTransaction(user.getId(), symbol, "BUY", quantity, price, totalCost, balanceBefore, balanceAfter);
-        return new TradeRecord(symbol, "BUY", quantity, price, totalCost);
+        taxLots.onBuy(userId, symbol, quantity, price);
+        accounts.balanceChanged(userId, execution.get().getBalanceAfter());
+        valuations.onTrade(userId, symbol, execution.get().getBalanceAfter());
+        return new TradeRecord(symbol, "BUY", quantity(quantity), price(price), value(totalCost));
     }
     
-    private TradeRecord executeSellTrade(UserRepository.User user, String symbol, BigDecimal quantity, BigDecimal price, BigDecimal totalCost) {
-        Optional<HoldingsRepository.Holding> holdingOpt = holdingsRepository.findByUserIdAndSymbol(user.getId(), symbol);
-        if (holdingOpt.isEmpty()) {
-            throw new RuntimeException("No holdings found for " + symbol);
+    private TradeRecord executeSellTrade(Long userId, String symbol, long quantity, long price, long totalCost) {
+        TaxLotRepository.LotChange lots = taxLots.sell(userId, symbol, quantity, totalCost);
+        Optional<TradeRepository.Execution> execution;
+        try {
+            execution = ledger.sell(userId, symbol, quantity(quantity), price(price), value(totalCost), lots);
+        } catch (RuntimeException e) {
+            taxLots.forget(userId);
+            throw e;
         }
-        
-        HoldingsRepository.Holding holding = holdingOpt.get();
-        
-        if (holding.getQuantity().compareTo(quantity) < 0) {
+        // Lots closed for a sell that failed, or not closed for one that landed, are reloaded
+        if (execution.isEmpty() || lots == null) taxLots.forget(userId);
+        if (execution.isEmpty()) {
+            HoldingsRepository.Holding holding = ledger.holding(userId, symbol)
+                .orElseThrow(() -> new RuntimeException("No holdings found for " + symbol));
             throw new RuntimeException(String.format(
                 "Insufficient holdings. Required: %.8f, Available: %.8f", 
-                quantity, holding.getQuantity()));
+                quantity(quantity), holding.getQuantity()));
         }
-        
-        BigDecimal balanceBefore = user.getCurrentBalance();
-        BigDecimal balanceAfter = balanceBefore.add(totalCost);
-        
-        userRepository.updateBalance(user.getId(), balanceAfter);
-        
-        BigDecimal remainingQuantity = holding.getQuantity().subtract(quantity);
-        
-        if (remainingQuantity.compareTo(MIN_QUANTITY) <= 0) {
-            holdingsRepository.upsertHolding(user.getId(), symbol, BigDecimal.ZERO, holding.getAveragePrice());
-            holdingsRepository.deleteZeroQuantityHoldings(user.getId());
-        } else {
-            holdingsRepository.upsertHolding(user.getId(), symbol, remainingQuantity, holding.getAveragePrice());
-        }
-        
-        transactionRepository.saveTransaction(user.getId(), symbol, "SELL", quantity, price, totalCost, balanceBefore, balanceAfter);
-        return new TradeRecord(symbol, "SELL", quantity, price, totalCost);
+        accounts.balanceChanged(userId, execution.get().getBalanceAfter());
+        valuations.onTrade(userId, symbol, execution.get().getBalanceAfter());
+        return new TradeRecord(symbol, "SELL", quantity(quantity), price(price), value(totalCost));
     }
     
     public AccountSummary getAccountSummary() {
-        UserRepository.User user = userRepository.createDemoUser();
-        List<KrakenApiService.CryptoPrice> currentPrices = krakenApiService.getCachedPrices();
-        
-        AccountSummary summary = new AccountSummary();
-        summary.setBalance(user.getCurrentBalance());
-        summary.setInitialBalance(user.getInitialBalance());
-        
-        BigDecimal totalPortfolioValue = BigDecimal.ZERO;
-        List<PortfolioHoldingWithCurrentValue> holdingsWithValue = new ArrayList<>();
-        
-        List<HoldingsRepository.Holding> holdings = holdingsRepository.findByUserId(user.getId());
-        
-        for (HoldingsRepository.Holding holding : holdings) {
-            KrakenApiService.CryptoPrice currentPrice = currentPrices.stream()
-                .filter(price -> price.getSymbol().equals(holding.getCryptoSymbol()))
-                .findFirst()
-                .orElse(null);
-            
-            BigDecimal price;
-            if (currentPrice != null) {
-                price = currentPrice.getPrice();
-            } else {
-                // Try to get current price from API for this specific symbol
-                try {
-                    KrakenApiService.CryptoPrice specificPrice = krakenApiService.getCryptoPrice(holding.getCryptoSymbol()).block();
-                    price = specificPrice != null ? specificPrice.getPrice() : BigDecimal.ZERO;
-                } catch (Exception e) {
-                    log.warn("Could not fetch current price for symbol: {}", holding.getCryptoSymbol());
-                    price = BigDecimal.ZERO;
-                }
-            }
-            
-            PortfolioHolding portfolioHolding = new PortfolioHolding(
-                holding.getCryptoSymbol(), 
-                holding.getQuantity(), 
-                holding.getAveragePrice(), 
-                holding.getQuantity().multiply(holding.getAveragePrice())
-            );
-            
-            PortfolioHoldingWithCurrentValue holdingWithValue = new PortfolioHoldingWithCurrentValue(portfolioHolding, price);
-            holdingsWithValue.add(holdingWithValue);
-            totalPortfolioValue = totalPortfolioValue.add(holdingWithValue.getCurrentValue());
-        }
-        
-        summary.setHoldings(holdingsWithValue);
-        summary.setTotalPortfolioValue(totalPortfolioValue);
-        
-        BigDecimal totalValue = user.getCurrentBalance().add(totalPortfolioValue);
-        BigDecimal totalPnL = totalValue.subtract(user.getInitialBalance());
-        BigDecimal totalPnLPercent = user.getInitialBalance().compareTo(BigDecimal.ZERO) > 0 
-            ? totalPnL.divide(user.getInitialBalance(), 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100))
-            : BigDecimal.ZERO;
-        
-        summary.setTotalPnL(totalPnL);
-        summary.setTotalPnLPercent(totalPnLPercent);
-        
-        return summary;
+        return getAccountSummary(demoUserId());
+    }
+    
+    public AccountSummary getAccountSummary(Long userId) {
+        return valuations.summary(userId).orElseGet(() -> {
+            track(userId);
+            return valuations.summary(userId).orElseThrow();
+        });
+    }
+    
+    /** The account's summary now and again after every trade or price move that changes it. */
+    public Flux<AccountSummary> getAccountUpdates(Long userId) {
+        track(userId);
+        return valuations.updates(userId);
+    }
+    
+    /** Loads are taken under the account lock so no trade lands between their reads. */
+    private void track(Long userId) {
+        accountLocks.withLock(userId, () -> valuations.track(userId));
     }
     
     public List<TradeRecord> getTradeHistory() {
-        UserRepository.User user = userRepository.createDemoUser();
-        List<TransactionRepository.Transaction> transactions = transactionRepository.findByUserId(user.getId());
+        return getTradeHistory(demoUserId());
+    }
+    
+    public List<TradeRecord> getTradeHistory(Long userId) {
+        List<TransactionRepository.Transaction> transactions = ledger.transactions(userId);
         
         return transactions.stream()
             .map(transaction -> new TradeRecord(
@@ -301,15 +352,118 @@ public class SimpleTradingService {
             .toList();
     }
     
-    public synchronized void resetAccount() {
-        UserRepository.User user = userRepository.createDemoUser();
-        userRepository.resetBalance(user.getId());
-        holdingsRepository.deleteByUserId(user.getId());
-        transactionRepository.deleteByUserId(user.getId());
+    public void resetAccount() {
+        resetAccount(demoUserId());
+    }
+    
+    public void resetAccount(Long userId) {
+        accountLocks.withLock(userId, () -> {
+            ledger.reset(userId);
+            accounts.invalidate(userId);
+            taxLots.onReset(userId);
+            valuations.onReset(userId);
+        });
+    }
+    
+    /** Open a new account; its username doubles as the local part of its email. */
+    public Long createAccount(String username, BigDecimal initialBalance) {
+        if (username == null || username.isBlank()) {
+            throw new IllegalArgumentException("Username is required");
+        }
+        if (initialBalance.signum() <= 0) {
+            throw new IllegalArgumentException("Initial balance must be positive");
+        }
+        if (initialBalance.compareTo(MAX_INITIAL_BALANCE) > 0) {
+            throw new IllegalArgumentException("Initial balance cannot exceed " + MAX_INITIAL_BALANCE.toPlainString());
+        }
+        Long userId;
+        try {
+            userId = userRepository.createUser(username, username + "@example.com",
+                initialBalance.setScale(2, RoundingMode.HALF_UP)).getId();
+        } catch (DuplicateKeyException e) {
+            throw new RuntimeException("Username already taken: " + username);
+        }
+        track(userId);
+        return userId;
+    }
+    
+    /**
+     * Track every account once started, so the leaderboard ranks those that
+     * have not traded since. Users, holdings, realized P&L and trade counts
+     * are each read in one query once the ledger has written everything
+     * through; the accounts skip the {@link AccountDirectory}, so they do not
+     * evict each other from it. An account tracked meanwhile by its own
+     * trade or look keeps that state.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void preloadLeaderboard() {
+        if (!preloadLeaderboard) return;
+        long start = System.nanoTime();
+        Map<Long, List<HoldingsRepository.Holding>> holdings = new HashMap<>();
+        Map<Long, BigDecimal> realized;
+        Map<Long, Integer> trades;
+        List<UserRepository.User> users;
+        try {
+            ledger.awaitWritten();
+            for (HoldingsRepository.Holding holding : holdingsRepository.findAll()) {
+                holdings.computeIfAbsent(holding.getUserId(), id -> new ArrayList<>()).add(holding);
+            }
+            realized = taxLotRepository.findRealizedByUser();
+            trades = transactionRepository.countByUser();
+            users = userRepository.findAll();
+        } catch (RuntimeException e) {
+            log.warn("Failed to load accounts for the leaderboard; they are ranked from their first trade or look: {}",
+                e.getMessage());
+            return;
+        }
+        int tracked = 0;
+        for (UserRepository.User user : users) {
+            Long userId = user.getId();
+            AccountDirectory.Account account = new AccountDirectory.Account(userId, user.getInitialBalance(),
+                user.getCurrentBalance());
+            try {
+                accountLocks.withLock(userId, () -> valuations.track(account, holdings.getOrDefault(userId, List.of()),
+                    realized.getOrDefault(userId, BigDecimal.ZERO), trades.getOrDefault(userId, 0)));
+                tracked++;
+            } catch (RuntimeException e) {
+                log.warn("Failed to load account {} for the leaderboard: {}", userId, e.getMessage());
+            }
+        }
+        log.info("Loaded {} accounts for the leaderboard in {} ms", tracked, (System.nanoTime() - start) / 1_000_000);
+    }
+    
+    /** Id of the account endpoints act on when none is given. */
+    public Long getDemoUserId() {
+        return demoUserId();
+    }
+    
+    /** The demo user never changes id, so look it up once rather than on every trade. */
+    private Long demoUserId() {
+        Long id = demoUserId;
+        if (id == null) {
+            id = userRepository.createDemoUser().getId();
+            demoUserId = id;
+        }
+        return id;
     }
     
     public BigDecimal getCurrentBalance() {
-        UserRepository.User user = userRepository.createDemoUser();
-        return user.getCurrentBalance();
+        return getCurrentBalance(demoUserId());
+    }
+    
+    public BigDecimal getCurrentBalance(Long userId) {
+        return accounts.get(userId).getBalance();
+    }
+    
+    private static BigDecimal quantity(long units) {
+        return FixedPoint.toBigDecimal(units, FixedPoint.QUANTITY_SCALE);
+    }
+    
+    private static BigDecimal price(long units) {
+        return FixedPoint.toBigDecimal(units, FixedPoint.PRICE_SCALE);
+    }
+    
+    private static BigDecimal value(long units) {
+        return FixedPoint.toBigDecimal(units, FixedPoint.VALUE_SCALE);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,71 @@
+package com.example.crypto_trading_sim.service;
+
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls into one: while a call is in flight, every
+ * further caller gets that call's result instead of starting its own. The
+ * slot is cleared just before the result is handed out, so the next caller
+ * after completion starts a fresh call. A caller cancelling does not cancel
+ * the shared call.
+ */
+public class SingleFlight<T> {
+
+    private final Supplier<Mono<T>> call;
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+    private CompletableFuture<T> inFlight;
+
+    public SingleFlight(Supplier<Mono<T>> call) {
+        this.call = call;
+    }
+
+    public Mono<T> get() {
+        return Mono.defer(() -> Mono.fromFuture(join(), true));
+    }
+
+    /** Calls actually made. */
+    public long getStarted() {
+        return started.get();
+    }
+
+    /** Callers that shared a call somebody else started. */
+    public long getJoined() {
+        return joined.get();
+    }
+
+    private CompletableFuture<T> join() {
+        CompletableFuture<T> future;
+        synchronized (this) {
+            if (inFlight != null) {
+                joined.incrementAndGet();
+                return inFlight;
+            }
+            future = new CompletableFuture<>();
+            inFlight = future;
+        }
+        started.incrementAndGet();
+        Mono.defer(call).subscribe(
+            value -> {
+                release(future);
+                future.complete(value);
+            },
+            error -> {
+                release(future);
+                future.completeExceptionally(error);
+            },
+            () -> {
+                release(future);
+                future.complete(null);
+            });
+        return future;
+    }
+
+    private synchronized void release(CompletableFuture<T> future) {
+        if (inFlight == future) inFlight = null;
+    }
+}
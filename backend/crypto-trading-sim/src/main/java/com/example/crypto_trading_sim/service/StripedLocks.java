@@ -0,0 +1,56 @@
+package com.example.crypto_trading_sim.service;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A fixed pool of locks shared out by key. Work under the same key is
+ * serialized in arrival order (the locks are fair); work under keys on
+ * different stripes runs in parallel. Two keys may share a stripe, which only
+ * costs some parallelism, so the pool stays small however many keys there are.
+ */
+public class StripedLocks {
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    public StripedLocks(int stripes) {
+        if (stripes < 1 || stripes > 1 << 16) {
+            throw new IllegalArgumentException("Lock stripes must be between 1 and 65536");
+        }
+        // Round up to a power of two so the stripe is a mask of the hash
+        int size = stripes == 1 ? 1 : Integer.highestOneBit((stripes - 1) << 1);
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock(true);
+        }
+        this.mask = size - 1;
+    }
+
+    public <T> T withLock(Object key, Supplier<T> action) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void withLock(Object key, Runnable action) {
+        withLock(key, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public int getStripes() {
+        return locks.length;
+    }
+
+    ReentrantLock lockFor(Object key) {
+        int hash = key.hashCode();
+        // Spread the high bits so sequential ids and string hashes both use every stripe
+        return locks[(hash ^ (hash >>> 16)) & mask];
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.crypto_trading_sim.service;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/**
+ * Random-walk prices for offline runs. Every interval each symbol moves with
+ * probability one half by a normally distributed step of about 10 bp. The
+ * sequence of prices depends only on the seed; timestamps are wall clock.
+ */
+public class SyntheticMarketDataSource implements MarketDataSource {
+
+    private static final int PRICE_SCALE = 5;
+    private static final double STEP_VOLATILITY = 0.001;
+
+    private static final class Walk {
+        private final String symbol;
+        private final long open;
+        private long price;
+        private long high;
+        private long low;
+        private long volume;
+
+        private Walk(String symbol, long open) {
+            this.symbol = symbol;
+            this.open = open;
+            this.price = open;
+            this.high = open;
+            this.low = open;
+        }
+    }
+
+    private final List<Walk> walks = new ArrayList<>();
+    private final Duration interval;
+    private final SplittableRandom random;
+    private volatile Disposable ticker;
+
+    public SyntheticMarketDataSource(List<String> symbols, Duration interval, long seed) {
+        if (symbols.isEmpty()) throw new IllegalArgumentException("At least one synthetic symbol is required");
+        this.interval = interval;
+        this.random = new SplittableRandom(seed);
+        for (String symbol : symbols) {
+            // Opening prices spread between 1 and 100,000
+            double open = Math.pow(10, random.nextDouble(0, 5));
+            walks.add(new Walk(symbol.trim().toUpperCase(), Math.max(1, Math.round(open * Math.pow(10, PRICE_SCALE)))));
+        }
+    }
+
+    @Override
+    public void start(Consumer<List<KrakenApiService.CryptoPrice>> sink) {
+        sink.accept(currentPrices());
+        ticker = Flux.interval(interval, interval)
+            .onBackpressureDrop()
+            .subscribe(tick -> {
+                List<KrakenApiService.CryptoPrice> updates = nextTick();
+                if (!updates.isEmpty()) sink.accept(updates);
+            });
+    }
+
+    @Override
+    public void stop() {
+        if (ticker != null) ticker.dispose();
+    }
+
+    @Override
+    public boolean isLive() {
+        return true;
+    }
+
+    @Override
+    public Mono<List<KrakenApiService.CryptoPrice>> fetchAll() {
+        return Mono.fromSupplier(this::currentPrices);
+    }
+
+    /**
+     * Advance the walk by one step and return the symbols that moved.
+     */
+    synchronized List<KrakenApiService.CryptoPrice> nextTick() {
+        LocalDateTime now = LocalDateTime.now();
+        List<KrakenApiService.CryptoPrice> updates = new ArrayList<>();
+        for (Walk walk : walks) {
+            if (random.nextBoolean()) continue;
+            long step = Math.round(walk.price * STEP_VOLATILITY * gaussian());
+            walk.price = Math.max(1, walk.price + step);
+            walk.high = Math.max(walk.high, walk.price);
+            walk.low = Math.min(walk.low, walk.price);
+            walk.volume += random.nextLong(1, FixedPoint.rescale(10, 0, FixedPoint.QUANTITY_SCALE));
+            updates.add(toPrice(walk, now));
+        }
+        return updates;
+    }
+
+    private synchronized List<KrakenApiService.CryptoPrice> currentPrices() {
+        LocalDateTime now = LocalDateTime.now();
+        List<KrakenApiService.CryptoPrice> prices = new ArrayList<>(walks.size());
+        for (Walk walk : walks) prices.add(toPrice(walk, now));
+        return prices;
+    }
+
+    private KrakenApiService.CryptoPrice toPrice(Walk walk, LocalDateTime now) {
+        long change = walk.price - walk.open;
+        KrakenApiService.CryptoPrice price = new KrakenApiService.CryptoPrice(walk.symbol, walk.symbol, PRICE_SCALE,
+            walk.price, change, FixedPoint.percent(change, walk.open), walk.volume, now);
+        price.setHigh24hUnits(walk.high);
+        price.setLow24hUnits(walk.low);
+        return price;
+    }
+
+    private double gaussian() {
+        // Box-Muller on the seeded generator, so runs are reproducible
+        double u = 1 - random.nextDouble();
+        double v = random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.HoldingsRepository;
+import com.example.crypto_trading_sim.repository.TaxLotRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tax lots and realized P&L per position.
+ * <p>
+ * Every buy opens a lot; a sell closes lots by {@code trading.lot-method}:
+ * {@code fifo} (default) takes the oldest first, {@code lifo} the newest,
+ * and {@code average} merges the position's lots into one at their average
+ * cost. The sell's proceeds less the cost of what it closed is added to the
+ * position's realized P&L. Each position's open lots sit in a
+ * {@link LotQueue}, so a sell costs O(lots it consumes).
+ * <p>
+ * An account's lots and realized P&L are loaded from {@code tax_lots} and
+ * {@code realized_pnl} before its first trade, then kept in memory. Each
+ * trade's change to them is handed to the {@link AccountLedger} with the
+ * trade, which writes both or neither; lot ids are numbered per account so
+ * the change is complete before it is written. An account whose trade did
+ * not go as the book expected is forgotten and reloaded. A position whose
+ * lots do not add up to the ledger's holding, such as one opened before lots
+ * were tracked, is restated as a single lot at the holding's average price.
+ * <p>
+ * Callers serialize the trades and resets of one account.
+ * <p>
+ * Metrics: {@code lots.closed} and {@code lots.rebuilt} (counters).
+ */
+@Service
+@Slf4j
+public class TaxLotBook {
+
+    public enum LotMethod { FIFO, LIFO, AVERAGE }
+
+    private static final class Position {
+        private final LotQueue lots = new LotQueue();
+    }
+
+    private static final class Account {
+        private final Map<String, Position> positions = new HashMap<>();
+        // Read without the account lock by valuations
+        private volatile long realized;
+        private long nextLotId = 1;
+    }
+
+    private final TaxLotRepository repository;
+    private final AccountLedger ledger;
+    private final LotMethod method;
+    private final Map<Long, Account> accounts = new ConcurrentHashMap<>();
+    private final Counter closed;
+    private final Counter rebuilt;
+
+    @Autowired
+    public TaxLotBook(TaxLotRepository repository, AccountLedger ledger,
+                      @Value("${trading.lot-method:fifo}") String method, MeterRegistry meterRegistry) {
+        this(repository, ledger, LotMethod.valueOf(method.toUpperCase()), meterRegistry);
+    }
+
+    TaxLotBook(TaxLotRepository repository, AccountLedger ledger, LotMethod method, MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.ledger = ledger;
+        this.method = method;
+        this.closed = Counter.builder("lots.closed")
+            .description("Tax lots consumed in full by sells")
+            .register(meterRegistry);
+        this.rebuilt = Counter.builder("lots.rebuilt")
+            .description("Positions whose lots were restated from the ledger's holding")
+            .register(meterRegistry);
+    }
+
+    public LotMethod getMethod() {
+        return method;
+    }
+
+    /** Load the account's lots, if not loaded; must come before the ledger applies its next trade. */
+    void track(Long userId) {
+        if (!accounts.containsKey(userId)) accounts.put(userId, load(userId));
+    }
+
+    /** Realized P&L over all the account's positions, at {@link FixedPoint#VALUE_SCALE}. */
+    long realized(Long userId) {
+        track(userId);
+        return accounts.get(userId).realized;
+    }
+
+    /**
+     * The lot a buy opens, for the ledger to write with it; null if the
+     * account is not tracked. Changes nothing until {@link #onBuy}.
+     */
+    TaxLotRepository.LotChange buy(Long userId, String symbol, long quantity, long price) {
+        Account account = accounts.get(userId);
+        if (account == null) return null;
+        return new TaxLotRepository.LotChange(symbol, List.of(),
+            List.of(new TaxLotRepository.Lot(account.nextLotId, symbol, quantity(quantity), price(price))),
+            BigDecimal.ZERO);
+    }
+
+    /** Open the lot {@link #buy} returned, once the ledger has applied the buy. */
+    void onBuy(Long userId, String symbol, long quantity, long price) {
+        Account account = accounts.get(userId);
+        if (account == null) return;
+        position(account, symbol).lots.add(account.nextLotId++, quantity, price);
+    }
+
+    /**
+     * Close lots for a sell and return the change, for the ledger to write
+     * with it; null if the account is not tracked or its lots do not cover
+     * the sell. Applied at once: {@link #forget} the account if the ledger
+     * then does not apply the sell.
+     */
+    TaxLotRepository.LotChange sell(Long userId, String symbol, long quantity, long proceeds) {
+        Account account = accounts.get(userId);
+        if (account == null) return null;
+        Position position = position(account, symbol);
+        if (position.lots.quantity() < quantity) return null;
+        LotQueue.Closing closing = switch (method) {
+            case FIFO -> position.lots.close(quantity, false);
+            case LIFO -> position.lots.close(quantity, true);
+            case AVERAGE -> position.lots.closeAverage(quantity);
+        };
+        long realized = Math.subtractExact(proceeds, closing.cost);
+        account.realized = Math.addExact(account.realized, realized);
+        closed.increment(closing.closedIds.length);
+        return new TaxLotRepository.LotChange(symbol, Arrays.stream(closing.closedIds).boxed().toList(),
+            closing.reducedId < 0 ? List.of() : List.of(new TaxLotRepository.Lot(closing.reducedId, symbol,
+                quantity(closing.reducedQuantity), price(closing.reducedPrice))),
+            value(realized));
+    }
+
+    /** The ledger has cleared the account's lots with the rest of it. */
+    void onReset(Long userId) {
+        accounts.put(userId, new Account());
+    }
+
+    /** Drop a diverged account so its next trade reloads and restates it. */
+    void forget(Long userId) {
+        if (accounts.remove(userId) != null) {
+            log.info("Reloading tax lots of account {} before its next trade", userId);
+        }
+    }
+
+    private Account load(Long userId) {
+        // Lots are written behind in some ledgers; read them once they are all in
+        ledger.awaitWritten(userId);
+        Account account = new Account();
+        for (TaxLotRepository.Lot lot : repository.findByUserId(userId)) {
+            position(account, lot.getSymbol()).lots.add(lot.getId(),
+                FixedPoint.of(lot.getQuantity(), FixedPoint.QUANTITY_SCALE), FixedPoint.of(lot.getPrice(), FixedPoint.PRICE_SCALE));
+            account.nextLotId = Math.max(account.nextLotId, lot.getId() + 1);
+        }
+        long total = 0;
+        for (BigDecimal realized : repository.findRealized(userId).values()) {
+            total = Math.addExact(total, FixedPoint.of(realized, FixedPoint.VALUE_SCALE));
+        }
+        account.realized = total;
+
+        Map<String, HoldingsRepository.Holding> holdings = new HashMap<>();
+        for (HoldingsRepository.Holding holding : ledger.holdings(userId)) {
+            holdings.put(holding.getCryptoSymbol(), holding);
+        }
+        Set<String> symbols = new HashSet<>(account.positions.keySet());
+        symbols.addAll(holdings.keySet());
+        for (String symbol : symbols) {
+            HoldingsRepository.Holding holding = holdings.get(symbol);
+            long held = holding == null ? 0 : FixedPoint.of(holding.getQuantity(), FixedPoint.QUANTITY_SCALE);
+            Position position = position(account, symbol);
+            if (position.lots.quantity() != held) rebuild(userId, account, symbol, position, holding, held);
+        }
+        return account;
+    }
+
+    private void rebuild(Long userId, Account account, String symbol, Position position,
+                         HoldingsRepository.Holding holding, long held) {
+        log.info("Restating tax lots of account {} in {}: lots hold {}, ledger holds {}", userId, symbol,
+            quantity(position.lots.quantity()), quantity(held));
+        List<Long> closedIds = Arrays.stream(position.lots.ids()).boxed().toList();
+        position.lots.clear();
+        List<TaxLotRepository.Lot> written = List.of();
+        if (held > 0) {
+            BigDecimal averagePrice = holding.getAveragePrice();
+            long id = account.nextLotId++;
+            written = List.of(new TaxLotRepository.Lot(id, symbol, holding.getQuantity(), averagePrice));
+            position.lots.add(id, held, FixedPoint.of(averagePrice, FixedPoint.PRICE_SCALE));
+        }
+        // No trade to ride with; the ledger has nothing of this account left to write
+        repository.write(TaxLotRepository.Writes.of(userId,
+            new TaxLotRepository.LotChange(symbol, closedIds, written, BigDecimal.ZERO)));
+        rebuilt.increment();
+    }
+
+    private static Position position(Account account, String symbol) {
+        return account.positions.computeIfAbsent(symbol, s -> new Position());
+    }
+
+    private static BigDecimal quantity(long units) {
+        return FixedPoint.toBigDecimal(units, FixedPoint.QUANTITY_SCALE);
+    }
+
+    private static BigDecimal price(long units) {
+        return FixedPoint.toBigDecimal(units, FixedPoint.PRICE_SCALE);
+    }
+
+    private static BigDecimal value(long units) {
+        return FixedPoint.toBigDecimal(units, FixedPoint.VALUE_SCALE);
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.crypto_trading_sim.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+/**
+ * Binary record format for captured price ticks, used by replay files and
+ * {@link TickJournal} segments.
+ * <p>
+ * A file starts with the 8-byte magic {@code TICKCAP1}, followed by records:
+ * <pre>
+ * int   length            bytes after this field
+ * long  timestamp         epoch millis
+ * byte  symbolLength, symbol (ASCII)
+ * byte  priceScale
+ * long  price, change24h, change24hPercent, volume24h, high24h, low24h
+ * </pre>
+ * A length of zero or less marks the end, so a pre-sized file that was never
+ * filled reads as ending where the data stops. Readers skip to the end of
+ * {@code length}, so a record may carry padding after its fields.
+ */
+public final class TickCapture {
+
+    public static final byte[] MAGIC = "TICKCAP1".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int FIXED_PAYLOAD = Long.BYTES + 1 + 1 + 6 * Long.BYTES;
+
+    private TickCapture() {}
+
+    /** Bytes {@link #write} will use for this price, length prefix included. */
+    public static int recordSize(KrakenApiService.CryptoPrice price) {
+        return Integer.BYTES + FIXED_PAYLOAD + price.getSymbol().length();
+    }
+
+    public static void write(ByteBuffer buffer, KrakenApiService.CryptoPrice price) {
+        buffer.putInt(recordSize(price) - Integer.BYTES);
+        writePayload(buffer, price);
+    }
+
+    /**
+     * Write the record fields without the length prefix, for writers that
+     * publish the length separately once the payload is in place.
+     */
+    static void writePayload(ByteBuffer buffer, KrakenApiService.CryptoPrice price) {
+        String symbol = price.getSymbol();
+        if (symbol.length() > Byte.MAX_VALUE) throw new IllegalArgumentException("Symbol too long: " + symbol);
+        buffer.putLong(epochMillis(price.getLastUpdated()));
+        buffer.put((byte) symbol.length());
+        for (int i = 0; i < symbol.length(); i++) buffer.put((byte) symbol.charAt(i));
+        buffer.put((byte) price.getPriceScale());
+        buffer.putLong(price.getPriceUnits());
+        buffer.putLong(price.getChange24hUnits());
+        buffer.putLong(price.getChange24hPercentUnits());
+        buffer.putLong(price.getVolume24hUnits());
+        buffer.putLong(price.getHigh24hUnits());
+        buffer.putLong(price.getLow24hUnits());
+    }
+
+    /**
+     * Read the record at the buffer's position, or return {@code null} (without
+     * moving) at the end of the data.
+     */
+    public static KrakenApiService.CryptoPrice read(ByteBuffer buffer) {
+        if (buffer.remaining() < Integer.BYTES) return null;
+        int start = buffer.position();
+        int length = buffer.getInt();
+        if (length <= 0 || length > buffer.remaining()) {
+            buffer.position(start);
+            return null;
+        }
+        long timestamp = buffer.getLong();
+        byte[] symbolBytes = new byte[buffer.get()];
+        buffer.get(symbolBytes);
+        String symbol = new String(symbolBytes, StandardCharsets.US_ASCII);
+        int scale = buffer.get();
+        long price = buffer.getLong();
+        long change = buffer.getLong();
+        long changePercent = buffer.getLong();
+        long volume = buffer.getLong();
+        KrakenApiService.CryptoPrice crypto = new KrakenApiService.CryptoPrice(symbol, symbol, scale, price, change,
+            changePercent, volume, LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()));
+        crypto.setHigh24hUnits(buffer.getLong());
+        crypto.setLow24hUnits(buffer.getLong());
+        buffer.position(start + Integer.BYTES + length);
+        return crypto;
+    }
+
+    /** Check the file header at the buffer's position and skip past it. */
+    public static void readHeader(ByteBuffer buffer) {
+        byte[] magic = new byte[MAGIC.length];
+        if (buffer.remaining() < magic.length) throw new IllegalArgumentException("Not a tick capture: too short");
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) throw new IllegalArgumentException("Not a tick capture: bad header");
+    }
+
+    public static long epochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Sequential writer for a new capture file.
+     */
+    public static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+        public Writer(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+            buffer.put(MAGIC);
+        }
+
+        public void append(KrakenApiService.CryptoPrice price) throws IOException {
+            if (buffer.remaining() < recordSize(price)) flush();
+            write(buffer, price);
+        }
+
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.example.crypto_trading_sim.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of every tick published to the price book, written in
+ * {@link TickCapture} format to memory-mapped segment files
+ * {@code ticks-<sequence>.cap} of a fixed size.
+ * <p>
+ * There is a single writer (the caller serializes {@link #append}), so appends
+ * take no locks: the record payload is copied into the mapping and its length
+ * prefix is stored last with release semantics. Readers load the length with
+ * acquire semantics and so never see a half-written record, whether they tail
+ * from this process ({@link Tailer}) or another one. Records are padded to
+ * four bytes to keep the length field aligned. A full segment is closed with a
+ * length of {@code -1} and writing continues in the next sequence number; the
+ * oldest segments beyond {@code maxSegments} are deleted.
+ * <p>
+ * Every segment, and the journal directory as a whole, is a valid input for
+ * {@link ReplayMarketDataSource}. After a restart {@link #recoverLatest}
+ * rebuilds the last price of every symbol.
+ */
+@Slf4j
+public class TickJournal implements Closeable {
+
+    private static final VarHandle LENGTH = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final int END_OF_SEGMENT = -1;
+    private static final int MIN_SEGMENT_SIZE = 4096;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("ticks-(\\d{16})\\.cap");
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Counter appended;
+
+    // Writer state, only touched from append() and close()
+    private MappedByteBuffer segment;
+    private long sequence;
+    private int position;
+
+    private volatile boolean failed;
+    private volatile boolean closed;
+
+    public TickJournal(Path directory, long segmentSize, int maxSegments, MeterRegistry meterRegistry) throws IOException {
+        if (segmentSize < MIN_SEGMENT_SIZE || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Tick journal segment size must be between 4 KB and 2 GB");
+        }
+        if (maxSegments < 1) throw new IllegalArgumentException("Tick journal must keep at least one segment");
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = (int) segmentSize;
+        this.maxSegments = maxSegments;
+        this.appended = Counter.builder("tick.journal.appended")
+            .description("Ticks appended to the tick journal")
+            .register(meterRegistry);
+
+        // Never append to a segment left by a previous run: it may end in a torn write
+        List<Path> existing = segments(directory);
+        this.sequence = existing.isEmpty() ? 0 : sequenceOf(existing.get(existing.size() - 1)) + 1;
+        this.segment = createSegment(sequence);
+        this.position = TickCapture.MAGIC.length;
+        prune();
+    }
+
+    /**
+     * Append the ticks. Must not be called concurrently. A write failure is
+     * logged once and turns the journal off rather than failing the price path.
+     */
+    public void append(Collection<KrakenApiService.CryptoPrice> prices) {
+        if (failed || closed) return;
+        try {
+            for (KrakenApiService.CryptoPrice price : prices) {
+                appendOne(price);
+            }
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            log.error("Tick journal in {} stopped after a write failure: {}", directory, e.getMessage());
+        }
+    }
+
+    private void appendOne(KrakenApiService.CryptoPrice price) throws IOException {
+        int size = align(TickCapture.recordSize(price));
+        // Always leave room for the end-of-segment marker
+        if (position + size + Integer.BYTES > segmentSize) roll();
+        segment.position(position + Integer.BYTES);
+        TickCapture.writePayload(segment, price);
+        LENGTH.setRelease(segment, position, size - Integer.BYTES);
+        position += size;
+        appended.increment();
+    }
+
+    private void roll() throws IOException {
+        // The next segment exists before the marker is visible, so a reader
+        // that sees the marker can always move on
+        MappedByteBuffer next = createSegment(sequence + 1);
+        LENGTH.setRelease(segment, position, END_OF_SEGMENT);
+        segment = next;
+        sequence++;
+        position = TickCapture.MAGIC.length;
+        prune();
+    }
+
+    private MappedByteBuffer createSegment(long sequence) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(directory, sequence), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            mapped.put(0, TickCapture.MAGIC);
+            return mapped;
+        }
+    }
+
+    private void prune() throws IOException {
+        List<Path> all = segments(directory);
+        for (int i = 0; i < all.size() - maxSegments; i++) {
+            Files.deleteIfExists(all.get(i));
+        }
+    }
+
+    /** Sequence number of the segment being written. */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Latest price per symbol in the journal. Segments are read newest first
+     * and the scan stops at the first one that adds no symbol not already
+     * seen, so a restart reads one or two segments rather than all of them.
+     */
+    public List<KrakenApiService.CryptoPrice> recoverLatest() throws IOException {
+        return recoverLatest(directory);
+    }
+
+    public static List<KrakenApiService.CryptoPrice> recoverLatest(Path directory) throws IOException {
+        List<Path> segments = segments(directory);
+        Map<String, KrakenApiService.CryptoPrice> latest = new LinkedHashMap<>();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Map<String, KrakenApiService.CryptoPrice> inSegment = new LinkedHashMap<>();
+            forEach(segments.get(i), price -> inSegment.put(price.getSymbol(), price));
+            if (inSegment.isEmpty()) continue;
+            int known = latest.size();
+            inSegment.forEach(latest::putIfAbsent);
+            if (latest.size() == known) break;
+        }
+        return new ArrayList<>(latest.values());
+    }
+
+    /**
+     * Read every complete record of one segment or capture file.
+     */
+    public static void forEach(Path file, Consumer<KrakenApiService.CryptoPrice> consumer) throws IOException {
+        ByteBuffer capture = mapReadOnly(file);
+        TickCapture.readHeader(capture);
+        KrakenApiService.CryptoPrice price;
+        while ((price = TickCapture.read(capture)) != null) {
+            consumer.accept(price);
+        }
+    }
+
+    /** Segment files in the directory, oldest first. */
+    public static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) return List.of();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> SEGMENT_NAME.matcher(file.getFileName().toString()).matches())
+                .sorted()
+                .toList();
+        }
+    }
+
+    static MappedByteBuffer mapReadOnly(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Capture file over 2 GB, split it into segments: " + file);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * A reader that follows the journal from its oldest retained segment,
+     * including records appended after it was created.
+     */
+    public Tailer tailer() throws IOException {
+        List<Path> all = segments(directory);
+        return new Tailer(directory, all.isEmpty() ? sequence : sequenceOf(all.get(0)));
+    }
+
+    /**
+     * Close the current segment with an end marker so tailers move on to
+     * whatever the next run writes.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        if (!failed) LENGTH.setRelease(segment, position, END_OF_SEGMENT);
+        segment.force();
+    }
+
+    /**
+     * Incremental reader for a journal directory. Not thread-safe; each
+     * reading thread uses its own tailer.
+     */
+    public static final class Tailer {
+        private final Path directory;
+        private long sequence;
+        private MappedByteBuffer segment;
+        private int position;
+
+        Tailer(Path directory, long sequence) {
+            this.directory = directory;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Hand up to {@code limit} new records to the consumer and return how
+         * many there were; zero means the reader has caught up with the writer.
+         */
+        public int poll(Consumer<KrakenApiService.CryptoPrice> consumer, int limit) throws IOException {
+            int read = 0;
+            while (read < limit) {
+                if (segment == null && !open()) break;
+                int length = position + Integer.BYTES <= segment.capacity()
+                    ? (int) LENGTH.getAcquire(segment, position)
+                    : END_OF_SEGMENT;
+                if (length == 0 && Files.exists(segmentPath(directory, sequence + 1))) {
+                    // The writer restarted and left this segment without a marker; re-check
+                    // in case the last record landed just before the next segment appeared
+                    length = (int) LENGTH.getAcquire(segment, position);
+                    if (length == 0) length = END_OF_SEGMENT;
+                }
+                if (length == END_OF_SEGMENT) {
+                    segment = null;
+                    sequence++;
+                    continue;
+                }
+                if (length == 0) break;
+                segment.position(position);
+                consumer.accept(TickCapture.read(segment));
+                position = segment.position();
+                read++;
+            }
+            return read;
+        }
+
+        /** Sequence number of the segment being read. */
+        public long getSequence() {
+            return sequence;
+        }
+
+        private boolean open() throws IOException {
+            Path path = segmentPath(directory, sequence);
+            if (!Files.exists(path)) {
+                // Pruned while we were behind: skip ahead to the oldest one left
+                for (Path candidate : segments(directory)) {
+                    if (sequenceOf(candidate) > sequence) {
+                        sequence = sequenceOf(candidate);
+                        return open();
+                    }
+                }
+                return false;
+            }
+            MappedByteBuffer mapped = mapReadOnly(path);
+            // A segment that was just created may not be sized or have its header yet
+            if (mapped.capacity() < TickCapture.MAGIC.length || mapped.get(0) == 0) return false;
+            TickCapture.readHeader(mapped);
+            segment = mapped;
+            position = mapped.position();
+            return true;
+        }
+    }
+
+    private static int align(int size) {
+        return (size + Integer.BYTES - 1) & -Integer.BYTES;
+    }
+
+    private static Path segmentPath(Path directory, long sequence) {
+        return directory.resolve(String.format("ticks-%016d.cap", sequence));
+    }
+
+    private static long sequenceOf(Path segment) {
+        Matcher matcher = SEGMENT_NAME.matcher(segment.getFileName().toString());
+        if (!matcher.matches()) throw new IllegalArgumentException("Not a tick journal segment: " + segment);
+        return Long.parseLong(matcher.group(1));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.crypto_trading_sim.service;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * One symbol's resting triggers, sorted by threshold price.
+ * <p>
+ * Triggers that fire when the price rises to their threshold sit in a map
+ * ordered lowest first, those that fire when it falls in one ordered highest
+ * first, so the triggers a price crosses are always a prefix of one map or
+ * the other. {@link #cross} takes that prefix off in O(log n + k) for k
+ * triggered, however many others are resting. Triggers at the same threshold
+ * fire in the order they were added.
+ * <p>
+ * Thread-safe; the consumer passed to {@link #cross} runs under the book's
+ * lock and must not block.
+ */
+final class TriggerBook<T> {
+
+    private static final long NO_PRICE = Long.MIN_VALUE;
+
+    private final TreeMap<Long, ArrayDeque<T>> onRise = new TreeMap<>();
+    private final TreeMap<Long, ArrayDeque<T>> onFall = new TreeMap<>(Comparator.reverseOrder());
+    private long lastPrice = NO_PRICE;
+    private int size;
+
+    /**
+     * Rest a trigger at {@code threshold}. False, and nothing added, if the
+     * last price seen has already crossed it.
+     */
+    synchronized boolean add(long threshold, boolean rising, T trigger) {
+        if (lastPrice != NO_PRICE && (rising ? lastPrice >= threshold : lastPrice <= threshold)) return false;
+        (rising ? onRise : onFall).computeIfAbsent(threshold, t -> new ArrayDeque<>()).add(trigger);
+        size++;
+        return true;
+    }
+
+    /** False if the trigger was not resting (already fired or removed). */
+    synchronized boolean remove(long threshold, boolean rising, T trigger) {
+        TreeMap<Long, ArrayDeque<T>> side = rising ? onRise : onFall;
+        ArrayDeque<T> level = side.get(threshold);
+        if (level == null || !level.remove(trigger)) return false;
+        if (level.isEmpty()) side.remove(threshold);
+        size--;
+        return true;
+    }
+
+    /**
+     * Record a new price and hand every trigger it crosses to
+     * {@code triggered}, removing them. Returns how many fired.
+     */
+    synchronized int cross(long price, Consumer<T> triggered) {
+        lastPrice = price;
+        // headMap of the reversed map holds the thresholds at or above the price
+        int fired = drain(onRise.headMap(price, true), triggered) + drain(onFall.headMap(price, true), triggered);
+        size -= fired;
+        return fired;
+    }
+
+    /** The last price passed to {@link #cross}, or {@link Long#MIN_VALUE} before the first. */
+    synchronized long lastPrice() {
+        return lastPrice;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private static <T> int drain(NavigableMap<Long, ArrayDeque<T>> crossed, Consumer<T> triggered) {
+        int fired = 0;
+        for (Iterator<ArrayDeque<T>> levels = crossed.values().iterator(); levels.hasNext(); ) {
+            for (T trigger : levels.next()) {
+                triggered.accept(trigger);
+                fired++;
+            }
+            levels.remove();
+        }
+        return fired;
+    }
+}
@@ -50,15 +50,84 @@ CREATE TABLE IF NOT EXISTS transactions (
 CREATE TABLE IF NOT EXISTS price_history (
     id SERIAL PRIMARY KEY,
     crypto_id INTEGER NOT NULL REFERENCES cryptocurrencies(id) ON DELETE CASCADE,
-    price DECIMAL(15,2) NOT NULL,
+    price DECIMAL(24,10) NOT NULL,
     timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     source VARCHAR(50) DEFAULT 'kraken'
 );
 
+-- sub-cent assets need more than 2 decimal places; widen tables created before this change.
+-- The check keeps boots after the first from taking an exclusive lock on price_history.
+-- The body is single-quoted rather than $$-quoted so the script splitter keeps it whole.
+DO '
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_schema = current_schema() AND table_name = ''price_history''
+                 AND column_name = ''price'' AND (numeric_precision <> 24 OR numeric_scale <> 10)) THEN
+        ALTER TABLE price_history ALTER COLUMN price TYPE DECIMAL(24,10);
+    END IF;
+END';
+
+-- downsampled price history tiers, rolled up from price_history by the compaction job
+CREATE TABLE IF NOT EXISTS price_history_1m (
+    crypto_id INTEGER NOT NULL REFERENCES cryptocurrencies(id) ON DELETE CASCADE,
+    bucket TIMESTAMP NOT NULL,
+    open DECIMAL(24,10) NOT NULL,
+    high DECIMAL(24,10) NOT NULL,
+    low DECIMAL(24,10) NOT NULL,
+    close DECIMAL(24,10) NOT NULL,
+    tick_count INTEGER NOT NULL,
+    PRIMARY KEY (crypto_id, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS price_history_1h (
+    crypto_id INTEGER NOT NULL REFERENCES cryptocurrencies(id) ON DELETE CASCADE,
+    bucket TIMESTAMP NOT NULL,
+    open DECIMAL(24,10) NOT NULL,
+    high DECIMAL(24,10) NOT NULL,
+    low DECIMAL(24,10) NOT NULL,
+    close DECIMAL(24,10) NOT NULL,
+    tick_count INTEGER NOT NULL,
+    PRIMARY KEY (crypto_id, bucket)
+);
+
+-- how far each tier has been rolled up (exclusive upper bound)
+CREATE TABLE IF NOT EXISTS price_rollup_watermarks (
+    tier VARCHAR(10) PRIMARY KEY,
+    watermark TIMESTAMP NOT NULL
+);
+
+-- last ledger event written through to users/user_holdings/transactions (ledger.mode=memory)
+CREATE TABLE IF NOT EXISTS ledger_watermarks (
+    name VARCHAR(20) PRIMARY KEY,
+    sequence BIGINT NOT NULL
+);
+
+-- open tax lots per position, consumed FIFO, LIFO or at average cost by sells (trading.lot-method)
+-- lot ids are numbered per account by the application, so a trade's lots can be written with it.
+CREATE TABLE IF NOT EXISTS tax_lots (
+    user_id INTEGER NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    lot_id BIGINT NOT NULL,
+    crypto_symbol VARCHAR(10) NOT NULL,
+    quantity DECIMAL(18,8) NOT NULL,
+    price DECIMAL(24,10) NOT NULL,
+    opened_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (user_id, lot_id)
+);
+
+-- realized P&L per position, kept when the position is closed
+CREATE TABLE IF NOT EXISTS realized_pnl (
+    user_id INTEGER NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    crypto_symbol VARCHAR(10) NOT NULL,
+    realized DECIMAL(24,8) NOT NULL DEFAULT 0,
+    PRIMARY KEY (user_id, crypto_symbol)
+);
+
 -- indexes for better performance
 CREATE INDEX IF NOT EXISTS idx_transactions_user_id ON transactions(user_id);
 CREATE INDEX IF NOT EXISTS idx_transactions_crypto_id ON transactions(crypto_id);
 CREATE INDEX IF NOT EXISTS idx_transactions_created_at ON transactions(created_at);
 CREATE INDEX IF NOT EXISTS idx_user_holdings_user_id ON user_holdings(user_id);
 CREATE INDEX IF NOT EXISTS idx_price_history_crypto_id ON price_history(crypto_id);
-CREATE INDEX IF NOT EXISTS idx_price_history_timestamp ON price_history(timestamp); 
\ No newline at end of file
+CREATE INDEX IF NOT EXISTS idx_price_history_timestamp ON price_history(timestamp);
+CREATE INDEX IF NOT EXISTS idx_price_history_1m_bucket ON price_history_1m(bucket);
+CREATE INDEX IF NOT EXISTS idx_price_history_1h_bucket ON price_history_1h(bucket);
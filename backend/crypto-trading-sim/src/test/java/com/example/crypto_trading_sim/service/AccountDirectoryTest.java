@@ -0,0 +1,190 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+class AccountDirectoryTest {
+
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("10000.00");
+
+    @Test
+    void servesRepeatLookupsFromTheCacheAndWritesBalancesThrough() {
+        Store store = new Store(10);
+        AccountDirectory directory = new AccountDirectory(store, new SimpleMeterRegistry(), 100);
+
+        assertAmount("10000", directory.get(3L).getBalance());
+        assertAmount("10000", directory.get(3L).getBalance());
+        assertEquals(1, store.loads.get());
+
+        store.balances.set(3, 9_500_00);
+        directory.balanceChanged(3L, new BigDecimal("9500.00"));
+        assertAmount("9500", directory.get(3L).getBalance());
+        assertAmount("10000", directory.get(3L).getInitialBalance());
+        assertEquals(1, store.loads.get(), "a written-through balance needs no reload");
+
+        directory.invalidate(3L);
+        assertAmount("9500", directory.get(3L).getBalance());
+        assertEquals(2, store.loads.get());
+
+        assertTrue(directory.find(99L).isEmpty());
+        assertThrows(RuntimeException.class, () -> directory.get(99L));
+        assertEquals(1, directory.size(), "missing accounts are not cached");
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedAccountWhenFull() {
+        Store store = new Store(10);
+        // One segment, so recency is exact
+        AccountDirectory directory = new AccountDirectory(store, new SimpleMeterRegistry(), 1);
+        directory.get(1L);
+        directory.get(2L);
+        assertEquals(1, directory.size());
+        directory.get(2L);
+        assertEquals(2, store.loads.get());
+        directory.get(1L);
+        assertEquals(3, store.loads.get(), "account 1 was evicted by account 2");
+    }
+
+    @Test
+    void aLoadOverlappingABalanceChangeIsNotCached() throws Exception {
+        Store store = new Store(10);
+        CountDownLatch read = new CountDownLatch(1);
+        CountDownLatch changed = new CountDownLatch(1);
+        AccountDirectory directory = new AccountDirectory(id -> {
+            Optional<UserRepository.User> user = store.apply(id);
+            if (store.loads.get() == 1) {
+                read.countDown();
+                await(changed);
+            }
+            return user;
+        }, new SimpleMeterRegistry(), 100);
+
+        Thread loader = new Thread(() -> directory.get(5L));
+        loader.start();
+        await(read);
+        // A trade commits while the load is in flight with the old balance
+        store.balances.set(5, 9_000_00);
+        directory.balanceChanged(5L, new BigDecimal("9000.00"));
+        changed.countDown();
+        loader.join();
+
+        assertAmount("9000", directory.get(5L).getBalance());
+        assertEquals(2, store.loads.get());
+    }
+
+    /**
+     * 100k simulated accounts read and traded from several threads, with
+     * trades serialized per account as the trading service does. Every
+     * account loads about once, and the cache ends agreeing with the store.
+     * Tagged {@code perf}: run with {@code mvn test -Pperf}.
+     */
+    @Test
+    @Tag("perf")
+    void loadTestWithOneHundredThousandAccounts() throws Exception {
+        int accounts = 100_000;
+        int threads = 8;
+        int operationsPerThread = 500_000;
+        Store store = new Store(accounts);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        // Headroom over the account count, since segments fill unevenly
+        AccountDirectory directory = new AccountDirectory(store, registry, 128 * 1024);
+        StripedLocks locks = new StripedLocks(64);
+        AtomicInteger mismatches = new AtomicInteger();
+
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            SplittableRandom random = new SplittableRandom(t);
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < operationsPerThread; i++) {
+                    long id = 1 + random.nextInt(accounts);
+                    if (random.nextInt(10) == 0) {
+                        long change = random.nextInt(200) - 100;
+                        locks.withLock(id, () -> {
+                            long balance = store.balances.addAndGet((int) id, change);
+                            directory.balanceChanged(id, BigDecimal.valueOf(balance, 2));
+                        });
+                    } else if (directory.get(id).getBalance().signum() <= 0) {
+                        mismatches.incrementAndGet();
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) worker.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        double hits = registry.get("accounts.cache.hits").counter().count();
+        double misses = registry.get("accounts.cache.misses").counter().count();
+        log.info("100k accounts: {} ops/s over {} threads, hit ratio {}, {} loads, {} cached",
+            Math.round(threads * operationsPerThread / seconds), threads, String.format("%.4f", hits / (hits + misses)),
+            store.loads.get(), directory.size());
+
+        assertEquals(0, mismatches.get());
+        assertTrue(store.loads.get() < accounts * 1.01, "each account should load about once");
+        for (long id = 1; id <= accounts; id++) {
+            assertEquals(store.balances.get((int) id), directory.get(id).getBalance().movePointRight(2).longValueExact(),
+                "stale balance cached for account " + id);
+        }
+        assertEquals(0.0, registry.get("accounts.cache.evictions").counter().count());
+    }
+
+    @Test
+    void staysBoundedWhenTheWorkingSetOutgrowsIt() {
+        Store store = new Store(100_000);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AccountDirectory directory = new AccountDirectory(store, registry, 10_000);
+        for (long id = 1; id <= 100_000; id++) directory.get(id);
+
+        assertTrue(directory.size() <= 10_000 + 64, "size " + directory.size());
+        assertTrue(registry.get("accounts.cache.evictions").counter().count() >= 90_000 - 64);
+    }
+
+    /** Balances in cents, indexed by account id, standing in for the users table. */
+    private static class Store implements Function<Long, Optional<UserRepository.User>> {
+        final AtomicLongArray balances;
+        final AtomicInteger loads = new AtomicInteger();
+
+        Store(int accounts) {
+            balances = new AtomicLongArray(accounts + 1);
+            for (int id = 1; id <= accounts; id++) balances.set(id, 1_000_000);
+        }
+
+        @Override
+        public Optional<UserRepository.User> apply(Long id) {
+            loads.incrementAndGet();
+            if (id >= balances.length()) return Optional.empty();
+            LocalDateTime now = LocalDateTime.now();
+            return Optional.of(new UserRepository.User(id, "user-" + id, id + "@example.com",
+                BigDecimal.valueOf(balances.get(id.intValue()), 2), INITIAL_BALANCE, now, now));
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void assertAmount(String expected, BigDecimal actual) {
+        assertEquals(0, new BigDecimal(expected).compareTo(actual), "expected " + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.PriceHistoryRepository.PriceTick;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Sinks;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandleEngineTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 7, 1, 12, 0, 0);
+
+    private final Sinks.Many<List<KrakenApiService.CryptoPrice>> ticks = Sinks.many().multicast().directBestEffort();
+
+    @Test
+    void foldsTicksIntoEveryResolution() {
+        CandleEngine engine = new CandleEngine(ticks.asFlux(), (since, sink) -> {}, Duration.ofHours(1));
+
+        tick(price("BTC", 10_000, 1_000, T0));
+        tick(price("BTC", 10_500, 1_400, T0.plusSeconds(20)));
+        tick(price("BTC", 9_800, 1_500, T0.plusSeconds(40)));
+        tick(price("BTC", 10_100, 1_450, T0.plusSeconds(61)));
+
+        List<CandleEngine.Candle> minutes = engine.getCandles("btc", CandleEngine.Resolution.M1, 10);
+        assertEquals(2, minutes.size());
+        CandleEngine.Candle first = minutes.get(0);
+        assertEquals(epochSeconds(T0), first.getTime());
+        assertEquals(0, new BigDecimal("100.00").compareTo(first.getOpen()));
+        assertEquals(0, new BigDecimal("105.00").compareTo(first.getHigh()));
+        assertEquals(0, new BigDecimal("98.00").compareTo(first.getLow()));
+        assertEquals(0, new BigDecimal("98.00").compareTo(first.getClose()));
+        assertEquals(0, new BigDecimal("0.00000500").compareTo(first.getVolume()), "24h volume increase, not the level");
+        assertEquals(0, BigDecimal.ZERO.compareTo(minutes.get(1).getVolume()), "falling 24h volume clamps to zero");
+
+        assertEquals(4, engine.getCandles("BTC", CandleEngine.Resolution.S1, 100).size());
+        List<CandleEngine.Candle> hours = engine.getCandles("BTC", CandleEngine.Resolution.H1, 10);
+        assertEquals(1, hours.size());
+        assertEquals(0, new BigDecimal("101.00").compareTo(hours.get(0).getClose()));
+    }
+
+    @Test
+    void aBadTickIsSkippedAndLaterTicksStillFold() {
+        CandleEngine engine = new CandleEngine(ticks.asFlux(), (since, sink) -> {}, Duration.ofHours(1));
+
+        ticks.tryEmitNext(List.of(price("BTC", 10_000, 0, null), price("ETH", 2_000, 0, T0)));
+        tick(price("BTC", 10_100, 0, T0));
+
+        assertEquals(1, engine.getCandles("ETH", CandleEngine.Resolution.M1, 10).size());
+        List<CandleEngine.Candle> btc = engine.getCandles("BTC", CandleEngine.Resolution.M1, 10);
+        assertEquals(1, btc.size());
+        assertEquals(0, new BigDecimal("101.00").compareTo(btc.get(0).getOpen()));
+    }
+
+    @Test
+    void limitReturnsTheMostRecentCandlesOldestFirst() {
+        CandleEngine engine = new CandleEngine(ticks.asFlux(), (since, sink) -> {}, Duration.ofHours(1));
+        for (int minute = 0; minute < 5; minute++) {
+            tick(price("ETH", 2_000 + minute, 0, T0.plusMinutes(minute)));
+        }
+
+        List<CandleEngine.Candle> candles = engine.getCandles("ETH", CandleEngine.Resolution.M1, 2);
+        assertEquals(List.of(epochSeconds(T0.plusMinutes(3)), epochSeconds(T0.plusMinutes(4))),
+            candles.stream().map(CandleEngine.Candle::getTime).toList());
+    }
+
+    @Test
+    void ringOverwritesSlotsOnceTheyFallOutOfTheWindow() {
+        CandleEngine engine = new CandleEngine(ticks.asFlux(), (since, sink) -> {}, Duration.ofHours(1));
+        int capacity = CandleEngine.Resolution.S1.getCapacity();
+
+        tick(price("SOL", 100, 0, T0));
+        tick(price("SOL", 200, 0, T0.plusSeconds(capacity)));
+        // A late tick for the evicted bucket must not clobber the newer one
+        tick(price("SOL", 300, 0, T0.plusNanos(TimeUnit.MILLISECONDS.toNanos(500))));
+
+        List<CandleEngine.Candle> seconds = engine.getCandles("SOL", CandleEngine.Resolution.S1, capacity);
+        assertEquals(1, seconds.size());
+        assertEquals(epochSeconds(T0.plusSeconds(capacity)), seconds.get(0).getTime());
+        assertEquals(0, new BigDecimal("2.00").compareTo(seconds.get(0).getClose()));
+    }
+
+    @Test
+    void backfillFromHistoryMergesWithLiveTicksInAnyOrder() throws Exception {
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        LocalDateTime minute = now.withSecond(0);
+        tick(price("BTC", 0, 0, now)); // nobody subscribed yet, ignored
+        CandleEngine engine = new CandleEngine(ticks.asFlux(), (since, sink) -> {
+            assertTrue(since.isBefore(now));
+            sink.accept(new PriceTick("BTC", new BigDecimal("90.00"), minute));
+            sink.accept(new PriceTick("BTC", new BigDecimal("120.00"), minute.plusNanos(1_000_000)));
+        }, Duration.ofHours(1));
+
+        tick(price("BTC", 11_000, 0, minute.plusNanos(2_000_000)));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        CandleEngine.Candle candle;
+        do {
+            candle = engine.getCandles("BTC", CandleEngine.Resolution.M1, 1).get(0);
+            Thread.sleep(5);
+        } while (candle.getOpen().compareTo(new BigDecimal("90.00")) != 0 && System.nanoTime() < deadline);
+
+        assertEquals(0, new BigDecimal("90.00").compareTo(candle.getOpen()));
+        assertEquals(0, new BigDecimal("120.00").compareTo(candle.getHigh()));
+        assertEquals(0, new BigDecimal("110.00").compareTo(candle.getClose()));
+    }
+
+    @Test
+    void unknownSymbolAndIntervalAreRejected() {
+        CandleEngine engine = new CandleEngine(ticks.asFlux(), (since, sink) -> {}, Duration.ofHours(1));
+        assertThrows(RuntimeException.class, () -> engine.getCandles("DOGE", CandleEngine.Resolution.M1, 10));
+        assertThrows(IllegalArgumentException.class, () -> CandleEngine.Resolution.fromLabel("15m"));
+    }
+
+    private void tick(KrakenApiService.CryptoPrice price) {
+        ticks.tryEmitNext(List.of(price));
+    }
+
+    private KrakenApiService.CryptoPrice price(String symbol, long cents, long volumeUnits, LocalDateTime at) {
+        return new KrakenApiService.CryptoPrice(symbol, symbol, 2, cents, 0, 0, volumeUnits, at);
+    }
+
+    private long epochSeconds(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+}
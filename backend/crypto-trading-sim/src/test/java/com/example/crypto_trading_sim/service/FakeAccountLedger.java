@@ -0,0 +1,134 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.HoldingsRepository;
+import com.example.crypto_trading_sim.repository.TaxLotRepository;
+import com.example.crypto_trading_sim.repository.TradeRepository;
+import com.example.crypto_trading_sim.repository.TransactionRepository;
+import com.example.crypto_trading_sim.repository.UserRepository;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cash and holdings at average cost in memory, for tests. Trades write their
+ * lot changes to {@link #taxLots} as the real ledgers do; callers serialize
+ * each account's trades, as they must for any ledger.
+ */
+class FakeAccountLedger implements AccountLedger {
+
+    final InMemoryTaxLotRepository taxLots = new InMemoryTaxLotRepository();
+    final AtomicInteger holdingsReads = new AtomicInteger();
+    private final Map<Long, Account> accounts = new ConcurrentHashMap<>();
+
+    private static final class Account {
+        final BigDecimal initial;
+        BigDecimal balance;
+        // Least recently traded first
+        final Map<String, HoldingsRepository.Holding> holdings = new LinkedHashMap<>();
+
+        Account(BigDecimal initial) {
+            this.initial = initial;
+            this.balance = initial;
+        }
+    }
+
+    FakeAccountLedger open(Long userId, String balance) {
+        accounts.put(userId, new Account(new BigDecimal(balance)));
+        return this;
+    }
+
+    @Override
+    public Optional<TradeRepository.Execution> buy(Long userId, String symbol, BigDecimal quantity, BigDecimal price,
+                                                   BigDecimal total, TaxLotRepository.LotChange lots) {
+        Account account = accounts.get(userId);
+        if (account == null || account.balance.compareTo(total) < 0) return Optional.empty();
+        HoldingsRepository.Holding held = account.holdings.remove(symbol);
+        BigDecimal heldQuantity = held == null ? BigDecimal.ZERO : held.getQuantity();
+        BigDecimal cost = held == null ? BigDecimal.ZERO : heldQuantity.multiply(held.getAveragePrice());
+        BigDecimal newQuantity = heldQuantity.add(quantity);
+        account.holdings.put(symbol, holding(userId, symbol, newQuantity,
+            cost.add(total).divide(newQuantity, 8, RoundingMode.HALF_UP)));
+        return execute(userId, account, account.balance.subtract(total), lots);
+    }
+
+    @Override
+    public Optional<TradeRepository.Execution> sell(Long userId, String symbol, BigDecimal quantity, BigDecimal price,
+                                                    BigDecimal total, TaxLotRepository.LotChange lots) {
+        Account account = accounts.get(userId);
+        if (account == null) return Optional.empty();
+        HoldingsRepository.Holding held = account.holdings.get(symbol);
+        if (held == null || held.getQuantity().compareTo(quantity) < 0) return Optional.empty();
+        account.holdings.remove(symbol);
+        BigDecimal remaining = held.getQuantity().subtract(quantity);
+        if (remaining.signum() > 0) {
+            account.holdings.put(symbol, holding(userId, symbol, remaining, held.getAveragePrice()));
+        }
+        return execute(userId, account, account.balance.add(total), lots);
+    }
+
+    @Override
+    public void reset(Long userId) {
+        Account account = accounts.get(userId);
+        account.balance = account.initial;
+        account.holdings.clear();
+        taxLots.deleteByUserId(userId);
+    }
+
+    @Override
+    public Optional<UserRepository.User> findUser(Long userId) {
+        Account account = accounts.get(userId);
+        if (account == null) return Optional.empty();
+        LocalDateTime now = LocalDateTime.now();
+        return Optional.of(new UserRepository.User(userId, "user-" + userId, userId + "@example.com",
+            account.balance, account.initial, now, now));
+    }
+
+    @Override
+    public List<HoldingsRepository.Holding> holdings(Long userId) {
+        holdingsReads.incrementAndGet();
+        Account account = accounts.get(userId);
+        if (account == null) return List.of();
+        List<HoldingsRepository.Holding> held = new ArrayList<>(account.holdings.values());
+        Collections.reverse(held);
+        return held;
+    }
+
+    @Override
+    public Optional<HoldingsRepository.Holding> holding(Long userId, String symbol) {
+        Account account = accounts.get(userId);
+        return account == null ? Optional.empty() : Optional.ofNullable(account.holdings.get(symbol));
+    }
+
+    @Override
+    public List<TransactionRepository.Transaction> transactions(Long userId) {
+        return List.of();
+    }
+
+    private Optional<TradeRepository.Execution> execute(Long userId, Account account, BigDecimal after,
+                                                        TaxLotRepository.LotChange lots) {
+        TradeRepository.Execution execution = new TradeRepository.Execution(1L, account.balance, after);
+        account.balance = after;
+        if (lots != null) taxLots.write(TaxLotRepository.Writes.of(userId, lots));
+        return Optional.of(execution);
+    }
+
+    private static HoldingsRepository.Holding holding(Long userId, String symbol, BigDecimal quantity,
+                                                      BigDecimal averagePrice) {
+        HoldingsRepository.Holding holding = new HoldingsRepository.Holding();
+        holding.setUserId(userId);
+        holding.setCryptoSymbol(symbol);
+        holding.setQuantity(quantity);
+        holding.setAveragePrice(averagePrice);
+        holding.setUpdatedAt(LocalDateTime.now());
+        return holding;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.crypto_trading_sim.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FixedPointTest {
+
+    private final Random random = new Random(42);
+
+    @Test
+    void multiplyMatchesBigDecimal() {
+        for (int i = 0; i < 100_000; i++) {
+            long quantity = randomUnits(1_000_000_000_000L);
+            long price = randomUnits(10_000_000_000_000L);
+
+            BigDecimal expected = BigDecimal.valueOf(quantity, 8).multiply(BigDecimal.valueOf(price, 8))
+                .setScale(8, RoundingMode.HALF_UP);
+            assertEquals(expected, FixedPoint.toBigDecimal(FixedPoint.multiply(quantity, 8, price, 8, 8), 8));
+        }
+    }
+
+    @Test
+    void divideMatchesBigDecimal() {
+        for (int i = 0; i < 100_000; i++) {
+            long invested = randomUnits(1_000_000_000_000_000L);
+            long quantity = randomUnits(100_000_000_000L);
+            if (quantity == 0) continue;
+
+            BigDecimal expected = BigDecimal.valueOf(invested, 8).divide(BigDecimal.valueOf(quantity, 8), 8, RoundingMode.HALF_UP);
+            assertEquals(expected, FixedPoint.toBigDecimal(FixedPoint.divide(invested, 8, quantity, 8, 8), 8));
+        }
+    }
+
+    @Test
+    void percentMatchesBigDecimal() {
+        for (int i = 0; i < 100_000; i++) {
+            long change = randomUnits(1_000_000_000L);
+            long open = Math.abs(randomUnits(10_000_000_000L)) + 1;
+
+            BigDecimal expected = BigDecimal.valueOf(change, 2).divide(BigDecimal.valueOf(open, 2), 4, RoundingMode.HALF_UP)
+                .multiply(BigDecimal.valueOf(100));
+            assertEquals(0, expected.compareTo(FixedPoint.toBigDecimal(FixedPoint.percent(change, open), FixedPoint.PERCENT_SCALE)));
+        }
+    }
+
+    @Test
+    void rescaleRoundsHalfUpAwayFromZero() {
+        assertEquals(12, FixedPoint.rescale(115, 1, 0));
+        assertEquals(-12, FixedPoint.rescale(-115, 1, 0));
+        assertEquals(11, FixedPoint.rescale(114, 1, 0));
+        assertEquals(150_000_000L, FixedPoint.rescale(15, 1, 8));
+        assertEquals(FixedPoint.of(new BigDecimal("106950.20000"), 1), 1_069_502L);
+    }
+
+    @Test
+    void overflowThrowsInsteadOfWrapping() {
+        assertThrows(ArithmeticException.class, () -> FixedPoint.multiply(Long.MAX_VALUE / 2, 0, 4, 0, 0));
+        assertThrows(ArithmeticException.class, () -> FixedPoint.multiply(Long.MAX_VALUE, 8, Long.MAX_VALUE, 8, 8));
+        assertThrows(ArithmeticException.class, () -> FixedPoint.of(new BigDecimal("1e30"), 8));
+        assertThrows(ArithmeticException.class, () -> FixedPoint.divide(1, 8, 0, 8, 8));
+    }
+
+    private long randomUnits(long bound) {
+        long value = Math.floorMod(random.nextLong(), bound);
+        return random.nextBoolean() ? value : -value;
+    }
+}
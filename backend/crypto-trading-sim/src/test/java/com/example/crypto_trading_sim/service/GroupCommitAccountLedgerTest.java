@@ -0,0 +1,248 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.TradeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+class GroupCommitAccountLedgerTest {
+
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000.00");
+    private static final BigDecimal PRICE = new BigDecimal("10");
+
+    private final List<GroupCommitAccountLedger> ledgers = new ArrayList<>();
+
+    @AfterEach
+    void closeLedgers() {
+        ledgers.forEach(GroupCommitAccountLedger::close);
+    }
+
+    @Test
+    void concurrentTradesShareOneCommit() {
+        Trades trades = new Trades(0);
+        GroupCommitAccountLedger ledger = open(trades, 64, Duration.ofMillis(200));
+
+        List<CompletableFuture<Optional<TradeRepository.Execution>>> results = new ArrayList<>();
+        for (long userId = 1; userId <= 16; userId++) results.add(ledger.submit(buy(userId, "1")));
+
+        for (CompletableFuture<Optional<TradeRepository.Execution>> result : results) {
+            assertTrue(result.join().isPresent());
+        }
+        assertTrue(trades.groups.size() <= 2, "16 trades took " + trades.groups.size() + " commits");
+        assertEquals(16, trades.groups.stream().mapToInt(List::size).sum());
+    }
+
+    @Test
+    void aGroupHoldsOneTradePerAccount() {
+        Trades trades = new Trades(0);
+        GroupCommitAccountLedger ledger = open(trades, 64, Duration.ofMillis(200));
+
+        List<CompletableFuture<Optional<TradeRepository.Execution>>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) results.add(ledger.submit(buy(1L, "1")));
+        results.add(ledger.submit(buy(2L, "1")));
+        results.forEach(CompletableFuture::join);
+
+        for (List<TradeRepository.TradeRequest> group : trades.groups) {
+            assertEquals(group.size(), group.stream().map(TradeRepository.TradeRequest::getUserId).distinct().count());
+        }
+        assertEquals(3, trades.groups.size());
+        assertEquals(new BigDecimal("970.00"), trades.balances.get(1L));
+    }
+
+    @Test
+    void onlyTheTradesFailingTheirCheckAreRejected() {
+        Trades trades = new Trades(0);
+        GroupCommitAccountLedger ledger = open(trades, 64, Duration.ofMillis(50));
+
+        CompletableFuture<Optional<TradeRepository.Execution>> affordable = ledger.submit(buy(1L, "10"));
+        CompletableFuture<Optional<TradeRepository.Execution>> tooBig = ledger.submit(buy(2L, "1000"));
+
+        assertTrue(affordable.join().isPresent());
+        assertEquals(new BigDecimal("900.00"), affordable.join().get().getBalanceAfter());
+        assertTrue(tooBig.join().isEmpty());
+    }
+
+    @Test
+    void aFailedCommitFailsOnlyTheTradeThatCannotCommit() {
+        Trades trades = new Trades(0);
+        trades.failingUser = 1L;
+        GroupCommitAccountLedger ledger = open(trades, 64, Duration.ofMillis(50));
+
+        CompletableFuture<Optional<TradeRepository.Execution>> other = ledger.submit(buy(2L, "1"));
+        RuntimeException e = assertThrows(RuntimeException.class,
+            () -> ledger.buy(1L, "BTC", BigDecimal.ONE, PRICE, PRICE));
+        assertEquals("connection reset", e.getMessage());
+        assertTrue(other.join().isPresent());
+        assertEquals(new BigDecimal("990.00"), trades.balances.get(2L));
+        assertNull(trades.balances.get(1L));
+    }
+
+    @Test
+    void anUnknownSymbolFailsOnlyItsOwnTrade() {
+        Trades trades = new Trades(0);
+        GroupCommitAccountLedger ledger = open(trades, 64, Duration.ofMillis(50));
+
+        CompletableFuture<Optional<TradeRepository.Execution>> other = ledger.submit(buy(2L, "1"));
+        CompletableFuture<Optional<TradeRepository.Execution>> unknown = ledger.submit(
+            new TradeRepository.TradeRequest(1L, "???", true, BigDecimal.ONE, PRICE, PRICE));
+
+        assertTrue(other.join().isPresent());
+        CompletionException e = assertThrows(CompletionException.class, unknown::join);
+        assertEquals("Unknown symbol ???", e.getCause().getMessage());
+        assertEquals(1, trades.groups.size(), "the other trade still committed in one group");
+    }
+
+    @Test
+    void everyTradeSubmittedAroundCloseCompletes() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            GroupCommitAccountLedger ledger = open(new Trades(0), 64, Duration.ofMillis(1));
+            List<CompletableFuture<Optional<TradeRepository.Execution>>> results =
+                Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> traders = new ArrayList<>();
+            for (long userId = 1; userId <= 4; userId++) {
+                long id = userId;
+                Thread trader = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 200; i++) results.add(ledger.submit(buy(id, "0.01")));
+                });
+                trader.start();
+                traders.add(trader);
+            }
+            start.countDown();
+            ledger.close();
+            for (Thread trader : traders) trader.join();
+
+            for (CompletableFuture<Optional<TradeRepository.Execution>> result : results) {
+                assertTrue(result.isDone(), "a trade submitted around close was left waiting");
+            }
+        }
+    }
+
+    /**
+     * Simulates a commit that costs 1ms plus 5us per trade. Per-trade commits
+     * cap one trader at about 1000 trades/s; sharing them should let many
+     * traders go far beyond that.
+     */
+    @Test
+    @Tag("perf")
+    void throughputScalesWithConcurrentTraders() throws Exception {
+        double single = 0;
+        for (int traders : new int[] {1, 16, 256}) {
+            Trades trades = new Trades(TimeUnit.MILLISECONDS.toNanos(1));
+            GroupCommitAccountLedger ledger = open(trades, 256, Duration.ofNanos(200_000));
+            int perTrader = Math.max(10, 400 / traders);
+            long[] latencies = new long[traders * perTrader];
+            CountDownLatch done = new CountDownLatch(traders);
+            long start = System.nanoTime();
+            for (int t = 0; t < traders; t++) {
+                long userId = t + 1;
+                int offset = t * perTrader;
+                Thread trader = new Thread(() -> {
+                    for (int i = 0; i < perTrader; i++) {
+                        long begin = System.nanoTime();
+                        ledger.buy(userId, "BTC", new BigDecimal("0.01"), PRICE, new BigDecimal("0.1"));
+                        latencies[offset + i] = System.nanoTime() - begin;
+                    }
+                    done.countDown();
+                });
+                trader.start();
+            }
+            assertTrue(done.await(60, TimeUnit.SECONDS));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double throughput = latencies.length / seconds;
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            double p99 = sorted[(int) Math.ceil(sorted.length * 0.99) - 1] / 1e6;
+            log.info("traders={} trades={} commits={} throughput={}/s p99={}ms", traders, latencies.length,
+                trades.groups.size(), Math.round(throughput), String.format("%.2f", p99));
+            if (traders == 1) single = throughput;
+            if (traders == 256) {
+                assertTrue(throughput > single * 10,
+                    "256 traders: " + throughput + "/s vs " + single + "/s for one");
+            }
+        }
+    }
+
+    private GroupCommitAccountLedger open(Trades trades, int maxBatch, Duration maxWait) {
+        GroupCommitAccountLedger ledger = new GroupCommitAccountLedger(null, null, null, trades, null,
+            new SimpleMeterRegistry(), maxBatch, maxWait);
+        ledgers.add(ledger);
+        return ledger;
+    }
+
+    private static TradeRepository.TradeRequest buy(Long userId, String quantity) {
+        BigDecimal amount = new BigDecimal(quantity);
+        return new TradeRepository.TradeRequest(userId, "BTC", true, amount, PRICE, amount.multiply(PRICE));
+    }
+
+    /** Buys against a balance map; each call is one commit. */
+    private static class Trades extends TradeRepository {
+        final Map<Long, BigDecimal> balances = new ConcurrentHashMap<>();
+        final List<List<TradeRequest>> groups = Collections.synchronizedList(new ArrayList<>());
+        final long commitNanos;
+        final AtomicLong ids = new AtomicLong();
+        volatile Long failingUser;
+
+        Trades(long commitNanos) {
+            super(null, null, null);
+            this.commitNanos = commitNanos;
+        }
+
+        @Override
+        public List<Optional<Execution>> executeAll(List<TradeRequest> trades) {
+            if (new HashSet<>(trades.stream().map(TradeRequest::getUserId).toList()).size() != trades.size()) {
+                throw new IllegalStateException("Two trades for one account in a group");
+            }
+            if (commitNanos > 0) LockSupport.parkNanos(commitNanos + trades.size() * 5_000L);
+            if (trades.stream().anyMatch(trade -> trade.getUserId().equals(failingUser))) {
+                throw new RuntimeException("connection reset");
+            }
+            groups.add(List.copyOf(trades));
+            List<Optional<Execution>> results = new ArrayList<>();
+            for (TradeRequest trade : trades) {
+                BigDecimal before = balances.getOrDefault(trade.getUserId(), INITIAL_BALANCE);
+                if (before.compareTo(trade.getTotal()) < 0) {
+                    results.add(Optional.empty());
+                    continue;
+                }
+                BigDecimal after = before.subtract(trade.getTotal()).setScale(2);
+                balances.put(trade.getUserId(), after);
+                results.add(Optional.of(new Execution(ids.incrementAndGet(), before, after)));
+            }
+            return results;
+        }
+
+        @Override
+        public Long cryptoId(String symbol) {
+            if (!symbol.equals("BTC")) throw new IllegalArgumentException("Unknown symbol " + symbol);
+            return 1L;
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.HoldingsRepository;
+import com.example.crypto_trading_sim.repository.LedgerRepository;
+import com.example.crypto_trading_sim.repository.TaxLotRepository;
+import com.example.crypto_trading_sim.repository.TradeRepository;
+import com.example.crypto_trading_sim.repository.TransactionRepository;
+import com.example.crypto_trading_sim.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryAccountLedgerTest {
+
+    private static final Long USER = 1L;
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("100000.00");
+    // Long enough that only the test writes or snapshots
+    private static final Duration NEVER = Duration.ofHours(1);
+
+    @TempDir
+    Path dir;
+
+    private final Database db = new Database();
+    private final List<InMemoryAccountLedger> ledgers = new ArrayList<>();
+
+    @AfterEach
+    void closeLedgers() {
+        ledgers.forEach(InMemoryAccountLedger::close);
+    }
+
+    @Test
+    void tradesAgainstMemoryAndWritesTheDatabaseBehind() throws Exception {
+        InMemoryAccountLedger ledger = open(new SimpleMeterRegistry());
+
+        TradeRepository.Execution first = ledger.buy(USER, "BTC", bd("0.5"), bd("20000"), bd("10000")).orElseThrow();
+        ledger.buy(USER, "BTC", bd("0.5"), bd("30000"), bd("15000")).orElseThrow();
+        TradeRepository.Execution last = ledger.sell(USER, "BTC", bd("0.25"), bd("40000"), bd("10000")).orElseThrow();
+
+        assertAmount("100000", first.getBalanceBefore());
+        assertAmount("90000", first.getBalanceAfter());
+        assertAmount("85000", last.getBalanceAfter());
+        HoldingsRepository.Holding held = ledger.holding(USER, "BTC").orElseThrow();
+        assertAmount("0.75", held.getQuantity());
+        assertAmount("25000", held.getAveragePrice());
+        assertEquals(1, db.userReads.get(), "the account is loaded once, then served from memory");
+        assertEquals(1, db.holdingReads.get());
+
+        // Nothing has reached the database yet, but history already shows the trades
+        assertAmount("100000", db.balances.get(USER));
+        assertEquals(3, ledger.getUnwrittenCount());
+        assertEquals(List.of("SELL", "BUY", "BUY"), types(ledger.transactions(USER)));
+
+        assertTrue(ledger.flush());
+        assertEquals(0, ledger.getUnwrittenCount());
+        assertEquals(ledger.getWritten(), db.watermark);
+        assertAmount("85000", db.balances.get(USER));
+        assertAmount("0.75", db.holdings.get("1:BTC").getQuantity());
+        assertAmount("25000", db.holdings.get("1:BTC").getAveragePrice());
+        assertEquals(List.of("SELL", "BUY", "BUY"), types(ledger.transactions(USER)));
+        assertEquals(3, db.transactions.size());
+    }
+
+    @Test
+    void recoversFromSnapshotAndJournalAfterACrash() throws Exception {
+        InMemoryAccountLedger crashed = open(new SimpleMeterRegistry());
+        crashed.buy(USER, "ETH", bd("2"), bd("1500"), bd("3000")).orElseThrow();
+        crashed.flush();
+        crashed.snapshot();
+        crashed.buy(USER, "ETH", bd("1"), bd("1800"), bd("1800")).orElseThrow();
+        crashed.sell(USER, "ETH", bd("0.5"), bd("2000"), bd("1000")).orElseThrow();
+        // Crash: the last two trades are journaled but not in the database
+        ledgers.remove(crashed);
+
+        InMemoryAccountLedger recovered = open(new SimpleMeterRegistry());
+        assertEquals(2, recovered.getUnwrittenCount());
+        assertAmount("96200", recovered.findUser(USER).orElseThrow().getCurrentBalance());
+        assertAmount("2.5", recovered.holding(USER, "ETH").orElseThrow().getQuantity());
+        assertAmount("1600", recovered.holding(USER, "ETH").orElseThrow().getAveragePrice());
+        assertEquals(1, db.userReads.get(), "recovery comes from the journal, not the database");
+
+        assertTrue(recovered.flush());
+        assertAmount("96200", db.balances.get(USER));
+        assertAmount("2.5", db.holdings.get("1:ETH").getQuantity());
+        assertEquals(3, db.transactions.size());
+    }
+
+    @Test
+    void retriesAFailedWriteWithoutLosingHistory() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        InMemoryAccountLedger ledger = open(registry);
+        ledger.buy(USER, "SOL", bd("10"), bd("100"), bd("1000")).orElseThrow();
+
+        db.failWrites = true;
+        assertFalse(ledger.flush());
+        assertEquals(1, registry.counter("ledger.flush.failures").count());
+        assertEquals(List.of("BUY"), types(ledger.transactions(USER)));
+
+        db.failWrites = false;
+        assertTrue(ledger.flush());
+        assertEquals(List.of("BUY"), types(ledger.transactions(USER)));
+        assertAmount("99000", db.balances.get(USER));
+    }
+
+    @Test
+    void stopsTakingTradesWhileTheDatabaseRefusesAnEvent() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        InMemoryAccountLedger ledger = open(registry);
+        ledger.buy(USER, "BTC", bd("1"), bd("20000"), bd("20000")).orElseThrow();
+        ledger.buy(USER, "DOGE", bd("100"), bd("1"), bd("100")).orElseThrow();
+        ledger.buy(USER, "ETH", bd("1"), bd("2000"), bd("2000")).orElseThrow();
+
+        db.refusedSymbol = "DOGE";
+        assertFalse(ledger.flush());
+        // The trade before the refused one is written; the ones from it on wait
+        assertEquals(List.of("BTC"), db.transactions.stream().map(TransactionRepository.Transaction::getCryptoSymbol).toList());
+        assertEquals(2, ledger.getUnwrittenCount());
+        assertEquals(1, registry.get("ledger.stalled").gauge().value());
+        assertThrows(RuntimeException.class, () -> ledger.buy(USER, "BTC", bd("1"), bd("1"), bd("1")));
+        assertThrows(RuntimeException.class, () -> ledger.reset(USER));
+
+        db.refusedSymbol = null;
+        assertTrue(ledger.flush());
+        assertEquals(0, registry.get("ledger.stalled").gauge().value());
+        assertEquals(3, db.transactions.size());
+        ledger.buy(USER, "BTC", bd("1"), bd("1"), bd("1")).orElseThrow();
+    }
+
+    @Test
+    void reloadsAccountsTheDatabaseLedgerHasWrittenSince() throws Exception {
+        InMemoryAccountLedger before = open(new SimpleMeterRegistry());
+        before.buy(USER, "BTC", bd("1"), bd("20000"), bd("20000")).orElseThrow();
+        before.snapshot();
+        before.close();
+        ledgers.remove(before);
+
+        // A run in database mode trades on the same account
+        db.balances.put(USER, bd("50000"));
+        db.directWrites = true;
+
+        InMemoryAccountLedger after = open(new SimpleMeterRegistry());
+        assertAmount("50000", after.findUser(USER).orElseThrow().getCurrentBalance());
+        assertFalse(db.directWrites);
+        after.close();
+        ledgers.remove(after);
+
+        InMemoryAccountLedger again = open(new SimpleMeterRegistry());
+        assertAmount("50000", again.findUser(USER).orElseThrow().getCurrentBalance());
+    }
+
+    @Test
+    void refusesToReplayUnwrittenEventsOverDatabaseModeTrades() throws Exception {
+        InMemoryAccountLedger crashed = open(new SimpleMeterRegistry());
+        crashed.buy(USER, "BTC", bd("1"), bd("20000"), bd("20000")).orElseThrow();
+        ledgers.remove(crashed);
+
+        db.directWrites = true;
+        assertThrows(IllegalStateException.class, () -> open(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void resetHidesTheHistoryItHasNotYetDeleted() throws Exception {
+        InMemoryAccountLedger ledger = open(new SimpleMeterRegistry());
+        ledger.buy(USER, "BTC", bd("1"), bd("20000"), bd("20000")).orElseThrow();
+        ledger.flush();
+
+        ledger.reset(USER);
+        ledger.buy(USER, "ETH", bd("1"), bd("2000"), bd("2000")).orElseThrow();
+        assertEquals(List.of("BUY"), types(ledger.transactions(USER)));
+        assertTrue(ledger.holding(USER, "BTC").isEmpty());
+
+        assertTrue(ledger.flush());
+        assertAmount("98000", db.balances.get(USER));
+        assertNull(db.holdings.get("1:BTC"));
+        assertAmount("1", db.holdings.get("1:ETH").getQuantity());
+        assertEquals(1, db.transactions.size());
+        assertEquals("ETH", db.transactions.get(0).getCryptoSymbol());
+    }
+
+    @Test
+    void lotChangesAreWrittenBehindWithTheirTrades() throws Exception {
+        InMemoryAccountLedger ledger = open(new SimpleMeterRegistry());
+        ledger.buy(USER, "BTC", bd("1"), bd("100"), bd("100"),
+            lots(List.of(), lot(1, "BTC", "1", "100"), "0")).orElseThrow();
+        ledger.buy(USER, "BTC", bd("1"), bd("200"), bd("200"),
+            lots(List.of(), lot(2, "BTC", "1", "200"), "0")).orElseThrow();
+        ledger.sell(USER, "BTC", bd("1.5"), bd("300"), bd("450"),
+            lots(List.of(1L), lot(2, "BTC", "0.5", "200"), "250")).orElseThrow();
+        assertTrue(db.taxLots.lots.isEmpty(), "lots wait for the trades' write");
+
+        // Only the account's lots need to be current, but the flush writes everything
+        ledger.awaitWritten(USER);
+        assertEquals(List.of(2L), List.copyOf(db.taxLots.lots.get(USER).keySet()));
+        assertAmount("0.5", db.taxLots.lots.get(USER).get(2L).getQuantity());
+        assertAmount("250", db.taxLots.realized.get(USER).get("BTC"));
+
+        ledger.reset(USER);
+        ledger.buy(USER, "ETH", bd("1"), bd("10"), bd("10"),
+            lots(List.of(), lot(1, "ETH", "1", "10"), "0")).orElseThrow();
+        ledger.awaitWritten(USER);
+        assertEquals("ETH", db.taxLots.lots.get(USER).get(1L).getSymbol());
+        assertEquals(1, db.taxLots.lots.get(USER).size());
+        assertNull(db.taxLots.realized.get(USER));
+    }
+
+    @Test
+    void lotChangesSurviveACrash() throws Exception {
+        InMemoryAccountLedger crashed = open(new SimpleMeterRegistry());
+        crashed.buy(USER, "BTC", bd("1"), bd("100"), bd("100"),
+            lots(List.of(), lot(1, "BTC", "1", "100"), "0")).orElseThrow();
+        ledgers.remove(crashed);
+
+        InMemoryAccountLedger recovered = open(new SimpleMeterRegistry());
+        recovered.awaitWritten(USER);
+        assertAmount("1", db.taxLots.lots.get(USER).get(1L).getQuantity());
+    }
+
+    @Test
+    void awaitingAnAccountWithNothingUnwrittenDoesNotWrite() throws Exception {
+        InMemoryAccountLedger ledger = open(new SimpleMeterRegistry());
+        db.failWrites = true;
+
+        ledger.awaitWritten(USER);
+        ledger.buy(USER, "BTC", bd("1"), bd("100"), bd("100")).orElseThrow();
+        assertThrows(RuntimeException.class, () -> ledger.awaitWritten(USER));
+    }
+
+    @Test
+    void journalsNothingForARejectedTrade() throws Exception {
+        InMemoryAccountLedger ledger = open(new SimpleMeterRegistry());
+
+        assertTrue(ledger.buy(USER, "BTC", bd("10"), bd("20000"), bd("200000")).isEmpty());
+        assertTrue(ledger.sell(USER, "BTC", bd("1"), bd("20000"), bd("20000")).isEmpty());
+        assertTrue(ledger.buy(99L, "BTC", bd("1"), bd("1"), bd("1")).isEmpty());
+        assertThrows(RuntimeException.class, () -> ledger.reset(99L));
+
+        assertEquals(0, ledger.getUnwrittenCount());
+        assertAmount("100000", ledger.findUser(USER).orElseThrow().getCurrentBalance());
+    }
+
+    private InMemoryAccountLedger open(MeterRegistry registry) throws Exception {
+        LedgerJournal journal = new LedgerJournal(dir, false, registry);
+        InMemoryAccountLedger ledger = new InMemoryAccountLedger(journal, db.users, db.holdingsRepository,
+            db.transactionRepository, db.ledgerRepository, registry, 1_000, NEVER, NEVER);
+        ledgers.add(ledger);
+        return ledger;
+    }
+
+    private static TaxLotRepository.LotChange lots(List<Long> closedIds, TaxLotRepository.Lot written,
+                                                   String realized) {
+        return new TaxLotRepository.LotChange(written.getSymbol(), closedIds, List.of(written), bd(realized));
+    }
+
+    private static TaxLotRepository.Lot lot(long id, String symbol, String quantity, String price) {
+        return new TaxLotRepository.Lot(id, symbol, bd(quantity), bd(price));
+    }
+
+    private static BigDecimal bd(String value) {
+        return new BigDecimal(value);
+    }
+
+    private static void assertAmount(String expected, BigDecimal actual) {
+        assertEquals(0, new BigDecimal(expected).compareTo(actual), () -> "expected " + expected + " but was " + actual);
+    }
+
+    private static List<String> types(List<TransactionRepository.Transaction> transactions) {
+        return transactions.stream().map(TransactionRepository.Transaction::getTransactionType).toList();
+    }
+
+    /** Tables as maps; {@link LedgerRepository#persist} applied the way its SQL does. */
+    private static class Database {
+        final Map<Long, BigDecimal> balances = new ConcurrentHashMap<>(Map.of(USER, INITIAL_BALANCE));
+        final Map<String, HoldingsRepository.Holding> holdings = new ConcurrentHashMap<>();
+        final List<TransactionRepository.Transaction> transactions = new ArrayList<>();
+        final AtomicInteger userReads = new AtomicInteger();
+        final AtomicInteger holdingReads = new AtomicInteger();
+        final InMemoryTaxLotRepository taxLots = new InMemoryTaxLotRepository();
+        volatile boolean failWrites;
+        volatile String refusedSymbol;
+        volatile boolean directWrites;
+        volatile long watermark;
+        long nextTransactionId = 1;
+
+        final UserRepository users = new UserRepository(null) {
+            @Override
+            public Optional<User> findById(Long id) {
+                userReads.incrementAndGet();
+                BigDecimal balance = balances.get(id);
+                if (balance == null) return Optional.empty();
+                LocalDateTime now = LocalDateTime.now();
+                return Optional.of(new User(id, "user-" + id, id + "@example.com", balance, INITIAL_BALANCE, now, now));
+            }
+        };
+
+        final HoldingsRepository holdingsRepository = new HoldingsRepository(null) {
+            @Override
+            public List<Holding> findByUserId(Long userId) {
+                holdingReads.incrementAndGet();
+                return holdings.values().stream().filter(h -> h.getUserId().equals(userId)).toList();
+            }
+        };
+
+        final TransactionRepository transactionRepository = new TransactionRepository(null) {
+            @Override
+            public List<Transaction> findByUserId(Long userId) {
+                synchronized (transactions) {
+                    List<Transaction> history = new ArrayList<>(transactions.stream()
+                        .filter(t -> t.getUserId().equals(userId)).toList());
+                    Collections.reverse(history);
+                    return history;
+                }
+            }
+        };
+
+        final LedgerRepository ledgerRepository = new LedgerRepository(null, null, null) {
+            @Override
+            public long getWatermark() {
+                return watermark;
+            }
+
+            @Override
+            public boolean hasDirectWrites() {
+                return directWrites;
+            }
+
+            @Override
+            public void clearDirectWrites() {
+                directWrites = false;
+            }
+
+            @Override
+            public void persist(Batch batch) {
+                if (failWrites) throw new RuntimeException("connection refused");
+                if (batch.getTrades().stream().anyMatch(t -> t.getSymbol().equals(refusedSymbol))) {
+                    throw new DataIntegrityViolationException("value too long for type character varying(10)");
+                }
+                synchronized (transactions) {
+                    for (Long userId : batch.getResets()) {
+                        transactions.removeIf(t -> t.getUserId().equals(userId));
+                        holdings.values().removeIf(h -> h.getUserId().equals(userId));
+                        balances.put(userId, INITIAL_BALANCE);
+                        taxLots.deleteByUserId(userId);
+                    }
+                    for (TradeRow trade : batch.getTrades()) {
+                        TransactionRepository.Transaction row = new TransactionRepository.Transaction();
+                        row.setId(nextTransactionId++);
+                        row.setUserId(trade.getUserId());
+                        row.setCryptoSymbol(trade.getSymbol());
+                        row.setTransactionType(trade.getType());
+                        row.setQuantity(trade.getQuantity());
+                        row.setCreatedAt(trade.getCreatedAt());
+                        transactions.add(row);
+                    }
+                }
+                balances.putAll(batch.getBalances());
+                for (HoldingRow row : batch.getHoldings()) {
+                    String key = row.getUserId() + ":" + row.getSymbol();
+                    if (row.getQuantity() == null) {
+                        holdings.remove(key);
+                        continue;
+                    }
+                    HoldingsRepository.Holding holding = new HoldingsRepository.Holding();
+                    holding.setUserId(row.getUserId());
+                    holding.setCryptoSymbol(row.getSymbol());
+                    holding.setQuantity(row.getQuantity());
+                    holding.setAveragePrice(row.getAveragePrice());
+                    holdings.put(key, holding);
+                }
+                taxLots.write(batch.getLots());
+                watermark = batch.getWatermark();
+            }
+        };
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.TaxLotRepository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** {@code tax_lots} and {@code realized_pnl} in memory, for tests. */
+class InMemoryTaxLotRepository extends TaxLotRepository {
+
+    final Map<Long, Map<Long, Lot>> lots = new ConcurrentHashMap<>();
+    final Map<Long, Map<String, BigDecimal>> realized = new ConcurrentHashMap<>();
+    final AtomicInteger loads = new AtomicInteger();
+
+    InMemoryTaxLotRepository() {
+        super(null);
+    }
+
+    @Override
+    public List<Lot> findByUserId(Long userId) {
+        loads.incrementAndGet();
+        return new ArrayList<>(lots(userId).values());
+    }
+
+    @Override
+    public Map<String, BigDecimal> findRealized(Long userId) {
+        return Map.copyOf(realized(userId));
+    }
+
+    @Override
+    public void write(Writes writes) {
+        writes.getLots().forEach((userId, changed) -> changed.forEach((id, lot) -> {
+            if (lot == null) {
+                lots(userId).remove(id);
+            } else {
+                lots(userId).put(id, lot);
+            }
+        }));
+        writes.getRealized().forEach((userId, bySymbol) ->
+            bySymbol.forEach((symbol, amount) -> realized(userId).merge(symbol, amount, BigDecimal::add)));
+    }
+
+    @Override
+    public void deleteByUserId(Long userId) {
+        lots.remove(userId);
+        realized.remove(userId);
+    }
+
+    private Map<Long, Lot> lots(Long userId) {
+        return lots.computeIfAbsent(userId, id -> new TreeMap<>());
+    }
+
+    private Map<String, BigDecimal> realized(Long userId) {
+        return realized.computeIfAbsent(userId, id -> new ConcurrentHashMap<>());
+    }
+}
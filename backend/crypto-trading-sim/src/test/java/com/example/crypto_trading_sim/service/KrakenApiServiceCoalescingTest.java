@@ -0,0 +1,125 @@
+package com.example.crypto_trading_sim.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the service against a local stand-in for Kraken's REST API and counts
+ * how many Ticker requests reach it.
+ */
+class KrakenApiServiceCoalescingTest {
+
+    private static final Duration MAX_AGE = Duration.ofMillis(300);
+
+    private final AtomicInteger tickerRequests = new AtomicInteger();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private DisposableServer kraken;
+    private KrakenApiService service;
+
+    @BeforeEach
+    void startKraken() throws Exception {
+        byte[] ticker = KrakenTickerParserTest.recordedPayload();
+        String assetPairs = assetPairsFor(ticker);
+        kraken = HttpServer.create()
+            .host("localhost")
+            .port(0)
+            .route(routes -> routes
+                .get("/0/public/AssetPairs", (request, response) -> response.sendString(Mono.just(assetPairs)))
+                .get("/0/public/Ticker", (request, response) -> {
+                    tickerRequests.incrementAndGet();
+                    // Slow enough that concurrent callers overlap
+                    return response.sendByteArray(Mono.delay(Duration.ofMillis(200)).thenReturn(ticker));
+                }))
+            .bindNow();
+        service = new KrakenApiService(new KrakenMarketDataSource("http://localhost:" + kraken.port(), "ws://localhost:1", "rest"),
+            MAX_AGE, registry);
+        waitUntilReady();
+    }
+
+    @AfterEach
+    void stopKraken() {
+        kraken.disposeNow();
+    }
+
+    @Test
+    void concurrentCallersOnAStaleSnapshotShareOneKrakenRequest() throws Exception {
+        Thread.sleep(MAX_AGE.toMillis() + 50);
+        int before = tickerRequests.get();
+
+        List<Object> results = Flux.range(0, 50)
+            .flatMap(i -> i % 2 == 0
+                ? service.getCryptoPrice(i % 4 == 0 ? "btc" : "ETH").map(Object.class::cast)
+                : service.getAllCryptoPrices().map(Object.class::cast))
+            .collectList()
+            .block(Duration.ofSeconds(10));
+
+        assertEquals(50, results.size());
+        assertEquals(before + 1, tickerRequests.get(), "all 50 callers must share one request");
+        assertEquals(49, registry.get("kraken.prices.requests").tag("source", "coalesced").functionCounter().count());
+    }
+
+    @Test
+    void freshSnapshotAnswersWithoutCallingKraken() {
+        int before = tickerRequests.get();
+
+        KrakenApiService.CryptoPrice btc = service.getCryptoPrice("BTC").block(Duration.ofSeconds(5));
+        List<KrakenApiService.CryptoPrice> all = service.getAllCryptoPrices().block(Duration.ofSeconds(5));
+
+        assertEquals("BTC", btc.getSymbol());
+        assertSame(btc, all.stream().filter(p -> p.getSymbol().equals("BTC")).findFirst().orElseThrow());
+        assertEquals(before, tickerRequests.get());
+        assertEquals(2, registry.get("kraken.prices.requests").tag("source", "snapshot").counter().count());
+        assertTrue(service.getCoalescingRatio() > 0);
+    }
+
+    @Test
+    void unknownSymbolStillFails() {
+        RuntimeException error = assertThrows(RuntimeException.class,
+            () -> service.getCryptoPrice("NOPE").block(Duration.ofSeconds(5)));
+        assertTrue(error.getMessage().contains("Price not found for NOPE"));
+    }
+
+    private void waitUntilReady() throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (System.nanoTime() < deadline) {
+            List<KrakenApiService.CryptoPrice> prices = service.getAllCryptoPrices()
+                .onErrorReturn(List.of())
+                .block(Duration.ofSeconds(5));
+            if (prices != null && !prices.isEmpty()) return;
+            Thread.sleep(20);
+        }
+        fail("service never loaded its trading pairs");
+    }
+
+    static String assetPairsFor(byte[] ticker) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode result = mapper.readTree(ticker).get("result");
+        ObjectNode root = mapper.createObjectNode();
+        root.putArray("error");
+        ObjectNode pairs = root.putObject("result");
+        result.fieldNames().forEachRemaining(pair -> {
+            String base = pair.endsWith("ZUSD") ? pair.substring(0, pair.length() - 4) : pair.substring(0, pair.length() - 3);
+            pairs.putObject(pair)
+                .put("base", base)
+                .put("quote", "ZUSD")
+                .put("status", "online")
+                .put("pair_decimals", 5);
+        });
+        return root.toString();
+    }
+}
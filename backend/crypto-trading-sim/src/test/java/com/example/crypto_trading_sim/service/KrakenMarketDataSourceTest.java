@@ -0,0 +1,173 @@
+package com.example.crypto_trading_sim.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KrakenMarketDataSourceTest {
+
+    private final AtomicBoolean assetPairsUp = new AtomicBoolean();
+    private final AtomicReference<byte[]> ticker = new AtomicReference<>();
+    private DisposableServer kraken;
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void startKraken() throws Exception {
+        ticker.set(KrakenTickerParserTest.recordedPayload());
+        String assetPairs = KrakenApiServiceCoalescingTest.assetPairsFor(ticker.get());
+        kraken = HttpServer.create()
+            .host("localhost")
+            .port(0)
+            .route(routes -> routes
+                .get("/0/public/AssetPairs", (request, response) -> assetPairsUp.get()
+                    ? response.sendString(Mono.just(assetPairs))
+                    : response.status(503).send())
+                .get("/0/public/Ticker", (request, response) -> response.sendByteArray(Mono.fromSupplier(ticker::get))))
+            .bindNow();
+    }
+
+    @AfterEach
+    void stopKraken() {
+        kraken.disposeNow();
+    }
+
+    @Test
+    void savedUniverseServesPricesBeforeAssetPairsAnswers() throws Exception {
+        Path universe = dir.resolve("universe.json");
+        assetPairsUp.set(true);
+        KrakenMarketDataSource first = source(universe);
+        first.start(prices -> {});
+        waitFor(() -> Files.exists(universe));
+        List<KrakenMarketDataSource.UniversePair> saved = first.getUniverse();
+        assertFalse(saved.isEmpty());
+
+        assetPairsUp.set(false);
+        KrakenMarketDataSource restarted = source(universe);
+        restarted.start(prices -> {});
+
+        assertEquals(saved, restarted.getUniverse());
+        List<KrakenApiService.CryptoPrice> prices = restarted.fetchAll().block(Duration.ofSeconds(5));
+        assertEquals(saved.size(), prices.size());
+        assertEquals(saved.get(0).symbol(), prices.get(0).getSymbol());
+        assertEquals(saved.get(0).priceScale(), prices.get(0).getPriceScale());
+    }
+
+    @Test
+    void withoutASavedUniverseNothingIsAvailableUntilAssetPairsAnswers() {
+        KrakenMarketDataSource source = source(dir.resolve("missing.json"));
+        source.start(prices -> {});
+
+        RuntimeException error = assertThrows(RuntimeException.class, () -> source.fetchAll().block(Duration.ofSeconds(5)));
+        assertEquals("No trading pairs available", error.getMessage());
+    }
+
+    @Test
+    void unreadableUniverseFileIsIgnored() throws Exception {
+        Path universe = dir.resolve("universe.json");
+        Files.writeString(universe, "{not json");
+        assetPairsUp.set(true);
+        KrakenMarketDataSource source = source(universe);
+        source.start(prices -> {});
+
+        waitFor(() -> !source.getUniverse().isEmpty());
+        waitFor(() -> Files.readString(universe).startsWith("["));
+    }
+
+    @Test
+    void reRanksInTheBackgroundAndReportsAddedAndRemovedSymbols() throws Exception {
+        assetPairsUp.set(true);
+        byte[] recorded = ticker.get();
+        List<String> ranking = rankByUsdVolume(recorded);
+        List<MarketDataSource.UniverseChange> changes = new CopyOnWriteArrayList<>();
+        KrakenMarketDataSource source = new KrakenMarketDataSource("http://localhost:" + kraken.port(),
+            "ws://localhost:1", "rest", null, 3, Duration.ofMillis(100));
+        source.onUniverseChange(changes::add);
+        source.start(prices -> {});
+        try {
+            waitFor(() -> changes.size() == 1);
+            assertEquals(ranking.subList(0, 3), pairsOf(source.getUniverse()));
+            assertEquals(3, changes.get(0).added().size());
+
+            // The tenth pair trades enough to top the list, pushing out the third
+            String riser = ranking.get(9);
+            ticker.set(withVolume(recorded, riser, "1e12"));
+            waitFor(() -> changes.size() == 2);
+
+            assertEquals(List.of(riser, ranking.get(0), ranking.get(1)), pairsOf(source.getUniverse()));
+            MarketDataSource.UniverseChange change = changes.get(1);
+            assertEquals(List.of(symbolOf(source, riser)), change.added());
+            assertEquals(1, change.removed().size());
+            assertFalse(pairsOf(source.getUniverse()).contains(ranking.get(2)));
+        } finally {
+            source.stop();
+        }
+    }
+
+    private static List<String> pairsOf(List<KrakenMarketDataSource.UniversePair> universe) {
+        return universe.stream().map(KrakenMarketDataSource.UniversePair::pair).toList();
+    }
+
+    private static String symbolOf(KrakenMarketDataSource source, String pair) {
+        return source.getUniverse().stream()
+            .filter(entry -> entry.pair().equals(pair))
+            .findFirst().orElseThrow()
+            .symbol();
+    }
+
+    private static List<String> rankByUsdVolume(byte[] payload) throws Exception {
+        JsonNode result = new ObjectMapper().readTree(payload).get("result");
+        List<String> pairs = new ArrayList<>();
+        result.fieldNames().forEachRemaining(pairs::add);
+        pairs.removeIf(pair -> result.get(pair).get("c").get(0).asDouble() < 0.01);
+        pairs.sort(Comparator.comparingDouble((String pair) ->
+            result.get(pair).get("v").get(1).asDouble() * result.get(pair).get("c").get(0).asDouble()).reversed());
+        return pairs;
+    }
+
+    private static byte[] withVolume(byte[] payload, String pair, String volume) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode root = (ObjectNode) mapper.readTree(payload);
+        ArrayNode v = (ArrayNode) root.get("result").get(pair).get("v");
+        v.set(0, volume);
+        v.set(1, volume);
+        return mapper.writeValueAsBytes(root);
+    }
+
+    private KrakenMarketDataSource source(Path universe) {
+        return new KrakenMarketDataSource("http://localhost:" + kraken.port(), "ws://localhost:1", "rest", universe);
+    }
+
+    private interface Condition {
+        boolean holds() throws Exception;
+    }
+
+    private static void waitFor(Condition condition) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.holds()) {
+            if (System.nanoTime() > deadline) fail("condition not reached in time");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.crypto_trading_sim.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous JsonNode tree parsing of a recorded Ticker payload
+ * with the streaming {@link KrakenTickerParser}.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.example.crypto_trading_sim.service.KrakenTickerParserBenchmark}
+ * and compare the {@code gc.alloc.rate.norm} column for garbage per parse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KrakenTickerParserBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final KrakenTickerParser streamingParser = new KrakenTickerParser();
+    private byte[] payload;
+
+    @Setup
+    public void loadPayload() throws IOException {
+        payload = KrakenTickerParserTest.recordedPayload();
+    }
+
+    @Benchmark
+    public void treeParse(Blackhole blackhole) throws IOException {
+        JsonNode result = objectMapper.readTree(payload).get("result");
+        result.fieldNames().forEachRemaining(pair -> {
+            JsonNode data = result.get(pair);
+            blackhole.consume(new BigDecimal(data.get("c").get(0).asText()));
+            blackhole.consume(new BigDecimal(data.get("h").get(1).asText()));
+            blackhole.consume(new BigDecimal(data.get("l").get(1).asText()));
+            blackhole.consume(new BigDecimal(data.get("v").get(1).asText()));
+            blackhole.consume(new BigDecimal(data.get("o").asText()));
+        });
+    }
+
+    @Benchmark
+    public void streamingParse(Blackhole blackhole) {
+        streamingParser.parse(payload, slot -> {
+            blackhole.consume(slot.getPriceAsDouble());
+            blackhole.consume(slot.getUsdVolume());
+        });
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(KrakenTickerParserBenchmark.class.getSimpleName())
+            .addProfiler("gc")
+            .build()).run();
+    }
+}
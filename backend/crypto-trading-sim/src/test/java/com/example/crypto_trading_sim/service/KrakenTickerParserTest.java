@@ -0,0 +1,69 @@
+package com.example.crypto_trading_sim.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KrakenTickerParserTest {
+
+    private final KrakenTickerParser parser = new KrakenTickerParser();
+
+    @Test
+    void matchesTreeBasedParsingOnRecordedPayload() throws IOException {
+        byte[] payload = recordedPayload();
+        JsonNode result = new ObjectMapper().readTree(payload).get("result");
+
+        Map<String, BigDecimal[]> parsed = new HashMap<>();
+        int pairs = parser.parse(payload, slot -> parsed.put(slot.getPair(), new BigDecimal[] {
+            slot.getPrice(), slot.getHigh(), slot.getLow(), slot.getVolume(), slot.getOpen()
+        }));
+
+        assertEquals(result.size(), pairs);
+        result.fieldNames().forEachRemaining(pair -> {
+            JsonNode data = result.get(pair);
+            BigDecimal[] values = parsed.get(pair);
+            assertEquals(new BigDecimal(data.get("c").get(0).asText()), values[0], pair + " price");
+            assertEquals(new BigDecimal(data.get("h").get(1).asText()), values[1], pair + " high");
+            assertEquals(new BigDecimal(data.get("l").get(1).asText()), values[2], pair + " low");
+            assertEquals(new BigDecimal(data.get("v").get(1).asText()), values[3], pair + " volume");
+            assertEquals(new BigDecimal(data.get("o").asText()), values[4], pair + " open");
+        });
+    }
+
+    @Test
+    void reusesSlotsAndFallsBackForOversizedNumbers() {
+        String first = "{\"error\":[],\"result\":{\"XXBTZUSD\":{\"c\":[\"1.5\",\"1\"],\"o\":\"1.0\"}}}";
+        String second = "{\"error\":[],\"result\":{\"XXBTZUSD\":{\"c\":[\"12345678901234567890.123\",\"1\"]}}}";
+
+        KrakenTickerParser.TickerSlot[] seen = new KrakenTickerParser.TickerSlot[2];
+        parser.parse(first, slot -> seen[0] = slot);
+        parser.parse(second, slot -> {
+            seen[1] = slot;
+            assertEquals(new BigDecimal("12345678901234567890.123"), slot.getPrice());
+            assertNull(slot.getOpen(), "fields absent from this response must not leak from the previous one");
+            assertFalse(slot.isComplete());
+        });
+        assertSame(seen[0], seen[1]);
+    }
+
+    @Test
+    void rejectsErrorResponses() {
+        RuntimeException error = assertThrows(RuntimeException.class,
+            () -> parser.parse("{\"error\":[\"EQuery:Unknown asset pair\"]}", slot -> {}));
+        assertTrue(error.getMessage().contains("EQuery:Unknown asset pair"));
+    }
+
+    static byte[] recordedPayload() throws IOException {
+        try (InputStream in = KrakenTickerParserTest.class.getResourceAsStream("/kraken/ticker-top20.json")) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.crypto_trading_sim.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the WebSocket client against a local stand-in for Kraken that replays
+ * recorded v2 ticker frames and then drops the connection.
+ */
+class KrakenWebSocketClientTest {
+
+    private final List<String> subscribeMessages = new CopyOnWriteArrayList<>();
+    private final Map<String, KrakenApiService.CryptoPrice> received = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private DisposableServer server;
+    private KrakenWebSocketClient client;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        List<String> frames = recordedFrames();
+        server = HttpServer.create()
+            .host("localhost")
+            .port(0)
+            // The first connection replays the frames and hangs up; later ones only
+            // record the resubscription, so the replayed state stays put
+            .route(routes -> routes.ws("/v2", (in, out) -> out.sendString(
+                connections.incrementAndGet() == 1
+                    ? in.receive().asString()
+                        .doOnNext(subscribeMessages::add)
+                        .concatMap(subscribe -> Flux.fromIterable(frames))
+                        .take(frames.size())
+                    : in.receive().asString()
+                        .doOnNext(subscribeMessages::add)
+                        .filter(message -> false))))
+            .bindNow();
+    }
+
+    @AfterEach
+    void stop() {
+        if (client != null) client.stop();
+        server.disposeNow();
+    }
+
+    @Test
+    void appliesReplayedTickerFramesAndResubscribesAfterDisconnect() throws Exception {
+        URI uri = URI.create("ws://localhost:" + server.port() + "/v2");
+        client = new KrakenWebSocketClient(uri, symbol -> 2,
+            prices -> prices.forEach(price -> received.put(price.getSymbol(), price)),
+            Duration.ofMillis(50), Duration.ofMillis(200), Duration.ofSeconds(5));
+
+        client.start(Map.of("BTC/USD", "BTC", "ETH/USD", "ETH"));
+
+        waitFor(() -> subscribeMessages.size() >= 2);
+        assertTrue(subscribeMessages.get(0).contains("\"channel\":\"ticker\""));
+        assertTrue(subscribeMessages.get(1).contains("BTC/USD"));
+
+        assertEquals(0, new BigDecimal("106962.1").compareTo(received.get("BTC").getPrice()));
+        assertEquals(0, new BigDecimal("107432.5").compareTo(received.get("BTC").getHigh24h()));
+        assertEquals(0, new BigDecimal("-0.51").compareTo(received.get("ETH").getChange24hPercent()));
+        assertFalse(received.containsKey("DOGE"), "unsubscribed symbols must be ignored");
+    }
+
+    @Test
+    void updatingSymbolsAdjustsTheLiveSubscription() throws Exception {
+        List<String> messages = new CopyOnWriteArrayList<>();
+        DisposableServer quiet = HttpServer.create()
+            .host("localhost")
+            .port(0)
+            .route(routes -> routes.ws("/v2", (in, out) -> out.sendString(
+                in.receive().asString().doOnNext(messages::add).filter(message -> false))))
+            .bindNow();
+        try {
+            client = new KrakenWebSocketClient(URI.create("ws://localhost:" + quiet.port() + "/v2"), symbol -> 2,
+                prices -> {}, Duration.ofMillis(50), Duration.ofMillis(200), Duration.ofSeconds(5));
+            client.start(Map.of("BTC/USD", "BTC", "ETH/USD", "ETH"));
+            waitFor(() -> messages.size() == 1);
+
+            client.updateSymbols(Map.of("BTC/USD", "BTC", "SOL/USD", "SOL"));
+            waitFor(() -> messages.size() == 3);
+
+            assertTrue(messages.get(1).contains("\"method\":\"subscribe\"") && messages.get(1).contains("SOL/USD"));
+            assertFalse(messages.get(1).contains("BTC/USD"));
+            assertTrue(messages.get(2).contains("\"method\":\"unsubscribe\"") && messages.get(2).contains("ETH/USD"));
+            assertTrue(client.buildSubscribeMessage().contains("SOL/USD"), "a reconnect subscribes the new set");
+        } finally {
+            client.stop();
+            quiet.disposeNow();
+        }
+    }
+
+    private void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) fail("Timed out waiting for condition");
+            Thread.sleep(20);
+        }
+    }
+
+    private List<String> recordedFrames() throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/kraken/ws-v2-ticker-frames.jsonl")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines()
+                .filter(line -> !line.isBlank())
+                .toList();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.HoldingsRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Sinks;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+class LeaderboardTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Leaderboard leaderboard = new Leaderboard(registry);
+
+    @Test
+    void ranksMatchAFullSortThroughRandomUpdates() {
+        RankIndex index = new RankIndex();
+        Map<Long, Long> scores = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            long id = 1 + random.nextInt(2_000);
+            if (random.nextInt(10) == 0) {
+                assertEquals(scores.remove(id) != null, index.remove(id));
+            } else {
+                // A narrow range, so many scores tie and fall back to id order
+                long score = random.nextInt(500);
+                assertEquals(!Long.valueOf(score).equals(scores.put(id, score)), index.put(id, score));
+            }
+        }
+
+        List<Long> sorted = new ArrayList<>(scores.keySet());
+        sorted.sort(Comparator.<Long>comparingLong(scores::get).reversed().thenComparing(Comparator.naturalOrder()));
+        assertEquals(sorted.size(), index.size());
+        for (int rank = 1; rank <= sorted.size(); rank++) {
+            assertEquals(rank, index.rank(sorted.get(rank - 1)));
+        }
+        assertEquals(0, index.rank(-1));
+
+        for (int from : new int[]{1, 2, 100, sorted.size() - 3}) {
+            List<Long> page = new ArrayList<>();
+            index.range(from, 10, (id, score) -> page.add(id));
+            assertEquals(sorted.subList(from - 1, Math.min(from + 9, sorted.size())), page, "page from " + from);
+        }
+    }
+
+    @Test
+    void ticksRepositionOnlyTheHoldersOfTheTickedSymbol() {
+        Sinks.Many<List<KrakenApiService.CryptoPrice>> ticks = Sinks.many().multicast().directBestEffort();
+        FakeAccountLedger ledger = new FakeAccountLedger();
+        AccountDirectory directory = new AccountDirectory(ledger::findUser, registry, 100);
+        TaxLotBook taxLots = new TaxLotBook(ledger.taxLots, ledger, TaxLotBook.LotMethod.FIFO, registry);
+        MarkToMarketEngine engine = new MarkToMarketEngine(ticks.asFlux(), new PriceBook()::snapshot, ledger,
+            directory, taxLots, leaderboard, new PriceStreamSubscribers(registry, Duration.ofSeconds(30)), registry);
+        SimpleTradingService service = new SimpleTradingService(null, ledger, directory, engine, taxLots,
+            new StripedLocks(4));
+
+        ticks.tryEmitNext(List.of(price("BTC", 100), price("ETH", 10)));
+        ledger.open(1L, "10000");
+        ledger.open(2L, "10000");
+        ledger.open(3L, "10000");
+        ledger.open(4L, "1000");
+        service.executeTrade(1L, "BTC", "BUY", new BigDecimal("10"), new BigDecimal("100"));
+        service.executeTrade(2L, "ETH", "BUY", new BigDecimal("100"), new BigDecimal("10"));
+        service.getAccountSummary(3L);
+        service.executeTrade(4L, "BTC", "BUY", new BigDecimal("5"), new BigDecimal("100"));
+        assertEquals(4, leaderboard.size());
+        assertEquals(4.0, repositions(), "trading at the mark leaves each account where it was placed");
+
+        ticks.tryEmitNext(List.of(price("BTC", 120)));
+        assertEquals(6.0, repositions(), "only the two BTC holders moved");
+        assertEquals(List.of(1L, 2L, 3L, 4L), leaders(Leaderboard.Ranking.EQUITY));
+        assertEquals(List.of(4L, 1L, 2L, 3L), leaders(Leaderboard.Ranking.PNL_PERCENT));
+
+        ticks.tryEmitNext(List.of(price("ETH", 9)));
+        assertEquals(7.0, repositions());
+        Leaderboard.Standing standing = leaderboard.standing(Leaderboard.Ranking.EQUITY, 2L).orElseThrow();
+        assertEquals(3, standing.getRank(), "behind account 3, which still holds only cash");
+        assertEquals(0, new BigDecimal("9900").compareTo(standing.getTotalValue()));
+        assertEquals(0, new BigDecimal("-1").compareTo(standing.getTotalPnLPercent()));
+
+        Leaderboard.Standing leader = leaderboard.standing(Leaderboard.Ranking.PNL_PERCENT, 4L).orElseThrow();
+        assertEquals(1, leader.getRank());
+        assertEquals(0, new BigDecimal("100").compareTo(leader.getTotalPnL()));
+        assertEquals(0, new BigDecimal("10").compareTo(leader.getTotalPnLPercent()));
+        assertTrue(leaderboard.standing(Leaderboard.Ranking.EQUITY, 5L).isEmpty());
+    }
+
+    @Test
+    void ranksAccountsLoadedInBulkWithoutReadingThemOneByOne() {
+        Sinks.Many<List<KrakenApiService.CryptoPrice>> ticks = Sinks.many().multicast().directBestEffort();
+        FakeAccountLedger ledger = new FakeAccountLedger();
+        AccountDirectory directory = new AccountDirectory(ledger::findUser, registry, 100);
+        TaxLotBook taxLots = new TaxLotBook(ledger.taxLots, ledger, TaxLotBook.LotMethod.FIFO, registry);
+        MarkToMarketEngine engine = new MarkToMarketEngine(ticks.asFlux(), new PriceBook()::snapshot, ledger,
+            directory, taxLots, leaderboard, new PriceStreamSubscribers(registry, Duration.ofSeconds(30)), registry);
+        ticks.tryEmitNext(List.of(price("BTC", 120)));
+
+        engine.track(new AccountDirectory.Account(1L, new BigDecimal("10000"), new BigDecimal("9000")),
+            List.of(holding(1L, "BTC", "10", "100")), new BigDecimal("50"), 3);
+        engine.track(new AccountDirectory.Account(2L, new BigDecimal("10000"), new BigDecimal("10300")),
+            List.of(), BigDecimal.ZERO, 0);
+
+        assertEquals(List.of(2L, 1L), leaders(Leaderboard.Ranking.EQUITY));
+        Leaderboard.Standing standing = leaderboard.standing(Leaderboard.Ranking.EQUITY, 1L).orElseThrow();
+        assertEquals(0, new BigDecimal("10200").compareTo(standing.getTotalValue()), "9000 cash and 10 BTC at 120");
+        assertEquals(0, ledger.holdingsReads.get());
+        assertEquals(0, directory.size());
+        assertEquals(3, engine.summary(1L).orElseThrow().getTransactionCount());
+
+        ticks.tryEmitNext(List.of(price("BTC", 150)));
+        assertEquals(List.of(1L, 2L), leaders(Leaderboard.Ranking.EQUITY));
+    }
+
+    @Test
+    @Tag("perf")
+    void loadTestWithOneHundredThousandAccounts() {
+        int accounts = 100_000;
+        long initial = FixedPoint.of(new BigDecimal("10000"), FixedPoint.VALUE_SCALE);
+        Random random = new Random(7);
+        for (long id = 1; id <= accounts; id++) leaderboard.update(id, initial, initial);
+
+        int updates = 1_000_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < updates; i++) {
+            // Within ±10,000.00 of the initial balance, in cents
+            long cents = random.nextInt(2_000_001) - 1_000_000;
+            long equity = initial + FixedPoint.rescale(cents, 2, FixedPoint.VALUE_SCALE);
+            leaderboard.update(1 + random.nextInt(accounts), equity, initial);
+        }
+        double updateSeconds = (System.nanoTime() - start) / 1e9;
+
+        int queries = 1_000_000;
+        start = System.nanoTime();
+        long checksum = 0;
+        for (int i = 0; i < queries; i++) {
+            checksum += leaderboard.standing(Leaderboard.Ranking.EQUITY, 1L + random.nextInt(accounts))
+                .orElseThrow().getRank();
+        }
+        double querySeconds = (System.nanoTime() - start) / 1e9;
+        log.info("100k accounts: {} updates/s, {} rank queries/s", Math.round(updates / updateSeconds),
+            Math.round(queries / querySeconds));
+
+        assertEquals(accounts, leaderboard.size());
+        assertTrue(checksum > 0);
+        List<Leaderboard.Standing> top = leaderboard.top(Leaderboard.Ranking.EQUITY, 100);
+        assertEquals(100, top.size());
+        for (int i = 1; i < top.size(); i++) {
+            assertEquals(i + 1, top.get(i).getRank());
+            assertTrue(top.get(i - 1).getTotalValue().compareTo(top.get(i).getTotalValue()) >= 0);
+        }
+    }
+
+    private double repositions() {
+        return registry.get("leaderboard.repositions").counter().count();
+    }
+
+    private List<Long> leaders(Leaderboard.Ranking ranking) {
+        return leaderboard.top(ranking, 10).stream().map(Leaderboard.Standing::getAccountId).toList();
+    }
+
+    private static HoldingsRepository.Holding holding(Long userId, String symbol, String quantity,
+                                                      String averagePrice) {
+        HoldingsRepository.Holding holding = new HoldingsRepository.Holding();
+        holding.setUserId(userId);
+        holding.setCryptoSymbol(symbol);
+        holding.setQuantity(new BigDecimal(quantity));
+        holding.setAveragePrice(new BigDecimal(averagePrice));
+        holding.setUpdatedAt(LocalDateTime.now());
+        return holding;
+    }
+
+    private static KrakenApiService.CryptoPrice price(String symbol, long dollars) {
+        return new KrakenApiService.CryptoPrice(symbol, symbol, 2, dollars * 100, 0, 0, 0, LocalDateTime.now());
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.TaxLotRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LedgerJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void continuesNumberingAcrossReopenAndReplaysInOrder() throws Exception {
+        try (LedgerJournal journal = journal()) {
+            assertEquals(1, journal.append(buy(7, "BTC", 100)).getSequence());
+            assertEquals(2, journal.append(buy(7, "ETH", 200)).getSequence());
+            assertEquals(3, journal.append(LedgerEvent.reset(7, 500, 1_000, 3)).getSequence());
+        }
+        try (LedgerJournal journal = journal()) {
+            assertEquals(3, journal.getSequence());
+            assertEquals(4, journal.append(buy(8, "SOL", 300)).getSequence());
+
+            List<LedgerEvent> all = replay(journal, 0);
+            assertEquals(List.of(1L, 2L, 3L, 4L), all.stream().map(LedgerEvent::getSequence).toList());
+            LedgerEvent second = all.get(1);
+            assertEquals(LedgerEvent.Type.BUY, second.getType());
+            assertEquals("ETH", second.getSymbol());
+            assertEquals(200, second.getQuantity());
+            assertEquals(1_000, second.getBalanceBefore());
+            assertEquals(LedgerEvent.Type.RESET, all.get(2).getType());
+            assertEquals(1_000, all.get(2).getBalanceAfter());
+
+            assertEquals(List.of(3L, 4L), replay(journal, 2).stream().map(LedgerEvent::getSequence).toList());
+        }
+    }
+
+    @Test
+    void ignoresARecordTornByACrash() throws Exception {
+        try (LedgerJournal journal = journal()) {
+            journal.append(buy(1, "BTC", 100));
+            journal.append(buy(1, "BTC", 200));
+        }
+        Path file = journalFiles().get(0);
+        ByteBuffer torn = ByteBuffer.allocate(12).putInt(64).putInt(0).putInt(42);
+        Files.write(file, torn.array(), StandardOpenOption.APPEND);
+
+        try (LedgerJournal journal = journal()) {
+            assertEquals(2, journal.getSequence());
+            assertEquals(3, journal.append(buy(1, "BTC", 300)).getSequence());
+            assertEquals(List.of(100L, 200L, 300L), replay(journal, 0).stream().map(LedgerEvent::getQuantity).toList());
+        }
+    }
+
+    @Test
+    void snapshotLetsTheFilesItCoversGo() throws Exception {
+        try (LedgerJournal journal = journal()) {
+            journal.append(buy(1, "BTC", 100));
+            journal.append(buy(1, "BTC", 200));
+            long cut = journal.roll();
+            LedgerEvent state = LedgerEvent.open(1, 1_000, 700,
+                List.of(new LedgerEvent.Position("BTC", 300, 50, 9)), 10).withSequence(2);
+            journal.writeSnapshot(cut, List.of(state));
+            journal.append(buy(1, "ETH", 400));
+            journal.deleteThrough(cut);
+
+            assertEquals(1, journalFiles().size());
+            assertEquals(List.of(3L), replay(journal, 0).stream().map(LedgerEvent::getSequence).toList());
+        }
+        try (LedgerJournal journal = journal()) {
+            assertEquals(3, journal.getSequence());
+            List<LedgerEvent> accounts = new ArrayList<>();
+            assertEquals(2, journal.loadSnapshot(accounts::add));
+            assertEquals(1, accounts.size());
+            assertEquals(700, accounts.get(0).getBalanceAfter());
+            assertEquals(1_000, accounts.get(0).getInitialBalance());
+            assertEquals(List.of(new LedgerEvent.Position("BTC", 300, 50, 9)), accounts.get(0).getPositions());
+        }
+    }
+
+    @Test
+    void aTradeKeepsItsLotChange() throws Exception {
+        TaxLotRepository.LotChange change = new TaxLotRepository.LotChange("BTC", List.of(3L, 4L),
+            List.of(new TaxLotRepository.Lot(5L, "BTC", new BigDecimal("0.25"), new BigDecimal("20000.5"))),
+            new BigDecimal("-12.34"));
+        try (LedgerJournal journal = journal()) {
+            journal.append(buy(1, "BTC", 100).withLots(change));
+            journal.append(buy(1, "BTC", 200));
+        }
+        try (LedgerJournal journal = journal()) {
+            List<LedgerEvent> all = replay(journal, 0);
+            TaxLotRepository.LotChange replayed = all.get(0).getLots();
+            assertEquals("BTC", replayed.getSymbol());
+            assertEquals(List.of(3L, 4L), replayed.getClosedIds());
+            TaxLotRepository.Lot lot = replayed.getWritten().get(0);
+            assertEquals(5L, lot.getId());
+            assertEquals(0, new BigDecimal("0.25").compareTo(lot.getQuantity()));
+            assertEquals(0, new BigDecimal("20000.5").compareTo(lot.getPrice()));
+            assertEquals(0, new BigDecimal("-12.34").compareTo(replayed.getRealized()));
+            assertNull(all.get(1).getLots());
+        }
+    }
+
+    private LedgerJournal journal() throws Exception {
+        return new LedgerJournal(dir, false, new SimpleMeterRegistry());
+    }
+
+    private static LedgerEvent buy(long userId, String symbol, long quantity) {
+        return LedgerEvent.trade(LedgerEvent.Type.BUY, userId, symbol, quantity, 10, quantity * 10, 1_000,
+            1_000 - quantity * 10, 1);
+    }
+
+    private static List<LedgerEvent> replay(LedgerJournal journal, long after) throws Exception {
+        List<LedgerEvent> events = new ArrayList<>();
+        journal.replay(after, events::add);
+        return events;
+    }
+
+    private List<Path> journalFiles() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("journal-")).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.crypto_trading_sim.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Sinks;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MarkToMarketEngineTest {
+
+    private static final Long USER = 1L;
+
+    private final Sinks.Many<List<KrakenApiService.CryptoPrice>> ticks = Sinks.many().multicast().directBestEffort();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final FakeAccountLedger ledger = new FakeAccountLedger().open(USER, "100000.00");
+    private final AccountDirectory directory = new AccountDirectory(ledger::findUser, registry, 100);
+    private final TaxLotBook taxLots = new TaxLotBook(ledger.taxLots, ledger, TaxLotBook.LotMethod.FIFO, registry);
+    private final MarkToMarketEngine engine = new MarkToMarketEngine(ticks.asFlux(), new PriceBook()::snapshot,
+        ledger, directory, taxLots, new Leaderboard(registry), new PriceStreamSubscribers(registry, Duration.ofSeconds(30)),
+        registry);
+    private final SimpleTradingService service = new SimpleTradingService(null, ledger, directory, engine, taxLots,
+        new StripedLocks(4));
+
+    @Test
+    void ticksRemarkOnlyTheMovedPositions() {
+        tick("BTC", 20000);
+        tick("ETH", 1000);
+        tick("SOL", 100);
+        service.executeTrade(USER, "BTC", "BUY", bd("1"), bd("20000"));
+        service.executeTrade(USER, "ETH", "BUY", bd("10"), bd("1000"));
+
+        SimpleTradingService.AccountSummary summary = service.getAccountSummary(USER);
+        assertAmount("70000", summary.getBalance());
+        assertAmount("30000", summary.getTotalPortfolioValue());
+        assertEquals(List.of("ETH", "BTC"), symbols(summary));
+
+        KrakenApiService.CryptoPrice sol = tick("SOL", 120);
+        tick("BTC", 22000);
+        ticks.tryEmitNext(List.of(sol));
+        summary = service.getAccountSummary(USER);
+        assertAmount("32000", summary.getTotalPortfolioValue());
+        assertAmount("2000", summary.getTotalPnL());
+        assertAmount("2", summary.getTotalPnLPercent());
+        assertAmount("22000", summary.getHoldings().get(1).getCurrentPrice());
+        assertEquals(List.of("ETH", "BTC"), symbols(summary), "re-marking keeps the trade order");
+
+        assertEquals(1.0, registry.get("valuation.remarks").counter().count(), "only BTC was held and moved");
+        assertEquals(2, ledger.holdingsReads.get(), "positions are loaded once for valuation and once for tax lots");
+    }
+
+    @Test
+    void tradesTicksAndResetsArePushedToTheAccountStream() {
+        tick("BTC", 20000);
+        List<SimpleTradingService.AccountSummary> pushed = new ArrayList<>();
+        service.getAccountUpdates(USER).subscribe(pushed::add);
+        assertEquals(1, pushed.size(), "the current summary comes first");
+        assertAmount("100000", pushed.get(0).getBalance());
+
+        service.executeTrade(USER, "BTC", "BUY", bd("2"), bd("20000"));
+        tick("BTC", 19000);
+        tick("ETH", 1000);
+        service.executeTrade(USER, "BTC", "SELL", bd("2"), bd("19000"));
+        service.resetAccount(USER);
+
+        assertEquals(5, pushed.size(), "the ETH tick moves nothing this account holds");
+        assertAmount("40000", pushed.get(1).getTotalPortfolioValue());
+        assertAmount("38000", pushed.get(2).getTotalPortfolioValue());
+        assertAmount("-2000", pushed.get(2).getTotalPnL());
+        assertAmount("0", pushed.get(2).getRealizedPnL());
+        assertAmount("-2000", pushed.get(2).getUnrealizedPnL());
+        assertEquals(List.of(), pushed.get(3).getHoldings());
+        assertAmount("98000", pushed.get(3).getBalance());
+        assertAmount("-2000", pushed.get(3).getRealizedPnL());
+        assertAmount("0", pushed.get(3).getUnrealizedPnL());
+        assertAmount("100000", pushed.get(4).getBalance());
+        assertAmount("0", pushed.get(4).getRealizedPnL());
+
+        // A position opened after reset is indexed again for ticks
+        service.executeTrade(USER, "ETH", "BUY", bd("1"), bd("1000"));
+        tick("ETH", 1100);
+        assertAmount("1100", pushed.get(pushed.size() - 1).getTotalPortfolioValue());
+    }
+
+    @Test
+    void ticksKeepWhenAPositionLastTradedAndTheTradeCount() {
+        tick("BTC", 20000);
+        service.executeTrade(USER, "BTC", "BUY", bd("1"), bd("20000"));
+        service.executeTrade(USER, "ETH", "BUY", bd("1"), bd("1000"));
+        LocalDateTime traded = service.getAccountSummary(USER).getHoldings().get(1).getLastUpdated();
+
+        tick("BTC", 21000);
+        SimpleTradingService.AccountSummary summary = service.getAccountSummary(USER);
+        assertAmount("21000", summary.getHoldings().get(1).getCurrentPrice());
+        assertEquals(traded, summary.getHoldings().get(1).getLastUpdated());
+        assertEquals(2, summary.getTransactionCount());
+
+        service.resetAccount(USER);
+        assertEquals(0, service.getAccountSummary(USER).getTransactionCount());
+    }
+
+    @Test
+    void aBadPriceIsSkippedWithoutEndingTheSubscription() {
+        service.executeTrade(USER, "BTC", "BUY", bd("1"), bd("20000"));
+        ticks.tryEmitNext(List.of(
+            new KrakenApiService.CryptoPrice(null, null, 2, 100, 0, 0, 0, LocalDateTime.now()),
+            new KrakenApiService.CryptoPrice("BTC", "BTC", 2, 2_100_000, 0, 0, 0, LocalDateTime.now())));
+        assertAmount("21000", service.getAccountSummary(USER).getTotalPortfolioValue());
+
+        tick("BTC", 22000);
+        assertAmount("22000", service.getAccountSummary(USER).getTotalPortfolioValue());
+    }
+
+    @Test
+    void anInitialBalanceThatValuationsCannotHoldIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> service.createAccount("whale", new BigDecimal("1e11")));
+    }
+
+    @Test
+    void aPositionWithoutAPriceIsMarkedAtCost() {
+        service.executeTrade(USER, "DOGE", "BUY", bd("1000"), bd("0.25"));
+
+        SimpleTradingService.AccountSummary summary = service.getAccountSummary(USER);
+        assertAmount("250", summary.getTotalPortfolioValue());
+        assertAmount("0", summary.getTotalPnL());
+    }
+
+    private KrakenApiService.CryptoPrice tick(String symbol, long dollars) {
+        KrakenApiService.CryptoPrice price = new KrakenApiService.CryptoPrice(symbol, symbol, 2, dollars * 100, 0, 0, 0,
+            LocalDateTime.now());
+        ticks.tryEmitNext(List.of(price));
+        return price;
+    }
+
+    private static List<String> symbols(SimpleTradingService.AccountSummary summary) {
+        return summary.getHoldings().stream().map(SimpleTradingService.PortfolioHolding::getSymbol).toList();
+    }
+
+    private static BigDecimal bd(String value) {
+        return new BigDecimal(value);
+    }
+
+    private static void assertAmount(String expected, BigDecimal actual) {
+        assertEquals(0, new BigDecimal(expected).compareTo(actual), "expected " + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.crypto_trading_sim.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Sinks;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderTriggerEngineTest {
+
+    private static final Long USER = 1L;
+
+    private final Sinks.Many<List<KrakenApiService.CryptoPrice>> ticks = Sinks.many().multicast().directBestEffort();
+    private final List<String> fills = new ArrayList<>();
+    private String rejectWith;
+    private final OrderTriggerEngine engine = new OrderTriggerEngine(ticks.asFlux(), (userId, symbol, type, quantity, price) -> {
+        if (rejectWith != null) throw new RuntimeException(rejectWith);
+        fills.add(type + " " + quantity.stripTrailingZeros().toPlainString() + " " + symbol + " @ "
+            + price.stripTrailingZeros().toPlainString());
+        return new SimpleTradingService.TradeRecord(symbol, type, quantity, price, quantity.multiply(price));
+    }, Runnable::run, new SimpleMeterRegistry());
+
+    @Test
+    void ordersTriggerWhenTheirPriceIsCrossed() {
+        OrderTriggerEngine.Order limitBuy = place("BUY", "LIMIT", "19000");
+        OrderTriggerEngine.Order stopLoss = place("SELL", "STOP", "18000");
+        OrderTriggerEngine.Order limitSell = place("SELL", "LIMIT", "22000");
+        OrderTriggerEngine.Order stopBuy = place("BUY", "STOP", "21000");
+        OrderTriggerEngine.Order takeProfit = place("SELL", "TAKE_PROFIT", "25000");
+
+        tick("BTC", 20000);
+        tick("ETH", 1);
+        assertEquals(List.of(), fills);
+        assertEquals(5, engine.openOrders(USER).size());
+
+        tick("BTC", 19000);
+        tick("BTC", 17500);
+        tick("BTC", 21500);
+        assertEquals(List.of("BUY 1 BTC @ 19000", "SELL 1 BTC @ 17500", "BUY 1 BTC @ 21500"), fills);
+        assertEquals(List.of(limitSell, takeProfit), engine.openOrders(USER));
+
+        tick("BTC", 26000);
+        assertEquals(5, fills.size());
+        assertEquals("SELL 1 BTC @ 26000", fills.get(4));
+        for (OrderTriggerEngine.Order order : List.of(limitBuy, stopLoss, limitSell, stopBuy, takeProfit)) {
+            assertEquals(OrderTriggerEngine.OrderStatus.FILLED, order.getStatus());
+        }
+        assertEquals(0, engine.getOpenOrderCount());
+    }
+
+    @Test
+    void anOrderPlacedThroughTheMarketFillsAtOnce() {
+        tick("BTC", 20000);
+        OrderTriggerEngine.Order order = place("BUY", "LIMIT", "21000");
+
+        assertEquals(OrderTriggerEngine.OrderStatus.FILLED, order.getStatus());
+        assertEquals(List.of("BUY 1 BTC @ 20000"), fills);
+        assertEquals(0, new BigDecimal("20000").compareTo(order.getFillPrice()));
+    }
+
+    @Test
+    void aCancelledOrderNeverFills() {
+        OrderTriggerEngine.Order order = place("SELL", "STOP", "18000");
+        engine.cancel(USER, order.getId());
+        tick("BTC", 17000);
+
+        assertEquals(List.of(), fills);
+        assertEquals(OrderTriggerEngine.OrderStatus.CANCELLED, order.getStatus());
+        assertEquals(order, engine.findOrder(USER, order.getId()).orElseThrow());
+        assertThrows(RuntimeException.class, () -> engine.cancel(USER, order.getId()));
+        assertThrows(RuntimeException.class, () -> engine.cancel(2L, place("SELL", "STOP", "1").getId()));
+    }
+
+    @Test
+    void aFillThatFailsItsCheckLeavesTheOrderRejected() {
+        OrderTriggerEngine.Order order = place("SELL", "TAKE_PROFIT", "25000");
+        rejectWith = "No holdings found for BTC";
+        tick("BTC", 25000);
+
+        assertEquals(OrderTriggerEngine.OrderStatus.REJECTED, order.getStatus());
+        assertEquals("No holdings found for BTC", order.getReason());
+    }
+
+    @Test
+    void aFullFillQueueRejectsTheOrder() {
+        OrderTriggerEngine saturated = new OrderTriggerEngine(ticks.asFlux(), (userId, symbol, type, quantity, price) -> {
+            throw new AssertionError("nothing should fill");
+        }, runnable -> {
+            throw new RejectedExecutionException("queue full");
+        }, new SimpleMeterRegistry());
+        OrderTriggerEngine.Order order = saturated.place(USER, "BTC", "BUY", "LIMIT", BigDecimal.ONE,
+            new BigDecimal("19000"));
+        tick("BTC", 18000);
+
+        assertEquals(OrderTriggerEngine.OrderStatus.REJECTED, order.getStatus());
+        assertEquals("Too many fills pending", order.getReason());
+    }
+
+    @Test
+    void aBadPriceIsSkippedWithoutEndingTheSubscription() {
+        place("BUY", "LIMIT", "19000");
+        ticks.tryEmitNext(List.of(
+            new KrakenApiService.CryptoPrice(null, null, 2, 100, 0, 0, 0, LocalDateTime.now()),
+            new KrakenApiService.CryptoPrice("BTC", "BTC", 2, 1_850_000, 0, 0, 0, LocalDateTime.now())));
+        assertEquals(List.of("BUY 1 BTC @ 18500"), fills);
+
+        place("SELL", "LIMIT", "20000");
+        tick("BTC", 20000);
+        assertEquals(List.of("BUY 1 BTC @ 18500", "SELL 1 BTC @ 20000"), fills);
+    }
+
+    @Test
+    void rejectsMalformedOrders() {
+        assertThrows(IllegalArgumentException.class, () -> place("HOLD", "LIMIT", "1"));
+        assertThrows(IllegalArgumentException.class, () -> place("BUY", "ICEBERG", "1"));
+        assertThrows(IllegalArgumentException.class, () -> place("BUY", "TAKE_PROFIT", "1"));
+        assertThrows(IllegalArgumentException.class, () -> place("BUY", "LIMIT", "0"));
+    }
+
+    @Test
+    void crossingTouchesOnlyTheTriggeredOrders() {
+        TriggerBook<Integer> book = new TriggerBook<>();
+        for (int i = 0; i < 200_000; i++) {
+            // Resting on both sides of 1_000_000, none within 1000 of it
+            assertTrue(book.add(1_001_000L + i, true, i));
+            assertTrue(book.add(999_000L - i, false, -i));
+        }
+        book.add(1_000_005L, true, 7);
+        book.add(1_000_005L, true, 8);
+
+        List<Integer> triggered = new ArrayList<>();
+        assertEquals(0, book.cross(1_000_000L, triggered::add));
+        assertEquals(2, book.cross(1_000_010L, triggered::add));
+        assertEquals(List.of(7, 8), triggered);
+        assertEquals(400_000, book.size());
+
+        assertEquals(3, book.cross(998_998L, triggered::add));
+        assertEquals(List.of(7, 8, 0, -1, -2), triggered);
+        assertFalse(book.add(998_999L, false, 99), "already crossed");
+        assertTrue(book.remove(999_000L - 5, false, -5));
+        assertFalse(book.remove(999_000L - 5, false, -5));
+    }
+
+    private OrderTriggerEngine.Order place(String side, String type, String price) {
+        return engine.place(USER, "BTC", side, type, BigDecimal.ONE, new BigDecimal(price));
+    }
+
+    private void tick(String symbol, long dollars) {
+        ticks.tryEmitNext(List.of(new KrakenApiService.CryptoPrice(symbol, symbol, 2, dollars * 100, 0, 0, 0,
+            LocalDateTime.now())));
+    }
+}
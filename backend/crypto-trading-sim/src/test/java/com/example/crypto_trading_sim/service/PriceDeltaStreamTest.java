@@ -0,0 +1,89 @@
+package com.example.crypto_trading_sim.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceDeltaStreamTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final PriceBook priceBook = new PriceBook();
+    private final Sinks.Many<List<KrakenApiService.CryptoPrice>> ticks = Sinks.many().multicast().directBestEffort();
+    private final PriceDeltaStream stream = new PriceDeltaStream(ticks.asFlux(), priceBook::snapshot, objectMapper,
+        new PriceStreamSubscribers(new SimpleMeterRegistry(), Duration.ofMinutes(1)));
+
+    @Test
+    void sendsSnapshotThenOnlyChangedFieldsWithChainedSequenceNumbers() throws Exception {
+        tick(price("BTC", 1_069_502, 1_000), price("ETH", 243_512, 50_000));
+
+        List<JsonNode> received = new CopyOnWriteArrayList<>();
+        stream.frames().subscribe(frame -> received.add(read(frame)));
+
+        tick(price("BTC", 1_069_621, 1_000));
+        tick(price("ETH", 243_512, 50_001), price("SOL", 14_437, 7));
+
+        assertEquals(3, received.size());
+        JsonNode snapshot = received.get(0);
+        assertEquals("snapshot", snapshot.get("type").asText());
+        assertEquals(2, snapshot.get("prices").size());
+
+        JsonNode first = received.get(1);
+        assertTrue(first.get("prev").asLong() <= snapshot.get("seq").asLong());
+        assertTrue(first.get("seq").asLong() > snapshot.get("seq").asLong());
+        JsonNode btc = first.get("changes").get(0);
+        assertEquals("BTC", btc.get("symbol").asText());
+        assertEquals("106962.1", btc.get("price").asText());
+        assertFalse(btc.has("volume24h"), "unchanged fields must be omitted");
+
+        JsonNode second = received.get(2);
+        assertEquals(first.get("seq").asLong(), second.get("prev").asLong());
+        assertEquals(2, second.get("changes").size());
+        assertEquals(0.00050001, second.get("changes").get(0).get("volume24h").asDouble());
+        assertFalse(second.get("changes").get(0).has("price"));
+        assertEquals("SOL", second.get("changes").get(1).get("symbol").asText());
+        assertTrue(second.get("changes").get(1).has("name"), "new symbols are sent in full");
+
+        assertEquals(second.get("seq").asLong(), read(stream.snapshotFrame()).get("seq").asLong());
+    }
+
+    @Test
+    void removedSymbolsAreListedInTheNextDelta() {
+        tick(price("BTC", 1_069_502, 1_000), price("DOGE", 1_650, 9));
+        List<JsonNode> received = new CopyOnWriteArrayList<>();
+        stream.frames().subscribe(frame -> received.add(read(frame)));
+
+        ticks.tryEmitNext(priceBook.remove(List.of("DOGE")).getPrices());
+
+        JsonNode delta = received.get(1);
+        assertEquals(0, delta.get("changes").size());
+        assertEquals("DOGE", delta.get("removed").get(0).asText());
+        assertSame(priceBook.snapshot(), priceBook.remove(List.of("DOGE")), "removing an absent symbol is a no-op");
+        assertEquals(1, read(stream.snapshotFrame()).get("prices").size());
+    }
+
+    private void tick(KrakenApiService.CryptoPrice... prices) {
+        ticks.tryEmitNext(priceBook.publish(List.of(prices)).getPrices());
+    }
+
+    private KrakenApiService.CryptoPrice price(String symbol, long price, long volume) {
+        return new KrakenApiService.CryptoPrice(symbol, symbol, 1, price, 0, 0, volume, LocalDateTime.now());
+    }
+
+    private JsonNode read(byte[] frame) {
+        try {
+            return objectMapper.readTree(frame);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
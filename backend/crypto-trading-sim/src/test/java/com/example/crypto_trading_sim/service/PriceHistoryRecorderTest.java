@@ -0,0 +1,121 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.PriceHistoryRepository.PriceTick;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceHistoryRecorderTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Sinks.Many<List<KrakenApiService.CryptoPrice>> ticks = Sinks.many().multicast().directBestEffort();
+    private final List<List<PriceTick>> batches = new CopyOnWriteArrayList<>();
+    private PriceHistoryRecorder recorder;
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        if (recorder != null) recorder.shutdown();
+    }
+
+    @Test
+    void flushesWhenTheBatchIsFull() throws Exception {
+        recorder = recorder(batch -> batches.add(List.copyOf(batch)), 100, 3, Duration.ofMinutes(1));
+
+        ticks.tryEmitNext(List.of(price("BTC", 1), price("ETH", 2)));
+        ticks.tryEmitNext(List.of(price("SOL", 3), price("ADA", 4)));
+
+        waitFor(() -> batches.size() == 1);
+        assertEquals(List.of("BTC", "ETH", "SOL"), batches.get(0).stream().map(PriceTick::getSymbol).toList());
+        assertEquals(3, registry.get("price.history.written").counter().count());
+    }
+
+    @Test
+    void flushesPartialBatchesOnTheTimer() throws Exception {
+        recorder = recorder(batch -> batches.add(List.copyOf(batch)), 100, 500, Duration.ofMillis(50));
+
+        ticks.tryEmitNext(List.of(price("BTC", 1)));
+
+        waitFor(() -> batches.size() == 1);
+        assertEquals(1, batches.get(0).size());
+        assertEquals(1, registry.get("price.history.batch.size").summary().count());
+        assertEquals(1, registry.get("price.history.flush").timer().count());
+    }
+
+    @Test
+    void onlyRecordsSymbolsWhosePriceObjectChanged() throws Exception {
+        recorder = recorder(batch -> batches.add(List.copyOf(batch)), 100, 500, Duration.ofMillis(50));
+        PriceBook book = new PriceBook();
+
+        ticks.tryEmitNext(book.publish(List.of(price("BTC", 1), price("ETH", 2))).getPrices());
+        ticks.tryEmitNext(book.publish(List.of(price("BTC", 5))).getPrices());
+
+        waitFor(() -> batches.stream().mapToInt(List::size).sum() == 3);
+        Thread.sleep(100);
+        assertEquals(3, batches.stream().mapToInt(List::size).sum());
+    }
+
+    @Test
+    void aBadTickIsSkippedAndLaterTicksStillRecord() throws Exception {
+        recorder = recorder(batch -> batches.add(List.copyOf(batch)), 100, 500, Duration.ofMillis(50));
+
+        ticks.tryEmitNext(Arrays.asList(null, price("ETH", 2)));
+        ticks.tryEmitNext(List.of(price("BTC", 1)));
+
+        waitFor(() -> batches.stream().mapToInt(List::size).sum() == 2);
+        assertEquals(List.of("ETH", "BTC"), batches.stream().flatMap(List::stream).map(PriceTick::getSymbol).toList());
+    }
+
+    @Test
+    void tickPathDropsInsteadOfBlockingWhenTheDatabaseStalls() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        recorder = recorder(batch -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 4, 1, Duration.ofMinutes(1));
+
+        ticks.tryEmitNext(List.of(price("BTC", 1)));
+        waitFor(() -> registry.get("price.history.queue.depth").gauge().value() == 0);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            ticks.tryEmitNext(List.of(price("BTC", i + 2)));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "emitting must not wait for the writer");
+        assertEquals(4, registry.get("price.history.queue.depth").gauge().value());
+        assertEquals(6, registry.get("price.history.dropped").counter().count());
+        release.countDown();
+    }
+
+    private PriceHistoryRecorder recorder(Consumer<List<PriceTick>> writer, int capacity, int batchSize,
+                                          Duration flushInterval) {
+        return new PriceHistoryRecorder(ticks.asFlux(), writer, registry, capacity, batchSize, flushInterval);
+    }
+
+    private KrakenApiService.CryptoPrice price(String symbol, long units) {
+        return new KrakenApiService.CryptoPrice(symbol, symbol, 2, units, 0, 0, 0, LocalDateTime.now());
+    }
+
+    private void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) fail("timed out waiting for the writer");
+            Thread.sleep(5);
+        }
+    }
+}
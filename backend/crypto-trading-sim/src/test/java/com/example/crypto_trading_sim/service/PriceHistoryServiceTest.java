@@ -0,0 +1,155 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.PriceHistoryRepository;
+import com.example.crypto_trading_sim.repository.PriceHistoryRepository.PriceBar;
+import com.example.crypto_trading_sim.repository.PriceHistoryRepository.Tier;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceHistoryServiceTest {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 7, 10, 12, 30, 15);
+
+    /**
+     * Records the calls the service makes; the SQL itself needs Postgres.
+     */
+    private static class FakeRepository extends PriceHistoryRepository {
+        final Map<Tier, LocalDateTime> watermarks = new EnumMap<>(Tier.class);
+        final Map<Tier, LocalDateTime> oldest = new EnumMap<>(Tier.class);
+        final List<String> calls = new ArrayList<>();
+        // One tick per second, as from the WebSocket feed
+        long secondsPerTick = 1;
+
+        FakeRepository() {
+            super(null, null);
+        }
+
+        @Override
+        public Optional<LocalDateTime> findWatermark(Tier tier) {
+            return Optional.ofNullable(watermarks.get(tier));
+        }
+
+        @Override
+        public Optional<LocalDateTime> findOldest(Tier tier) {
+            return Optional.ofNullable(oldest.get(tier));
+        }
+
+        @Override
+        public int rollUp(Tier target, LocalDateTime from, LocalDateTime to) {
+            calls.add("rollUp " + target + " " + from + " " + to);
+            watermarks.put(target, to);
+            if (oldest.get(target) == null) oldest.put(target, from);
+            return 1;
+        }
+
+        @Override
+        public int deleteBefore(Tier tier, LocalDateTime before) {
+            calls.add("delete " + tier + " " + before);
+            return 0;
+        }
+
+        @Override
+        public int countRows(Tier tier, String symbol, LocalDateTime from, LocalDateTime to, long limit) {
+            return (int) Math.min(limit, Duration.between(from, to).toSeconds() / secondsPerTick);
+        }
+
+        @Override
+        public List<PriceBar> findBars(Tier tier, String symbol, LocalDateTime from, LocalDateTime to, long limit) {
+            calls.add("find " + tier + " " + symbol + " " + limit);
+            return List.of();
+        }
+    }
+
+    private final FakeRepository repository = new FakeRepository();
+
+    private PriceHistoryService service(LocalDateTime now) {
+        return new PriceHistoryService(repository, Clock.fixed(now.atZone(ZONE).toInstant(), ZONE),
+            Duration.ofDays(7), Duration.ofDays(90), Duration.ofMinutes(2), Duration.ofHours(6), 2000);
+    }
+
+    @Test
+    void firstPassStartsFromTheOldestTickAndRollsUpInChunks() {
+        repository.oldest.put(Tier.RAW, LocalDateTime.of(2025, 7, 9, 23, 59, 42));
+
+        service(NOW).compact();
+
+        assertEquals(List.of(
+            "rollUp MINUTE 2025-07-09T23:59 2025-07-10T05:59",
+            "rollUp MINUTE 2025-07-10T05:59 2025-07-10T11:59",
+            "rollUp MINUTE 2025-07-10T11:59 2025-07-10T12:28",
+            "rollUp HOUR 2025-07-09T23:00 2025-07-10T05:00",
+            "rollUp HOUR 2025-07-10T05:00 2025-07-10T11:00",
+            "rollUp HOUR 2025-07-10T11:00 2025-07-10T12:00",
+            "delete RAW 2025-07-03T12:30:15",
+            "delete MINUTE 2025-04-11T12:30:15"), repository.calls);
+    }
+
+    @Test
+    void laterPassesOnlyReadFromTheWatermark() {
+        repository.oldest.put(Tier.RAW, LocalDateTime.of(2025, 7, 10, 12, 0));
+        service(NOW).compact();
+        repository.calls.clear();
+
+        service(NOW.plusMinutes(3)).compact();
+
+        assertEquals(List.of(
+            "rollUp MINUTE 2025-07-10T12:28 2025-07-10T12:31",
+            "delete RAW 2025-07-03T12:33:15",
+            "delete MINUTE 2025-04-11T12:33:15"), repository.calls);
+    }
+
+    @Test
+    void retentionIsSkippedWhenRollupFails() {
+        FakeRepository failing = new FakeRepository() {
+            @Override
+            public int rollUp(Tier target, LocalDateTime from, LocalDateTime to) {
+                calls.add("rollUp " + target);
+                throw new RuntimeException("database unavailable");
+            }
+        };
+        failing.watermarks.put(Tier.MINUTE, NOW.minusDays(30));
+
+        new PriceHistoryService(failing, Clock.fixed(NOW.atZone(ZONE).toInstant(), ZONE),
+            Duration.ofDays(7), Duration.ofDays(90), Duration.ofMinutes(2), Duration.ofHours(6), 2000).compact();
+
+        assertEquals(List.of("rollUp MINUTE"), failing.calls, "raw rows past retention are not rolled up yet");
+    }
+
+    @Test
+    void queriesAreRoutedByRangeAndRetention() {
+        PriceHistoryService service = service(NOW);
+
+        assertEquals(Tier.RAW, service.tierFor("BTC", NOW.minusMinutes(30), NOW));
+        assertEquals(Tier.MINUTE, service.tierFor("BTC", NOW.minusHours(1), NOW));
+        assertEquals(Tier.MINUTE, service.tierFor("BTC", NOW.minusHours(6), NOW));
+        assertEquals(Tier.MINUTE, service.tierFor("BTC", NOW.minusDays(30), NOW.minusDays(29)));
+        assertEquals(Tier.HOUR, service.tierFor("BTC", NOW.minusDays(30), NOW));
+        assertEquals(Tier.HOUR, service.tierFor("BTC", NOW.minusDays(120), NOW.minusDays(119)));
+
+        assertEquals(Tier.RAW, service.getHistory("btc", NOW.minusMinutes(5), NOW).getTier());
+        assertEquals("find RAW BTC 2000", repository.calls.get(0));
+        assertThrows(IllegalArgumentException.class, () -> service.getHistory("BTC", NOW, NOW));
+    }
+
+    @Test
+    void slowerTicksStayRawOverLongerRanges() {
+        // Polled every 10 seconds
+        repository.secondsPerTick = 10;
+        PriceHistoryService service = service(NOW);
+
+        assertEquals(Tier.RAW, service.tierFor("BTC", NOW.minusHours(5), NOW));
+        assertEquals(Tier.MINUTE, service.tierFor("BTC", NOW.minusHours(6), NOW));
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.exception.RateLimitedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives the scheduler against a local Kraken stand-in whose Ticker endpoint
+ * can be made slow, failing or rate limited.
+ */
+class PricePollSchedulerTest {
+
+    enum Fault { NONE, SLOW, ERROR, RATE_LIMIT }
+
+    private final AtomicReference<Fault> fault = new AtomicReference<>(Fault.NONE);
+    private final AtomicInteger tickerRequests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private DisposableServer kraken;
+    private KrakenApiService service;
+    private PricePollScheduler scheduler;
+
+    @BeforeEach
+    void startKraken() throws Exception {
+        byte[] ticker = KrakenTickerParserTest.recordedPayload();
+        String assetPairs = KrakenApiServiceCoalescingTest.assetPairsFor(ticker);
+        kraken = HttpServer.create()
+            .host("localhost")
+            .port(0)
+            .route(routes -> routes
+                .get("/0/public/AssetPairs", (request, response) -> response.sendString(Mono.just(assetPairs)))
+                .get("/0/public/Ticker", (request, response) -> {
+                    tickerRequests.incrementAndGet();
+                    return switch (fault.get()) {
+                        case NONE -> response.sendByteArray(Mono.just(ticker));
+                        case SLOW -> response.sendByteArray(Mono.delay(Duration.ofMillis(150))
+                            .doOnSubscribe(s -> maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+                            .doFinally(signal -> inFlight.decrementAndGet())
+                            .thenReturn(ticker));
+                        case ERROR -> response.status(500).sendString(Mono.just("upstream down"));
+                        case RATE_LIMIT -> response.sendString(Mono.just("{\"error\":[\"EAPI:Rate limit exceeded\"]}"));
+                    };
+                }))
+            .bindNow();
+        service = new KrakenApiService(new KrakenMarketDataSource("http://localhost:" + kraken.port(), "ws://localhost:1", "rest"),
+            Duration.ofMillis(10), new SimpleMeterRegistry());
+        waitFor(() -> service.refreshPrices().map(prices -> !prices.isEmpty()).onErrorReturn(false)
+            .block(Duration.ofSeconds(5)));
+    }
+
+    @AfterEach
+    void stop() {
+        if (scheduler != null) scheduler.stop();
+        kraken.disposeNow();
+    }
+
+    @Test
+    void slowUpstreamNeverGetsOverlappingPollsAndStretchesTheInterval() throws Exception {
+        fault.set(Fault.SLOW);
+        scheduler = start(Duration.ofMillis(20), Duration.ofSeconds(2), 3);
+
+        waitFor(() -> registry.get("kraken.poll.latency").tag("outcome", "success").timer().count() >= 4);
+
+        assertEquals(1, maxInFlight.get(), "polls must not overlap");
+        // 150 ms latency, four times over, beats the 20 ms base interval
+        assertTrue(scheduler.getNextDelay().toMillis() >= 4 * 150, "delay " + scheduler.getNextDelay());
+        assertTrue(registry.get("kraken.prices.staleness").gauge().value() < 5);
+    }
+
+    @Test
+    void timeoutsCountAsFailuresWithoutOverlap() throws Exception {
+        fault.set(Fault.SLOW);
+        scheduler = start(Duration.ofMillis(20), Duration.ofMillis(50), 100);
+
+        waitFor(() -> registry.get("kraken.poll.latency").tag("outcome", "timeout").timer().count() >= 3);
+
+        // A timed-out fetch keeps running and the next poll joins it instead of piling on
+        assertEquals(1, maxInFlight.get());
+        assertEquals(CircuitBreaker.State.CLOSED, scheduler.getBreakerState());
+    }
+
+    @Test
+    void failuresBackOffOpenTheBreakerAndRecover() throws Exception {
+        fault.set(Fault.ERROR);
+        scheduler = start(Duration.ofMillis(10), Duration.ofSeconds(1), 3);
+
+        waitFor(() -> scheduler.getBreakerState() == CircuitBreaker.State.OPEN);
+        assertEquals(2.0, registry.get("kraken.poll.breaker.state").gauge().value());
+        int requestsWhenOpened = tickerRequests.get();
+        Thread.sleep(150);
+        assertEquals(requestsWhenOpened, tickerRequests.get(), "no polls while the breaker is open");
+        assertEquals(3, registry.get("kraken.poll.latency").tag("outcome", "error").timer().count());
+
+        fault.set(Fault.NONE);
+        waitFor(() -> scheduler.getBreakerState() == CircuitBreaker.State.CLOSED);
+        waitFor(() -> registry.get("kraken.poll.latency").tag("outcome", "success").timer().count() >= 2);
+        assertEquals(0.0, registry.get("kraken.poll.breaker.state").gauge().value());
+    }
+
+    @Test
+    void rateLimitErrorsWidenTheInterval() throws Exception {
+        fault.set(Fault.RATE_LIMIT);
+        scheduler = start(Duration.ofMillis(10), Duration.ofSeconds(1), 100);
+
+        waitFor(() -> registry.get("kraken.poll.latency").tag("outcome", "rate_limited").timer().count() >= 3);
+        fault.set(Fault.NONE);
+        long successes = registry.get("kraken.poll.latency").tag("outcome", "success").timer().count();
+        waitFor(() -> registry.get("kraken.poll.latency").tag("outcome", "success").timer().count() > successes);
+
+        // Three doublings, one decay step: still well above the 10 ms base
+        assertTrue(scheduler.getNextDelay().toMillis() >= 40, "delay " + scheduler.getNextDelay());
+    }
+
+    @Test
+    void skipsPollingWhileTheSourceIsLive() throws Exception {
+        AtomicLong polls = new AtomicLong();
+        scheduler = new PricePollScheduler(() -> Mono.fromRunnable(polls::incrementAndGet), () -> true,
+            service::getPriceSnapshot, registry, Duration.ofMillis(5), Duration.ofSeconds(1), Duration.ofSeconds(1),
+            new CircuitBreaker(3, Duration.ofSeconds(1), System::nanoTime));
+        scheduler.start();
+        Thread.sleep(100);
+        assertEquals(0, polls.get());
+    }
+
+    @Test
+    void breakerOpensAfterTheThresholdAndAllowsOneTrial() {
+        AtomicLong now = new AtomicLong();
+        CircuitBreaker breaker = new CircuitBreaker(2, Duration.ofSeconds(10), now::get);
+
+        breaker.recordFailure();
+        assertTrue(breaker.tryAcquire());
+        breaker.recordFailure();
+        assertFalse(breaker.tryAcquire());
+        assertEquals(Duration.ofSeconds(10), breaker.remainingOpen());
+
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertTrue(breaker.tryAcquire());
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void classifiesWrappedRateLimitErrors() {
+        assertEquals(PricePollScheduler.Outcome.RATE_LIMITED, PricePollScheduler.classify(
+            new RuntimeException("Failed to parse price data", new RateLimitedException("EAPI:Rate limit exceeded"))));
+        assertEquals(PricePollScheduler.Outcome.RATE_LIMITED, PricePollScheduler.classify(
+            WebClientResponseException.create(429, "Too Many Requests", null, null, null)));
+        assertEquals(PricePollScheduler.Outcome.ERROR, PricePollScheduler.classify(new RuntimeException("boom")));
+        assertEquals(PricePollScheduler.Outcome.SUCCESS, PricePollScheduler.classify(null));
+    }
+
+    private PricePollScheduler start(Duration interval, Duration timeout, int failureThreshold) {
+        PricePollScheduler started = new PricePollScheduler(service::refreshPrices, () -> false, service::getPriceSnapshot,
+            registry, interval, timeout, Duration.ofSeconds(2),
+            new CircuitBreaker(failureThreshold, Duration.ofMillis(300), System::nanoTime));
+        started.start();
+        return started;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) fail("condition not reached in time");
+            Thread.sleep(5);
+        }
+    }
+}
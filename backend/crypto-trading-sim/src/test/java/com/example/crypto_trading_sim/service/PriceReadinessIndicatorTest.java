@@ -0,0 +1,102 @@
+package com.example.crypto_trading_sim.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceReadinessIndicatorTest {
+
+    private static final LocalDateTime YESTERDAY = LocalDateTime.now().minusDays(1);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void restoredPricesAnswerButAreNotReadyUntilRefreshed() throws Exception {
+        try (TickJournal journal = new TickJournal(dir, 4096, 10, new SimpleMeterRegistry())) {
+            journal.append(List.of(price("BTC", 100), price("ETH", 200)));
+        }
+        PushSource source = new PushSource();
+        List<ReadinessState> published = new ArrayList<>();
+        try (TickJournal journal = new TickJournal(dir, 4096, 10, new SimpleMeterRegistry())) {
+            KrakenApiService service = new KrakenApiService(source, Optional.of(journal), Duration.ofSeconds(5),
+                new SimpleMeterRegistry());
+            PriceReadinessIndicator readiness = new PriceReadinessIndicator(service,
+                event -> published.add((ReadinessState) ((AvailabilityChangeEvent<?>) event).getState()),
+                Duration.ofSeconds(1), Duration.ofSeconds(10), Duration.ofSeconds(5));
+
+            // Usable at once from the restored snapshot, even with the source down
+            assertEquals(2, service.getCachedPrices().size());
+            assertEquals(2, service.getAllCryptoPrices().block(Duration.ofSeconds(5)).size());
+            assertEquals(100, service.getCryptoPrice("btc").block(Duration.ofSeconds(5)).getPriceUnits());
+            assertEquals(Status.OUT_OF_SERVICE, readiness.health().getStatus());
+            assertEquals(true, readiness.health().getDetails().get("restored"));
+            readiness.check();
+
+            source.sink.accept(List.of(price("BTC", 101)));
+            assertEquals(Status.UP, readiness.health().getStatus());
+            readiness.check();
+            readiness.check();
+
+            assertEquals(List.of(ReadinessState.REFUSING_TRAFFIC, ReadinessState.ACCEPTING_TRAFFIC), published);
+        }
+    }
+
+    @Test
+    void staysReadyBetweenPollsSlowerThanThePriceMaxAge() throws Exception {
+        PushSource source = new PushSource();
+        // Lookups refetch prices older than 50ms; a poll is due every 200ms and may take 100ms
+        KrakenApiService service = new KrakenApiService(source, Duration.ofMillis(50), new SimpleMeterRegistry());
+        List<ReadinessState> published = new ArrayList<>();
+        PriceReadinessIndicator readiness = new PriceReadinessIndicator(service,
+            event -> published.add((ReadinessState) ((AvailabilityChangeEvent<?>) event).getState()),
+            Duration.ofSeconds(1), Duration.ofMillis(200), Duration.ofMillis(100));
+
+        source.sink.accept(List.of(price("BTC", 100)));
+        readiness.check();
+        Thread.sleep(120);
+        assertFalse(service.isPriceDataFresh(), "older than the lookup max-age");
+        assertEquals(Status.UP, readiness.health().getStatus(), "but the next poll is not overdue");
+        readiness.check();
+
+        Thread.sleep(250);
+        assertEquals(Status.OUT_OF_SERVICE, readiness.health().getStatus());
+        readiness.check();
+        assertEquals(List.of(ReadinessState.ACCEPTING_TRAFFIC, ReadinessState.REFUSING_TRAFFIC), published);
+    }
+
+    @Test
+    void aTenSecondPollWithdrawsReadinessOnlyOnceOverdue() {
+        PriceReadinessIndicator readiness = new PriceReadinessIndicator(
+            new KrakenApiService(new PushSource(), Duration.ofSeconds(5), new SimpleMeterRegistry()), event -> {},
+            Duration.ofSeconds(1), Duration.ofSeconds(10), Duration.ofSeconds(5));
+        assertEquals(Duration.ofSeconds(15), readiness.getMaxAge());
+    }
+
+    private static KrakenApiService.CryptoPrice price(String symbol, long units) {
+        return new KrakenApiService.CryptoPrice(symbol, symbol, 2, units, 0, 0, 0, YESTERDAY);
+    }
+
+    private static class PushSource implements MarketDataSource {
+        Consumer<List<KrakenApiService.CryptoPrice>> sink;
+
+        @Override public void start(Consumer<List<KrakenApiService.CryptoPrice>> sink) { this.sink = sink; }
+        @Override public void stop() {}
+        @Override public boolean isLive() { return false; }
+        @Override public Mono<List<KrakenApiService.CryptoPrice>> fetchAll() { return Mono.error(new RuntimeException("offline")); }
+    }
+}
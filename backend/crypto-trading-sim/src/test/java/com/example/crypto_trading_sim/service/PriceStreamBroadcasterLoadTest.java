@@ -0,0 +1,127 @@
+package com.example.crypto_trading_sim.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.Unpooled;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Opens thousands of local SSE connections and checks that the encoding work
+ * per tick does not grow with the number of subscribers. Tagged {@code perf}
+ * and run with {@code mvn test -Pperf}.
+ */
+@Tag("perf")
+@Slf4j
+class PriceStreamBroadcasterLoadTest {
+
+    private static final byte[] DATA_PREFIX = "data:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EVENT_SUFFIX = "\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final int TICKS = 20;
+
+    @Test
+    void serializationCostPerTickIsIndependentOfSubscriberCount() throws Exception {
+        for (int subscribers : new int[] {10, 200, 2000}) {
+            runRound(subscribers);
+        }
+    }
+
+    private void runRound(int subscriberCount) throws Exception {
+        Sinks.Many<List<KrakenApiService.CryptoPrice>> ticks = Sinks.many().multicast().onBackpressureBuffer();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        PriceStreamBroadcaster broadcaster = new PriceStreamBroadcaster(ticks.asFlux(), objectMapper, registry,
+            new PriceStreamSubscribers(registry, Duration.ofMinutes(1)));
+
+        DisposableServer server = HttpServer.create()
+            .host("localhost")
+            .port(0)
+            .route(routes -> routes.get("/prices/stream", (request, response) -> response
+                .header("Content-Type", "text/event-stream")
+                .send(broadcaster.frames().map(frame -> Unpooled.wrappedBuffer(DATA_PREFIX, frame, EVENT_SUFFIX)))))
+            .bindNow();
+
+        ConnectionProvider pool = ConnectionProvider.builder("sse-load").maxConnections(subscriberCount).build();
+        HttpClient client = HttpClient.create(pool).baseUrl("http://localhost:" + server.port());
+        AtomicLong eventsReceived = new AtomicLong();
+        List<Disposable> connections = new ArrayList<>();
+        try {
+            for (int i = 0; i < subscriberCount; i++) {
+                EventCounter counter = new EventCounter(eventsReceived);
+                connections.add(client.get().uri("/prices/stream")
+                    .responseContent()
+                    .asString()
+                    .subscribe(counter::accept));
+            }
+            waitFor(() -> broadcaster.getSubscriberCount() == subscriberCount);
+
+            for (int tick = 0; tick < TICKS; tick++) {
+                ticks.tryEmitNext(samplePrices(tick));
+            }
+            waitFor(() -> eventsReceived.get() == (long) TICKS * subscriberCount);
+
+            Timer serialization = registry.get("price.stream.serialization").timer();
+            assertEquals(TICKS, serialization.count(), "each tick must be serialized exactly once");
+            log.info("subscribers={} serializations={} mean={}us events={}", subscriberCount, serialization.count(),
+                String.format("%.1f", serialization.mean(TimeUnit.MICROSECONDS)), eventsReceived.get());
+        } finally {
+            connections.forEach(Disposable::dispose);
+            server.disposeNow();
+            pool.disposeLater().block();
+        }
+    }
+
+    /** Counts SSE events per connection, carrying a short tail so markers split across chunks are not lost. */
+    private static final class EventCounter {
+        private final AtomicLong total;
+        private String tail = "";
+
+        private EventCounter(AtomicLong total) {
+            this.total = total;
+        }
+
+        private void accept(String chunk) {
+            String text = tail + chunk;
+            for (int index = text.indexOf("data:"); index >= 0; index = text.indexOf("data:", index + 5)) {
+                total.incrementAndGet();
+            }
+            tail = text.substring(Math.max(0, text.length() - 4));
+        }
+    }
+
+    private static List<KrakenApiService.CryptoPrice> samplePrices(int tick) {
+        List<KrakenApiService.CryptoPrice> prices = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 20; i++) {
+            prices.add(new KrakenApiService.CryptoPrice("SYM" + i, "SYM" + i, 2, 10_000L + tick + i, tick, 100, 5_000_000_000L, now));
+        }
+        return prices;
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) fail("Timed out waiting for load test condition");
+            Thread.sleep(20);
+        }
+    }
+}
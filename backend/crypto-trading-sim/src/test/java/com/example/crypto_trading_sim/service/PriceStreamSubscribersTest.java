@@ -0,0 +1,100 @@
+package com.example.crypto_trading_sim.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceStreamSubscribersTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Sinks.Many<String> frames = Sinks.many().multicast().directBestEffort();
+
+    @Test
+    void slowSubscriberOnlyKeepsTheLatestFrameWhileFastOnesGetEverything() {
+        PriceStreamSubscribers subscribers = new PriceStreamSubscribers(registry, Duration.ofMinutes(1));
+        ManualSubscriber slow = new ManualSubscriber();
+        ManualSubscriber fast = new ManualSubscriber();
+        subscribers.deliver("full", frames.asFlux(), UnaryOperator.identity()).subscribe(slow);
+        subscribers.deliver("full", frames.asFlux(), UnaryOperator.identity()).subscribe(fast);
+        fast.request(Long.MAX_VALUE);
+
+        for (int i = 1; i <= 5; i++) frames.tryEmitNext("tick-" + i);
+
+        assertEquals(List.of("tick-1", "tick-2", "tick-3", "tick-4", "tick-5"), fast.received);
+        assertTrue(slow.received.isEmpty());
+        slow.request(1);
+        assertEquals(List.of("tick-5"), slow.received);
+
+        PriceStreamSubscribers.SubscriberStats slowStats = stats(subscribers, slow.received.size(), 4);
+        assertEquals(4, registry.get("price.stream.subscriber.dropped")
+            .tag("subscriber", Long.toString(slowStats.getId())).functionCounter().count());
+        assertEquals(Duration.ZERO, slowStats.getLag());
+    }
+
+    @Test
+    void frameDeliveredAfterADropGoesThroughTheReplacement() {
+        PriceStreamSubscribers subscribers = new PriceStreamSubscribers(registry, Duration.ofMinutes(1));
+        ManualSubscriber subscriber = new ManualSubscriber();
+        subscribers.deliver("delta", frames.asFlux(), dropped -> "snapshot").subscribe(subscriber);
+
+        frames.tryEmitNext("delta-1");
+        frames.tryEmitNext("delta-2");
+        subscriber.request(1);
+        frames.tryEmitNext("delta-3");
+        subscriber.request(1);
+
+        assertEquals(List.of("snapshot", "delta-3"), subscriber.received);
+    }
+
+    @Test
+    void subscriberThatStaysBehindIsDisconnectedAndUnregistered() throws Exception {
+        PriceStreamSubscribers subscribers = new PriceStreamSubscribers(registry, Duration.ofMillis(20));
+        ManualSubscriber subscriber = new ManualSubscriber();
+        subscribers.deliver("full", frames.asFlux(), UnaryOperator.identity()).subscribe(subscriber);
+
+        frames.tryEmitNext("tick-1");
+        assertFalse(subscriber.completed);
+        Thread.sleep(50);
+        frames.tryEmitNext("tick-2");
+
+        assertTrue(subscriber.completed);
+        assertTrue(subscribers.getActiveSubscribers().isEmpty());
+        assertTrue(registry.find("price.stream.subscriber.lag").gauges().isEmpty());
+        assertEquals(0, frames.currentSubscriberCount());
+    }
+
+    private PriceStreamSubscribers.SubscriberStats stats(PriceStreamSubscribers subscribers, long delivered, long dropped) {
+        return subscribers.getActiveSubscribers().stream()
+            .filter(s -> s.getDelivered() == delivered && s.getDropped() == dropped)
+            .findFirst()
+            .orElseThrow(() -> new AssertionError("no subscriber with " + delivered + " delivered, " + dropped + " dropped"));
+    }
+
+    private static class ManualSubscriber extends BaseSubscriber<String> {
+        private final List<String> received = new CopyOnWriteArrayList<>();
+        private volatile boolean completed;
+
+        @Override
+        protected void hookOnSubscribe(org.reactivestreams.Subscription subscription) {
+            // demand is driven by the test
+        }
+
+        @Override
+        protected void hookOnNext(String value) {
+            received.add(value);
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.crypto_trading_sim.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplayMarketDataSourceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysRecordsInOrderGroupedByTimestamp() throws Exception {
+        Path file = capture(3, 2, Duration.ofMillis(10));
+        ReplayMarketDataSource source = new ReplayMarketDataSource(file, ReplayMarketDataSource.MAX_SPEED, false);
+        List<List<KrakenApiService.CryptoPrice>> batches = Collections.synchronizedList(new ArrayList<>());
+
+        source.start(batches::add);
+        assertTrue(source.awaitCompletion(Duration.ofSeconds(5)));
+
+        assertEquals(3, batches.size());
+        assertEquals(6, source.getReplayedTicks());
+        for (int i = 0; i < batches.size(); i++) {
+            List<KrakenApiService.CryptoPrice> batch = batches.get(i);
+            assertEquals(List.of("S0", "S1"), batch.stream().map(KrakenApiService.CryptoPrice::getSymbol).toList());
+            assertEquals(START.plusNanos(i * 10_000_000L), batch.get(0).getLastUpdated());
+            assertEquals(100_000 + i, batch.get(0).getPriceUnits());
+            assertEquals(5, batch.get(0).getPriceScale());
+        }
+    }
+
+    @Test
+    void pacesAtTheRequestedMultiple() throws Exception {
+        // 20 steps of 50 ms is one recorded second, a tenth of a second at 10x
+        Path file = capture(21, 1, Duration.ofMillis(50));
+        ReplayMarketDataSource source = new ReplayMarketDataSource(file, 10, false);
+
+        long start = System.nanoTime();
+        source.start(batch -> {});
+        assertTrue(source.awaitCompletion(Duration.ofSeconds(5)));
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertTrue(elapsedMillis >= 95, "finished too early: " + elapsedMillis + " ms");
+        assertTrue(elapsedMillis < 1000, "not sped up: " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void loopingShiftsTimestampsForward() throws Exception {
+        Path file = capture(2, 1, Duration.ofMillis(10));
+        ReplayMarketDataSource source = new ReplayMarketDataSource(file, ReplayMarketDataSource.MAX_SPEED, true);
+        List<LocalDateTime> times = Collections.synchronizedList(new ArrayList<>());
+
+        source.start(batch -> times.add(batch.get(0).getLastUpdated()));
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (times.size() < 6 && System.nanoTime() < deadline) Thread.sleep(1);
+        source.stop();
+
+        List<LocalDateTime> seen = List.copyOf(times).subList(0, 6);
+        for (int i = 1; i < seen.size(); i++) {
+            assertTrue(seen.get(i).isAfter(seen.get(i - 1)), "time went backwards at " + i + ": " + seen);
+        }
+    }
+
+    @Test
+    void parsesSpeeds() {
+        assertEquals(ReplayMarketDataSource.MAX_SPEED, ReplayMarketDataSource.parseSpeed("max"));
+        assertEquals(1, ReplayMarketDataSource.parseSpeed("1x"));
+        assertEquals(100, ReplayMarketDataSource.parseSpeed("100X"));
+        assertEquals(2.5, ReplayMarketDataSource.parseSpeed("2.5"));
+        assertThrows(IllegalArgumentException.class, () -> ReplayMarketDataSource.parseSpeed("fast"));
+        assertThrows(IllegalArgumentException.class, () -> new ReplayMarketDataSource(dir.resolve("x"), 0, false));
+    }
+
+    @Test
+    void driveThePricePipelineOffline() throws Exception {
+        Path file = capture(2_000, 20, Duration.ofMillis(1));
+        ReplayMarketDataSource source = new ReplayMarketDataSource(file, ReplayMarketDataSource.MAX_SPEED, false);
+
+        KrakenApiService service = new KrakenApiService(source, Duration.ofSeconds(5), new SimpleMeterRegistry());
+        assertTrue(source.awaitCompletion(Duration.ofSeconds(30)));
+
+        List<KrakenApiService.CryptoPrice> prices = service.getAllCryptoPrices().block(Duration.ofSeconds(5));
+        assertEquals(20, prices.size());
+        assertTrue(prices.stream().allMatch(p -> p.getPriceUnits() == 100_000 + 1_999));
+        assertEquals(2_000 * 20, source.getReplayedTicks());
+    }
+
+    private Path capture(int steps, int symbols, Duration step) throws Exception {
+        Path file = dir.resolve("ticks-" + steps + "-" + symbols + ".cap");
+        try (TickCapture.Writer writer = new TickCapture.Writer(file)) {
+            for (int i = 0; i < steps; i++) {
+                LocalDateTime time = START.plus(step.multipliedBy(i));
+                for (int s = 0; s < symbols; s++) {
+                    writer.append(new KrakenApiService.CryptoPrice("S" + s, "S" + s, 5, 100_000 + i, i, 0, 1, time));
+                }
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,364 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.HoldingsRepository;
+import com.example.crypto_trading_sim.repository.TaxLotRepository;
+import com.example.crypto_trading_sim.repository.TradeRepository;
+import com.example.crypto_trading_sim.repository.TransactionRepository;
+import com.example.crypto_trading_sim.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hammers the trading service from many threads over in-memory repositories
+ * that simulate database latency and notice overlapping calls for one account.
+ */
+@Slf4j
+class SimpleTradingServiceConcurrencyTest {
+
+    private static final int ACCOUNTS = 8;
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("10000.00");
+    private static final BigDecimal PRICE = new BigDecimal("100.00");
+    private static final BigDecimal QUANTITY = new BigDecimal("0.01");
+    private static final long LATENCY_NANOS = 200_000;
+
+    @Test
+    void concurrentTradesLoseNoUpdatesAndNeverOverlapWithinAnAccount() throws Exception {
+        Accounts accounts = new Accounts(0);
+        SimpleTradingService service = accounts.service(new StripedLocks(64));
+
+        Result result = run(service, 16, 400);
+
+        assertEquals(0, result.failures.get(), "only insufficient-holdings rejections are expected: " + result.errors);
+        assertEquals(0, accounts.overlaps.get(), "two operations on one account ran at the same time");
+        assertEquals(result.completed.get(), accounts.transactionCount());
+        for (long userId = 1; userId <= ACCOUNTS; userId++) {
+            accounts.assertConsistent(userId);
+        }
+    }
+
+    /** Wall-clock ratios, so tagged {@code perf} and run with {@code mvn test -Pperf}. */
+    @Test
+    @Tag("perf")
+    void throughputScalesWithThreadsAcrossAccounts() throws Exception {
+        double single = throughput(new StripedLocks(64), 1);
+        double parallel = throughput(new StripedLocks(64), ACCOUNTS);
+        // A single stripe is the old service-wide lock
+        double global = throughput(new StripedLocks(1), ACCOUNTS);
+        log.info("trades/s: 1 thread={}, {} threads={}, {} threads on one lock={}",
+            Math.round(single), ACCOUNTS, Math.round(parallel), ACCOUNTS, Math.round(global));
+
+        assertTrue(parallel > 2.5 * single, "per-account locking should let accounts trade in parallel");
+        assertTrue(parallel > 2.5 * global, "a single lock should serialize every account");
+    }
+
+    @Test
+    void resetWaitsForTradesOnTheSameAccount() throws Exception {
+        Accounts accounts = new Accounts(LATENCY_NANOS);
+        SimpleTradingService service = accounts.service(new StripedLocks(64));
+
+        Thread trader = new Thread(() -> {
+            for (int i = 0; i < 50; i++) service.executeTrade(1L, "BTC", "BUY", QUANTITY, PRICE);
+        });
+        trader.start();
+        for (int i = 0; i < 10; i++) {
+            service.resetAccount(1L);
+            Thread.sleep(1);
+        }
+        trader.join();
+
+        assertEquals(0, accounts.overlaps.get());
+        accounts.assertConsistent(1L);
+    }
+
+    private double throughput(StripedLocks locks, int threads) throws Exception {
+        Accounts accounts = new Accounts(LATENCY_NANOS);
+        SimpleTradingService service = accounts.service(locks);
+        int tradesPerThread = 60;
+        long start = System.nanoTime();
+        Result result = run(service, threads, tradesPerThread);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        assertEquals(0, result.failures.get(), "unexpected failures: " + result.errors);
+        assertEquals(0, accounts.overlaps.get());
+        return result.completed.get() / seconds;
+    }
+
+    /**
+     * Each thread trades on accounts chosen round-robin from its own offset,
+     * two buys for every sell.
+     */
+    private Result run(SimpleTradingService service, int threads, int tradesPerThread) throws Exception {
+        Result result = new Result();
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            Thread worker = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < tradesPerThread; i++) {
+                    long userId = (offset + i) % ACCOUNTS + 1;
+                    String type = i % 3 == 2 ? "SELL" : "BUY";
+                    try {
+                        service.executeTrade(userId, "BTC", type, QUANTITY, PRICE);
+                        result.completed.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        String message = String.valueOf(e.getMessage());
+                        if (message.startsWith("No holdings") || message.startsWith("Insufficient holdings")) {
+                            result.rejected.incrementAndGet();
+                        } else {
+                            result.failures.incrementAndGet();
+                            result.errors.add(e.toString());
+                        }
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        ready.await();
+        go.countDown();
+        for (Thread worker : workers) worker.join();
+        return result;
+    }
+
+    private static class Result {
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final Queue<String> errors = new ConcurrentLinkedQueue<>();
+    }
+
+    private record Ledger(String type, BigDecimal balanceBefore, BigDecimal balanceAfter) {}
+
+    /**
+     * In-memory state behind the three repositories. Every call takes
+     * {@code latencyNanos} and counts as "in progress" on its account while it
+     * does; a second call for the same account arriving meanwhile is an overlap.
+     */
+    private static class Accounts {
+        final long latencyNanos;
+        final Map<Long, BigDecimal> balances = new ConcurrentHashMap<>();
+        final Map<String, HoldingsRepository.Holding> holdings = new ConcurrentHashMap<>();
+        final Map<Long, List<Ledger>> ledgers = new ConcurrentHashMap<>();
+        final Map<Long, AtomicInteger> active = new ConcurrentHashMap<>();
+        final AtomicInteger overlaps = new AtomicInteger();
+
+        Accounts(long latencyNanos) {
+            this.latencyNanos = latencyNanos;
+            for (long userId = 1; userId <= ACCOUNTS; userId++) {
+                balances.put(userId, INITIAL_BALANCE);
+                ledgers.put(userId, Collections.synchronizedList(new ArrayList<>()));
+                active.put(userId, new AtomicInteger());
+            }
+        }
+
+        SimpleTradingService service(StripedLocks locks) {
+            Users users = new Users();
+            InMemoryTaxLotRepository lots = new InMemoryTaxLotRepository();
+            AccountLedger ledger = new DatabaseAccountLedger(users, new Holdings(), new Transactions(), new Trades(lots),
+                lots);
+            SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            AccountDirectory directory = new AccountDirectory(ledger::findUser, registry, ACCOUNTS);
+            TaxLotBook taxLots = new TaxLotBook(lots, ledger, TaxLotBook.LotMethod.FIFO, registry);
+            MarkToMarketEngine valuations = new MarkToMarketEngine(Flux.never(), new PriceBook()::snapshot, ledger,
+                directory, taxLots, new Leaderboard(registry), new PriceStreamSubscribers(registry, Duration.ofSeconds(30)),
+                registry);
+            return new SimpleTradingService(users, ledger, directory, valuations, taxLots, locks);
+        }
+
+        long transactionCount() {
+            return ledgers.values().stream().mapToLong(List::size).sum();
+        }
+
+        /**
+         * Cash plus holdings at the fixed price is conserved, and each
+         * transaction starts from the balance the previous one left.
+         */
+        void assertConsistent(long userId) {
+            HoldingsRepository.Holding holding = holdings.get(userId + ":BTC");
+            BigDecimal held = holding == null ? BigDecimal.ZERO : holding.getQuantity();
+            assertEquals(0, INITIAL_BALANCE.compareTo(balances.get(userId).add(held.multiply(PRICE))),
+                "cash and holdings of account " + userId + " do not add up");
+
+            List<Ledger> ledger = ledgers.get(userId);
+            BigDecimal expected = ledger.isEmpty() ? null : ledger.get(0).balanceBefore();
+            BigDecimal quantity = BigDecimal.ZERO;
+            for (Ledger entry : ledger) {
+                assertEquals(0, expected.compareTo(entry.balanceBefore()), "lost update on account " + userId);
+                expected = entry.balanceAfter();
+                quantity = entry.type().equals("BUY") ? quantity.add(QUANTITY) : quantity.subtract(QUANTITY);
+            }
+            if (expected != null) assertEquals(0, expected.compareTo(balances.get(userId)));
+            // Resets clear the ledger along with the holdings, so the ledger accounts for all of them
+            assertEquals(0, quantity.compareTo(held), "holdings of account " + userId + " do not match its trades");
+        }
+
+        private void io(Long userId) {
+            AtomicInteger inProgress = active.get(userId);
+            if (inProgress.incrementAndGet() > 1) overlaps.incrementAndGet();
+            try {
+                if (latencyNanos > 0) LockSupport.parkNanos(latencyNanos);
+            } finally {
+                inProgress.decrementAndGet();
+            }
+        }
+
+        private class Users extends UserRepository {
+            Users() { super(null); }
+
+            @Override
+            public Optional<User> findById(Long id) {
+                io(id);
+                BigDecimal balance = balances.get(id);
+                if (balance == null) return Optional.empty();
+                LocalDateTime now = LocalDateTime.now();
+                return Optional.of(new User(id, "user-" + id, id + "@example.com", balance, INITIAL_BALANCE, now, now));
+            }
+
+            @Override
+            public void resetBalance(Long userId) {
+                io(userId);
+                balances.put(userId, INITIAL_BALANCE);
+            }
+        }
+
+        private class Holdings extends HoldingsRepository {
+            Holdings() { super(null); }
+
+            @Override
+            public Optional<Holding> findByUserIdAndSymbol(Long userId, String cryptoSymbol) {
+                io(userId);
+                HoldingsRepository.Holding stored = holdings.get(userId + ":" + cryptoSymbol);
+                return Optional.ofNullable(stored).map(h -> holding(userId, cryptoSymbol, h.getQuantity(), h.getAveragePrice()));
+            }
+
+            @Override
+            public List<Holding> findByUserId(Long userId) {
+                io(userId);
+                return holdings.values().stream()
+                    .filter(h -> h.getUserId().equals(userId) && h.getQuantity().signum() > 0)
+                    .toList();
+            }
+
+            @Override
+            public void deleteByUserId(Long userId) {
+                io(userId);
+                holdings.values().removeIf(h -> h.getUserId().equals(userId));
+            }
+        }
+
+        private class Transactions extends TransactionRepository {
+            Transactions() { super(null); }
+
+            @Override
+            public int countByUserId(Long userId) {
+                io(userId);
+                return ledgers.get(userId).size();
+            }
+
+            @Override
+            public void deleteByUserId(Long userId) {
+                io(userId);
+                ledgers.get(userId).clear();
+            }
+        }
+
+        /**
+         * Applies a trade as separate reads and writes, each with its own
+         * latency, so anything but per-account serialization loses updates.
+         */
+        private class Trades extends TradeRepository {
+            private final TaxLotRepository lots;
+
+            Trades(TaxLotRepository lots) {
+                super(null, lots, null);
+                this.lots = lots;
+            }
+
+            @Override
+            public Long cryptoId(String symbol) {
+                return 1L;
+            }
+
+            @Override
+            public Optional<Execution> buy(Long userId, String cryptoSymbol, BigDecimal quantity, BigDecimal price,
+                                           BigDecimal total, TaxLotRepository.LotChange change) {
+                io(userId);
+                BigDecimal before = balances.get(userId);
+                if (before.compareTo(total) < 0) return Optional.empty();
+                BigDecimal after = before.subtract(total);
+                io(userId);
+                balances.put(userId, after);
+                HoldingsRepository.Holding held = holdings.get(userId + ":" + cryptoSymbol);
+                BigDecimal heldQuantity = held == null ? BigDecimal.ZERO : held.getQuantity();
+                io(userId);
+                holdings.put(userId + ":" + cryptoSymbol, holding(userId, cryptoSymbol, heldQuantity.add(quantity), price));
+                if (change != null) lots.write(TaxLotRepository.Writes.of(userId, change));
+                return Optional.of(record(userId, "BUY", before, after));
+            }
+
+            @Override
+            public Optional<Execution> sell(Long userId, String cryptoSymbol, BigDecimal quantity, BigDecimal price,
+                                            BigDecimal total, TaxLotRepository.LotChange change) {
+                io(userId);
+                HoldingsRepository.Holding held = holdings.get(userId + ":" + cryptoSymbol);
+                if (held == null || held.getQuantity().compareTo(quantity) < 0) return Optional.empty();
+                BigDecimal remaining = held.getQuantity().subtract(quantity);
+                io(userId);
+                if (remaining.compareTo(new BigDecimal("0.00000001")) <= 0) {
+                    holdings.remove(userId + ":" + cryptoSymbol);
+                } else {
+                    holdings.put(userId + ":" + cryptoSymbol, holding(userId, cryptoSymbol, remaining, held.getAveragePrice()));
+                }
+                BigDecimal before = balances.get(userId);
+                BigDecimal after = before.add(total);
+                io(userId);
+                balances.put(userId, after);
+                if (change != null) lots.write(TaxLotRepository.Writes.of(userId, change));
+                return Optional.of(record(userId, "SELL", before, after));
+            }
+
+            private Execution record(Long userId, String type, BigDecimal before, BigDecimal after) {
+                io(userId);
+                List<Ledger> ledger = ledgers.get(userId);
+                ledger.add(new Ledger(type, before, after));
+                return new Execution((long) ledger.size(), before, after);
+            }
+        }
+
+        private HoldingsRepository.Holding holding(Long userId, String symbol, BigDecimal quantity, BigDecimal averagePrice) {
+            HoldingsRepository.Holding holding = new HoldingsRepository.Holding();
+            holding.setUserId(userId);
+            holding.setCryptoSymbol(symbol);
+            holding.setQuantity(quantity);
+            holding.setAveragePrice(averagePrice);
+            return holding;
+        }
+    }
+}
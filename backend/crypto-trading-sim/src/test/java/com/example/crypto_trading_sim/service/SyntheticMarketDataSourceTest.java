@@ -0,0 +1,42 @@
+package com.example.crypto_trading_sim.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyntheticMarketDataSourceTest {
+
+    private static final List<String> SYMBOLS = List.of("btc", "ETH", "SOL");
+
+    @Test
+    void sameSeedGivesTheSamePrices() {
+        SyntheticMarketDataSource a = new SyntheticMarketDataSource(SYMBOLS, Duration.ofSeconds(1), 7);
+        SyntheticMarketDataSource b = new SyntheticMarketDataSource(SYMBOLS, Duration.ofSeconds(1), 7);
+
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(units(a.nextTick()), units(b.nextTick()), "diverged at step " + i);
+        }
+    }
+
+    @Test
+    void pricesStayPositiveAndTrackTheirRange() {
+        SyntheticMarketDataSource source = new SyntheticMarketDataSource(SYMBOLS, Duration.ofSeconds(1), 1);
+
+        for (int i = 0; i < 10_000; i++) {
+            for (KrakenApiService.CryptoPrice price : source.nextTick()) {
+                assertTrue(price.getPriceUnits() > 0);
+                assertTrue(price.getLow24hUnits() <= price.getPriceUnits());
+                assertTrue(price.getHigh24hUnits() >= price.getPriceUnits());
+            }
+        }
+        List<KrakenApiService.CryptoPrice> all = source.fetchAll().block();
+        assertEquals(List.of("BTC", "ETH", "SOL"), all.stream().map(KrakenApiService.CryptoPrice::getSymbol).toList());
+    }
+
+    private static List<String> units(List<KrakenApiService.CryptoPrice> prices) {
+        return prices.stream().map(p -> p.getSymbol() + "=" + p.getPriceUnits()).toList();
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.crypto_trading_sim.service;
+
+import com.example.crypto_trading_sim.repository.HoldingsRepository;
+import com.example.crypto_trading_sim.repository.TaxLotRepository;
+import com.example.crypto_trading_sim.repository.TradeRepository;
+import com.example.crypto_trading_sim.repository.TransactionRepository;
+import com.example.crypto_trading_sim.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaxLotBookTest {
+
+    private static final Long USER = 1L;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final InMemoryTaxLotRepository repository = new InMemoryTaxLotRepository();
+    private final Holdings ledger = new Holdings();
+
+    @Test
+    void fifoClosesTheOldestLotsFirst() {
+        TaxLotBook book = book(TaxLotBook.LotMethod.FIFO);
+        buyTwoLots(book);
+
+        assertEquals(units("250"), sell(book, "1.5", "450"), "450 - (100 + 0.5 * 200)");
+        assertEquals(units("250"), book.realized(USER));
+        assertEquals(List.of("0.5@200"), openLots());
+        assertEquals(1.0, registry.get("lots.closed").counter().count());
+    }
+
+    @Test
+    void lifoClosesTheNewestLotsFirst() {
+        TaxLotBook book = book(TaxLotBook.LotMethod.LIFO);
+        buyTwoLots(book);
+
+        assertEquals(units("200"), sell(book, "1.5", "450"), "450 - (200 + 0.5 * 100)");
+        assertEquals(List.of("0.5@100"), openLots());
+    }
+
+    @Test
+    void averageCostMergesTheLots() {
+        TaxLotBook book = book(TaxLotBook.LotMethod.AVERAGE);
+        buyTwoLots(book);
+
+        assertEquals(units("225"), sell(book, "1.5", "450"), "450 - 1.5 * 150");
+        assertEquals(List.of("0.5@150"), openLots());
+
+        // Selling the rest closes the merged lot
+        assertEquals(units("-25"), sell(book, "0.5", "50"));
+        assertEquals(List.of(), openLots());
+        assertEquals(units("200"), book.realized(USER));
+    }
+
+    @Test
+    void lotsAndRealizedPnLSurviveAReload() {
+        TaxLotBook book = book(TaxLotBook.LotMethod.FIFO);
+        buyTwoLots(book);
+        sell(book, "1.5", "450");
+        ledger.hold("BTC", "0.5", "150");
+
+        TaxLotBook reloaded = book(TaxLotBook.LotMethod.FIFO);
+        assertEquals(units("250"), reloaded.realized(USER));
+        assertEquals(units("100"), sell(reloaded, "0.5", "200"), "the reloaded lot kept its own price");
+        assertEquals(0.0, registry.get("lots.rebuilt").counter().count());
+    }
+
+    @Test
+    void aPositionWithoutMatchingLotsIsRestatedAtItsAveragePrice() {
+        ledger.hold("ETH", "2", "1000");
+        TaxLotBook book = book(TaxLotBook.LotMethod.FIFO);
+
+        assertEquals(0, book.realized(USER));
+        assertEquals(List.of("2@1000"), openLots());
+        assertEquals(1.0, registry.get("lots.rebuilt").counter().count());
+        assertEquals(units("200"), sell(book, "1", "1200", "ETH"));
+    }
+
+    @Test
+    void aSellTheLotsDoNotCoverChangesNothing() {
+        TaxLotBook book = book(TaxLotBook.LotMethod.FIFO);
+        buyTwoLots(book);
+
+        assertNull(book.sell(USER, "BTC", units("3"), units("900")));
+        assertEquals(0, book.realized(USER));
+        assertEquals(List.of("1@100", "1@200"), openLots());
+    }
+
+    @Test
+    void aForgottenAccountReloadsOnlyWhatTheLedgerWrote() {
+        TaxLotBook book = book(TaxLotBook.LotMethod.FIFO);
+        buyTwoLots(book);
+        sell(book, "0.5", "100");
+        // A sell the ledger refused: applied in the book, never written
+        assertNotNull(book.sell(USER, "BTC", units("1"), units("1000")));
+        book.forget(USER);
+        ledger.hold("BTC", "1.5", "150");
+
+        assertEquals(units("50"), book.realized(USER), "the refused sell's P&L is gone, the written one's kept");
+        assertEquals(List.of("0.5@100", "1@200"), openLots());
+        assertEquals(2, repository.loads.get());
+        assertEquals(0.0, registry.get("lots.rebuilt").counter().count());
+    }
+
+    @Test
+    void lotIdsContinueAfterAReload() {
+        TaxLotBook book = book(TaxLotBook.LotMethod.FIFO);
+        buyTwoLots(book);
+        ledger.hold("BTC", "2", "150");
+
+        TaxLotBook reloaded = book(TaxLotBook.LotMethod.FIFO);
+        buy(reloaded, "1", "300");
+        assertEquals(List.of("1@100", "1@200", "1@300"), openLots());
+    }
+
+    @Test
+    void resetDropsLotsAndRealizedPnL() {
+        TaxLotBook book = book(TaxLotBook.LotMethod.FIFO);
+        buyTwoLots(book);
+        sell(book, "2", "600");
+        // The ledger clears the tables with the rest of the account
+        repository.deleteByUserId(USER);
+        book.onReset(USER);
+
+        assertEquals(0, book.realized(USER));
+        assertEquals(List.of(), openLots());
+        assertTrue(repository.realized.isEmpty());
+        assertEquals(1, repository.loads.get(), "a reset account starts empty without reloading");
+    }
+
+    private TaxLotBook book(TaxLotBook.LotMethod method) {
+        return new TaxLotBook(repository, ledger, method, registry);
+    }
+
+    private void buyTwoLots(TaxLotBook book) {
+        buy(book, "1", "100");
+        buy(book, "1", "200");
+    }
+
+    /** Buy as the service does, writing the lot as the ledger would. */
+    private void buy(TaxLotBook book, String quantity, String price) {
+        book.track(USER);
+        repository.write(TaxLotRepository.Writes.of(USER, book.buy(USER, "BTC", units(quantity), units(price))));
+        book.onBuy(USER, "BTC", units(quantity), units(price));
+    }
+
+    private long sell(TaxLotBook book, String quantity, String proceeds) {
+        return sell(book, quantity, proceeds, "BTC");
+    }
+
+    /** Sell as the service does, writing the change as the ledger would; returns the realized P&L. */
+    private long sell(TaxLotBook book, String quantity, String proceeds, String symbol) {
+        book.track(USER);
+        TaxLotRepository.LotChange change = book.sell(USER, symbol, units(quantity), units(proceeds));
+        repository.write(TaxLotRepository.Writes.of(USER, change));
+        return FixedPoint.of(change.getRealized(), FixedPoint.VALUE_SCALE);
+    }
+
+    private List<String> openLots() {
+        return repository.lots.getOrDefault(USER, Map.of()).values().stream()
+            .map(lot -> lot.getQuantity().stripTrailingZeros().toPlainString() + "@"
+                + lot.getPrice().stripTrailingZeros().toPlainString())
+            .toList();
+    }
+
+    private static long units(String amount) {
+        return FixedPoint.of(new BigDecimal(amount), FixedPoint.VALUE_SCALE);
+    }
+
+    /** Only the holdings a reload reconciles against. */
+    private static class Holdings implements AccountLedger {
+        final Map<String, HoldingsRepository.Holding> held = new HashMap<>();
+
+        void hold(String symbol, String quantity, String averagePrice) {
+            HoldingsRepository.Holding holding = new HoldingsRepository.Holding();
+            holding.setCryptoSymbol(symbol);
+            holding.setQuantity(new BigDecimal(quantity));
+            holding.setAveragePrice(new BigDecimal(averagePrice));
+            held.put(symbol, holding);
+        }
+
+        @Override
+        public List<HoldingsRepository.Holding> holdings(Long userId) {
+            return List.copyOf(held.values());
+        }
+
+        @Override
+        public Optional<HoldingsRepository.Holding> holding(Long userId, String symbol) {
+            return Optional.ofNullable(held.get(symbol));
+        }
+
+        @Override
+        public Optional<TradeRepository.Execution> buy(Long userId, String symbol, BigDecimal quantity,
+                                                       BigDecimal price, BigDecimal total,
+                                                       TaxLotRepository.LotChange lots) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Optional<TradeRepository.Execution> sell(Long userId, String symbol, BigDecimal quantity,
+                                                        BigDecimal price, BigDecimal total,
+                                                        TaxLotRepository.LotChange lots) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void reset(Long userId) {
+            held.clear();
+        }
+
+        @Override
+        public Optional<UserRepository.User> findUser(Long userId) {
+            return Optional.empty();
+        }
+
+        @Override
+        public List<TransactionRepository.Transaction> transactions(Long userId) {
+            return List.of();
+        }
+    }
+}
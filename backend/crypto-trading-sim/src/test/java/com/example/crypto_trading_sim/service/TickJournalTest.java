@@ -0,0 +1,150 @@
+package com.example.crypto_trading_sim.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TickJournalTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+    private static final LocalDateTime START = LocalDateTime.now().minusHours(1).withNano(0);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void rollsSegmentsAndRecoversTheLatestPricePerSymbol() throws Exception {
+        try (TickJournal journal = new TickJournal(dir, SEGMENT_SIZE, 100, new SimpleMeterRegistry())) {
+            for (int i = 0; i < 1_000; i++) {
+                journal.append(List.of(tick("BTC", i), tick("ETH", i)));
+            }
+            journal.append(List.of(tick("SOL", 5)));
+            assertTrue(journal.getSequence() > 5, "expected several segments, got " + journal.getSequence());
+        }
+
+        List<KrakenApiService.CryptoPrice> latest = TickJournal.recoverLatest(dir);
+
+        assertEquals(3, latest.size());
+        assertEquals(999 + 100_000, find(latest, "BTC").getPriceUnits());
+        assertEquals(999 + 100_000, find(latest, "ETH").getPriceUnits());
+        assertEquals(5 + 100_000, find(latest, "SOL").getPriceUnits());
+        assertEquals(START.plusSeconds(999), find(latest, "BTC").getLastUpdated());
+    }
+
+    @Test
+    void keepsOnlyTheNewestSegments() throws Exception {
+        try (TickJournal journal = new TickJournal(dir, SEGMENT_SIZE, 3, new SimpleMeterRegistry())) {
+            for (int i = 0; i < 1_000; i++) journal.append(List.of(tick("BTC", i)));
+        }
+        assertEquals(3, TickJournal.segments(dir).size());
+        assertEquals(999 + 100_000, find(TickJournal.recoverLatest(dir), "BTC").getPriceUnits());
+    }
+
+    @Test
+    void tailerFollowsTheWriterAcrossSegments() throws Exception {
+        int ticks = 20_000;
+        try (TickJournal journal = new TickJournal(dir, SEGMENT_SIZE, 10_000, new SimpleMeterRegistry())) {
+            TickJournal.Tailer tailer = journal.tailer();
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < ticks; i++) journal.append(List.of(tick("BTC", i)));
+            });
+            writer.start();
+
+            List<Long> seen = new ArrayList<>(ticks);
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (seen.size() < ticks && System.nanoTime() < deadline) {
+                if (tailer.poll(price -> seen.add(price.getPriceUnits()), 256) == 0) Thread.onSpinWait();
+            }
+            writer.join();
+
+            assertEquals(ticks, seen.size());
+            for (int i = 0; i < ticks; i++) assertEquals(100_000 + i, seen.get(i), "out of order at " + i);
+            assertEquals(0, tailer.poll(price -> fail("no more records expected"), 10));
+        }
+    }
+
+    @Test
+    void restartStartsANewSegmentThatTailersReach() throws Exception {
+        TickJournal first = new TickJournal(dir, SEGMENT_SIZE, 10, new SimpleMeterRegistry());
+        first.append(List.of(tick("BTC", 1)));
+        TickJournal.Tailer tailer = first.tailer();
+        // Simulate a crash: no close(), so the segment has no end marker
+
+        try (TickJournal second = new TickJournal(dir, SEGMENT_SIZE, 10, new SimpleMeterRegistry())) {
+            assertEquals(first.getSequence() + 1, second.getSequence());
+            second.append(List.of(tick("BTC", 2)));
+
+            List<Long> seen = new ArrayList<>();
+            tailer.poll(price -> seen.add(price.getPriceUnits()), 10);
+            assertEquals(List.of(100_001L, 100_002L), seen);
+            assertEquals(100_002, find(second.recoverLatest(), "BTC").getPriceUnits());
+        }
+    }
+
+    @Test
+    void journalDirectoryReplaysInOrder() throws Exception {
+        try (TickJournal journal = new TickJournal(dir, SEGMENT_SIZE, 100, new SimpleMeterRegistry())) {
+            for (int i = 0; i < 500; i++) journal.append(List.of(tick("BTC", i)));
+        }
+        ReplayMarketDataSource replay = new ReplayMarketDataSource(dir, ReplayMarketDataSource.MAX_SPEED, false);
+        List<Long> replayed = Collections.synchronizedList(new ArrayList<>());
+
+        replay.start(batch -> batch.forEach(price -> replayed.add(price.getPriceUnits())));
+        assertTrue(replay.awaitCompletion(Duration.ofSeconds(5)));
+
+        assertEquals(500, replayed.size());
+        for (int i = 0; i < 500; i++) assertEquals(100_000 + i, replayed.get(i));
+    }
+
+    @Test
+    void serviceRestoresPricesFromTheJournalAndKeepsJournaling() throws Exception {
+        try (TickJournal journal = new TickJournal(dir, SEGMENT_SIZE, 10, new SimpleMeterRegistry())) {
+            journal.append(List.of(tick("BTC", 1), tick("ETH", 2)));
+        }
+
+        try (TickJournal journal = new TickJournal(dir, SEGMENT_SIZE, 10, new SimpleMeterRegistry())) {
+            PushSource source = new PushSource();
+            KrakenApiService service = new KrakenApiService(source, Optional.of(journal), Duration.ofSeconds(5),
+                new SimpleMeterRegistry());
+
+            PriceBook.Snapshot restored = service.getPriceSnapshot();
+            assertEquals(2, restored.size());
+            assertEquals(100_001, restored.get("BTC").getPriceUnits());
+            assertTrue(restored.getAge().compareTo(Duration.ofMinutes(30)) > 0, "restored data must not look fresh");
+
+            source.sink.accept(List.of(tick("BTC", 3)));
+            assertEquals(100_003, service.getPriceSnapshot().get("BTC").getPriceUnits());
+            assertEquals(100_002, service.getPriceSnapshot().get("ETH").getPriceUnits());
+            assertEquals(100_003, find(journal.recoverLatest(), "BTC").getPriceUnits());
+        }
+    }
+
+    private static KrakenApiService.CryptoPrice tick(String symbol, int i) {
+        return new KrakenApiService.CryptoPrice(symbol, symbol, 5, 100_000 + i, i, 0, 1, START.plusSeconds(i));
+    }
+
+    private static KrakenApiService.CryptoPrice find(List<KrakenApiService.CryptoPrice> prices, String symbol) {
+        return prices.stream().filter(p -> p.getSymbol().equals(symbol)).findFirst().orElseThrow();
+    }
+
+    private static class PushSource implements MarketDataSource {
+        Consumer<List<KrakenApiService.CryptoPrice>> sink;
+
+        @Override public void start(Consumer<List<KrakenApiService.CryptoPrice>> sink) { this.sink = sink; }
+        @Override public void stop() {}
+        @Override public boolean isLive() { return false; }
+        @Override public Mono<List<KrakenApiService.CryptoPrice>> fetchAll() { return Mono.error(new RuntimeException("offline")); }
+    }
+}
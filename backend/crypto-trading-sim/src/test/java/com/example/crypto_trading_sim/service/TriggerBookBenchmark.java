@@ -0,0 +1,86 @@
+package com.example.crypto_trading_sim.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of evaluating one tick against a symbol's resting orders: the
+ * {@link TriggerBook} against scanning every order, for books of 1k to 500k
+ * orders. A tick that triggers nothing and one that triggers (and re-rests)
+ * a single order should cost the same at every book size for the book, and
+ * grow linearly for the scan.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.example.crypto_trading_sim.service.TriggerBookBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TriggerBookBenchmark {
+
+    private static final long MARKET = 2_000_000_000L;
+    // No order rests within this distance of the market price
+    private static final long GAP = 1_000_000L;
+
+    @Param({"1000", "100000", "500000"})
+    int orders;
+
+    private TriggerBook<Long> book;
+    private long[] thresholds;
+    private boolean[] rising;
+    private long tick;
+
+    @Setup
+    public void rest() {
+        SplittableRandom random = new SplittableRandom(42);
+        book = new TriggerBook<>();
+        thresholds = new long[orders];
+        rising = new boolean[orders];
+        for (int i = 0; i < orders; i++) {
+            rising[i] = random.nextBoolean();
+            long distance = GAP + random.nextLong(100 * GAP);
+            thresholds[i] = rising[i] ? MARKET + distance : MARKET - distance;
+            book.add(thresholds[i], rising[i], (long) i);
+        }
+    }
+
+    @Benchmark
+    public int bookNothingTriggered(Blackhole blackhole) {
+        return book.cross(MARKET + (tick++ & 1023), blackhole::consume);
+    }
+
+    @Benchmark
+    public int bookOneTriggered(Blackhole blackhole) {
+        long threshold = MARKET + 1 + (tick++ & 1023);
+        book.add(threshold, true, tick);
+        int fired = book.cross(threshold, blackhole::consume);
+        // Back below every rising threshold for the next invocation
+        book.cross(MARKET, blackhole::consume);
+        return fired;
+    }
+
+    @Benchmark
+    public int scanNothingTriggered() {
+        long price = MARKET + (tick++ & 1023);
+        int fired = 0;
+        for (int i = 0; i < orders; i++) {
+            if (rising[i] ? price >= thresholds[i] : price <= thresholds[i]) fired++;
+        }
+        return fired;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(TriggerBookBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
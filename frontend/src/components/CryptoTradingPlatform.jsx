@@ -34,10 +34,12 @@ const CryptoTradingPlatform = () => {
   useEffect(() => {
     loadInitialData();
     const cleanup = setupRealTimePriceUpdates();
+    const accountStream = setupAccountUpdates();
 
     // Cleanup on component unmount
     return () => {
       if (cleanup) cleanup();
+      accountStream.close();
       if (window.pricePollingInterval) {
         clearInterval(window.pricePollingInterval);
         window.pricePollingInterval = null;
@@ -91,6 +93,34 @@ const CryptoTradingPlatform = () => {
     }
   };
 
+  // Account valuation is pushed by the backend, so /account is only fetched on load and after actions
+  const setupAccountUpdates = () => {
+    const eventSource = apiService.createAccountStream();
+
+    eventSource.onmessage = (event) => {
+      try {
+        const account = JSON.parse(event.data);
+        const portfolioObject = {};
+        (account.portfolio || []).forEach((holding) => {
+          portfolioObject[holding.symbol] = holding;
+        });
+        setAccountData((previous) => ({
+          ...previous,
+          ...account,
+          portfolio: portfolioObject,
+        }));
+      } catch (error) {
+        console.error("Error parsing account update:", error);
+      }
+    };
+
+    eventSource.onerror = (error) => {
+      console.error("Account stream error:", error);
+    };
+
+    return eventSource;
+  };
+
   const setupRealTimePriceUpdates = () => {
     try {
       const eventSource = apiService.createPriceStream();
@@ -80,6 +80,11 @@ class ApiService {
     const eventSource = new EventSource(`${this.baseURL}/market/prices/stream`);
     return eventSource;
   }
+
+  // Account summary pushed on every trade or price move that changes it
+  createAccountStream() {
+    return new EventSource(`${this.baseURL}/simple-trading/account/stream`);
+  }
 }
 
 export default new ApiService();